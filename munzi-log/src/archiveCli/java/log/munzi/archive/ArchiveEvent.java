@@ -0,0 +1,60 @@
+package log.munzi.archive;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * ArchiveIndex 에서 찾은 로그 한 건
+ * <p>
+ * 원문은 getText()를 부를 때 .dat에서 읽는다.
+ */
+@Getter
+public class ArchiveEvent {
+
+    // archive 파일 이름
+    private final String archive;
+
+    // epoch millis
+    private final long time;
+
+    // REQ, RES, EXG, ERR, ERR_STACK_TRACE, LOG
+    private final String type;
+
+    private final String requestId;
+
+    private final String route;
+
+    // 없으면 0
+    private final int status;
+
+    // 없으면 -1
+    private final int latencyMs;
+
+    @Getter(AccessLevel.NONE)
+    private final IndexSegment segment;
+
+    @Getter(AccessLevel.NONE)
+    private final int row;
+
+    ArchiveEvent(IndexSegment segment, int row) {
+        this.archive = segment.getName();
+        this.time = segment.time(row);
+        this.type = segment.type(row).name();
+        this.requestId = segment.requestId(row);
+        this.route = segment.route(row);
+        this.status = segment.status(row);
+        this.latencyMs = segment.latencyMs(row);
+        this.segment = segment;
+        this.row = row;
+    }
+
+    /**
+     * @return 로그 원문 (여러 줄)
+     * @throws IOException .dat를 읽을 수 없을 때
+     */
+    public String getText() throws IOException {
+        return segment.text(row);
+    }
+}
@@ -0,0 +1,174 @@
+package log.munzi.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * ArchiveIndexer로 만든 index directory의 모든 segment를 memory map 해서 조회하는 index
+ * <p>
+ * requestId는 segment 마다 binary search로, route는 route 별 postings에서 시간 범위를 binary search로 찾으므로
+ * archive 크기와 관계없이 찾은 로그 수만큼만 읽는다.
+ * 찾은 로그의 원문(ArchiveEvent.getText)은 block 하나씩 풀어서 읽으며, 여러 thread에서 같이 사용하지 않는다.
+ */
+public class ArchiveIndex implements Closeable {
+
+    private final List<IndexSegment> segments;
+
+    private ArchiveIndex(List<IndexSegment> segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * @param indexDirectory ArchiveIndexer로 segment를 만든 directory
+     * @return index
+     * @throws IOException segment를 열 수 없을 때
+     */
+    public static ArchiveIndex open(Path indexDirectory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexDirectory, "*" + IndexSegment.INDEX_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.naturalOrder());
+
+        List<IndexSegment> segments = new ArrayList<>(files.size());
+        try {
+            for (Path file : files) segments.add(IndexSegment.open(file));
+        } catch (IOException | RuntimeException e) {
+            for (IndexSegment segment : segments) segment.close();
+            throw e;
+        }
+        return new ArchiveIndex(segments);
+    }
+
+    /**
+     * @return segment(archive) 수
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * requestId 의 REQ, RES, ERR 등 모든 로그를 찾는다.
+     *
+     * @param requestId requestId
+     * @return 시간 순 로그
+     */
+    public List<ArchiveEvent> findByRequestId(String requestId) {
+        List<ArchiveEvent> events = new ArrayList<>();
+        for (IndexSegment segment : segments) {
+            for (int row : segment.requestIdRows(requestId)) events.add(new ArchiveEvent(segment, row));
+        }
+        events.sort(Comparator.comparingLong(ArchiveEvent::getTime));
+        return events;
+    }
+
+    /**
+     * 조건에 맞는 로그를 찾는다. (ex. 2023/06/01 12:00 ~ 13:00 사이 POST /hello 의 5xx)
+     *
+     * @param query 조회 조건
+     * @return 시간 순 로그 (최대 query.limit 개)
+     */
+    public List<ArchiveEvent> search(ArchiveQuery query) {
+        // segment 안의 로그는 시간 순이므로, segment 마다 앞에서부터 limit 개까지만 보면 된다.
+        int limit = query.getLimit() == null ? Integer.MAX_VALUE : query.getLimit();
+        List<ArchiveEvent> events = new ArrayList<>();
+        for (IndexSegment segment : segments) {
+            forEachRow(segment, query, limit, row -> events.add(new ArchiveEvent(segment, row)));
+        }
+        events.sort(Comparator.comparingLong(ArchiveEvent::getTime));
+        if (events.size() > limit) return new ArrayList<>(events.subList(0, limit));
+        return events;
+    }
+
+    /**
+     * 조건에 맞는 RES, EXG 로그의 응답 시간 분포를 route 별로 구한다. (type, limit 조건은 보지 않는다)
+     *
+     * @param query 조회 조건
+     * @return route 순 응답 시간 분포
+     */
+    public List<LatencyStats> latency(ArchiveQuery query) {
+        Map<String, int[]> latencies = new TreeMap<>();
+        Map<String, Integer> counts = new TreeMap<>();
+        for (IndexSegment segment : segments) {
+            forEachRow(segment, query, Integer.MAX_VALUE, row -> {
+                LogRecord.Type type = segment.type(row);
+                int latency = segment.latencyMs(row);
+                if ((type != LogRecord.Type.RES && type != LogRecord.Type.EXG) || latency < 0) return;
+
+                String route = segment.route(row);
+                if (route == null) return;
+                int[] values = latencies.computeIfAbsent(route, key -> new int[64]);
+                int count = counts.getOrDefault(route, 0);
+                if (count == values.length) latencies.put(route, values = Arrays.copyOf(values, count * 2));
+                values[count] = latency;
+                counts.put(route, count + 1);
+            });
+        }
+
+        List<LatencyStats> stats = new ArrayList<>(latencies.size());
+        latencies.forEach((route, values) -> stats.add(new LatencyStats(route, values, counts.get(route))));
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (IndexSegment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * route 조건이 있으면 해당 route의 postings 에서, 없으면 전체 로그에서 시간 범위만 훑는다.
+     * route 마다(route 조건이 없으면 segment 전체에서) 시간 순으로 max 개까지만 넘긴다.
+     */
+    private static void forEachRow(IndexSegment segment, ArchiveQuery query, int max, IntConsumer consumer) {
+        long from = query.fromOrMin();
+        long to = query.toOrMax();
+        if (segment.size() == 0 || segment.time(0) > to || segment.time(segment.size() - 1) < from) return;
+
+        if (query.getRoute() != null) {
+            for (int route = 0; route < segment.routeCount(); route++) {
+                if (!query.matchesRoute(segment.routeName(route))) continue;
+                int count = 0;
+                for (int row : segment.routeRows(route, from, to)) {
+                    if (count == max) break;
+                    if (matches(segment, row, query)) {
+                        consumer.accept(row);
+                        count++;
+                    }
+                }
+            }
+            return;
+        }
+
+        int count = 0;
+        for (int row = segment.lowerBound(from); row < segment.size() && segment.time(row) <= to && count < max; row++) {
+            if (matches(segment, row, query)) {
+                consumer.accept(row);
+                count++;
+            }
+        }
+    }
+
+    private static boolean matches(IndexSegment segment, int row, ArchiveQuery query) {
+        if (query.getType() != null && !segment.type(row).name().equals(query.getType())) return false;
+        return query.matchesStatus(segment.status(row));
+    }
+}
@@ -0,0 +1,169 @@
+package log.munzi.archive;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * rolling 된 archive 로그(munzi-log.log.*.gz)를 읽어서 archive 마다 index segment를 만드는 indexer
+ * <p>
+ * gzip은 한 파일을 나눠서 풀 수 없으므로 archive 단위로 나눠서 여러 thread에서 동시에 풀고 읽는다.
+ * archive는 rolling 된 후 바뀌지 않으므로, archive보다 나중에 만들어진 segment가 있으면 다시 만들지 않는다.
+ * .gz가 아닌 파일은 압축 없이 읽는다.
+ */
+public class ArchiveIndexer {
+
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+    private final ZoneId zone;
+
+    private final int threads;
+
+    /**
+     * @param zone    로그 시간(%d)을 찍은 서버의 time zone
+     * @param threads 동시에 읽을 archive 수
+     */
+    public ArchiveIndexer(ZoneId zone, int threads) {
+        this.zone = zone;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * archive들의 index segment를 만든다. 실패한 archive가 있어도 나머지는 끝까지 만든다.
+     *
+     * @param archives       archive 파일 목록
+     * @param indexDirectory segment를 만들 directory
+     * @param listener       archive 하나가 끝날 때마다 (archive, 로그 수) 로 불림. 이미 segment가 있어서 건너뛰면 로그 수는 -1
+     * @throws IOException 실패한 archive가 있을 때 (각 archive 실패는 suppressed)
+     */
+    public void index(List<Path> archives, Path indexDirectory, ObjIntConsumer<Path> listener) throws IOException {
+        Files.createDirectories(indexDirectory);
+
+        // 큰 파일부터 시작해야 마지막에 큰 파일 하나만 남아서 기다리는 일이 줄어든다.
+        List<Path> sorted = new ArrayList<>(archives);
+        sorted.sort(Comparator.comparingLong(ArchiveIndexer::sizeOf).reversed());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, sorted.size())), runnable -> {
+            Thread thread = new Thread(runnable, "munzi-log-archive-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Integer>> futures = new ArrayList<>(sorted.size());
+            for (Path archive : sorted) {
+                futures.add(executor.submit(() -> indexIfChanged(archive, indexDirectory)));
+            }
+
+            IOException failure = null;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    listener.accept(sorted.get(i), futures.get(i).get());
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = new IOException("failed to index archives");
+                    failure.addSuppressed(new IOException(sorted.get(i).toString(), e.getCause()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while indexing archives", e);
+                }
+            }
+            if (failure != null) throw failure;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * archive 하나의 index segment를 만든다.
+     *
+     * @param archive        archive 파일
+     * @param indexDirectory segment를 만들 directory
+     * @return 로그 수
+     * @throws IOException archive를 읽거나 segment를 쓸 수 없을 때
+     */
+    public int index(Path archive, Path indexDirectory) throws IOException {
+        String name = archive.getFileName().toString();
+        LogRecordParser parser = new LogRecordParser(zone);
+        LogRecord record = new LogRecord();
+        LogRecord next = new LogRecord();
+        StringBuilder text = new StringBuilder(1024);
+        boolean started = false;
+
+        try (IndexSegmentWriter writer = new IndexSegmentWriter(indexDirectory.resolve(name + IndexSegment.INDEX_SUFFIX),
+                indexDirectory.resolve(name + IndexSegment.DATA_SUFFIX));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(open(archive), StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = LogRecordParser.stripAnsi(line);
+                if (LogRecordParser.isHeader(line) && parse(parser, line, next)) {
+                    if (started) writer.add(record, text);
+                    LogRecord parsed = next;
+                    next = record;
+                    record = parsed;
+                    text.setLength(0);
+                    started = true;
+                } else if (started) {
+                    text.append('\n');
+                } else {
+                    // 첫 로그 앞에 잘린 줄
+                    continue;
+                }
+                text.append(line);
+            }
+            if (started) writer.add(record, text);
+
+            writer.finish();
+            return writer.size();
+        }
+    }
+
+    /**
+     * 형식만 같고 날짜가 아닌 줄(ex. 13월)은 false. 앞 로그에 이어지는 줄로 본다.
+     */
+    private static boolean parse(LogRecordParser parser, String line, LogRecord record) {
+        try {
+            parser.parse(line, record);
+            return true;
+        } catch (DateTimeException e) {
+            return false;
+        }
+    }
+
+    private int indexIfChanged(Path archive, Path indexDirectory) throws IOException {
+        Path segment = indexDirectory.resolve(archive.getFileName() + IndexSegment.INDEX_SUFFIX);
+        if (Files.exists(segment) && Files.getLastModifiedTime(segment).compareTo(Files.getLastModifiedTime(archive)) >= 0) return -1;
+        return index(archive, indexDirectory);
+    }
+
+    private static InputStream open(Path archive) throws IOException {
+        InputStream in = Files.newInputStream(archive);
+        try {
+            return archive.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in, READ_BUFFER_SIZE) : in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static long sizeOf(Path archive) {
+        try {
+            return Files.size(archive);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package log.munzi.archive;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * ArchiveIndex 조회 조건. 값이 없는(null) 조건은 보지 않는다.
+ */
+@Getter
+@Builder
+public class ArchiveQuery {
+
+    // "POST /hello" 처럼 정확히 일치하는 route, "GET /api/code/*" 처럼 '*'로 끝나면 '*' 앞부분으로 시작하는 route
+    private final String route;
+
+    // http status 범위 (ex. 5xx 이면 500 ~ 599)
+    private final Integer minStatus;
+
+    private final Integer maxStatus;
+
+    // 로그 시간 범위 (epoch millis, 둘 다 포함)
+    private final Long from;
+
+    private final Long to;
+
+    // REQ, RES, EXG, ERR, ERR_STACK_TRACE, LOG
+    private final String type;
+
+    // 최대 로그 수 (시간 순 앞에서부터)
+    private final Integer limit;
+
+    long fromOrMin() {
+        return from == null ? Long.MIN_VALUE : from;
+    }
+
+    long toOrMax() {
+        return to == null ? Long.MAX_VALUE : to;
+    }
+
+    boolean matchesRoute(String value) {
+        if (route == null) return true;
+        if (value == null) return false;
+        return route.endsWith("*") ? value.startsWith(route.substring(0, route.length() - 1)) : value.equals(route);
+    }
+
+    boolean matchesStatus(int status) {
+        return (minStatus == null || status >= minStatus) && (maxStatus == null || status <= maxStatus);
+    }
+}
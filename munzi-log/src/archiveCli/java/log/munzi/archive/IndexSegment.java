@@ -0,0 +1,308 @@
+package log.munzi.archive;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * archive 하나의 index segment(.idx)를 memory map 해서 읽는 reader
+ * <p>
+ * .idx 형식 (big endian)
+ * - header : MAGIC, VERSION, 로그 수, route 수, requestId 수, block 수 (int), 각 section 위치 (long 6개)
+ * - events : 시간 순으로 정렬된 로그 (EVENT_BYTES)
+ * time(long), requestId 번호(int), route 번호(int), status(short), type(byte), 0(byte), 응답 시간(int), block(int), block 안 위치(int), 길이(int)
+ * - routes, requestIds : 문자열 위치(int), 문자열 길이(int), postings 시작(int), postings 수(int). requestId는 byte 순으로 정렬되어 있다.
+ * - postings : route, requestId 별 로그 번호 (시간 순)
+ * - blocks : .dat 안의 block 시작 위치 (block 수 + 1개, 마지막은 .dat 끝)
+ * - strings : route, requestId 문자열 (UTF-8)
+ * <p>
+ * 조회는 memory map 된 .idx만 읽고, 원문은 해당 block 하나만 .dat에서 읽어서 푼다.
+ * 원문을 읽는 text()는 푼 block을 재사용하므로 여러 thread에서 같이 부르지 않는다.
+ */
+final class IndexSegment implements Closeable {
+
+    static final int MAGIC = 0x4D5A4958;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 6 * 4 + 6 * 8;
+
+    static final int EVENT_BYTES = 36;
+
+    static final int ENTRY_BYTES = 16;
+
+    static final String INDEX_SUFFIX = ".idx";
+
+    static final String DATA_SUFFIX = ".dat";
+
+    private final String name;
+
+    private final FileChannel indexChannel;
+
+    private final FileChannel dataChannel;
+
+    private final MappedByteBuffer index;
+
+    private final int eventCount;
+
+    private final int requestIdCount;
+
+    private final int eventsOffset;
+
+    private final int requestIdsOffset;
+
+    private final int postingsOffset;
+
+    private final int blocksOffset;
+
+    private final int stringsOffset;
+
+    private final String[] routes;
+
+    private final int[] routePostingStarts;
+
+    private final int[] routePostingCounts;
+
+    private final Inflater inflater = new Inflater(true);
+
+    private int cachedBlock = -1;
+
+    private byte[] cachedBlockBytes;
+
+    private IndexSegment(String name, FileChannel indexChannel, FileChannel dataChannel) throws IOException {
+        this.name = name;
+        this.indexChannel = indexChannel;
+        this.dataChannel = dataChannel;
+        this.index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+
+        if (index.limit() < HEADER_BYTES || index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+            throw new IOException("not a munzi log index segment : " + name + INDEX_SUFFIX);
+        }
+        this.eventCount = index.getInt(8);
+        int routeCount = index.getInt(12);
+        this.requestIdCount = index.getInt(16);
+        this.eventsOffset = (int) index.getLong(24);
+        int routesOffset = (int) index.getLong(32);
+        this.requestIdsOffset = (int) index.getLong(40);
+        this.postingsOffset = (int) index.getLong(48);
+        this.blocksOffset = (int) index.getLong(56);
+        this.stringsOffset = (int) index.getLong(64);
+
+        // route는 몇 개 안되므로 미리 읽어둔다.
+        this.routes = new String[routeCount];
+        this.routePostingStarts = new int[routeCount];
+        this.routePostingCounts = new int[routeCount];
+        for (int i = 0; i < routeCount; i++) {
+            int entry = routesOffset + i * ENTRY_BYTES;
+            routes[i] = string(index.getInt(entry), index.getInt(entry + 4));
+            routePostingStarts[i] = index.getInt(entry + 8);
+            routePostingCounts[i] = index.getInt(entry + 12);
+        }
+    }
+
+    /**
+     * @param indexFile .idx 파일 (같은 위치에 .dat 파일이 있어야 한다)
+     * @return segment
+     * @throws IOException 파일이 없거나 index 형식이 아닐 때
+     */
+    static IndexSegment open(Path indexFile) throws IOException {
+        String fileName = indexFile.getFileName().toString();
+        String name = fileName.substring(0, fileName.length() - INDEX_SUFFIX.length());
+        FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ);
+        try {
+            FileChannel dataChannel = FileChannel.open(indexFile.resolveSibling(name + DATA_SUFFIX), StandardOpenOption.READ);
+            try {
+                return new IndexSegment(name, indexChannel, dataChannel);
+            } catch (IOException | RuntimeException e) {
+                dataChannel.close();
+                throw e;
+            }
+        } finally {
+            // map 한 후에는 channel을 닫아도 된다.
+            indexChannel.close();
+        }
+    }
+
+    /**
+     * @return archive 파일 이름
+     */
+    String getName() {
+        return name;
+    }
+
+    int size() {
+        return eventCount;
+    }
+
+    long time(int row) {
+        return index.getLong(event(row));
+    }
+
+    String requestId(int row) {
+        int requestId = index.getInt(event(row) + 8);
+        if (requestId < 0) return null;
+        int entry = requestIdsOffset + requestId * ENTRY_BYTES;
+        return string(index.getInt(entry), index.getInt(entry + 4));
+    }
+
+    String route(int row) {
+        int route = index.getInt(event(row) + 12);
+        return route < 0 ? null : routes[route];
+    }
+
+    int status(int row) {
+        return index.getShort(event(row) + 16);
+    }
+
+    LogRecord.Type type(int row) {
+        return LogRecord.Type.values()[index.get(event(row) + 18)];
+    }
+
+    int latencyMs(int row) {
+        return index.getInt(event(row) + 20);
+    }
+
+    int routeCount() {
+        return routes.length;
+    }
+
+    String routeName(int route) {
+        return routes[route];
+    }
+
+    /**
+     * @return time 이상인 첫 로그 번호
+     */
+    int lowerBound(long time) {
+        int low = 0;
+        int high = eventCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time(mid) < time) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return route의 로그 중 from 이상 to 이하인 로그 번호 (시간 순)
+     */
+    int[] routeRows(int route, long from, long to) {
+        int start = routePostingStarts[route];
+        int end = start + routePostingCounts[route];
+
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time(posting(mid)) < from) low = mid + 1;
+            else high = mid;
+        }
+
+        int count = 0;
+        while (low + count < end && time(posting(low + count)) <= to) count++;
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) rows[i] = posting(low + i);
+        return rows;
+    }
+
+    /**
+     * @return requestId의 로그 번호 (시간 순). 없으면 빈 배열
+     */
+    int[] requestIdRows(String requestId) {
+        byte[] key = requestId.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = requestIdCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = requestIdsOffset + mid * ENTRY_BYTES;
+            int compare = compare(index.getInt(entry), index.getInt(entry + 4), key);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                int start = index.getInt(entry + 8);
+                int[] rows = new int[index.getInt(entry + 12)];
+                for (int i = 0; i < rows.length; i++) rows[i] = posting(start + i);
+                return rows;
+            }
+        }
+        return new int[0];
+    }
+
+    /**
+     * @return 로그 원문
+     * @throws IOException .dat를 읽을 수 없거나 깨졌을 때
+     */
+    String text(int row) throws IOException {
+        int event = event(row);
+        int block = index.getInt(event + 24);
+        if (block != cachedBlock) {
+            cachedBlockBytes = readBlock(block);
+            cachedBlock = block;
+        }
+        return new String(cachedBlockBytes, index.getInt(event + 28), index.getInt(event + 32), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        dataChannel.close();
+    }
+
+    private byte[] readBlock(int block) throws IOException {
+        long start = index.getLong(blocksOffset + block * 8);
+        long end = index.getLong(blocksOffset + (block + 1) * 8);
+        ByteBuffer compressed = ByteBuffer.allocate((int) (end - start));
+        while (compressed.hasRemaining()) {
+            if (dataChannel.read(compressed, start + compressed.position()) < 0) throw new EOFException(name + DATA_SUFFIX);
+        }
+
+        byte[] bytes = new byte[compressed.getInt(0)];
+        inflater.reset();
+        inflater.setInput(compressed.array(), 4, compressed.limit() - 4);
+        try {
+            int length = 0;
+            while (length < bytes.length) {
+                int n = inflater.inflate(bytes, length, bytes.length - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) throw new EOFException(name + DATA_SUFFIX);
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("broken block " + block + " in " + name + DATA_SUFFIX, e);
+        }
+        return bytes;
+    }
+
+    private int event(int row) {
+        return eventsOffset + row * EVENT_BYTES;
+    }
+
+    private int posting(int index) {
+        return this.index.getInt(postingsOffset + index * 4);
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        index.get(stringsOffset + offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int compare(int offset, int length, byte[] key) {
+        int position = stringsOffset + offset;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int compare = Byte.compareUnsigned(index.get(position + i), key[i]);
+            if (compare != 0) return compare;
+        }
+        return Integer.compare(length, key.length);
+    }
+}
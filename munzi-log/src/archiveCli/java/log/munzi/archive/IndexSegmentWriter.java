@@ -0,0 +1,339 @@
+package log.munzi.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * archive 하나의 로그를 모아서 index segment(.idx)와 로그 원문(.dat)으로 쓰는 writer
+ * <p>
+ * gzip은 중간부터 풀 수 없기 때문에, 원문은 로그 단위로 잘라서 BLOCK_SIZE 씩 따로 압축한 block으로 .dat에 다시 쓰고,
+ * .idx에는 로그마다 시간, requestId, route, status, 응답 시간과 원문 위치(block, block 안 위치, 길이)를 쓴다.
+ * 형식은 IndexSegment 참고.
+ * <p>
+ * 다 쓰기 전에는 임시 파일에 쓰고, finish 할 때 .dat, .idx 순으로 옮기므로 .idx가 있으면 다 쓰인 segment이다.
+ */
+final class IndexSegmentWriter implements Closeable {
+
+    // 압축 block 하나에 모을 원문 크기. 로그 한 건을 찾을 때 이 크기만큼만 푼다.
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final Path indexFile;
+
+    private final Path dataFile;
+
+    private final Path indexTemp;
+
+    private final Path dataTemp;
+
+    private final OutputStream data;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private byte[] block = new byte[BLOCK_SIZE * 2];
+
+    private int blockLength;
+
+    private final byte[] compressed = new byte[BLOCK_SIZE];
+
+    private long dataPosition;
+
+    private long[] blockOffsets = new long[64];
+
+    private int blockCount;
+
+    // 로그 column
+    private int size;
+
+    private long[] times = new long[1024];
+
+    private int[] requestIds = new int[1024];
+
+    private int[] routes = new int[1024];
+
+    private short[] statuses = new short[1024];
+
+    private byte[] types = new byte[1024];
+
+    private int[] latencies = new int[1024];
+
+    private int[] blocks = new int[1024];
+
+    private int[] offsets = new int[1024];
+
+    private int[] lengths = new int[1024];
+
+    // 값 -> 들어온 순서
+    private final Map<String, Integer> requestIdOrdinals = new HashMap<>();
+
+    private final List<String> requestIdValues = new ArrayList<>();
+
+    private final Map<String, Integer> routeOrdinals = new HashMap<>();
+
+    private final List<String> routeValues = new ArrayList<>();
+
+    private boolean finished;
+
+    /**
+     * @param indexFile 만들 .idx 파일
+     * @param dataFile  만들 .dat 파일
+     * @throws IOException 임시 파일을 만들 수 없을 때
+     */
+    IndexSegmentWriter(Path indexFile, Path dataFile) throws IOException {
+        this.indexFile = indexFile;
+        this.dataFile = dataFile;
+        this.indexTemp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        this.dataTemp = dataFile.resolveSibling(dataFile.getFileName() + ".tmp");
+        this.data = new BufferedOutputStream(Files.newOutputStream(dataTemp), BLOCK_SIZE);
+    }
+
+    /**
+     * 로그 한 건을 추가한다.
+     *
+     * @param record 첫 줄에서 읽은 값
+     * @param text   원문 (여러 줄이면 '\n'으로 이어진)
+     * @throws IOException .dat에 쓸 수 없을 때
+     */
+    void add(LogRecord record, CharSequence text) throws IOException {
+        if (size == times.length) grow();
+
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        if (blockLength + bytes.length > block.length) block = Arrays.copyOf(block, blockLength + bytes.length);
+        System.arraycopy(bytes, 0, block, blockLength, bytes.length);
+
+        times[size] = record.time;
+        requestIds[size] = ordinal(record.requestId, requestIdOrdinals, requestIdValues);
+        routes[size] = ordinal(record.route, routeOrdinals, routeValues);
+        statuses[size] = (short) record.status;
+        types[size] = (byte) record.type.ordinal();
+        latencies[size] = record.latencyMs;
+        blocks[size] = blockCount;
+        offsets[size] = blockLength;
+        lengths[size] = bytes.length;
+        size++;
+
+        blockLength += bytes.length;
+        if (blockLength >= BLOCK_SIZE) flushBlock();
+    }
+
+    /**
+     * @return 추가한 로그 수
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 남은 block을 쓰고, 로그를 시간 순으로 정렬해서 .idx를 쓴 후 임시 파일을 옮긴다.
+     *
+     * @throws IOException 파일을 쓸 수 없을 때
+     */
+    void finish() throws IOException {
+        flushBlock();
+        if (blockCount == blockOffsets.length) blockOffsets = Arrays.copyOf(blockOffsets, blockCount + 1);
+        blockOffsets[blockCount] = dataPosition;
+        data.close();
+
+        writeIndex();
+        Files.move(dataTemp, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTemp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+    }
+
+    /**
+     * 다 쓰지 못했으면 임시 파일을 지운다.
+     */
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        if (finished) return;
+        data.close();
+        Files.deleteIfExists(dataTemp);
+        Files.deleteIfExists(indexTemp);
+    }
+
+    /**
+     * block 형식 : 원문 길이(int) + raw deflate 된 원문
+     */
+    private void flushBlock() throws IOException {
+        if (blockLength == 0) return;
+        if (blockCount == blockOffsets.length) blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+        blockOffsets[blockCount++] = dataPosition;
+
+        data.write(blockLength >>> 24);
+        data.write(blockLength >>> 16);
+        data.write(blockLength >>> 8);
+        data.write(blockLength);
+        dataPosition += 4;
+
+        deflater.reset();
+        deflater.setInput(block, 0, blockLength);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(compressed);
+            data.write(compressed, 0, n);
+            dataPosition += n;
+        }
+        blockLength = 0;
+        if (block.length > BLOCK_SIZE * 2) block = new byte[BLOCK_SIZE * 2];
+    }
+
+    private void writeIndex() throws IOException {
+        int[] order = timeOrder();
+
+        // requestId는 byte 순으로 정렬해서 binary search 한다.
+        byte[][] requestIdBytes = utf8(requestIdValues);
+        Integer[] sortedRequestIds = new Integer[requestIdBytes.length];
+        for (int i = 0; i < sortedRequestIds.length; i++) sortedRequestIds[i] = i;
+        Arrays.sort(sortedRequestIds, (a, b) -> Arrays.compareUnsigned(requestIdBytes[a], requestIdBytes[b]));
+        int[] requestIdIndex = new int[sortedRequestIds.length];
+        for (int i = 0; i < sortedRequestIds.length; i++) requestIdIndex[sortedRequestIds[i]] = i;
+        byte[][] routeBytes = utf8(routeValues);
+
+        // postings : route별, requestId별 로그 번호 (시간 순)
+        int[] routeStarts = new int[routeBytes.length + 1];
+        int[] requestIdStarts = new int[requestIdBytes.length + 1];
+        for (int i = 0; i < size; i++) {
+            if (routes[i] >= 0) routeStarts[routes[i] + 1]++;
+            if (requestIds[i] >= 0) requestIdStarts[requestIdIndex[requestIds[i]] + 1]++;
+        }
+        for (int i = 0; i < routeBytes.length; i++) routeStarts[i + 1] += routeStarts[i];
+        requestIdStarts[0] = routeStarts[routeBytes.length];
+        for (int i = 0; i < requestIdBytes.length; i++) requestIdStarts[i + 1] += requestIdStarts[i];
+
+        int[] postings = new int[requestIdStarts[requestIdBytes.length]];
+        int[] routeCursor = Arrays.copyOf(routeStarts, routeBytes.length);
+        int[] requestIdCursor = Arrays.copyOf(requestIdStarts, requestIdBytes.length);
+        for (int row = 0; row < size; row++) {
+            int i = order[row];
+            if (routes[i] >= 0) postings[routeCursor[routes[i]]++] = row;
+            if (requestIds[i] >= 0) postings[requestIdCursor[requestIdIndex[requestIds[i]]]++] = row;
+        }
+
+        long eventsOffset = IndexSegment.HEADER_BYTES;
+        long routesOffset = eventsOffset + (long) size * IndexSegment.EVENT_BYTES;
+        long requestIdsOffset = routesOffset + (long) routeBytes.length * IndexSegment.ENTRY_BYTES;
+        long postingsOffset = requestIdsOffset + (long) requestIdBytes.length * IndexSegment.ENTRY_BYTES;
+        long blocksOffset = postingsOffset + postings.length * 4L;
+        long stringsOffset = blocksOffset + (blockCount + 1) * 8L;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexTemp), BLOCK_SIZE))) {
+            out.writeInt(IndexSegment.MAGIC);
+            out.writeInt(IndexSegment.VERSION);
+            out.writeInt(size);
+            out.writeInt(routeBytes.length);
+            out.writeInt(requestIdBytes.length);
+            out.writeInt(blockCount);
+            out.writeLong(eventsOffset);
+            out.writeLong(routesOffset);
+            out.writeLong(requestIdsOffset);
+            out.writeLong(postingsOffset);
+            out.writeLong(blocksOffset);
+            out.writeLong(stringsOffset);
+
+            for (int row = 0; row < size; row++) {
+                int i = order[row];
+                out.writeLong(times[i]);
+                out.writeInt(requestIds[i] < 0 ? -1 : requestIdIndex[requestIds[i]]);
+                out.writeInt(routes[i]);
+                out.writeShort(statuses[i]);
+                out.writeByte(types[i]);
+                out.writeByte(0);
+                out.writeInt(latencies[i]);
+                out.writeInt(blocks[i]);
+                out.writeInt(offsets[i]);
+                out.writeInt(lengths[i]);
+            }
+
+            int stringOffset = 0;
+            for (int i = 0; i < routeBytes.length; i++) {
+                writeEntry(out, stringOffset, routeBytes[i].length, routeStarts[i], routeStarts[i + 1] - routeStarts[i]);
+                stringOffset += routeBytes[i].length;
+            }
+            for (int i = 0; i < requestIdBytes.length; i++) {
+                byte[] bytes = requestIdBytes[sortedRequestIds[i]];
+                writeEntry(out, stringOffset, bytes.length, requestIdStarts[i], requestIdStarts[i + 1] - requestIdStarts[i]);
+                stringOffset += bytes.length;
+            }
+
+            for (int posting : postings) out.writeInt(posting);
+            for (int i = 0; i <= blockCount; i++) out.writeLong(blockOffsets[i]);
+
+            for (byte[] bytes : routeBytes) out.write(bytes);
+            for (Integer i : sortedRequestIds) out.write(requestIdBytes[i]);
+        }
+    }
+
+    /**
+     * entry 형식 : 문자열 위치, 문자열 길이, postings 시작, postings 수
+     */
+    private static void writeEntry(DataOutputStream out, int stringOffset, int stringLength, int postingStart, int postingCount) throws IOException {
+        out.writeInt(stringOffset);
+        out.writeInt(stringLength);
+        out.writeInt(postingStart);
+        out.writeInt(postingCount);
+    }
+
+    /**
+     * AsyncLogger 등으로 찍힌 순서와 시간이 조금씩 다를 수 있어서, 정렬되어 있지 않을 때만 시간 순으로 (같은 시간은 찍힌 순서대로) 정렬한다.
+     *
+     * @return 시간 순 번호 -> 추가된 번호
+     */
+    private int[] timeOrder() {
+        int[] order = new int[size];
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+            if (i > 0 && times[i] < times[i - 1]) sorted = false;
+        }
+        if (sorted) return order;
+
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) boxed[i] = i;
+        Arrays.sort(boxed, (a, b) -> Long.compare(times[a], times[b]));
+        for (int i = 0; i < size; i++) order[i] = boxed[i];
+        return order;
+    }
+
+    private static int ordinal(String value, Map<String, Integer> ordinals, List<String> values) {
+        if (value == null) return -1;
+        Integer ordinal = ordinals.get(value);
+        if (ordinal == null) {
+            ordinal = values.size();
+            ordinals.put(value, ordinal);
+            values.add(value);
+        }
+        return ordinal;
+    }
+
+    private static byte[][] utf8(List<String> values) {
+        byte[][] bytes = new byte[values.size()][];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = values.get(i).getBytes(StandardCharsets.UTF_8);
+        return bytes;
+    }
+
+    private void grow() {
+        int capacity = times.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        requestIds = Arrays.copyOf(requestIds, capacity);
+        routes = Arrays.copyOf(routes, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        types = Arrays.copyOf(types, capacity);
+        latencies = Arrays.copyOf(latencies, capacity);
+        blocks = Arrays.copyOf(blocks, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+    }
+}
@@ -0,0 +1,48 @@
+package log.munzi.archive;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * route 하나의 응답 시간 (RES, EXG 로그의 ms) 분포
+ */
+@Getter
+public class LatencyStats {
+
+    private final String route;
+
+    private final int count;
+
+    private final int p50;
+
+    private final int p90;
+
+    private final int p99;
+
+    private final int max;
+
+    /**
+     * @param route     route
+     * @param latencies 응답 시간 (정렬된다)
+     * @param count     latencies 중 사용하는 수
+     */
+    LatencyStats(String route, int[] latencies, int count) {
+        Arrays.sort(latencies, 0, count);
+        this.route = route;
+        this.count = count;
+        this.p50 = percentile(latencies, count, 50);
+        this.p90 = percentile(latencies, count, 90);
+        this.p99 = percentile(latencies, count, 99);
+        this.max = count == 0 ? 0 : latencies[count - 1];
+    }
+
+    /**
+     * nearest-rank percentile
+     */
+    private static int percentile(int[] sorted, int count, int percent) {
+        if (count == 0) return 0;
+        int rank = (int) Math.ceil(percent / 100.0 * count);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,203 @@
+package log.munzi.archive;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * archive 로그 index를 만들고 조회하는 CLI
+ * <p>
+ * index   : archive(.gz) 들의 index segment를 만든다. 이미 만든 archive는 건너뛴다.
+ * request : requestId의 모든 로그(REQ, RES, ERR ...)를 시간 순으로 찍는다.
+ * search  : route, status, 시간 범위, type 으로 로그를 찾는다.
+ * latency : route 별 응답 시간(RES, EXG) p50, p90, p99, max 를 찍는다.
+ * <p>
+ * ex) java -jar munzi-log-archive-cli.jar index /apps/logs/munzi-log/index /apps/logs/munzi-log/archive
+ * java -jar munzi-log-archive-cli.jar search /apps/logs/munzi-log/index --route "POST /hello" --status 5xx --from "2023/06/01 12:00" --to "2023/06/01 13:00"
+ */
+public final class LogArchiveCli {
+
+    private static final String USAGE = String.join("\n",
+            "usage:",
+            "  index   <index-dir> <archive file or directory>... [--threads N] [--zone Asia/Seoul]",
+            "  request <index-dir> <requestId>",
+            "  search  <index-dir> [--route \"POST /hello\"] [--status 5xx|500|500-504] [--from T] [--to T] [--type RES] [--limit N] [--summary] [--zone Z]",
+            "  latency <index-dir> [--route \"GET /api/*\"] [--from T] [--to T] [--zone Z]",
+            "  T : yyyy/MM/dd HH:mm[:ss][.SSS] (로그와 같은 형식)");
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm[:ss][.SSS]");
+
+    private static final DateTimeFormatter PRINT_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss.SSS");
+
+    private final PrintStream out;
+
+    private final PrintStream err;
+
+    LogArchiveCli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        System.exit(new LogArchiveCli(System.out, System.err).run(args));
+    }
+
+    /**
+     * @param args command, index directory, option
+     * @return exit code (0 : 성공, 1 : 실패, 2 : 잘못된 사용)
+     */
+    int run(String[] args) {
+        if (args.length < 2) {
+            err.println(USAGE);
+            return 2;
+        }
+
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--summary")) {
+                options.put("summary", "true");
+            } else if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+
+        try {
+            if (positional.isEmpty()) throw new IllegalArgumentException("index directory is required");
+            Path indexDirectory = Paths.get(positional.get(0));
+            ZoneId zone = options.containsKey("zone") ? ZoneId.of(options.get("zone")) : ZoneId.systemDefault();
+            switch (args[0]) {
+                case "index" -> index(indexDirectory, positional.subList(1, positional.size()), zone, options);
+                case "request" -> {
+                    if (positional.size() < 2) throw new IllegalArgumentException("requestId is required");
+                    request(indexDirectory, positional.get(1));
+                }
+                case "search" -> search(indexDirectory, query(options, zone), zone, options.containsKey("summary"));
+                case "latency" -> latency(indexDirectory, query(options, zone));
+                default -> throw new IllegalArgumentException("unknown command : " + args[0]);
+            }
+            return 0;
+        } catch (IllegalArgumentException | DateTimeException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            for (Throwable suppressed : e.getSuppressed()) {
+                err.println("  " + suppressed.getMessage() + " : " + suppressed.getCause());
+            }
+            return 1;
+        }
+    }
+
+    private void index(Path indexDirectory, List<String> paths, ZoneId zone, Map<String, String> options) throws IOException {
+        List<Path> archives = new ArrayList<>();
+        for (String path : paths) {
+            Path archive = Paths.get(path);
+            if (!Files.isDirectory(archive)) {
+                archives.add(archive);
+                continue;
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(archive, "*.gz")) {
+                for (Path file : stream) {
+                    if (Files.isRegularFile(file)) archives.add(file);
+                }
+            }
+        }
+        if (archives.isEmpty()) throw new IllegalArgumentException("no archive to index");
+
+        int threads = options.containsKey("threads") ? Integer.parseInt(options.get("threads")) : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        new ArchiveIndexer(zone, threads).index(archives, indexDirectory, (archive, count) ->
+                out.println(count < 0 ? "skip    " + archive.getFileName() : "indexed " + archive.getFileName() + " : " + count + " events"));
+        err.println(archives.size() + " archives (" + (System.nanoTime() - start) / 1_000_000 + " ms)");
+    }
+
+    private void request(Path indexDirectory, String requestId) throws IOException {
+        try (ArchiveIndex index = ArchiveIndex.open(indexDirectory)) {
+            long start = System.nanoTime();
+            List<ArchiveEvent> events = index.findByRequestId(requestId);
+            long elapsed = System.nanoTime() - start;
+            for (ArchiveEvent event : events) out.println(event.getText());
+            err.println(events.size() + " events (" + elapsed / 1_000_000.0 + " ms)");
+        }
+    }
+
+    private void search(Path indexDirectory, ArchiveQuery query, ZoneId zone, boolean summary) throws IOException {
+        try (ArchiveIndex index = ArchiveIndex.open(indexDirectory)) {
+            long start = System.nanoTime();
+            List<ArchiveEvent> events = index.search(query);
+            long elapsed = System.nanoTime() - start;
+            for (ArchiveEvent event : events) out.println(summary ? summary(event, zone) : event.getText());
+            err.println(events.size() + " events (" + elapsed / 1_000_000.0 + " ms)");
+        }
+    }
+
+    private void latency(Path indexDirectory, ArchiveQuery query) throws IOException {
+        try (ArchiveIndex index = ArchiveIndex.open(indexDirectory)) {
+            long start = System.nanoTime();
+            List<LatencyStats> stats = index.latency(query);
+            long elapsed = System.nanoTime() - start;
+            out.printf("%-60s %8s %8s %8s %8s %8s%n", "route", "count", "p50", "p90", "p99", "max");
+            for (LatencyStats stat : stats) {
+                out.printf("%-60s %8d %8d %8d %8d %8d%n", stat.getRoute(), stat.getCount(), stat.getP50(), stat.getP90(), stat.getP99(), stat.getMax());
+            }
+            err.println(stats.size() + " routes (" + elapsed / 1_000_000.0 + " ms)");
+        }
+    }
+
+    /**
+     * 2023/06/01 12:00:00.123 RES 500 [POST /hello] 12ms requestId (archive)
+     */
+    private static String summary(ArchiveEvent event, ZoneId zone) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(PRINT_FORMAT.format(Instant.ofEpochMilli(event.getTime()).atZone(zone))).append(' ').append(event.getType());
+        if (event.getStatus() > 0) sb.append(' ').append(event.getStatus());
+        if (event.getRoute() != null) sb.append(" [").append(event.getRoute()).append(']');
+        if (event.getLatencyMs() >= 0) sb.append(' ').append(event.getLatencyMs()).append("ms");
+        if (event.getRequestId() != null) sb.append(' ').append(event.getRequestId());
+        return sb.append(" (").append(event.getArchive()).append(')').toString();
+    }
+
+    private static ArchiveQuery query(Map<String, String> options, ZoneId zone) {
+        ArchiveQuery.ArchiveQueryBuilder query = ArchiveQuery.builder()
+                .route(options.get("route"))
+                .type(options.get("type"))
+                .from(time(options.get("from"), zone))
+                .to(time(options.get("to"), zone));
+        if (options.containsKey("limit")) query.limit(Integer.parseInt(options.get("limit")));
+
+        String status = options.get("status");
+        if (status != null) {
+            if (status.matches("[1-5]xx")) {
+                int hundred = (status.charAt(0) - '0') * 100;
+                query.minStatus(hundred).maxStatus(hundred + 99);
+            } else if (status.contains("-")) {
+                query.minStatus(Integer.parseInt(status.substring(0, status.indexOf('-'))))
+                        .maxStatus(Integer.parseInt(status.substring(status.indexOf('-') + 1)));
+            } else {
+                query.minStatus(Integer.parseInt(status)).maxStatus(Integer.parseInt(status));
+            }
+        }
+        return query.build();
+    }
+
+    private static Long time(String value, ZoneId zone) {
+        if (value == null) return null;
+        return LocalDateTime.parse(value, TIME_FORMAT).atZone(zone).toInstant().toEpochMilli();
+    }
+}
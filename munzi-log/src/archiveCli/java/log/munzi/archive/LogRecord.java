@@ -0,0 +1,50 @@
+package log.munzi.archive;
+
+/**
+ * archive 로그 한 건(첫 줄 + 이어지는 줄)에서 index에 넣을 값
+ * <p>
+ * 로그마다 새로 만들지 않고 LogRecordParser가 하나를 계속 채워서 쓴다.
+ */
+final class LogRecord {
+
+    /**
+     * 로그 종류. index 파일에는 ordinal로 저장하므로 순서를 바꾸지 않는다.
+     */
+    enum Type {
+        // munzi-log 로그가 아닌 application 로그
+        LOG,
+        REQ,
+        RES,
+        // api-log.merged.use 일 때 REQ, RES를 합친 로그
+        EXG,
+        ERR,
+        // ERR_STACK_TRACE, ERR_STACK_TRACE_REPEAT, ERR_STACK_TRACE_ROLLUP
+        ERR_STACK_TRACE
+    }
+
+    Type type;
+
+    // epoch millis
+    long time;
+
+    // MDC의 requestId. pattern에 %X{requestId}가 없거나 비어 있으면 null
+    String requestId;
+
+    // "POST /hello" 형식. REQ, RES, EXG 에만 있다.
+    String route;
+
+    // RES, EXG, ERR 의 http status. 없으면 0
+    int status;
+
+    // RES, EXG 의 응답 시간 (ms). 없으면 -1
+    int latencyMs;
+
+    void clear() {
+        type = Type.LOG;
+        time = 0;
+        requestId = null;
+        route = null;
+        status = 0;
+        latencyMs = -1;
+    }
+}
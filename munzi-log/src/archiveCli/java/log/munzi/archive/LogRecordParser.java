@@ -0,0 +1,219 @@
+package log.munzi.archive;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * archive 로그의 첫 줄에서 시간, requestId, route, status, 응답 시간을 읽는 parser
+ * <p>
+ * 아래 pattern으로 찍힌 로그를 읽는다. MDC([%X{applicationName} %X{requestId}])는 없어도 되고, %highlight 등의 색은 지우고 읽는다.
+ * [%-5p] %d{yyyy/MM/dd HH:mm:ss.SSS} [%X{applicationName} %X{requestId}] %t [위치] %m%n
+ * <p>
+ * 첫 줄이 위 형식이 아닌 줄(headers, body, stack trace 등)은 앞 로그에 이어지는 줄로 본다.
+ * message는 REQ, RES, EXG, ERR, ERR_STACK_TRACE 형식과 api-log.format: JSON 의 한 줄 json을 읽고, 그 외는 LOG로 둔다.
+ * thread 이름, 위치에는 공백이 없다고 본다.
+ */
+final class LogRecordParser {
+
+    // "[INFO ] 2023/06/01 12:00:00.000" 길이
+    private static final int HEADER_LENGTH = 31;
+
+    private final ZoneId zone;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    // 시간 단위로 epoch millis를 cache 한다. (yyyyMMddHH)
+    private long cachedHour = -1;
+
+    private long cachedHourMillis;
+
+    LogRecordParser(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * @param line 색을 지운 한 줄
+     * @return 로그의 첫 줄이면 true
+     */
+    static boolean isHeader(String line) {
+        if (line.length() < HEADER_LENGTH || line.charAt(0) != '[' || line.charAt(6) != ']' || line.charAt(7) != ' ') return false;
+        for (int i = 8; i < HEADER_LENGTH; i++) {
+            char c = line.charAt(i);
+            boolean valid = switch (i) {
+                case 12, 15 -> c == '/';
+                case 18 -> c == ' ';
+                case 21, 24 -> c == ':';
+                case 27 -> c == '.';
+                default -> isDigit(c);
+            };
+            if (!valid) return false;
+        }
+        return true;
+    }
+
+    /**
+     * %highlight, %style 로 붙은 ANSI 색 escape(ESC[...m)를 지운다.
+     *
+     * @param line 한 줄
+     * @return 색을 지운 줄
+     */
+    static String stripAnsi(String line) {
+        int escape = line.indexOf('\u001B');
+        if (escape < 0) return line;
+
+        StringBuilder sb = new StringBuilder(line.length());
+        int i = 0;
+        while (escape >= 0) {
+            sb.append(line, i, escape);
+            i = escape + 1;
+            if (i < line.length() && line.charAt(i) == '[') {
+                i++;
+                while (i < line.length() && !Character.isLetter(line.charAt(i))) i++;
+                i++;
+            }
+            escape = i < line.length() ? line.indexOf('\u001B', i) : -1;
+        }
+        if (i < line.length()) sb.append(line, i, line.length());
+        return sb.toString();
+    }
+
+    /**
+     * 로그 첫 줄을 읽어서 record를 채운다.
+     *
+     * @param line   isHeader 인 줄
+     * @param record 채울 record
+     */
+    void parse(String line, LogRecord record) {
+        record.clear();
+        record.time = time(line);
+
+        int position = HEADER_LENGTH + 1;
+        if (position < line.length() && line.charAt(position) == '[') {
+            // [applicationName requestId]
+            int close = line.indexOf(']', position);
+            if (close > 0) {
+                String mdc = line.substring(position + 1, close);
+                String requestId = mdc.substring(mdc.lastIndexOf(' ') + 1);
+                record.requestId = requestId.isEmpty() ? null : requestId;
+                position = close + 2;
+            }
+        }
+
+        // thread [위치] message
+        int location = line.indexOf(" [", position);
+        int locationEnd = location < 0 ? -1 : line.indexOf("] ", location + 2);
+        if (locationEnd < 0) return;
+        parseMessage(line, locationEnd + 2, record);
+    }
+
+    private void parseMessage(String line, int start, LogRecord record) {
+        if (line.startsWith("REQ > [", start)) {
+            record.type = LogRecord.Type.REQ;
+            int close = line.lastIndexOf(']');
+            if (close > start + 7) record.route = line.substring(start + 7, close);
+        } else if (line.startsWith("RES > ", start) || line.startsWith("EXG > ", start)) {
+            // RES > 200 [POST /hello] 12ms,
+            record.type = line.charAt(start) == 'R' ? LogRecord.Type.RES : LogRecord.Type.EXG;
+            int open = line.indexOf(" [", start + 6);
+            int close = line.lastIndexOf("] ");
+            if (open < 0 || close <= open) return;
+            record.status = number(line, start + 6);
+            record.route = line.substring(open + 2, close);
+            record.latencyMs = number(line, close + 2);
+        } else if (line.startsWith("ERR > ", start)) {
+            record.type = LogRecord.Type.ERR;
+            record.status = field(line, start, "httpStatus=");
+        } else if (line.startsWith("ERR_STACK_TRACE", start)) {
+            record.type = LogRecord.Type.ERR_STACK_TRACE;
+            record.status = field(line, start, "httpStatus=");
+            if (record.requestId == null) {
+                // ERR_STACK_TRACE_REPEAT 는 message에 requestId가 있다.
+                int requestId = line.indexOf("requestId=", start);
+                if (requestId >= 0) {
+                    int end = line.indexOf(',', requestId);
+                    String value = line.substring(requestId + 10, end < 0 ? line.length() : end);
+                    if (!value.isEmpty() && !value.equals("null")) record.requestId = value;
+                }
+            }
+        } else if (line.startsWith("{\"type\":", start)) {
+            parseJson(line, start, record);
+        }
+    }
+
+    /**
+     * api-log.format: JSON 의 {"type":"RES","requestId":"...","route":"POST /hello","status":201,"latencyMs":6.1,...}
+     */
+    private void parseJson(String line, int start, LogRecord record) {
+        try (JsonParser parser = jsonFactory.createParser(line.substring(start))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                switch (name) {
+                    case "type" -> record.type = switch (parser.getText()) {
+                        case "REQ" -> LogRecord.Type.REQ;
+                        case "RES" -> LogRecord.Type.RES;
+                        case "EXG" -> LogRecord.Type.EXG;
+                        default -> LogRecord.Type.LOG;
+                    };
+                    case "requestId" -> {
+                        if (token == JsonToken.VALUE_STRING) record.requestId = parser.getText();
+                    }
+                    case "route" -> {
+                        if (token == JsonToken.VALUE_STRING) record.route = parser.getText();
+                    }
+                    case "status" -> record.status = parser.getValueAsInt();
+                    case "latencyMs" -> record.latencyMs = (int) parser.getValueAsDouble(-1);
+                    default -> {
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // 잘린 json. 읽은 값까지만 쓴다.
+        }
+    }
+
+    private long time(String line) {
+        long hour = digits(line, 8, 4) * 1_000_000L + digits(line, 13, 2) * 10_000L + digits(line, 16, 2) * 100L + digits(line, 19, 2);
+        if (hour != cachedHour) {
+            cachedHourMillis = LocalDateTime.of((int) (hour / 1_000_000), (int) (hour / 10_000 % 100), (int) (hour / 100 % 100), (int) (hour % 100), 0)
+                    .atZone(zone).toInstant().toEpochMilli();
+            cachedHour = hour;
+        }
+        return cachedHourMillis + digits(line, 22, 2) * 60_000L + digits(line, 25, 2) * 1_000L + digits(line, 28, 3);
+    }
+
+    private static int field(String line, int start, String key) {
+        int index = line.indexOf(key, start);
+        return index < 0 ? 0 : number(line, index + key.length());
+    }
+
+    private static int number(String line, int start) {
+        int value = 0;
+        for (int i = start; i < line.length() && isDigit(line.charAt(i)) && i - start < 9; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static int digits(String line, int start, int length) {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
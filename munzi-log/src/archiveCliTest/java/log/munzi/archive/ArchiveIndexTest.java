@@ -0,0 +1,209 @@
+package log.munzi.archive;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * 작은 archive(.gz) 두 개의 index를 만들고 requestId, route, status, 시간 조회와 응답 시간 분포를 확인한다.
+ */
+class ArchiveIndexTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Seoul");
+
+    private static final String RED = "\u001B[31m";
+
+    private static final String GREEN = "\u001B[32m";
+
+    private static final String RESET = "\u001B[0m";
+
+    private static final String ARCHIVE_12 = "munzi-log.log.2023-06-01-12.1.gz";
+
+    private static final String ARCHIVE_13 = "munzi-log.log.2023-06-01-13.1.gz";
+
+    @TempDir
+    static Path directory;
+
+    private static Path indexDirectory;
+
+    private static List<Path> archives;
+
+    @BeforeAll
+    static void index() throws IOException {
+        archives = List.of(
+                gzip(ARCHIVE_12,
+                        // rolling 때 앞 archive에서 잘려 넘어온 줄
+                        "\tat log.munzi.Previous.method(Previous.java:1)",
+                        GREEN + "[INFO ]" + RESET + " 2023/06/01 12:00:00.000 [munzi req-1] http-nio-8080-exec-1 [REQ] REQ > [POST /hello],",
+                        "headers={content-type=application/json},",
+                        "params={},",
+                        "body={\"items\":[{\"id\":1}],",
+                        "[not a header] \"name\":\"승리를 위해\"}",
+                        "[INFO ] 2023/06/01 12:00:00.020 [munzi req-2] http-nio-8080-exec-2 [REQ] REQ > [GET /api/code/A],",
+                        "headers={},",
+                        "params={},",
+                        "body=",
+                        // AsyncLogger는 찍힌 순서와 시간 순서가 다를 수 있다.
+                        "[INFO ] 2023/06/01 12:00:00.015 [munzi req-1] http-nio-8080-exec-1 [RES] RES > 200 [POST /hello] 15ms,",
+                        "headers={},",
+                        "payload={\"ok\":true}",
+                        RED + "[ERROR]" + RESET + " 2023/06/01 12:00:01.000 [munzi req-2] http-nio-8080-exec-2 [ERR] "
+                                + "ERR > httpStatus=500, errorCode=\"E500\", errorType=\"IllegalStateException\", message=\"boom\",",
+                        "stackTrace=\"java.lang.IllegalStateException: boom\"",
+                        "[INFO ] 2023/06/01 12:00:01.005 [munzi req-2] http-nio-8080-exec-2 [RES] RES > 500 [GET /api/code/A] 985ms,",
+                        "headers={},",
+                        "payload=",
+                        "[INFO ] 2023/06/01 12:30:00.000 [munzi req-3] http-nio-8080-exec-3 [RES] "
+                                + "{\"type\":\"RES\",\"requestId\":\"req-3\",\"route\":\"POST /hello\",\"status\":201,\"latencyMs\":40.6,\"headers\":{\"a\":\"b\"}}",
+                        "[INFO ] 2023/06/01 12:45:00.000 [munzi ] main [l.m.Application.main:10] started"),
+                gzip(ARCHIVE_13,
+                        "[INFO ] 2023/06/01 13:00:00.000 [munzi req-4] http-nio-8080-exec-4 [RES] RES > 503 [POST /hello] 100ms,",
+                        "headers={},",
+                        "payload=",
+                        "[INFO ] 2023/06/01 13:00:00.500 [munzi req-5] http-nio-8080-exec-5 [RES] RES > 200 [POST /hello] 5ms,",
+                        "headers={},",
+                        "payload={}"));
+
+        indexDirectory = directory.resolve("index");
+        Map<String, Integer> counts = new HashMap<>();
+        new ArchiveIndexer(ZONE, 2).index(archives, indexDirectory, (archive, count) -> counts.put(archive.getFileName().toString(), count));
+
+        assertThat(counts).containsEntry(ARCHIVE_12, 7).containsEntry(ARCHIVE_13, 2);
+    }
+
+    @Test
+    void unchangedArchivesAreNotIndexedAgain() throws IOException {
+        List<Integer> counts = new ArrayList<>();
+        new ArchiveIndexer(ZONE, 1).index(archives, indexDirectory, (archive, count) -> counts.add(count));
+
+        assertThat(counts).containsExactly(-1, -1);
+    }
+
+    @Test
+    void requestIdFindsEveryLogOfTheRequestInTimeOrder() throws IOException {
+        try (ArchiveIndex index = ArchiveIndex.open(indexDirectory)) {
+            assertThat(index.getSegmentCount()).isEqualTo(2);
+
+            List<ArchiveEvent> request1 = index.findByRequestId("req-1");
+            assertThat(request1)
+                    .extracting(ArchiveEvent::getType, ArchiveEvent::getTime, ArchiveEvent::getRoute, ArchiveEvent::getStatus, ArchiveEvent::getLatencyMs)
+                    .containsExactly(
+                            tuple("REQ", time("12:00:00.000"), "POST /hello", 0, -1),
+                            tuple("RES", time("12:00:00.015"), "POST /hello", 200, 15));
+            // 색을 지운 여러 줄 원문. '['로 시작해도 로그 첫 줄 형식이 아니면 이어지는 줄이다.
+            assertThat(request1.get(0).getText()).isEqualTo(String.join("\n",
+                    "[INFO ] 2023/06/01 12:00:00.000 [munzi req-1] http-nio-8080-exec-1 [REQ] REQ > [POST /hello],",
+                    "headers={content-type=application/json},",
+                    "params={},",
+                    "body={\"items\":[{\"id\":1}],",
+                    "[not a header] \"name\":\"승리를 위해\"}"));
+            assertThat(request1.get(1).getText()).endsWith("\npayload={\"ok\":true}");
+
+            List<ArchiveEvent> request2 = index.findByRequestId("req-2");
+            assertThat(request2)
+                    .extracting(ArchiveEvent::getType, ArchiveEvent::getTime, ArchiveEvent::getStatus)
+                    .containsExactly(
+                            tuple("REQ", time("12:00:00.020"), 0),
+                            tuple("ERR", time("12:00:01.000"), 500),
+                            tuple("RES", time("12:00:01.005"), 500));
+            assertThat(request2.get(1).getText())
+                    .startsWith("[ERROR] 2023/06/01 12:00:01.000")
+                    .endsWith("\nstackTrace=\"java.lang.IllegalStateException: boom\"");
+
+            // api-log.format: JSON
+            assertThat(index.findByRequestId("req-3"))
+                    .extracting(ArchiveEvent::getArchive, ArchiveEvent::getType, ArchiveEvent::getRoute, ArchiveEvent::getStatus, ArchiveEvent::getLatencyMs)
+                    .containsExactly(tuple(ARCHIVE_12, "RES", "POST /hello", 201, 40));
+
+            assertThat(index.findByRequestId("req-4"))
+                    .extracting(ArchiveEvent::getArchive, ArchiveEvent::getStatus)
+                    .containsExactly(tuple(ARCHIVE_13, 503));
+
+            assertThat(index.findByRequestId("req-404")).isEmpty();
+        }
+    }
+
+    @Test
+    void searchFiltersByRouteStatusTypeAndTime() throws IOException {
+        try (ArchiveIndex index = ArchiveIndex.open(indexDirectory)) {
+            // 5xx 인 POST /hello
+            assertThat(index.search(ArchiveQuery.builder().route("POST /hello").minStatus(500).maxStatus(599).build()))
+                    .extracting(ArchiveEvent::getRequestId)
+                    .containsExactly("req-4");
+
+            // '*'로 끝나는 route
+            assertThat(index.search(ArchiveQuery.builder().route("GET /api/code/*").build()))
+                    .extracting(ArchiveEvent::getRequestId, ArchiveEvent::getType)
+                    .containsExactly(tuple("req-2", "REQ"), tuple("req-2", "RES"));
+
+            // 12시 archive의 POST /hello RES
+            assertThat(index.search(ArchiveQuery.builder().route("POST /hello").type("RES")
+                    .from(time("12:00:00.000")).to(time("12:59:59.999")).build()))
+                    .extracting(ArchiveEvent::getRequestId)
+                    .containsExactly("req-1", "req-3");
+
+            // route 없이 시간 범위만 (찍힌 순서가 아니라 시간 순)
+            assertThat(index.search(ArchiveQuery.builder().from(time("12:00:00.010")).to(time("12:00:00.020")).build()))
+                    .extracting(ArchiveEvent::getRequestId, ArchiveEvent::getType)
+                    .containsExactly(tuple("req-1", "RES"), tuple("req-2", "REQ"));
+
+            assertThat(index.search(ArchiveQuery.builder().type("LOG").build()))
+                    .extracting(ArchiveEvent::getTime, ArchiveEvent::getRequestId)
+                    .containsExactly(tuple(time("12:45:00.000"), null));
+
+            assertThat(index.search(ArchiveQuery.builder().limit(3).build()))
+                    .extracting(ArchiveEvent::getTime)
+                    .containsExactly(time("12:00:00.000"), time("12:00:00.015"), time("12:00:00.020"));
+
+            assertThat(index.search(ArchiveQuery.builder().from(time("14:00:00.000")).build())).isEmpty();
+        }
+    }
+
+    @Test
+    void latencyPercentilesArePerRoute() throws IOException {
+        try (ArchiveIndex index = ArchiveIndex.open(indexDirectory)) {
+            // POST /hello : 15, 40(JSON), 100, 5 ms
+            assertThat(index.latency(ArchiveQuery.builder().build()))
+                    .extracting(LatencyStats::getRoute, LatencyStats::getCount, LatencyStats::getP50, LatencyStats::getP90, LatencyStats::getP99, LatencyStats::getMax)
+                    .containsExactly(
+                            tuple("GET /api/code/A", 1, 985, 985, 985, 985),
+                            tuple("POST /hello", 4, 15, 100, 100, 100));
+
+            // 12시 archive만
+            assertThat(index.latency(ArchiveQuery.builder().route("POST /hello").to(time("12:59:59.999")).build()))
+                    .extracting(LatencyStats::getRoute, LatencyStats::getCount, LatencyStats::getP50, LatencyStats::getMax)
+                    .containsExactly(tuple("POST /hello", 2, 15, 40));
+        }
+    }
+
+    private static long time(String time) {
+        return LocalDateTime.parse("2023-06-01T" + time).atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    private static Path gzip(String name, String... lines) throws IOException {
+        Path archive = directory.resolve(name);
+        try (OutputStream out = Files.newOutputStream(archive);
+             Writer writer = new OutputStreamWriter(new GZIPOutputStream(out), StandardCharsets.UTF_8)) {
+            for (String line : lines) writer.write(line + "\n");
+        }
+        return archive;
+    }
+}
@@ -0,0 +1,149 @@
+package log.munzi.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.interceptor.CappedResponseWrapper;
+import log.munzi.interceptor.GlobalRequestWrappingFilter;
+import log.munzi.interceptor.LoggingInterceptor;
+import log.munzi.interceptor.ReadableRequestWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * REQ, RES 로그를 찍는 hot path benchmark
+ * <p>
+ * op 마다 mock request를 새로 만들기 때문에, baseline의 시간, 할당량을 빼고 비교한다.
+ * 할당량은 gc profiler 의 gc.alloc.rate.norm (bytes/op) 으로 본다.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ApiLogBenchmark {
+
+    private static final Object HANDLER = new Object();
+
+    @Param({"0", "1024", "65536", "10485760"})
+    private int bodySize;
+
+    @Param({"4", "32"})
+    private int headerCount;
+
+    @Param({"10", "1000"})
+    private int routeCount;
+
+    @Param({"false", "true"})
+    private boolean jsonPretty;
+
+    private ApiLogProperties apiLog;
+
+    private LoggingInterceptor interceptor;
+
+    private GlobalRequestWrappingFilter filter;
+
+    private FilterChain chain;
+
+    private byte[] requestBody;
+
+    private byte[] responseBody;
+
+    private String[] headerNames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        apiLog = ApiLogFixture.properties(routeCount, jsonPretty);
+        interceptor = new LoggingInterceptor(new ObjectMapper(), apiLog);
+        filter = new GlobalRequestWrappingFilter(apiLog, "bench");
+        requestBody = ApiLogFixture.jsonBody(bodySize);
+        responseBody = ApiLogFixture.jsonBody(bodySize);
+        headerNames = ApiLogFixture.headerNames(headerCount);
+
+        // DispatcherServlet 대신 interceptor를 순서대로 부르고 response body를 쓴다.
+        chain = (request, response) -> {
+            HttpServletRequest httpRequest = (HttpServletRequest) request;
+            HttpServletResponse httpResponse = (HttpServletResponse) response;
+            try {
+                interceptor.preHandle(httpRequest, httpResponse, HANDLER);
+                writeResponse(httpResponse);
+                interceptor.postHandle(httpRequest, httpResponse, HANDLER, null);
+                interceptor.afterCompletion(httpRequest, httpResponse, HANDLER, null);
+            } catch (IOException | ServletException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ServletException(e);
+            }
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        interceptor.destroy();
+    }
+
+    /**
+     * mock request만 만드는 비용
+     */
+    @Benchmark
+    public MockHttpServletRequest baseline() {
+        return ApiLogFixture.request(requestBody, headerNames);
+    }
+
+    @Benchmark
+    public ReadableRequestWrapper readableRequestWrapper() throws IOException {
+        return new ReadableRequestWrapper(ApiLogFixture.request(requestBody, headerNames), apiLog.getRouteMatcher(),
+                apiLog.getConfig().getRequestMaxBodySize());
+    }
+
+    /**
+     * filter를 거치지 않은 요청의 preHandle (REQ)
+     */
+    @Benchmark
+    public boolean preHandle() throws Exception {
+        return interceptor.preHandle(ApiLogFixture.request(requestBody, headerNames), new MockHttpServletResponse(), HANDLER);
+    }
+
+    /**
+     * filter를 거치지 않은 요청의 postHandle (RES)
+     */
+    @Benchmark
+    public HttpServletResponse postHandle() throws Exception {
+        MockHttpServletRequest request = ApiLogFixture.request(requestBody, headerNames);
+        CappedResponseWrapper response = new CappedResponseWrapper(new MockHttpServletResponse(), 1024 * 1024);
+        writeResponse(response);
+        interceptor.postHandle(request, response, HANDLER, null);
+        return response;
+    }
+
+    /**
+     * filter, preHandle, postHandle, afterCompletion 전체
+     */
+    @Benchmark
+    public MockHttpServletResponse doFilter() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(ApiLogFixture.request(requestBody, headerNames), response, chain);
+        return response;
+    }
+
+    private void writeResponse(HttpServletResponse response) throws IOException {
+        response.setStatus(200);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getOutputStream().write(responseBody);
+    }
+}
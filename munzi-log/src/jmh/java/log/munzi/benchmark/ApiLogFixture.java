@@ -0,0 +1,111 @@
+package log.munzi.benchmark;
+
+import log.munzi.config.ApiLogProperties;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * benchmark 에서 같이 쓰는 api-log 설정과 mock request
+ */
+final class ApiLogFixture {
+
+    static final String METHOD = "POST";
+
+    static final String URI = "/api/orders/1";
+
+    private static final String HEADER_VALUE = "bench-header-value-0123456789abcdef";
+
+    private ApiLogFixture() {
+    }
+
+    /**
+     * routeCount 만큼 exclude-api, secret-api, inactive-api 를 채운 설정.
+     * benchmark 요청(POST /api/orders/1)은 어느 api에도 해당하지 않으므로 REQ, RES 로그를 모두 찍는다.
+     *
+     * @param routeCount 목록 별 api 개수
+     * @param jsonPretty api-log.json-pretty
+     * @return compile 된 설정
+     */
+    static ApiLogProperties properties(int routeCount, boolean jsonPretty) {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.setUse(true);
+        apiLog.setServerName("bench");
+        apiLog.setJsonPretty(jsonPretty);
+
+        ApiLogProperties.LogRequestResponse request = new ApiLogProperties.LogRequestResponse();
+        request.setMaxBodySize("1 MB");
+        ApiLogProperties.LogRequestResponse response = new ApiLogProperties.LogRequestResponse();
+        response.setMaxBodySize("1 MB");
+        for (int i = 0; i < routeCount; i++) {
+            apiLog.getExcludeApi().add("GET /api/excluded" + i + "/*");
+            request.getSecretApi().add("POST /api/secret" + i);
+            request.getInactiveApi().add("GET /api/inactive" + i + "/*");
+            response.getInactiveApi().add("GET /api/inactive" + i + "/*");
+        }
+        apiLog.setRequest(request);
+        apiLog.setResponse(response);
+        apiLog.compileConfig();
+        return apiLog;
+    }
+
+    /**
+     * @param size 만들 body 크기 (byte). 0이면 빈 배열
+     * @return 대략 size 크기의 json body
+     */
+    static byte[] jsonBody(int size) {
+        if (size == 0) return new byte[0];
+
+        StringBuilder builder = new StringBuilder(size + 64).append("{\"items\":[");
+        for (int i = 0; builder.length() < size - 2; i++) {
+            if (i > 0) builder.append(',');
+            builder.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\",\"tags\":[\"a\",\"b\"]}");
+        }
+        return builder.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param count header 개수
+     * @return "X-Bench-Header-{i}" header 이름 목록
+     */
+    static String[] headerNames(int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "X-Bench-Header-" + i;
+        }
+        return names;
+    }
+
+    /**
+     * filter, interceptor를 한번 지나가면 body를 다시 읽을 수 없으므로 op 마다 새로 만든다.
+     *
+     * @param body        request body
+     * @param headerNames 추가할 header 이름
+     * @return POST /api/orders/1 mock request
+     */
+    static MockHttpServletRequest request(byte[] body, String[] headerNames) {
+        return request(METHOD, URI, body, headerNames);
+    }
+
+    /**
+     * @param method      http method
+     * @param uri         request uri
+     * @param body        request body
+     * @param headerNames 추가할 header 이름
+     * @return mock request
+     */
+    static MockHttpServletRequest request(String method, String uri, byte[] body, String[] headerNames) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.setCharacterEncoding("UTF-8");
+        for (String name : headerNames) {
+            request.addHeader(name, HEADER_VALUE);
+        }
+        if (body.length > 0) {
+            request.setContentType("application/json");
+            request.addHeader("Content-Length", body.length);
+            request.setContent(body);
+        }
+        request.addParameter("page", "1");
+        return request;
+    }
+}
@@ -0,0 +1,19 @@
+package log.munzi.benchmark;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+
+/**
+ * 로그 message를 만들기만 하고 어디에도 쓰지 않는 appender
+ * <p>
+ * 파일, console I/O 없이 로그 문자열을 만드는 비용까지만 benchmark에 포함시킨다.
+ */
+public class BlackholeAppender extends AppenderBase<ILoggingEvent> {
+
+    private volatile int sink;
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        sink += event.getFormattedMessage().length();
+    }
+}
@@ -0,0 +1,126 @@
+package log.munzi.benchmark;
+
+import log.munzi.common.util.CallSiteMarkers;
+import log.munzi.interceptor.LoggingInterceptor;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.OutputStreamAppender;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+import org.apache.logging.log4j.core.layout.MarkerPatternSelector;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.layout.PatternMatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * REQ 로그 한 줄을 위치(%C.%M:%L)로 찍을 때와 호출 위치 marker(CallSiteMarkers)로 찍을 때의 처리량 비교
+ * <p>
+ * log4j2-prod.yml 과 같이 log.munzi logger를 log4j2 AsyncLogger(async)와 Logger(sync)로 두고 측정한다.
+ * LOCATION은 includeLocation: true 로 로그마다 stack을 훑어서 위치를 찾고,
+ * CALL_SITE는 includeLocation: false 로 MarkerPatternSelector가 marker 이름만 찍는다.
+ * async는 request thread에서 위치를 찾는 비용만 남기기 위해 ring buffer가 차면 버린다. (log4j2.asyncQueueFullPolicy=Discard)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class CallSiteBenchmark {
+
+    private static final String LOCATION_PATTERN = "[%-5p] %d{yyyy/MM/dd HH:mm:ss.SSS} %t [%C{1.}.%M:%L] %m%n";
+
+    private static final String CALL_SITE_PATTERN = "[%-5p] %d{yyyy/MM/dd HH:mm:ss.SSS} %t [%markerSimpleName] %m%n";
+
+    private static final String APPENDER_NAME = "Blackhole";
+
+    static {
+        // AsyncLogger의 ring buffer가 차면 기다리지 않고 버린다. (log4j2가 초기화되기 전에 설정해야 함)
+        System.setProperty("log4j2.asyncQueueFullPolicy", "Discard");
+        System.setProperty("log4j2.discardThreshold", "INFO");
+    }
+
+    @Param({"LOCATION", "CALL_SITE"})
+    private String mode;
+
+    @Param({"false", "true"})
+    private boolean async;
+
+    private LoggerContext context;
+
+    private Logger logger;
+
+    private Marker marker;
+
+    private String message;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUp() {
+        boolean location = mode.equals("LOCATION");
+        context = new LoggerContext("CallSiteBenchmark-" + mode + "-" + async);
+
+        ConfigurationBuilder<BuiltConfiguration> builder = ConfigurationBuilderFactory.newConfigurationBuilder();
+        builder.setConfigurationName("call-site-benchmark");
+        builder.setStatusLevel(Level.ERROR);
+        builder.setLoggerContext(context);
+        builder.add(builder.newRootLogger(Level.OFF));
+        builder.add((async ? builder.newAsyncLogger("log.munzi", Level.INFO) : builder.newLogger("log.munzi", Level.INFO))
+                .addAttribute("additivity", false)
+                .addAttribute("includeLocation", location));
+        context.start(builder.build());
+
+        // 로그 한 줄을 만들기만 하고 어디에도 쓰지 않는 appender (log4j2-prod.yml 과 같은 MarkerPatternSelector)
+        Configuration configuration = context.getConfiguration();
+        MarkerPatternSelector selector = MarkerPatternSelector.newBuilder()
+                .setConfiguration(configuration)
+                .setDefaultPattern(LOCATION_PATTERN)
+                .setProperties(new PatternMatch[]{new PatternMatch(CallSiteMarkers.CALL_SITE, CALL_SITE_PATTERN)})
+                .build();
+        PatternLayout layout = PatternLayout.newBuilder()
+                .withConfiguration(configuration)
+                .withPatternSelector(selector)
+                .withCharset(StandardCharsets.UTF_8)
+                .build();
+        OutputStreamAppender appender = OutputStreamAppender.newBuilder()
+                .setName(APPENDER_NAME)
+                .setLayout(layout)
+                .setTarget(OutputStream.nullOutputStream())
+                .build();
+        appender.start();
+        configuration.addAppender(appender);
+        configuration.getLoggerConfig("log.munzi").addAppender(appender, null, null);
+        context.updateLoggers();
+
+        // REQ 로그는 LoggingInterceptor logger로 찍는다.
+        logger = context.getLogger(LoggingInterceptor.class.getName());
+        marker = location ? null : MarkerManager.getMarker(CallSiteMarkers.REQUEST.getName())
+                .addParents(MarkerManager.getMarker(CallSiteMarkers.CALL_SITE));
+        message = "REQ : POST /api/orders (requestId: bench) headers: "
+                + String.join(", ", ApiLogFixture.headerNames(8))
+                + " body: " + new String(ApiLogFixture.jsonBody(512), StandardCharsets.UTF_8);
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public void logRequest() {
+        logger.info(marker, message);
+    }
+}
@@ -0,0 +1,87 @@
+package log.munzi.benchmark;
+
+import log.munzi.config.ApiLogProperties;
+import log.munzi.error.ErrorAspect;
+import log.munzi.stacktrace.error.StackTraceErrorWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ProblemDetail;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * exception handler가 return 한 뒤 ErrorAspect.recordErrorLog 가 ERR 로그를 찍는 benchmark
+ * <p>
+ * handler는 미리 만든 ProblemDetail을 돌려주므로, 측정값은 aop proxy + ErrorAspect + StackTraceErrorWriter 비용이다.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ErrorAspectBenchmark {
+
+    @Param({"400", "500"})
+    private int httpStatus;
+
+    @Param({"false", "true"})
+    private boolean stackTracePrintYn;
+
+    private StackTraceErrorWriter stackTraceErrorWriter;
+
+    private ErrorHandlers handlers;
+
+    private Exception exception;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ApiLogProperties apiLog = ApiLogFixture.properties(10, false);
+        apiLog.setStackTracePrintYn(stackTracePrintYn);
+        stackTraceErrorWriter = new StackTraceErrorWriter(apiLog);
+
+        ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(HttpStatusCode.valueOf(httpStatus), "bench error");
+        problemDetail.setProperty("errorCode", "E001");
+        AspectJProxyFactory factory = new AspectJProxyFactory(new ErrorHandlers(problemDetail));
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new ErrorAspect(apiLog, stackTraceErrorWriter));
+        handlers = factory.getProxy();
+
+        exception = new IllegalStateException("bench error");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stackTraceErrorWriter.destroy();
+    }
+
+    @Benchmark
+    public ProblemDetail recordErrorLog() {
+        return handlers.handle(exception);
+    }
+
+    /**
+     * ErrorAspect pointcut(@ExceptionHandler)에 걸리는 handler
+     */
+    public static class ErrorHandlers {
+
+        private final ProblemDetail problemDetail;
+
+        public ErrorHandlers(ProblemDetail problemDetail) {
+            this.problemDetail = problemDetail;
+        }
+
+        @ExceptionHandler(Exception.class)
+        public ProblemDetail handle(Exception exception) {
+            return problemDetail;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package log.munzi.common.util;
+
+import java.text.DecimalFormat;
+
+/**
+ * byte 크기를 로그에 찍을 "12.5 KB" 형식의 문자열로 바꿔주는 formatter
+ * <p>
+ * REQ, RES 로그의 body 크기 요약([secret! 1 KB], [2 MB]), multipart part 크기, binary body 요약에서 같이 사용한다.
+ * DecimalFormat은 thread-safe 하지 않으므로 thread마다 하나씩 두고 재사용한다.
+ */
+public final class ByteSizeFormatter {
+
+    private static final String[] UNITS = {"bytes", "KB", "MB", "GB", "TB", "PB"};
+
+    private static final ThreadLocal<DecimalFormat> FORMATS = ThreadLocal.withInitial(() -> new DecimalFormat("#,###.##"));
+
+    private ByteSizeFormatter() {
+    }
+
+    /**
+     * bytes 단위의 숫자를 KB, MB 단위의 문자열로 변환
+     * ex) 2048 -> 2 KB
+     *
+     * @param bytes 문자열로 변환할 byte단위 크기
+     * @return KB, MB 단위로 변환된 문자열. 0 이하이면 "0 bytes"
+     */
+    public static String format(long bytes) {
+        if (bytes <= 0) return "0 bytes";
+
+        int idx = Math.min(UNITS.length - 1, (63 - Long.numberOfLeadingZeros(bytes)) / 10);
+        double ret = bytes / (double) (1L << (10 * idx));
+
+        return FORMATS.get().format(ret) + " " + UNITS[idx];
+    }
+}
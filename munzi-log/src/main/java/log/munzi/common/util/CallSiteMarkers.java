@@ -0,0 +1,47 @@
+package log.munzi.common.util;
+
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+/**
+ * REQ, RES, ERR 로그에 붙이는 호출 위치 marker
+ * <p>
+ * 로그를 찍는 위치가 정해져 있으므로, 매번 stack을 훑어서 위치(%C.%M:%L)를 찾지 않고 미리 정해 둔 이름을 marker로 넘긴다.
+ * log4j2 설정에서 log.munzi logger만 includeLocation: false 로 두고, MarkerPatternSelector로 CALL_SITE marker가 붙은 로그만
+ * %markerSimpleName 으로 위치 자리에 찍으면 AsyncLogger가 stack을 훑지 않아도 줄 번호를 뺀 형식으로 찍힌다.
+ * 같은 로그를 servlet, WebFlux, munzi-log-async thread 어디에서든 찍을 수 있으므로, marker 이름은 로그를 만드는 class와 로그 종류로 정한다. (%C{1.}.종류)
+ * 줄 번호는 코드가 바뀔 때마다 달라지므로 넣지 않으며, %C{1.}.%M:%L 로 찍던 곳과 달리 :line 은 찍히지 않는다.
+ */
+public final class CallSiteMarkers {
+
+    /**
+     * 모든 호출 위치 marker의 부모 marker 이름. MarkerPatternSelector의 PatternMatch key로 사용한다.
+     */
+    public static final String CALL_SITE = "MUNZI_CALL_SITE";
+
+    private static final Marker PARENT = MarkerFactory.getMarker(CALL_SITE);
+
+    // REQ
+    public static final Marker REQUEST = of("l.m.i.ApiLogRenderer.REQ");
+
+    // RES
+    public static final Marker RESPONSE = of("l.m.i.ApiLogRenderer.RES");
+
+    // EXG (api-log.merged.use)
+    public static final Marker EXCHANGE = of("l.m.i.ApiLogRenderer.EXG");
+
+    // ERR
+    public static final Marker ERROR = of("l.m.e.ErrorLogWriter.ERR");
+
+    // ERR_STACK_TRACE, ERR_STACK_TRACE_REPEAT, ERR_STACK_TRACE_ROLLUP
+    public static final Marker STACK_TRACE = of("l.m.s.e.StackTraceErrorWriter.ERR_STACK_TRACE");
+
+    private CallSiteMarkers() {
+    }
+
+    private static Marker of(String callSite) {
+        Marker marker = MarkerFactory.getMarker(callSite);
+        marker.add(PARENT);
+        return marker;
+    }
+}
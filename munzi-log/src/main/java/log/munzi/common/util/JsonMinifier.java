@@ -0,0 +1,162 @@
+package log.munzi.common.util;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * json body에서 문자열 밖의 공백(space, tab, 줄바꿈)만 한번에 지워주는 minifier
+ * <p>
+ * 정규식으로 모든 공백을 지우면 "승리를 위해" 처럼 문자열 값 안의 공백까지 지워지기 때문에,
+ * byte를 한번만 훑으면서 문자열 안인지 밖인지를 따라가며 문자열 밖의 공백만 건너뛴다.
+ * UTF-8의 multi-byte 문자는 모두 0x80 이상이라 '"', '\\', 공백과 겹치지 않으므로 byte 단위로 그대로 옮겨도 안전하다.
+ */
+public final class JsonMinifier {
+
+    private JsonMinifier() {
+    }
+
+    /**
+     * json body를 minify 한 문자열로 만든다.
+     * '{' 또는 '['로 시작하지 않는 body는 json이 아니므로 그대로 돌려준다.
+     *
+     * @param body    captured body
+     * @param charset body charset
+     * @return minify 된 문자열
+     */
+    public static String minify(byte[] body, Charset charset) {
+        return minify(body, 0, body.length, body.length, charset);
+    }
+
+    /**
+     * json body를 최대 limit byte까지 minify 한 문자열로 만든다.
+     *
+     * @param body    captured body
+     * @param offset  시작 위치
+     * @param length  길이
+     * @param limit   결과 최대 크기 (byte)
+     * @param charset body charset
+     * @return minify 된 문자열
+     */
+    public static String minify(byte[] body, int offset, int length, int limit, Charset charset) {
+        if (!isAsciiCompatible(charset)) {
+            String json = new String(body, offset, length, charset);
+            String trimmed = json.stripLeading();
+            if (!trimmed.startsWith("{") && !trimmed.startsWith("[")) return json;
+            return minify(json, limit);
+        }
+
+        if (!isJson(body, offset, length)) {
+            return new String(body, offset, Math.min(length, limit), charset);
+        }
+
+        byte[] out = new byte[Math.min(length, limit)];
+        int written = minify(body, offset, length, out, 0, out.length, StandardCharsets.UTF_8.equals(charset));
+        return new String(out, 0, written, charset);
+    }
+
+    /**
+     * src의 json을 minify 해서 dst에 바로 쓴다.
+     * dst가 가득 차면 멈추고, utf8이면 잘린 multi-byte 문자는 쓰지 않는다.
+     *
+     * @param src       json byte
+     * @param srcOffset src 시작 위치
+     * @param srcLength src 길이
+     * @param dst       결과를 쓸 buffer
+     * @param dstOffset dst 시작 위치
+     * @param dstLimit  dst에 쓸 최대 크기
+     * @param utf8      src가 UTF-8인지 여부
+     * @return dst에 쓴 byte 수
+     */
+    public static int minify(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLimit, boolean utf8) {
+        boolean inString = false;
+        boolean escaped = false;
+        int write = dstOffset;
+        int dstEnd = dstOffset + dstLimit;
+        int srcEnd = srcOffset + srcLength;
+
+        for (int i = srcOffset; i < srcEnd; i++) {
+            byte b = src[i];
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                continue;
+            } else if (b == '"') {
+                inString = true;
+            }
+
+            if (write == dstEnd) {
+                return (utf8 ? trimPartialUtf8(dst, dstOffset, write) : write) - dstOffset;
+            }
+            dst[write++] = b;
+        }
+        return write - dstOffset;
+    }
+
+    /**
+     * json 문자열을 최대 limit 글자까지 minify 한다.
+     *
+     * @param json  json 문자열
+     * @param limit 결과 최대 길이
+     * @return minify 된 문자열
+     */
+    public static String minify(CharSequence json, int limit) {
+        StringBuilder builder = new StringBuilder(Math.min(json.length(), limit));
+        boolean inString = false;
+        boolean escaped = false;
+
+        for (int i = 0; i < json.length() && builder.length() < limit; i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                continue;
+            } else if (c == '"') {
+                inString = true;
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static boolean isJson(byte[] body, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            byte b = body[i];
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r') continue;
+            return b == '{' || b == '[';
+        }
+        return false;
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset)
+                || StandardCharsets.US_ASCII.equals(charset)
+                || StandardCharsets.ISO_8859_1.equals(charset);
+    }
+
+    /**
+     * 끝에서 잘린 UTF-8 multi-byte 문자가 있으면 그 문자 앞까지로 줄인다.
+     */
+    private static int trimPartialUtf8(byte[] buffer, int start, int end) {
+        int lead = end - 1;
+        while (lead >= start && (buffer[lead] & 0xC0) == 0x80) {
+            lead--;
+        }
+        if (lead < start) return start;
+
+        int b = buffer[lead] & 0xFF;
+        int expected = b < 0x80 ? 1 : b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+        return end - lead >= expected ? end : lead;
+    }
+}
@@ -2,25 +2,18 @@ package log.munzi.common.util;
 
 import io.micrometer.common.util.StringUtils;
 import jakarta.servlet.http.HttpServletRequest;
+import log.munzi.config.ApiLogConfig;
 import log.munzi.config.ApiLogProperties;
-import log.munzi.error.ErrorAspect;
+import log.munzi.error.ErrorLogWriter;
+import log.munzi.error.ErrorResponseResolver;
 import log.munzi.interceptor.LoggingInterceptor;
 import log.munzi.interceptor.ReadableRequestWrapper;
 import log.munzi.stacktrace.error.StackTraceErrorWriter;
 import lombok.extern.slf4j.Slf4j;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
-import org.springframework.http.HttpStatus;
-import org.springframework.web.bind.MethodArgumentNotValidException;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -29,15 +22,13 @@ import java.util.UUID;
 @Slf4j
 public class LoggingUtil {
 
-    private final Logger errorAspectLog = LoggerFactory.getLogger(ErrorAspect.class);
-
     private final LoggingInterceptor loggingInterceptor;
 
     private final ApiLogProperties apiLog;
 
     private final String profile;
 
-    private final StackTraceErrorWriter stackTraceErrorWriter;
+    private final ErrorLogWriter errorLogWriter;
 
     /**
      * loggingInterceptor의 preHandle 기능을 그대로 사용하기 위함으로
@@ -53,7 +44,7 @@ public class LoggingUtil {
         this.loggingInterceptor = loggingInterceptor;
         this.apiLog = apiLog;
         this.profile = profile;
-        this.stackTraceErrorWriter = stackTraceErrorWriter;
+        this.errorLogWriter = new ErrorLogWriter(apiLog, stackTraceErrorWriter);
     }
 
 
@@ -65,12 +56,6 @@ public class LoggingUtil {
      * @throws Exception request.getReader Exception
      */
     public void recordRequestLog(HttpServletRequest request, String requestId) throws Exception {
-        List<String> secretApiList = new ArrayList<>();
-        String maxSize = "";
-        if (apiLog.getRequest() != null) {
-            secretApiList = apiLog.getRequest().getSecretApi();
-            maxSize = apiLog.getRequest().getMaxBodySize();
-        }
 
         // MDC 등록
         MDC.put("requestId", requestId);
@@ -79,7 +64,8 @@ public class LoggingUtil {
 
 
         // request wrapping
-        HttpServletRequest wrappingRequest = new ReadableRequestWrapper(request, secretApiList, maxSize);
+        ApiLogConfig config = apiLog.getConfig();
+        HttpServletRequest wrappingRequest = new ReadableRequestWrapper(request, config.getRouteMatcher(), config.getRequestMaxBodySize());
 
         // log를 찍는 부분
         loggingInterceptor.preHandle(wrappingRequest, null, null);
@@ -97,15 +83,10 @@ public class LoggingUtil {
      * @throws Exception request.getReader Exception
      */
     public String recordRequestLog(HttpServletRequest request, boolean createRequestIdYn) throws Exception {
-        List<String> secretApiList = new ArrayList<>();
-        String maxSize = "";
-        if (apiLog.getRequest() != null) {
-            secretApiList = apiLog.getRequest().getSecretApi();
-            maxSize = apiLog.getRequest().getMaxBodySize();
-        }
 
         // request wrapping
-        HttpServletRequest wrappingRequest = new ReadableRequestWrapper(request, secretApiList, maxSize);
+        ApiLogConfig config = apiLog.getConfig();
+        HttpServletRequest wrappingRequest = new ReadableRequestWrapper(request, config.getRouteMatcher(), config.getRequestMaxBodySize());
 
         String requestId;
         if (createRequestIdYn) {
@@ -136,11 +117,10 @@ public class LoggingUtil {
      * @param returnValue error 났을 떄 return 값
      * @param requestId   error log에 찍을 requestId
      * @throws UnknownHostException ip 조회 오류
-     * @throws JSONException        returnValue JSON parsing error
      */
-    public void recordErrorLog(Exception exception, Object returnValue, String requestId) throws UnknownHostException, JSONException {
-        JSONObject jsonObject = new JSONObject(returnValue);
-        if (jsonObject.isEmpty()) {
+    public void recordErrorLog(Exception exception, Object returnValue, String requestId) throws UnknownHostException {
+        ErrorResponseResolver.Fields fields = ErrorResponseResolver.resolve(returnValue);
+        if (fields == null) {
             return;
         }
 
@@ -149,7 +129,7 @@ public class LoggingUtil {
         String applicationName = (!StringUtils.isBlank(apiLog.getServerName()) ? apiLog.getServerName() + "-" : "") + profile + " " + InetAddress.getLocalHost().getHostAddress();
         MDC.put("applicationName", applicationName);
 
-        this.recordErrorLog(jsonObject, exception);
+        this.recordErrorLog(fields, exception);
 
         // MDC 등록 해제
         MDC.remove("requestId");
@@ -164,12 +144,11 @@ public class LoggingUtil {
      * @param createRequestIdYn requestId 생성 여부
      * @return error log 찍는 데 사용된 requestId
      * @throws UnknownHostException     ip 조회 오류
-     * @throws JSONException            returnValue JSON parsing error
      * @throws IllegalArgumentException createRequestYn이 false인데 requestId가 MDC에 등록 안돼있는 경우
      */
-    public String recordErrorLog(Exception exception, Object returnValue, boolean createRequestIdYn) throws UnknownHostException, JSONException, IllegalArgumentException {
-        JSONObject jsonObject = new JSONObject(returnValue);
-        if (jsonObject.isEmpty()) {
+    public String recordErrorLog(Exception exception, Object returnValue, boolean createRequestIdYn) throws UnknownHostException, IllegalArgumentException {
+        ErrorResponseResolver.Fields fields = ErrorResponseResolver.resolve(returnValue);
+        if (fields == null) {
             return null;
         }
 
@@ -182,7 +161,7 @@ public class LoggingUtil {
             requestId = MDC.get("requestId");
         }
 
-        this.recordErrorLog(jsonObject, exception);
+        this.recordErrorLog(fields, exception);
 
         if (createRequestIdYn) {
             // MDC 등록 해제
@@ -194,69 +173,13 @@ public class LoggingUtil {
     }
 
     /**
-     * Error log 찍는부분
+     * Error log 찍는부분. ErrorAspect와 같은 ErrorLogWriter를 사용한다.
      *
-     * @param jsonObject returnValue JsonObject
-     * @param exception  error exception
+     * @param fields    returnValue에서 꺼낸 httpStatus, errorCode, message
+     * @param exception error exception
      */
-    private void recordErrorLog(JSONObject jsonObject, Exception exception) {
-        Integer httpStatus = null;
-        if (jsonObject.has("httpStatus")) {
-            httpStatus = jsonObject.getInt("httpStatus");
-        } else if (jsonObject.has("status")) {
-            httpStatus = jsonObject.getInt("status");
-        } else if (jsonObject.has("statusCodeValue")) {
-            httpStatus = jsonObject.getInt("statusCodeValue");
-        }
-
-        String errorCode = "";
-        if (jsonObject.has("errorCode")) {
-            errorCode = jsonObject.getString("errorCode");
-        } else if (jsonObject.has("code")) {
-            errorCode = jsonObject.getString("code");
-        } else if (jsonObject.has("properties")) {
-            JSONObject properties = jsonObject.getJSONObject("properties");
-            if (properties.has("errorCode")) {
-                errorCode = properties.getString("errorCode");
-            }
-        } else if (jsonObject.has("body")) {
-            JSONObject body = jsonObject.getJSONObject("body");
-            if (body.has("code")) {
-                errorCode = body.getString("code");
-            } else if (body.has("errorCode")) {
-                errorCode = body.getString("errorCode");
-            }
-        }
-
-        String message = "";
-        if (jsonObject.has("message")) {
-            message = jsonObject.getString("message");
-        } else if (jsonObject.has("detail")) {
-            message = jsonObject.getString("detail");
-        } else if (jsonObject.has("body")) {
-            JSONObject body = jsonObject.getJSONObject("body");
-            if (body.has("message")) {
-                message = body.getString("message");
-            } else if (body.has("errorMessage")) {
-                message = body.getString("errorMessage");
-            }
-        }
-
-        String errorType = exception.getClass().getName();
-        String stackTrace;
-        if (errorType.equals("org.springframework.web.bind.MethodArgumentNotValidException")) {
-            MethodArgumentNotValidException e = (MethodArgumentNotValidException) exception;
-            stackTrace = String.format("[%s] %s", Objects.requireNonNull(e.getBindingResult().getFieldError()).getField(),
-                    e.getBindingResult().getAllErrors().get(0).getDefaultMessage());
-        } else {
-            stackTrace = exception.getMessage();
-        }
-
-        errorAspectLog.error("ERR > httpStatus={}, errorCode=\"{}\", errorType=\"{}\", message=\"{}\",\nstackTrace=\"{}\"", httpStatus, errorCode, errorType, message, stackTrace);
-
-        if (apiLog.isStackTracePrintYn() && httpStatus != null && HttpStatus.valueOf(httpStatus).is5xxServerError()) {
-            stackTraceErrorWriter.writeStackTraceError(httpStatus, errorCode, errorType, message, exception);
-        }
+    private void recordErrorLog(ErrorResponseResolver.Fields fields, Exception exception) {
+        errorLogWriter.write(fields, exception);
     }
 
 }
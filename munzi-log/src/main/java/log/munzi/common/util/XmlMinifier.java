@@ -0,0 +1,62 @@
+package log.munzi.common.util;
+
+/**
+ * xml body에서 tag 사이의 공백(들여쓰기, 줄바꿈)만 한번에 지워주는 minifier
+ * <p>
+ * "&lt;a&gt;  승리를 위해 &lt;/a&gt;" 처럼 글자가 있는 text 안의 공백은 그대로 두고,
+ * '&gt;'와 '&lt;' 사이에 공백만 있는 구간만 건너뛴다. CDATA, comment 안도 그대로 옮긴다.
+ */
+public final class XmlMinifier {
+
+    private XmlMinifier() {
+    }
+
+    /**
+     * xml 문자열을 최대 limit 글자까지 minify 한다.
+     * '&lt;'로 시작하지 않는 body는 xml이 아니므로 limit 까지만 잘라서 돌려준다.
+     *
+     * @param xml   xml 문자열
+     * @param limit 결과 최대 길이
+     * @return minify 된 문자열
+     */
+    public static String minify(String xml, int limit) {
+        int start = 0;
+        while (start < xml.length() && Character.isWhitespace(xml.charAt(start))) start++;
+        if (start == xml.length() || xml.charAt(start) != '<') {
+            return xml.length() > limit ? xml.substring(0, limit) : xml;
+        }
+
+        StringBuilder builder = new StringBuilder(Math.min(xml.length(), limit));
+        // 공백 구간의 시작 위치. 다음 글자가 나왔을 때 버릴지 옮길지 정한다.
+        int pending = -1;
+        // 마지막으로 옮긴 공백이 아닌 글자
+        char last = '>';
+        int i = start;
+        while (i < xml.length() && builder.length() < limit) {
+            char c = xml.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (pending < 0) pending = i;
+                i++;
+                continue;
+            }
+            // '>'와 '<' 사이에 공백만 있던 구간은 버리고, text 앞뒤의 공백은 그대로 옮긴다.
+            if (pending >= 0 && !(last == '>' && c == '<')) builder.append(xml, pending, i);
+            pending = -1;
+
+            if (c == '<' && (xml.startsWith("<![CDATA[", i) || xml.startsWith("<!--", i))) {
+                String end = xml.startsWith("<!--", i) ? "-->" : "]]>";
+                int close = xml.indexOf(end, i);
+                int next = close < 0 ? xml.length() : close + end.length();
+                builder.append(xml, i, Math.min(next, i + limit - builder.length()));
+                last = '>';
+                i = next;
+                continue;
+            }
+            builder.append(c);
+            last = c;
+            i++;
+        }
+        if (builder.length() > limit) builder.setLength(limit);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package log.munzi.config;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * api-log.header 의 include, exclude, mask 설정을 한번만 compile 해두고,
+ * header 하나마다 로그에 찍을지, 값을 가릴지 정해주는 filter
+ * <p>
+ * header 이름은 대소문자를 구분하지 않으므로 case-insensitive set으로 만들어 두고, 요청마다 소문자로 바꾸지 않고 바로 찾는다.
+ * 만들어진 후에는 변경되지 않으므로 여러 thread에서 공유해도 된다.
+ */
+public final class ApiHeaderFilter {
+
+    /**
+     * mask 설정된 header 대신 찍을 값
+     */
+    public static final String MASKED_VALUE = "****";
+
+    /**
+     * 모든 header를 그대로 찍는 filter
+     */
+    public static final ApiHeaderFilter NONE = new ApiHeaderFilter(null, null, null);
+
+    // 비어있으면 모든 header를 찍는다.
+    private final Set<String> include;
+
+    private final Set<String> exclude;
+
+    private final Set<String> mask;
+
+    private ApiHeaderFilter(Collection<String> include, Collection<String> exclude, Collection<String> mask) {
+        this.include = compile(include);
+        this.exclude = compile(exclude);
+        this.mask = compile(mask);
+    }
+
+    /**
+     * api-log.header 설정으로 filter를 만든다.
+     *
+     * @param header header 설정
+     * @return compile 된 filter
+     */
+    public static ApiHeaderFilter compile(ApiLogProperties.HeaderLog header) {
+        if (header == null) return NONE;
+        return new ApiHeaderFilter(header.getInclude(), header.getExclude(), header.getMask());
+    }
+
+    /**
+     * @param name header 이름
+     * @return 로그에 찍을 header 이면 true
+     */
+    public boolean isIncluded(String name) {
+        if (name == null) return false;
+        return (include.isEmpty() || include.contains(name)) && !exclude.contains(name);
+    }
+
+    /**
+     * 로그에 찍을 header 값을 돌려준다.
+     *
+     * @param name  header 이름
+     * @param value header 값
+     * @return mask 설정된 header 이면 "****", 아니면 값 그대로
+     */
+    public String value(String name, String value) {
+        return value != null && !mask.isEmpty() && mask.contains(name) ? MASKED_VALUE : value;
+    }
+
+    private static Set<String> compile(Collection<String> names) {
+        Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        if (names == null) return set;
+        for (String name : names) {
+            if (name != null && !name.isBlank()) set.add(name.trim());
+        }
+        return set;
+    }
+}
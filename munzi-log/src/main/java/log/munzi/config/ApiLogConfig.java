@@ -0,0 +1,274 @@
+package log.munzi.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ApiLogProperties 중 요청마다 보는 값을 한번에 compile 해 둔 변경되지 않는 snapshot
+ * <p>
+ * api 목록(matcher), header filter, sampler, max-body-size(byte)와 use, format, json-pretty, merged, async 설정을 담고 있으며,
+ * ApiLogProperties가 volatile 참조 하나로 들고 있다가 통째로 바꾼다.
+ * 요청 thread는 snapshot을 꺼내서 읽기만 하므로, 실행 중에 설정을 바꿔도 요청 처리가 느려지거나 중간 상태를 보지 않는다.
+ */
+public final class ApiLogConfig {
+
+    // max-body-size 설정이 비어있을 때 사용하는 크기
+    private static final String DEFAULT_MAX_BODY_SIZE = "1KB";
+
+    private static final String[] SIZE_UNITS = {"BYTES", "KB", "MB", "GB", "TB", "PB"};
+
+    private final long version;
+
+    private final ApiRouteMatcher routeMatcher;
+
+    private final ApiHeaderFilter headerFilter;
+
+    private final ApiLogSampler sampler;
+
+    private final long requestMaxBodySize;
+
+    private final long responseMaxBodySize;
+
+    // compile에 사용한 api 목록, 크기 설정의 복사본. 실행 중 변경(ApiLogConfigEndpoint) 시 이어서 바꿀 때 사용한다.
+    private final ApiLogProperties routes;
+
+    private final boolean use;
+
+    private final ApiLogProperties.LogFormat format;
+
+    private final boolean jsonPretty;
+
+    // merged.use 가 false 이면 null
+    private final ApiLogProperties.MergedLog merged;
+
+    private final ApiLogProperties.AsyncLog async;
+
+    private ApiLogConfig(long version, ApiLogProperties routes, boolean use, ApiLogProperties.LogFormat format, boolean jsonPretty,
+                         ApiLogProperties.MergedLog merged, ApiLogProperties.AsyncLog async, ApiHeaderFilter headerFilter, ApiLogSampler sampler) {
+        this.version = version;
+        this.routes = routes;
+        this.use = use;
+        this.format = format;
+        this.jsonPretty = jsonPretty;
+        this.merged = merged;
+        this.async = async;
+        this.routeMatcher = ApiRouteMatcher.compile(routes);
+        this.headerFilter = headerFilter;
+        this.sampler = sampler;
+        this.requestMaxBodySize = routes.getRequest() != null ? parseSize(routes.getRequest().getMaxBodySize()) : 0;
+        this.responseMaxBodySize = routes.getResponse() != null ? parseSize(routes.getResponse().getMaxBodySize()) : 0;
+    }
+
+    /**
+     * api log 설정 전체를 compile 한다.
+     *
+     * @param apiLog api log 설정
+     * @return compile 된 snapshot
+     * @throws IllegalArgumentException max-body-size 형식이 잘못된 경우
+     */
+    public static ApiLogConfig compile(ApiLogProperties apiLog) {
+        return compile(apiLog, 1);
+    }
+
+    /**
+     * api log 설정 전체를 다시 compile 한다. 실행 중에 바꾼 값을 버리는 경우에도 version은 이어서 증가한다.
+     *
+     * @param apiLog  api log 설정
+     * @param version snapshot version
+     * @return compile 된 snapshot
+     * @throws IllegalArgumentException max-body-size 형식이 잘못된 경우
+     */
+    static ApiLogConfig compile(ApiLogProperties apiLog, long version) {
+        ApiLogProperties.MergedLog merged = apiLog.getMerged() != null && apiLog.getMerged().isUse() ? copyMerged(apiLog.getMerged()) : null;
+        return new ApiLogConfig(version, copyRoutes(apiLog), apiLog.isUse(), apiLog.getFormat(), apiLog.isJsonPretty(), merged, copyAsync(apiLog.getAsync()),
+                ApiHeaderFilter.compile(apiLog.getHeader()), ApiLogSampler.compile(apiLog.getSampling(), apiLog.getSampledOutCounters()));
+    }
+
+    /**
+     * api 목록, max-body-size만 바꾼 snapshot을 만든다.
+     * header filter, sampler와 use, format 등 나머지 설정은 그대로 사용하므로 sampled-out 개수도 이어서 센다.
+     *
+     * @param routes 새 api 목록, 크기 설정
+     * @return compile 된 snapshot
+     * @throws IllegalArgumentException max-body-size 형식이 잘못된 경우
+     */
+    ApiLogConfig withRoutes(ApiLogProperties routes) {
+        return new ApiLogConfig(version + 1, copyRoutes(routes), use, format, jsonPretty, merged, async, headerFilter, sampler);
+    }
+
+    /**
+     * @return 처음 compile 한 snapshot이 1, 실행 중에 바꾸거나 다시 compile 할 때마다 1씩 증가
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return api 목록을 compile 해 둔 matcher
+     */
+    public ApiRouteMatcher getRouteMatcher() {
+        return routeMatcher;
+    }
+
+    /**
+     * @return header 설정을 compile 해 둔 filter
+     */
+    public ApiHeaderFilter getHeaderFilter() {
+        return headerFilter;
+    }
+
+    /**
+     * @return sampling 설정을 compile 해 둔 sampler
+     */
+    public ApiLogSampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * @return request.max-body-size (byte). request 설정이 없으면 0
+     */
+    public long getRequestMaxBodySize() {
+        return requestMaxBodySize;
+    }
+
+    /**
+     * @return response.max-body-size (byte). response 설정이 없으면 0
+     */
+    public long getResponseMaxBodySize() {
+        return responseMaxBodySize;
+    }
+
+    /**
+     * @return request 설정(api-log.request)이 있으면 true
+     */
+    public boolean isRequestLogged() {
+        return routes.getRequest() != null;
+    }
+
+    /**
+     * @return response 설정(api-log.response)이 있으면 true
+     */
+    public boolean isResponseLogged() {
+        return routes.getResponse() != null;
+    }
+
+    /**
+     * @return api-log.use
+     */
+    public boolean isUse() {
+        return use;
+    }
+
+    /**
+     * @return api-log.format
+     */
+    public ApiLogProperties.LogFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return api-log.json-pretty
+     */
+    public boolean isJsonPretty() {
+        return jsonPretty;
+    }
+
+    /**
+     * @return api-log.merged.use
+     */
+    public boolean isMerged() {
+        return merged != null;
+    }
+
+    /**
+     * @return api-log.merged 설정의 복사본 (변경하지 말 것). merged.use 가 false 이면 null
+     */
+    public ApiLogProperties.MergedLog getMerged() {
+        return merged;
+    }
+
+    /**
+     * @return api-log.async 설정의 복사본 (변경하지 말 것). async 설정이 없으면 null
+     */
+    public ApiLogProperties.AsyncLog getAsync() {
+        return async;
+    }
+
+    /**
+     * @return compile에 사용한 api 목록, 크기 설정의 복사본 (변경하지 말 것)
+     */
+    ApiLogProperties getRoutes() {
+        return routes;
+    }
+
+    /**
+     * "1KB", "10 MB", "512 bytes" 형식의 크기를 byte로 바꾼다. 단위가 없으면 byte로 본다.
+     *
+     * @param size 크기 문자열. 비어있으면 1KB
+     * @return byte 단위 크기
+     * @throws IllegalArgumentException 형식이 잘못된 경우
+     */
+    public static long parseSize(String size) {
+        if (size == null || size.isBlank()) size = DEFAULT_MAX_BODY_SIZE;
+        String text = size.replace(" ", "").toUpperCase(Locale.ROOT);
+        long multiplier = 1;
+        for (int i = SIZE_UNITS.length - 1; i >= 0; i--) {
+            if (text.endsWith(SIZE_UNITS[i])) {
+                text = text.substring(0, text.length() - SIZE_UNITS[i].length());
+                multiplier = 1L << (10 * i);
+                break;
+            }
+        }
+        try {
+            return (long) (Double.parseDouble(text) * multiplier);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("잘못된 max-body-size : " + size, e);
+        }
+    }
+
+    /**
+     * matcher, max-body-size에 사용하는 값만 복사한다. 원래 설정의 list를 나중에 바꿔도 snapshot은 바뀌지 않는다.
+     */
+    static ApiLogProperties copyRoutes(ApiLogProperties apiLog) {
+        ApiLogProperties copy = new ApiLogProperties();
+        copy.setDebugApi(copyList(apiLog.getDebugApi()));
+        copy.setExcludeApi(copyList(apiLog.getExcludeApi()));
+        copy.setExcludeStaticResource(apiLog.isExcludeStaticResource());
+        copy.setHeaderOnlyApi(copyList(apiLog.getHeaderOnlyApi()));
+        copy.setRequest(copyRoutes(apiLog.getRequest()));
+        copy.setResponse(copyRoutes(apiLog.getResponse()));
+        return copy;
+    }
+
+    private static ApiLogProperties.MergedLog copyMerged(ApiLogProperties.MergedLog merged) {
+        ApiLogProperties.MergedLog copy = new ApiLogProperties.MergedLog();
+        copy.setUse(merged.isUse());
+        copy.setKeepBodyMinStatus(merged.getKeepBodyMinStatus());
+        copy.setKeepBodySlowMs(merged.getKeepBodySlowMs());
+        return copy;
+    }
+
+    private static ApiLogProperties.AsyncLog copyAsync(ApiLogProperties.AsyncLog async) {
+        if (async == null) return null;
+        ApiLogProperties.AsyncLog copy = new ApiLogProperties.AsyncLog();
+        copy.setUse(async.isUse());
+        copy.setBufferSize(async.getBufferSize());
+        copy.setOverflowPolicy(async.getOverflowPolicy());
+        return copy;
+    }
+
+    private static ApiLogProperties.LogRequestResponse copyRoutes(ApiLogProperties.LogRequestResponse logRequestResponse) {
+        if (logRequestResponse == null) return null;
+        ApiLogProperties.LogRequestResponse copy = new ApiLogProperties.LogRequestResponse();
+        copy.setMaxBodySize(logRequestResponse.getMaxBodySize());
+        copy.setSecretApi(copyList(logRequestResponse.getSecretApi()));
+        copy.setInactiveApi(copyList(logRequestResponse.getInactiveApi()));
+        return copy;
+    }
+
+    private static List<String> copyList(List<String> list) {
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(list));
+    }
+}
@@ -0,0 +1,125 @@
+package log.munzi.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 실행 중에 api-log 의 api 목록, max-body-size를 조회하고 바꾸는 actuator endpoint (/actuator/apilog)
+ * <p>
+ * 장애 대응 중 재시작 없이 특정 api를 debug로 찍거나, secret, inactive를 풀어서 body까지 찍을 때 사용한다.
+ * 바꾼 값으로 새 ApiLogConfig snapshot을 만들어 한번에 교체하므로, 처리 중인 요청은 이전 snapshot으로 끝까지 처리된다.
+ * api 목록 값은 yml과 같이 ','로 구분한 문자열이며, 빈 문자열이면 목록을 비운다. 넘기지 않은 값은 그대로 둔다.
+ * <p>
+ * spring-boot-actuator 의존성은 compileOnly 이므로, actuator를 사용하는 쪽에서 bean으로 등록해서 사용한다.
+ */
+@Endpoint(id = "apilog")
+public class ApiLogConfigEndpoint {
+
+    private final ApiLogProperties apiLog;
+
+    /**
+     * @param apiLog api log 설정
+     */
+    public ApiLogConfigEndpoint(ApiLogProperties apiLog) {
+        this.apiLog = apiLog;
+    }
+
+    /**
+     * @return 현재 적용 중인 api 목록, max-body-size
+     */
+    @ReadOperation
+    public Map<String, Object> config() {
+        return describe(apiLog.getConfig());
+    }
+
+    /**
+     * 넘긴 값만 바꾼 snapshot으로 교체한다.
+     *
+     * @param debugApi            debug-api
+     * @param excludeApi          exclude-api
+     * @param headerOnlyApi       header-only-api
+     * @param requestMaxBodySize  request.max-body-size (ex. "10KB")
+     * @param requestSecretApi    request.secret-api
+     * @param requestInactiveApi  request.inactive-api
+     * @param responseMaxBodySize response.max-body-size
+     * @param responseSecretApi   response.secret-api
+     * @param responseInactiveApi response.inactive-api
+     * @return 교체 후 적용 중인 api 목록, max-body-size
+     * @throws IllegalArgumentException max-body-size 형식이 잘못되었거나, request, response 설정이 없는데 바꾸려는 경우
+     */
+    @WriteOperation
+    public synchronized Map<String, Object> update(@Nullable String debugApi, @Nullable String excludeApi, @Nullable String headerOnlyApi,
+                                                   @Nullable String requestMaxBodySize, @Nullable String requestSecretApi, @Nullable String requestInactiveApi,
+                                                   @Nullable String responseMaxBodySize, @Nullable String responseSecretApi, @Nullable String responseInactiveApi) {
+        ApiLogConfig updated = apiLog.publishConfig(current -> {
+            ApiLogProperties routes = ApiLogConfig.copyRoutes(current.getRoutes());
+            if (debugApi != null) routes.setDebugApi(split(debugApi));
+            if (excludeApi != null) routes.setExcludeApi(split(excludeApi));
+            if (headerOnlyApi != null) routes.setHeaderOnlyApi(split(headerOnlyApi));
+            apply("request", routes.getRequest(), requestMaxBodySize, requestSecretApi, requestInactiveApi);
+            apply("response", routes.getResponse(), responseMaxBodySize, responseSecretApi, responseInactiveApi);
+            return current.withRoutes(routes);
+        });
+        return describe(updated);
+    }
+
+    /**
+     * 실행 중에 바꾼 값을 버리고 yml 설정으로 다시 compile 한다.
+     *
+     * @return 적용 중인 api 목록, max-body-size
+     */
+    @DeleteOperation
+    public synchronized Map<String, Object> reset() {
+        apiLog.compileConfig();
+        return describe(apiLog.getConfig());
+    }
+
+    private static void apply(String name, ApiLogProperties.LogRequestResponse target,
+                              String maxBodySize, String secretApi, String inactiveApi) {
+        if (maxBodySize == null && secretApi == null && inactiveApi == null) return;
+        if (target == null) {
+            throw new IllegalArgumentException("api-log." + name + " 설정이 없어서 바꿀 수 없음");
+        }
+        if (maxBodySize != null) target.setMaxBodySize(maxBodySize);
+        if (secretApi != null) target.setSecretApi(split(secretApi));
+        if (inactiveApi != null) target.setInactiveApi(split(inactiveApi));
+    }
+
+    private static List<String> split(String apis) {
+        List<String> list = new ArrayList<>();
+        for (String api : apis.split(",")) {
+            if (!api.isBlank()) list.add(api.trim());
+        }
+        return list;
+    }
+
+    private static Map<String, Object> describe(ApiLogConfig config) {
+        ApiLogProperties routes = config.getRoutes();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("version", config.getVersion());
+        map.put("debugApi", routes.getDebugApi());
+        map.put("excludeApi", routes.getExcludeApi());
+        map.put("headerOnlyApi", routes.getHeaderOnlyApi());
+        map.put("request", describe(routes.getRequest(), config.getRequestMaxBodySize()));
+        map.put("response", describe(routes.getResponse(), config.getResponseMaxBodySize()));
+        return map;
+    }
+
+    private static Map<String, Object> describe(ApiLogProperties.LogRequestResponse logRequestResponse, long maxBodyBytes) {
+        if (logRequestResponse == null) return null;
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("maxBodySize", logRequestResponse.getMaxBodySize());
+        map.put("maxBodyBytes", maxBodyBytes);
+        map.put("secretApi", logRequestResponse.getSecretApi());
+        map.put("inactiveApi", logRequestResponse.getInactiveApi());
+        return map;
+    }
+}
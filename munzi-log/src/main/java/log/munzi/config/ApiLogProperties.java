@@ -1,11 +1,20 @@
 package log.munzi.config;
 
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
 
 /**
  * API Log 설정
@@ -38,14 +47,123 @@ public class ApiLogProperties {
     // defaultLevel이 아닌 debug로 찍을 api 설정
     private List<String> debugApi = new ArrayList<>();
 
+    // filter에서부터 wrapping 없이 그대로 넘길 api 설정 (ex. health check)
+    private List<String> excludeApi = new ArrayList<>();
+
+    // true일 경우 css, js, 이미지 등 정적 resource 요청은 filter에서부터 그대로 넘김
+    private boolean excludeStaticResource = false;
+
+    // body를 복사하지 않고 header, 크기, 응답시간만 찍을 api 설정
+    private List<String> headerOnlyApi = new ArrayList<>();
+
+    // REQ, RES 로그에 찍을 header 설정
+    private HeaderLog header = new HeaderLog();
+
     private boolean jsonPretty = false;
 
+    // REQ, RES 로그 형식. JSON일 경우 로그 수집기에서 바로 읽을 수 있게 json 한 줄로 찍음 (json-pretty 무시)
+    private LogFormat format = LogFormat.TEXT;
+
     // requestId를 직접 정해줄 경우, header에서 사용할 key값
     private String requestIdHeaderKey;
 
     // 500 에러가 났을 경우, ErrorAspect에서 stackTrace가 포함된 에러를 추가로 찍을 지에 대한 여부
     private boolean stackTracePrintYn = false;
 
+    // stackTrace 에러 로그 설정
+    private StackTraceLog stackTrace = new StackTraceLog();
+
+    // REQ, RES 로그를 별도 thread에서 찍을 경우의 설정
+    private AsyncLog async = new AsyncLog();
+
+    // REQ, RES 로그를 요청이 끝날 때 한번에 찍을 경우의 설정
+    private MergedLog merged = new MergedLog();
+
+    // api 별로 REQ, RES 로그 일부만 찍을 경우의 설정
+    private Sampling sampling = new Sampling();
+
+    // api 별 응답시간 metric 설정
+    private Metrics metrics = new Metrics();
+
+    // REQ, RES 로그를 로그 수집기의 bulk api로 직접 보낼 경우의 설정
+    private Shipping shipping = new Shipping();
+
+    // sampling rule 별로 찍지 않기로 한 요청 수. snapshot을 다시 compile 해도 이어서 센다.
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final SampledOutCounters sampledOutCounters = new SampledOutCounters();
+
+    // api 목록, header, sampling, max-body-size 등 요청마다 보는 설정을 compile 해 둔 snapshot. 요청 thread는 이 참조 하나만 읽는다.
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private volatile ApiLogConfig config;
+
+    /**
+     * 설정 binding 이 끝나면 api 목록, header, sampling, max-body-size, use, format, json-pretty, merged, async 설정을 snapshot으로 compile 해둔다.
+     * 설정을 직접 바꾼 경우 다시 호출해야 반영된다. (sampled-out 개수는 같은 api pattern 이면 이어서 센다)
+     * 다시 compile 해도 snapshot version은 이전 snapshot에 이어서 증가한다.
+     *
+     * @throws IllegalArgumentException max-body-size 형식이 잘못된 경우
+     */
+    @PostConstruct
+    public synchronized void compileConfig() {
+        ApiLogConfig previous = this.config;
+        this.config = ApiLogConfig.compile(this, previous != null ? previous.getVersion() + 1 : 1);
+    }
+
+    /**
+     * bean 으로 등록되지 않아 compile 되지 않은 경우에는 처음 사용할 때 compile 한다.
+     * 한 요청 안에서는 한번 꺼낸 snapshot을 계속 사용한다.
+     *
+     * @return 현재 적용 중인 snapshot
+     */
+    public ApiLogConfig getConfig() {
+        ApiLogConfig compiled = this.config;
+        if (compiled == null) {
+            synchronized (this) {
+                if (this.config == null) this.config = ApiLogConfig.compile(this);
+                compiled = this.config;
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * 실행 중에 현재 snapshot으로 새 snapshot을 만들어 통째로 바꾼다. (ApiLogConfigEndpoint)
+     * compileConfig와 같은 lock 안에서 바꾸므로, 그 사이에 다시 compile 된 snapshot을 이전 값으로 덮어쓰지 않는다.
+     *
+     * @param update 현재 snapshot으로 새 snapshot을 만드는 함수
+     * @return 바꾼 snapshot
+     */
+    synchronized ApiLogConfig publishConfig(UnaryOperator<ApiLogConfig> update) {
+        ApiLogConfig updated = update.apply(getConfig());
+        this.config = updated;
+        return updated;
+    }
+
+    /**
+     * @return api 목록을 compile 해 둔 matcher
+     */
+    public ApiRouteMatcher getRouteMatcher() {
+        return getConfig().getRouteMatcher();
+    }
+
+    /**
+     * @return header 설정을 compile 해 둔 filter
+     */
+    public ApiHeaderFilter getHeaderFilter() {
+        return getConfig().getHeaderFilter();
+    }
+
+    /**
+     * @return sampling 설정을 compile 해 둔 sampler
+     */
+    public ApiLogSampler getSampler() {
+        return getConfig().getSampler();
+    }
+
     /**
      * API Log 설정 Request, Response DTO
      */
@@ -62,4 +180,208 @@ public class ApiLogProperties {
         private List<String> inactiveApi = new ArrayList<>();
 
     }
+
+    /**
+     * API Log 비동기 설정
+     */
+    @Data
+    public static class AsyncLog {
+
+        // true일 경우 request thread에서는 로그에 필요한 값만 모으고, 로그 문자열은 별도 thread에서 만들어 찍음
+        private boolean use = false;
+
+        // ring buffer 크기. 2의 거듭제곱으로 올려서 사용
+        private int bufferSize = 8192;
+
+        // buffer가 가득 찼을 때의 처리 방식
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    }
+
+    /**
+     * REQ, RES 로그 header 설정
+     */
+    @Data
+    public static class HeaderLog {
+
+        // 찍을 header 목록 (대소문자 구분 없음). 비어있으면 모든 header를 찍음
+        private List<String> include = new ArrayList<>();
+
+        // 찍지 않을 header 목록 (ex. Cookie)
+        private List<String> exclude = new ArrayList<>();
+
+        // 값 대신 "****"를 찍을 header 목록 (ex. Authorization)
+        private List<String> mask = new ArrayList<>();
+
+    }
+
+    /**
+     * stackTrace 에러 로그 설정
+     */
+    @Data
+    public static class StackTraceLog {
+
+        // true일 경우 같은 에러(exception type + 위쪽 stack frame)는 window 동안 처음 한번만 stackTrace 전체를 찍고, 이후는 한 줄로 찍음
+        private boolean suppressRepeats = false;
+
+        // fingerprint 계산에 사용할 위쪽 stack frame 개수
+        private int fingerprintFrames = 5;
+
+        // 같은 에러의 stackTrace를 다시 전체로 찍기까지의 시간(초). 이 주기마다 fingerprint 별 발생 횟수를 한 줄로 찍음
+        private int suppressWindowSeconds = 60;
+
+        // 기억해 둘 fingerprint 최대 개수. 가득 차면 새 에러는 초당 10개까지 stackTrace 전체를 찍고, 넘으면 한 줄로 찍음
+        private int maxFingerprints = 1024;
+
+        // true일 경우 stackTrace를 줄여서 찍음 (max-depth, framework frame 접기, cause의 겹치는 frame 생략)
+        private boolean compact = false;
+
+        // compact 일 때 exception 마다 찍을 최대 frame 수 (접은 framework frame은 세지 않음). 0 이하이면 제한 없음
+        private int maxDepth = 30;
+
+        // compact 일 때 "... N framework frames"로 접을 package (CGLIB, JDK proxy class는 항상 접음)
+        private List<String> foldPackages = new ArrayList<>(List.of(
+                "org.springframework.", "org.apache.catalina.", "org.apache.coyote.", "org.apache.tomcat.",
+                "jakarta.servlet.", "java.lang.reflect.", "jdk.internal.", "sun.reflect.", "java.lang.Thread."));
+
+    }
+
+    /**
+     * REQ, RES 합쳐서 찍기 설정
+     */
+    @Data
+    public static class MergedLog {
+
+        // true일 경우 REQ 로그를 바로 찍지 않고 들고 있다가, 요청이 끝나면 RES와 합쳐 header는 한번만 찍음
+        private boolean use = false;
+
+        // response status가 이 값 이상이면 request, response body를 모두 찍음
+        private int keepBodyMinStatus = 400;
+
+        // 응답시간(ms)이 이 값 이상이면 request, response body를 모두 찍음. 0 이하이면 응답시간으로는 판단하지 않음
+        private long keepBodySlowMs = 1000;
+
+    }
+
+    /**
+     * API Log sampling 설정
+     */
+    @Data
+    public static class Sampling {
+
+        // true일 경우 rules 에 해당하는 api는 일부 요청만 REQ, RES 로그를 찍음
+        private boolean use = false;
+
+        // api 별 sampling 설정. 여러 rule에 해당하면 가장 길게 일치하는 api의 rule을 사용
+        private List<SamplingRule> rules = new ArrayList<>();
+
+    }
+
+    /**
+     * api 하나의 sampling 설정
+     */
+    @Data
+    public static class SamplingRule {
+
+        // 대상 api (ex. "GET /api/code/*")
+        private String api;
+
+        // 로그를 찍을 확률 (0.0 ~ 1.0)
+        private double rate = 1.0;
+
+        // 초당 찍을 최대 요청 수. 0이면 제한 없음
+        private int maxPerSecond = 0;
+
+    }
+
+    /**
+     * API 응답시간 metric 설정
+     */
+    @Data
+    public static class Metrics {
+
+        // true일 경우 api 별 응답시간을 Micrometer Timer로 기록함. 로그를 찍지 않는 api(inactive, sampling)도 기록함
+        private boolean use = false;
+
+        // Timer 이름
+        private String name = "munzi.api.requests";
+
+        // 내보낼 percentile 목록 (ex. 0.5, 0.95, 0.99)
+        private List<Double> percentiles = new ArrayList<>();
+
+        // true일 경우 percentile histogram bucket을 내보냄 (prometheus 등에서 percentile 계산용)
+        private boolean percentileHistogram = false;
+
+        // route tag 최대 개수. 넘어가면 "OTHER"로 기록
+        private int maxRoutes = 200;
+
+        // errorCode tag 최대 개수. 넘어가면 "OTHER"로 기록
+        private int maxErrorCodes = 50;
+
+    }
+
+    /**
+     * REQ, RES 로그 직접 전송 설정
+     */
+    @Data
+    public static class Shipping {
+
+        // true일 경우 REQ, RES 로그를 json으로 모아서 압축한 후 bulk api로 보냄 (파일을 읽는 agent 없이 수집)
+        private boolean use = false;
+
+        // bulk api url (ex. http://collector:9200/_bulk)
+        private String url;
+
+        // bulk 요청에 같이 보낼 header (ex. Authorization)
+        private Map<String, String> headers = new HashMap<>();
+
+        // index명 "server명-profile-날짜" 의 날짜 형식
+        private String indexDatePattern = "yyyy.MM.dd";
+
+        // 한번에 보낼 최대 로그 수
+        private int batchSize = 500;
+
+        // 한번에 보낼 최대 크기 (압축 전)
+        private String maxBatchSize = "5MB";
+
+        // batch가 다 차지 않아도 보내는 주기(ms)
+        private long flushIntervalMs = 1000;
+
+        // 동시에 보내는 최대 bulk 요청 수. 모두 응답을 기다리는 중이면 flush-interval-ms 동안 기다린 후 spool 파일에 씀
+        private int maxConcurrentRequests = 2;
+
+        // 보내기 전 로그를 담아둘 queue 크기. 가득 차면 버리고 버린 개수만 셈
+        private int queueSize = 10000;
+
+        private long connectTimeoutMs = 2000;
+
+        private long requestTimeoutMs = 10000;
+
+        // 로그 수집기가 느리거나 실패해서 보내지 못한 batch를 쌓아둘 파일. 수집기가 다시 응답하면 쌓인 순서대로 다시 보냄
+        private String spoolPath = "/apps/logs/munzi-log/spool/munzi-log-shipper.spool";
+
+        // spool 파일 최대 크기 (이미 다시 보낸 앞부분 포함). 다시 보낸 앞부분을 정리해도 자리가 없으면 새 batch는 버림
+        private String spoolMaxSize = "1GB";
+
+    }
+
+    /**
+     * REQ, RES 로그 형식
+     */
+    public enum LogFormat {
+        // 기존 "REQ > [...],\nheaders=..." 형식
+        TEXT,
+        // 요청마다 json 한 줄
+        JSON
+    }
+
+    /**
+     * 비동기 로그 buffer가 가득 찼을 때의 처리 방식
+     */
+    public enum OverflowPolicy {
+        // 로그를 버리고 버린 개수만 셈
+        DROP,
+        // buffer에 자리가 날 때까지 request thread가 기다림
+        BLOCK
+    }
 }
@@ -0,0 +1,113 @@
+package log.munzi.config;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * api-log.sampling.rules 설정을 compile 해두고, 요청마다 REQ, RES 로그를 찍을지 한번만 정해주는 sampler
+ * <p>
+ * api pattern 마다 rate 확률로 고르고, 골라진 요청도 초당 max-per-second 건까지만 찍는다.
+ * 초당 제한은 lock 없이 AtomicLong 하나로 관리하는 token bucket(다음 token이 생기는 시각을 저장하는 방식)이다.
+ * 찍지 않기로 한 요청 수는 pattern 마다 SampledOutCounters에 세어두므로, dashboard 에서 실제 요청 수로 환산할 때 사용한다.
+ * <p>
+ * ErrorAspect의 ERR 로그는 sampling 하지 않고, 찍지 않기로 한 요청도 2xx가 아닌 RES 로그는 찍는다.
+ */
+public final class ApiLogSampler {
+
+    /**
+     * sampling 하지 않는 sampler
+     */
+    public static final ApiLogSampler NONE = new ApiLogSampler(ApiRoutePatterns.compile(Collections.emptyMap()), Collections.emptyList());
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final ApiRoutePatterns<Rule> patterns;
+
+    private final List<Rule> rules;
+
+    private ApiLogSampler(ApiRoutePatterns<Rule> patterns, List<Rule> rules) {
+        this.patterns = patterns;
+        this.rules = rules;
+    }
+
+    /**
+     * api-log.sampling 설정으로 sampler를 만든다.
+     *
+     * @param sampling sampling 설정
+     * @param counters 찍지 않기로 한 요청 수를 셀 counter. 같은 api pattern 이면 이전 sampler의 개수를 이어서 센다.
+     * @return compile 된 sampler
+     */
+    public static ApiLogSampler compile(ApiLogProperties.Sampling sampling, SampledOutCounters counters) {
+        if (sampling == null || !sampling.isUse() || sampling.getRules() == null || sampling.getRules().isEmpty()) {
+            return NONE;
+        }
+
+        Map<String, Rule> rules = new LinkedHashMap<>();
+        for (ApiLogProperties.SamplingRule rule : sampling.getRules()) {
+            if (rule == null || rule.getApi() == null) continue;
+            String api = rule.getApi().trim();
+            rules.putIfAbsent(api, new Rule(rule.getRate(), rule.getMaxPerSecond(), counters.counter(api)));
+        }
+        return new ApiLogSampler(ApiRoutePatterns.compile(rules), List.copyOf(rules.values()));
+    }
+
+    /**
+     * 이 요청의 REQ, RES 로그를 찍을지 정한다.
+     * 해당하는 rule이 없으면 항상 찍는다.
+     *
+     * @param method request method
+     * @param uri    request uri
+     * @return 로그를 찍을 요청이면 true
+     */
+    public boolean sample(String method, String uri) {
+        if (rules.isEmpty()) return true;
+        Rule rule = patterns.match(method, uri);
+        if (rule == null) return true;
+
+        if (rule.tryAcquire()) return true;
+        rule.sampledOut.increment();
+        return false;
+    }
+
+    /**
+     * api pattern 하나의 sampling 상태
+     */
+    private static final class Rule {
+
+        private final double rate;
+
+        // token 하나가 생기는 간격. 0이면 초당 제한 없음
+        private final long intervalNanos;
+
+        // 다음 token이 생기는 시각 (System.nanoTime). 1초 이내 만큼은 미리 당겨 쓸 수 있다(burst).
+        private final AtomicLong nextTokenNanos = new AtomicLong(Long.MIN_VALUE);
+
+        // SampledOutCounters에서 꺼낸 counter. 다시 compile 해도 같은 api pattern 이면 같은 counter를 쓴다.
+        private final LongAdder sampledOut;
+
+        private Rule(double rate, int maxPerSecond, LongAdder sampledOut) {
+            this.sampledOut = sampledOut;
+            this.rate = Math.max(0, Math.min(1, rate));
+            this.intervalNanos = maxPerSecond > 0 ? Math.max(1, NANOS_PER_SECOND / maxPerSecond) : 0;
+        }
+
+        boolean tryAcquire() {
+            if (rate < 1 && (rate == 0 || ThreadLocalRandom.current().nextDouble() >= rate)) return false;
+            if (intervalNanos == 0) return true;
+
+            long now = System.nanoTime();
+            while (true) {
+                long next = nextTokenNanos.get();
+                long start = next == Long.MIN_VALUE || next - now < 0 ? now : next;
+                long updated = start + intervalNanos;
+                if (updated - now > NANOS_PER_SECOND) return false;
+                if (nextTokenNanos.compareAndSet(next, updated)) return true;
+            }
+        }
+    }
+}
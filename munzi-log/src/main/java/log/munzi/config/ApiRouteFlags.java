@@ -0,0 +1,110 @@
+package log.munzi.config;
+
+/**
+ * "METHOD URI" 한 건에 대해 ApiRouteMatcher가 판별한 api 설정 결과
+ * <p>
+ * flag 조합은 128가지 뿐이므로 미리 만들어 둔 instance를 돌려주고, 요청마다 새로 생성하지 않는다.
+ */
+public final class ApiRouteFlags {
+
+    static final int REQUEST_INACTIVE = 1;
+    static final int REQUEST_SECRET = 1 << 1;
+    static final int RESPONSE_INACTIVE = 1 << 2;
+    static final int RESPONSE_SECRET = 1 << 3;
+    static final int DEBUG = 1 << 4;
+    static final int EXCLUDED = 1 << 5;
+    static final int HEADERS_ONLY = 1 << 6;
+
+    private static final ApiRouteFlags[] CACHE = new ApiRouteFlags[1 << 7];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new ApiRouteFlags(i);
+        }
+    }
+
+    /**
+     * 어떤 설정에도 걸리지 않은 api
+     */
+    public static final ApiRouteFlags NONE = CACHE[0];
+
+    private final int bits;
+
+    private ApiRouteFlags(int bits) {
+        this.bits = bits;
+    }
+
+    static ApiRouteFlags of(int bits) {
+        return CACHE[bits & (CACHE.length - 1)];
+    }
+
+    /**
+     * @return this 와 other 의 설정을 모두 가진 flag
+     */
+    ApiRouteFlags or(ApiRouteFlags other) {
+        return of(bits | other.bits);
+    }
+
+    /**
+     * @return request.inactive-api 에 해당하는지 여부
+     */
+    public boolean isRequestInactive() {
+        return (bits & REQUEST_INACTIVE) != 0;
+    }
+
+    /**
+     * @return request.secret-api 에 해당하는지 여부
+     */
+    public boolean isRequestSecret() {
+        return (bits & REQUEST_SECRET) != 0;
+    }
+
+    /**
+     * @return response.inactive-api 에 해당하는지 여부
+     */
+    public boolean isResponseInactive() {
+        return (bits & RESPONSE_INACTIVE) != 0;
+    }
+
+    /**
+     * @return response.secret-api 에 해당하는지 여부
+     */
+    public boolean isResponseSecret() {
+        return (bits & RESPONSE_SECRET) != 0;
+    }
+
+    /**
+     * @return debug-api 에 해당하는지 여부
+     */
+    public boolean isDebug() {
+        return (bits & DEBUG) != 0;
+    }
+
+    /**
+     * @return exclude-api 또는 static resource 여서 filter에서부터 아무것도 하지 않을지 여부
+     */
+    public boolean isExcluded() {
+        return (bits & EXCLUDED) != 0;
+    }
+
+    /**
+     * @return header-only-api 에 해당해 body를 복사하지 않고 크기만 찍을지 여부
+     */
+    public boolean isHeadersOnly() {
+        return (bits & HEADERS_ONLY) != 0;
+    }
+
+    /**
+     * @return 로그를 하나도 찍지 않아 filter에서 wrapping 없이 그대로 넘겨도 되는지 여부
+     */
+    public boolean isBypass() {
+        return isExcluded() || (isRequestInactive() && isResponseInactive());
+    }
+
+    @Override
+    public String toString() {
+        return "ApiRouteFlags(requestInactive=" + isRequestInactive() + ", requestSecret=" + isRequestSecret()
+                + ", responseInactive=" + isResponseInactive() + ", responseSecret=" + isResponseSecret()
+                + ", debug=" + isDebug() + ", excluded=" + isExcluded() + ", headersOnly=" + isHeadersOnly() + ")";
+    }
+}
@@ -0,0 +1,109 @@
+package log.munzi.config;
+
+import java.util.List;
+
+/**
+ * inactive-api, secret-api, debug-api, exclude-api, header-only-api 설정을 한번만 trie로 compile 해두고,
+ * 요청마다 "METHOD URI"를 한번만 훑어서 해당하는 설정을 ApiRouteFlags로 돌려주는 matcher
+ * <p>
+ * 설정 형식은 기존과 같다.
+ * "GET /api/code" 처럼 쓰면 정확히 일치하는 api만, "GET /api/code/*" 처럼 '*'로 끝나면 '*' 앞부분으로 시작하는 api 모두 해당된다.
+ * 만들어진 후에는 변경되지 않으므로 여러 thread에서 공유해도 된다.
+ */
+public final class ApiRouteMatcher {
+
+    /**
+     * 아무 설정도 없는 matcher
+     */
+    public static final ApiRouteMatcher EMPTY = new ApiRouteMatcher(builder().build(), false);
+
+    // exclude-static-resource 설정 시 제외할 확장자
+    private static final String[] STATIC_RESOURCE_EXTENSIONS = {
+            "css", "js", "map", "png", "jpg", "jpeg", "gif", "ico", "svg", "webp", "woff", "woff2", "ttf", "eot"};
+
+    // 일치하는 모든 pattern의 flag를 합쳐둔 trie
+    private final ApiRoutePatterns<ApiRouteFlags> patterns;
+
+    private final boolean excludeStaticResource;
+
+    private ApiRouteMatcher(ApiRoutePatterns<ApiRouteFlags> patterns, boolean excludeStaticResource) {
+        this.patterns = patterns;
+        this.excludeStaticResource = excludeStaticResource;
+    }
+
+    /**
+     * ApiLogProperties 의 api 목록들로 matcher를 만든다.
+     *
+     * @param apiLog api log 설정
+     * @return compile 된 matcher
+     */
+    public static ApiRouteMatcher compile(ApiLogProperties apiLog) {
+        ApiRoutePatterns.Builder<ApiRouteFlags> builder = builder();
+        ApiLogProperties.LogRequestResponse request = apiLog.getRequest();
+        if (request != null) {
+            add(builder, request.getInactiveApi(), ApiRouteFlags.REQUEST_INACTIVE);
+            add(builder, request.getSecretApi(), ApiRouteFlags.REQUEST_SECRET);
+        }
+        ApiLogProperties.LogRequestResponse response = apiLog.getResponse();
+        if (response != null) {
+            add(builder, response.getInactiveApi(), ApiRouteFlags.RESPONSE_INACTIVE);
+            add(builder, response.getSecretApi(), ApiRouteFlags.RESPONSE_SECRET);
+        }
+        add(builder, apiLog.getDebugApi(), ApiRouteFlags.DEBUG);
+        add(builder, apiLog.getExcludeApi(), ApiRouteFlags.EXCLUDED);
+        add(builder, apiLog.getHeaderOnlyApi(), ApiRouteFlags.HEADERS_ONLY);
+        return new ApiRouteMatcher(builder.build(), apiLog.isExcludeStaticResource());
+    }
+
+    /**
+     * method + " " + uri 에 해당하는 설정을 찾는다.
+     * 문자열을 이어붙이지 않고 method, ' ', uri 순서로 trie를 한번만 훑는다.
+     *
+     * @param method request method (ex. GET)
+     * @param uri    request uri (ex. /api/code/1)
+     * @return 해당하는 설정 flag
+     */
+    public ApiRouteFlags match(String method, String uri) {
+        ApiRouteFlags flags = patterns.match(method, uri);
+        if (flags == null) flags = ApiRouteFlags.NONE;
+        if (excludeStaticResource && isStaticResource(uri)) {
+            flags = flags.or(ApiRouteFlags.of(ApiRouteFlags.EXCLUDED));
+        }
+        return flags;
+    }
+
+    /**
+     * 같은 pattern이 여러 설정에 있거나, 짧은 '*' pattern과 긴 pattern에 모두 해당하면 flag를 합친다.
+     */
+    private static ApiRoutePatterns.Builder<ApiRouteFlags> builder() {
+        return new ApiRoutePatterns.Builder<>(ApiRouteFlags::or, ApiRouteFlags::or);
+    }
+
+    /**
+     * api 목록을 trie에 추가한다.
+     * '*' 앞부분이 비어있는 설정은 기존처럼 무시한다.
+     */
+    private static void add(ApiRoutePatterns.Builder<ApiRouteFlags> builder, List<String> apiList, int bit) {
+        if (apiList == null) return;
+        ApiRouteFlags flags = ApiRouteFlags.of(bit);
+        for (String api : apiList) {
+            builder.add(api, flags);
+        }
+    }
+
+    /**
+     * uri의 마지막 경로가 정적 resource 확장자로 끝나는지 확인한다.
+     */
+    private static boolean isStaticResource(String uri) {
+        if (uri == null) return false;
+        int dot = uri.lastIndexOf('.');
+        if (dot < 0 || dot < uri.lastIndexOf('/') || dot == uri.length() - 1) return false;
+        int length = uri.length() - dot - 1;
+        for (String extension : STATIC_RESOURCE_EXTENSIONS) {
+            if (extension.length() == length && uri.regionMatches(true, dot + 1, extension, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,190 @@
+package log.munzi.config;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BinaryOperator;
+
+/**
+ * "GET /api/code", "GET /api/code/*" 형식의 api pattern 마다 값을 하나씩 붙여두고,
+ * 요청의 "METHOD URI"에 가장 길게 일치하는 pattern의 값을 찾아주는 trie
+ * <p>
+ * "GET /api/code" 처럼 쓰면 정확히 일치하는 api만, "GET /api/code/*" 처럼 '*'로 끝나면 '*' 앞부분으로 시작하는 api 모두 해당된다.
+ * 같은 길이라면 '*'로 끝나는 pattern보다 정확히 일치하는 pattern이 우선한다.
+ * 짧은 pattern의 값을 긴 pattern에 합쳐두면(Builder의 inherit) 일치하는 모든 pattern의 값을 합친 값을 찾는다. (ApiRouteMatcher)
+ * 만들어진 후에는 변경되지 않으므로 여러 thread에서 공유해도 된다.
+ *
+ * @param <T> pattern에 붙일 값
+ */
+public final class ApiRoutePatterns<T> {
+
+    private final Node<T> root;
+
+    private ApiRoutePatterns(Node<T> root) {
+        this.root = root;
+    }
+
+    /**
+     * pattern 과 값으로 trie를 만든다.
+     * '*' 앞부분이 비어있는 pattern은 무시하고, 같은 pattern이 여러번 나오면 먼저 나온 값을 쓴다.
+     *
+     * @param patterns api pattern 목록
+     * @return compile 된 trie
+     * @param <T> pattern에 붙일 값
+     */
+    public static <T> ApiRoutePatterns<T> compile(Map<String, T> patterns) {
+        Builder<T> builder = new Builder<>((first, second) -> first, (shorter, longer) -> longer);
+        for (Map.Entry<String, T> entry : patterns.entrySet()) {
+            builder.add(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * method + " " + uri 에 가장 길게 일치하는 pattern의 값을 찾는다.
+     * 문자열을 이어붙이지 않고 method, ' ', uri 순서로 trie를 한번만 훑는다.
+     *
+     * @param method request method (ex. GET)
+     * @param uri    request uri (ex. /api/code/1)
+     * @return 일치하는 pattern의 값, 없으면 null
+     */
+    public T match(String method, String uri) {
+        T best = root.prefix;
+        Node<T> node = root;
+        int methodLength = method == null ? 0 : method.length();
+        int uriLength = uri == null ? 0 : uri.length();
+        int length = methodLength + 1 + uriLength;
+
+        for (int i = 0; i < length; i++) {
+            char c;
+            if (i < methodLength) {
+                c = method.charAt(i);
+            } else if (i == methodLength) {
+                c = ' ';
+            } else {
+                c = uri.charAt(i - methodLength - 1);
+            }
+
+            node = node.child(c);
+            // 끝까지 가지 못했으면 exact pattern은 해당 없고 지나온 '*' pattern만 유효하다.
+            if (node == null) return best;
+            if (node.prefix != null) best = node.prefix;
+        }
+
+        return node.exact != null ? node.exact : best;
+    }
+
+    /**
+     * pattern을 하나씩 추가해서 trie를 만드는 builder
+     *
+     * @param <T> pattern에 붙일 값
+     */
+    static final class Builder<T> {
+
+        private final BuilderNode<T> root = new BuilderNode<>();
+
+        private final BinaryOperator<T> merge;
+
+        private final BinaryOperator<T> inherit;
+
+        /**
+         * @param merge   같은 pattern이 여러번 나왔을 때 (먼저 나온 값, 나중 값)을 합치는 함수
+         * @param inherit 짧은 '*' pattern의 값을 더 긴 pattern에 물려줄 때 (짧은 pattern의 값, 긴 pattern의 값)을 합치는 함수
+         */
+        Builder(BinaryOperator<T> merge, BinaryOperator<T> inherit) {
+            this.merge = merge;
+            this.inherit = inherit;
+        }
+
+        /**
+         * '*' 앞부분이 비어있는 pattern은 무시한다.
+         *
+         * @param api   api pattern
+         * @param value pattern에 붙일 값
+         * @return this
+         */
+        Builder<T> add(String api, T value) {
+            if (api == null || value == null) return this;
+            String pattern = api.trim();
+            int asterisk = pattern.indexOf('*');
+            if (pattern.isEmpty() || asterisk == 0) return this;
+
+            BuilderNode<T> node = root;
+            int end = asterisk < 0 ? pattern.length() : asterisk;
+            for (int i = 0; i < end; i++) {
+                node = node.children.computeIfAbsent(pattern.charAt(i), c -> new BuilderNode<>());
+            }
+            if (asterisk < 0) {
+                node.exact = node.exact == null ? value : merge.apply(node.exact, value);
+            } else {
+                node.prefix = node.prefix == null ? value : merge.apply(node.prefix, value);
+            }
+            return this;
+        }
+
+        ApiRoutePatterns<T> build() {
+            return new ApiRoutePatterns<>(root.freeze(null, inherit));
+        }
+    }
+
+    /**
+     * compile 된 trie node
+     * prefix, exact 에는 지나온 '*' pattern의 값을 inherit 으로 합친 값이 들어있다.
+     */
+    private static final class Node<T> {
+
+        private final char[] keys;
+        private final Node<T>[] children;
+        private final T prefix;
+        private final T exact;
+
+        private Node(char[] keys, Node<T>[] children, T prefix, T exact) {
+            this.keys = keys;
+            this.children = children;
+            this.prefix = prefix;
+            this.exact = exact;
+        }
+
+        Node<T> child(char c) {
+            if (keys.length == 0) return null;
+            if (keys.length == 1) return keys[0] == c ? children[0] : null;
+            int idx = Arrays.binarySearch(keys, c);
+            return idx < 0 ? null : children[idx];
+        }
+    }
+
+    /**
+     * compile 중에만 사용하는 변경 가능한 trie node
+     */
+    private static final class BuilderNode<T> {
+
+        private final Map<Character, BuilderNode<T>> children = new TreeMap<>();
+        private T prefix;
+        private T exact;
+
+        /**
+         * @param inherited 지나온 '*' pattern의 값을 합친 값, 없으면 null
+         */
+        @SuppressWarnings("unchecked")
+        Node<T> freeze(T inherited, BinaryOperator<T> inherit) {
+            T effectivePrefix = combine(inherited, prefix, inherit);
+            T effectiveExact = exact == null ? null : combine(effectivePrefix, exact, inherit);
+
+            char[] keys = new char[children.size()];
+            Node<T>[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, BuilderNode<T>> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                nodes[i] = entry.getValue().freeze(effectivePrefix, inherit);
+                i++;
+            }
+            return new Node<>(keys, nodes, prefix == null ? null : effectivePrefix, effectiveExact);
+        }
+
+        private static <T> T combine(T shorter, T longer, BinaryOperator<T> inherit) {
+            if (shorter == null) return longer;
+            if (longer == null) return shorter;
+            return inherit.apply(shorter, longer);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package log.munzi.config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * sampling rule(api pattern) 별로 REQ, RES 로그를 찍지 않기로 한 요청 수
+ * <p>
+ * ApiLogSampler는 설정을 다시 compile 할 때마다(ApiLogConfigEndpoint reset 등) 새로 만들어지므로, 개수는 sampler 밖의 여기에 두고
+ * 같은 api pattern 이면 새 sampler도 같은 counter를 이어서 센다. metric 값이 줄어들지 않게 하기 위함이다.
+ * <p>
+ * counter는 compile 할 때만 만들어지고, 요청 thread는 sampler가 들고 있는 LongAdder만 증가시킨다.
+ */
+public final class SampledOutCounters {
+
+    private final Map<String, LongAdder> counters = new LinkedHashMap<>();
+
+    private final List<BiConsumer<String, LongAdder>> listeners = new ArrayList<>();
+
+    /**
+     * api pattern의 counter를 꺼낸다. 처음 보는 api pattern 이면 새로 만들고 listener에게 알린다.
+     *
+     * @param api sampling rule의 api pattern
+     * @return 이 api pattern의 counter
+     */
+    synchronized LongAdder counter(String api) {
+        LongAdder counter = counters.get(api);
+        if (counter == null) {
+            counter = new LongAdder();
+            counters.put(api, counter);
+            for (BiConsumer<String, LongAdder> listener : listeners) {
+                listener.accept(api, counter);
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * 지금 있는 counter와 이후 새로 생기는 counter마다 listener를 부른다. (metric 등록용)
+     *
+     * @param listener api pattern, counter를 받는 listener
+     */
+    public synchronized void subscribe(BiConsumer<String, LongAdder> listener) {
+        listeners.add(listener);
+        counters.forEach(listener);
+    }
+
+    /**
+     * @return api pattern 별 찍지 않기로 한 요청 수. 설정에서 빠진 rule도 그동안 센 값이 남아있다.
+     */
+    public synchronized Map<String, Long> getCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counters.forEach((api, counter) -> counts.put(api, counter.sum()));
+        return counts;
+    }
+}
@@ -0,0 +1,76 @@
+package log.munzi.error;
+
+import log.munzi.common.util.CallSiteMarkers;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.interceptor.ApiLatencyRecorder;
+import log.munzi.stacktrace.error.StackTraceErrorWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Objects;
+
+/**
+ * ERR 로그를 찍어주는 writer
+ * <p>
+ * ErrorAspect(exception handler return 후)와 LoggingUtil(filter 등 exception handler 밖에서 직접 찍는 경우)이 같이 사용하므로,
+ * 두 곳의 ERR 로그 형식, marker, errorCode metric tag, 500 에러 stackTrace 로그가 항상 같다. (WebFlux는 ReactiveErrorLogger)
+ * logger 이름은 기존과 같이 ErrorAspect를 사용한다.
+ * <p>
+ * example format : ERR > httpStatus=400, errorCode="E001", errorType="org.springframework.web.bind.MethodArgumentNotValidException", message="널이어서는 안됩니다",\nstackTrace="Validation failed for argument..."
+ */
+public final class ErrorLogWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ErrorAspect.class);
+
+    private final ApiLogProperties apiLog;
+
+    private final StackTraceErrorWriter stackTraceErrorWriter;
+
+    /**
+     * @param apiLog                api log 설정
+     * @param stackTraceErrorWriter 500 에러일 때 stackTrace 전체를 찍는 writer
+     */
+    public ErrorLogWriter(ApiLogProperties apiLog, StackTraceErrorWriter stackTraceErrorWriter) {
+        this.apiLog = apiLog;
+        this.stackTraceErrorWriter = stackTraceErrorWriter;
+    }
+
+    /**
+     * ERR 로그를 찍는다.
+     * error log format : ERR > httpStatus=${httpStatus}, errorCode="${errorCode}", errorType="${errorType}", message="${message}",\nstackTrace="${stackTrace}"
+     *
+     * @param fields    error response에서 꺼낸 httpStatus, errorCode, message
+     * @param exception error exception
+     */
+    public void write(ErrorResponseResolver.Fields fields, Exception exception) {
+        Integer httpStatus = fields.httpStatus();
+        String errorCode = fields.errorCode();
+        String message = fields.message();
+
+        // api 응답시간 metric의 errorCode tag로 사용
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            requestAttributes.setAttribute(ApiLatencyRecorder.ERROR_CODE_ATTRIBUTE, errorCode, RequestAttributes.SCOPE_REQUEST);
+        }
+
+        String errorType = exception.getClass().getName();
+        String stackTrace;
+        if (errorType.equals("org.springframework.web.bind.MethodArgumentNotValidException")) {
+            MethodArgumentNotValidException e = (MethodArgumentNotValidException) exception;
+            stackTrace = String.format("[%s] %s", Objects.requireNonNull(e.getBindingResult().getFieldError()).getField(),
+                    e.getBindingResult().getAllErrors().get(0).getDefaultMessage());
+        } else {
+            stackTrace = exception.getMessage();
+        }
+
+        log.error(CallSiteMarkers.ERROR, "ERR > httpStatus={}, errorCode=\"{}\", errorType=\"{}\", message=\"{}\",\nstackTrace=\"{}\"", httpStatus, errorCode, errorType, message, stackTrace);
+
+        if (apiLog.isStackTracePrintYn() && httpStatus != null && HttpStatus.valueOf(httpStatus).is5xxServerError()) {
+            stackTraceErrorWriter.writeStackTraceError(httpStatus, errorCode, errorType, message, exception);
+        }
+    }
+}
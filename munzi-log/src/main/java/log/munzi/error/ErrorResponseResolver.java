@@ -0,0 +1,197 @@
+package log.munzi.error;
+
+import org.springframework.http.HttpStatusCode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * exception handler의 return 값(error DTO, ResponseEntity, ProblemDetail 등)에서 httpStatus, errorCode, message를 꺼내주는 resolver
+ * <p>
+ * 예전에는 new JSONObject(returnValue)로 모든 getter를 호출해 json을 만든 뒤 이름으로 찾았는데,
+ * 에러가 몰릴 때 매번 reflection 하는 비용이 커서 class 마다 한번만 getter를 찾아 MethodHandle로 cache 해두고 필요한 값만 읽는다.
+ * 찾는 이름과 우선순위는 기존 JSONObject 방식과 같다.
+ * <p>
+ * ErrorAspect, LoggingUtil, ReactiveErrorLogger에서 같이 사용한다.
+ */
+public final class ErrorResponseResolver {
+
+    // 꺼낼 값의 이름. 이 이름의 getter만 cache 한다.
+    private static final Set<String> PROPERTY_NAMES = Set.of(
+            "httpStatus", "status", "statusCodeValue",
+            "errorCode", "code", "properties", "body",
+            "message", "detail", "errorMessage");
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<Getters> GETTERS = new ClassValue<>() {
+        @Override
+        protected Getters computeValue(Class<?> type) {
+            return findGetters(type);
+        }
+    };
+
+    private ErrorResponseResolver() {
+    }
+
+    /**
+     * error response에서 꺼낸 값
+     *
+     * @param httpStatus httpStatus, status, statusCodeValue 순서로 찾은 값
+     * @param errorCode  errorCode, code, properties.errorCode, body.code, body.errorCode 순서로 찾은 값. 없으면 ""
+     * @param message    message, detail, body.message, body.errorMessage 순서로 찾은 값. 없으면 ""
+     */
+    public record Fields(Integer httpStatus, String errorCode, String message) {
+    }
+
+    /**
+     * error response에서 httpStatus, errorCode, message를 꺼낸다.
+     *
+     * @param returnValue exception handler의 return 값
+     * @return 꺼낸 값, 읽을 수 있는 값이 하나도 없으면 null
+     */
+    public static Fields resolve(Object returnValue) {
+        if (returnValue == null) return null;
+        if (returnValue instanceof Map<?, ?> map ? map.isEmpty() : !GETTERS.get(returnValue.getClass()).readable()) {
+            return null;
+        }
+
+        Integer httpStatus = toInteger(get(returnValue, "httpStatus"));
+        if (httpStatus == null) httpStatus = toInteger(get(returnValue, "status"));
+        if (httpStatus == null) httpStatus = toInteger(get(returnValue, "statusCodeValue"));
+
+        String errorCode = "";
+        Object body = null;
+        Object value;
+        if ((value = get(returnValue, "errorCode")) != null) {
+            errorCode = String.valueOf(value);
+        } else if ((value = get(returnValue, "code")) != null) {
+            errorCode = String.valueOf(value);
+        } else if ((value = get(returnValue, "properties")) != null) {
+            Object propertyErrorCode = get(value, "errorCode");
+            if (propertyErrorCode != null) errorCode = String.valueOf(propertyErrorCode);
+        } else if ((body = get(returnValue, "body")) != null) {
+            if ((value = get(body, "code")) != null) {
+                errorCode = String.valueOf(value);
+            } else if ((value = get(body, "errorCode")) != null) {
+                errorCode = String.valueOf(value);
+            }
+        }
+
+        String message = "";
+        if ((value = get(returnValue, "message")) != null) {
+            message = String.valueOf(value);
+        } else if ((value = get(returnValue, "detail")) != null) {
+            message = String.valueOf(value);
+        } else if (body != null || (body = get(returnValue, "body")) != null) {
+            if ((value = get(body, "message")) != null) {
+                message = String.valueOf(value);
+            } else if ((value = get(body, "errorMessage")) != null) {
+                message = String.valueOf(value);
+            }
+        }
+
+        return new Fields(httpStatus, errorCode, message);
+    }
+
+    /**
+     * target의 name 값을 읽는다. Map이면 key로, 아니면 cache 해둔 getter로 읽는다.
+     * getter에서 Exception이 나면 JSONObject와 같이 값이 없는 것으로 본다.
+     */
+    private static Object get(Object target, String name) {
+        if (target == null) return null;
+        if (target instanceof Map<?, ?> map) return map.get(name);
+
+        MethodHandle getter = GETTERS.get(target.getClass()).handles().get(name);
+        if (getter == null) return null;
+        try {
+            return getter.invokeExact(target);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private static Integer toInteger(Object value) {
+        if (value instanceof Number number) return number.intValue();
+        if (value instanceof HttpStatusCode statusCode) return statusCode.value();
+        if (value instanceof String text) {
+            try {
+                return Integer.parseInt(text.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * JSONObject가 key로 쓰던 것과 같은 규칙으로 public getter(getX, isX)를 찾는다. record는 accessor(x())도 찾는다.
+     */
+    private static Getters findGetters(Class<?> type) {
+        Map<String, MethodHandle> getters = new HashMap<>();
+        boolean readable = false;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        if (type.isRecord()) {
+            for (RecordComponent component : type.getRecordComponents()) {
+                readable = true;
+                if (PROPERTY_NAMES.contains(component.getName())) {
+                    putGetter(getters, lookup, component.getName(), component.getAccessor());
+                }
+            }
+        }
+
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() > 0
+                    || method.getReturnType() == Void.TYPE || method.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            String name = propertyName(method.getName());
+            if (name == null) continue;
+            readable = true;
+            if (PROPERTY_NAMES.contains(name)) {
+                putGetter(getters, lookup, name, method);
+            }
+        }
+        return new Getters(Map.copyOf(getters), readable);
+    }
+
+    /**
+     * class 하나의 cache 된 getter
+     *
+     * @param handles  꺼낼 값 이름 별 getter
+     * @param readable getter가 하나라도 있는지 여부. 없으면 기존 JSONObject가 비어있던 경우와 같이 로그를 찍지 않는다.
+     */
+    private record Getters(Map<String, MethodHandle> handles, boolean readable) {
+    }
+
+    private static void putGetter(Map<String, MethodHandle> getters, MethodHandles.Lookup lookup, String name, Method method) {
+        if (getters.containsKey(name) || !method.trySetAccessible()) return;
+        try {
+            getters.put(name, lookup.unreflect(method).asType(GETTER_TYPE));
+        } catch (IllegalAccessException e) {
+            // 읽을 수 없는 getter는 없는 값으로 본다.
+        }
+    }
+
+    private static String propertyName(String methodName) {
+        String key;
+        if (methodName.startsWith("get") && methodName.length() > 3) {
+            key = methodName.substring(3);
+        } else if (methodName.startsWith("is") && methodName.length() > 2) {
+            key = methodName.substring(2);
+        } else {
+            return null;
+        }
+        if (key.length() == 1) return key.toLowerCase();
+        if (!Character.isUpperCase(key.charAt(1))) return Character.toLowerCase(key.charAt(0)) + key.substring(1);
+        return key;
+    }
+}
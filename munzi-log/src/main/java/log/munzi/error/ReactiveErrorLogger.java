@@ -0,0 +1,68 @@
+package log.munzi.error;
+
+import log.munzi.config.ApiLogProperties;
+import log.munzi.interceptor.ReactiveLoggingWebFilter;
+import log.munzi.stacktrace.error.StackTraceErrorWriter;
+import org.slf4j.MDC;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+/**
+ * WebFlux(Netty) 서버에서 ERR 로그를 찍어주는 logger
+ * <p>
+ * WebFlux의 exception handler는 MDC가 아닌 Reactor Context로 requestId를 넘겨받으므로, ErrorAspect 대신 이 logger를 사용한다.
+ * ReactiveLoggingWebFilter가 Reactor Context에 담은 requestId, applicationName을 로그를 찍는 순간에만 MDC에 넣고,
+ * ERR 로그 형식, marker, 500 에러 stackTrace 로그는 ErrorAspect와 같은 ErrorLogWriter로 찍는다.
+ * webflux 의존성은 compileOnly 이므로, WebFlux를 사용하는 쪽에서 bean으로 등록해서 사용한다.
+ * <p>
+ * example : return reactiveErrorLogger.recordErrorLog(e, errorResponse);
+ *
+ * log type : ERR
+ */
+public class ReactiveErrorLogger {
+
+    private final ErrorLogWriter errorLogWriter;
+
+    /**
+     * @param apiLog                api log 설정
+     * @param stackTraceErrorWriter 500 에러일 때 stackTrace 전체를 찍는 writer
+     */
+    public ReactiveErrorLogger(ApiLogProperties apiLog, StackTraceErrorWriter stackTraceErrorWriter) {
+        this.errorLogWriter = new ErrorLogWriter(apiLog, stackTraceErrorWriter);
+    }
+
+    /**
+     * record error log
+     * 구독될 때 Reactor Context의 requestId로 error log를 찍고, error response를 그대로 돌려준다.
+     * error log format : ERR > httpStatus=${httpStatus}, errorCode="${errorCode}", errorType="${errorType}", message="${message}",\nstackTrace="${stackTrace}"
+     *
+     * @param exception   error exception
+     * @param returnValue error response (error DTO)
+     * @param <T>         error response type
+     * @return error response를 담은 Mono
+     */
+    public <T> Mono<T> recordErrorLog(Exception exception, T returnValue) {
+        return Mono.deferContextual(context -> {
+            this.write(context, exception, returnValue);
+            return Mono.justOrEmpty(returnValue);
+        });
+    }
+
+    private void write(ContextView context, Exception exception, Object returnValue) {
+        ErrorResponseResolver.Fields fields = ErrorResponseResolver.resolve(returnValue);
+        if (fields == null) {
+            return;
+        }
+
+        String requestId = context.getOrDefault(ReactiveLoggingWebFilter.REQUEST_ID_CONTEXT_KEY, null);
+        String applicationName = context.getOrDefault(ReactiveLoggingWebFilter.APPLICATION_NAME_CONTEXT_KEY, null);
+        if (requestId != null) MDC.put("requestId", requestId);
+        if (applicationName != null) MDC.put("applicationName", applicationName);
+        try {
+            errorLogWriter.write(fields, exception);
+        } finally {
+            MDC.remove("requestId");
+            MDC.remove("applicationName");
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package log.munzi.interceptor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import log.munzi.config.ApiLogProperties;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * api 별 응답시간을 Micrometer Timer로 기록하는 recorder
+ * <p>
+ * route tag는 요청 uri가 아닌 handler의 best matching pattern(ex. /api/code/{id})을 쓰고,
+ * method, status class(2xx, 4xx ...), errorCode(ErrorAspect에서 request attribute로 넘겨준 값)를 tag로 붙인다.
+ * route, errorCode 종류가 설정한 개수를 넘으면 "OTHER"로 기록해 tag 종류가 끝없이 늘어나지 않게 한다.
+ * <p>
+ * LoggingInterceptor.afterCompletion에서 모든 요청에 대해 호출되므로, 로그를 찍지 않는 api(inactive, sampling)도 기록된다.
+ */
+public final class ApiLatencyRecorder {
+
+    /**
+     * ErrorAspect가 errorCode를 담아두는 request attribute key
+     */
+    public static final String ERROR_CODE_ATTRIBUTE = ApiLatencyRecorder.class.getName() + ".errorCode";
+
+    /**
+     * filter를 거치지 않은 요청의 시작 시각(System.nanoTime)을 담아두는 request attribute key
+     */
+    static final String START_NANOS_ATTRIBUTE = ApiLatencyRecorder.class.getName() + ".startNanos";
+
+    private static final String OTHER = "OTHER";
+
+    private static final String NONE = "NONE";
+
+    private static final String UNKNOWN = "UNKNOWN";
+
+    private static final String[] STATUS_CLASSES = {UNKNOWN, "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private static final List<String> METHODS = List.of("GET", "POST", "PUT", "PATCH", "DELETE", "HEAD", "OPTIONS", "TRACE");
+
+    private final MeterRegistry registry;
+
+    private final ApiLogProperties.Metrics metrics;
+
+    private final double[] percentiles;
+
+    private final ConcurrentHashMap<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Set<String> routes = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> errorCodes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param registry MeterRegistry
+     * @param apiLog   api log 설정
+     */
+    public ApiLatencyRecorder(MeterRegistry registry, ApiLogProperties apiLog) {
+        this.registry = registry;
+        this.metrics = apiLog.getMetrics();
+        this.percentiles = metrics.getPercentiles() == null ? new double[0]
+                : metrics.getPercentiles().stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    /**
+     * 요청 한 건의 응답시간을 기록한다.
+     *
+     * @param request  HttpServletRequest
+     * @param response HttpServletResponse
+     * @param ex       handler에서 처리되지 않은 Exception
+     */
+    public void record(HttpServletRequest request, HttpServletResponse response, Exception ex) {
+        long startNanos;
+        ExchangeContext context = ExchangeContext.find(request);
+        if (context != null) {
+            startNanos = context.getStartNanos();
+        } else if (request.getAttribute(START_NANOS_ATTRIBUTE) instanceof Long start) {
+            startNanos = start;
+        } else {
+            return;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        // 처리되지 않은 Exception은 이후 container에서 500으로 응답한다.
+        int status = ex != null && response.getStatus() < 400 ? 500 : response.getStatus();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Object errorCode = request.getAttribute(ERROR_CODE_ATTRIBUTE);
+
+        TimerKey key = new TimerKey(
+                bounded(routes, pattern == null ? UNKNOWN : pattern.toString(), metrics.getMaxRoutes()),
+                METHODS.contains(request.getMethod()) ? request.getMethod() : OTHER,
+                status / 100 < STATUS_CLASSES.length ? STATUS_CLASSES[Math.max(0, status / 100)] : UNKNOWN,
+                errorCode == null || errorCode.toString().isEmpty() ? NONE : bounded(errorCodes, errorCode.toString(), metrics.getMaxErrorCodes()));
+        timers.computeIfAbsent(key, this::register).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer register(TimerKey key) {
+        return Timer.builder(metrics.getName())
+                .description("api 응답시간")
+                .tag("route", key.route())
+                .tag("method", key.method())
+                .tag("status", key.status())
+                .tag("errorCode", key.errorCode())
+                .publishPercentiles(percentiles)
+                .publishPercentileHistogram(metrics.isPercentileHistogram())
+                .register(registry);
+    }
+
+    /**
+     * 이미 기록한 값이면 그대로, 처음 보는 값이면 최대 개수를 넘지 않을 때만 추가하고 넘으면 "OTHER"를 돌려준다.
+     * 동시에 추가되는 경우 최대 개수를 조금 넘을 수 있다.
+     */
+    private static String bounded(Set<String> known, String value, int max) {
+        if (known.contains(value)) return value;
+        if (known.size() >= max) return OTHER;
+        known.add(value);
+        return value;
+    }
+
+    private record TimerKey(String route, String method, String status, String errorCode) {
+    }
+}
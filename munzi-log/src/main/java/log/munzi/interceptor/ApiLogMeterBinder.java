@@ -0,0 +1,54 @@
+package log.munzi.interceptor;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import log.munzi.config.ApiLogProperties;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 로그를 찍지 않거나 버린 수를 Micrometer에 등록하는 binder
+ * <p>
+ * api-log.metrics.use(응답시간 Timer)와 관계없이 MeterRegistry가 있으면 LoggingInterceptor에서 등록한다.
+ * - {name}.log.sampled.out : sampling rule의 api pattern 별로 REQ, RES 로그를 찍지 않은 요청 수
+ * - {name}.log.dropped, {name}.log.queue.depth : api-log.async.use 일 때 async buffer에서 버려진 로그 수, 남은 로그 수
+ * name은 api-log.metrics.name
+ */
+final class ApiLogMeterBinder implements MeterBinder {
+
+    private final ApiLogProperties apiLog;
+
+    private final AsyncApiLogDispatcher asyncDispatcher;
+
+    /**
+     * @param apiLog          api log 설정
+     * @param asyncDispatcher async 설정일 때의 dispatcher, 아니면 null
+     */
+    ApiLogMeterBinder(ApiLogProperties apiLog, AsyncApiLogDispatcher asyncDispatcher) {
+        this.apiLog = apiLog;
+        this.asyncDispatcher = asyncDispatcher;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        String name = apiLog.getMetrics().getName();
+
+        // dashboard에서 로그 건수를 실제 요청 수로 환산할 때 사용한다.
+        // counter는 설정을 다시 compile 해도 이어서 세므로 값이 줄어들지 않는다.
+        apiLog.getSampledOutCounters().subscribe((api, sampledOut) ->
+                FunctionCounter.builder(name + ".log.sampled.out", sampledOut, LongAdder::sum)
+                        .tag("api", api)
+                        .description("api-log.sampling으로 REQ, RES 로그를 찍지 않은 요청 수")
+                        .register(registry));
+        if (asyncDispatcher != null) {
+            FunctionCounter.builder(name + ".log.dropped", asyncDispatcher, AsyncApiLogDispatcher::getDroppedCount)
+                    .description("async buffer가 가득 차서 버려진 로그 수")
+                    .register(registry);
+            Gauge.builder(name + ".log.queue.depth", asyncDispatcher, AsyncApiLogDispatcher::getQueueDepth)
+                    .description("async buffer에 남아 아직 찍히지 않은 로그 수")
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package log.munzi.interceptor;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import log.munzi.common.util.CallSiteMarkers;
+import log.munzi.config.ApiLogConfig;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.interceptor.body.BodyRendererRegistry;
+import log.munzi.shipping.ApiLogShipper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * ApiLogSnapshot으로 REQ, RES 로그 문자열을 만들어 찍어주는 renderer
+ * <p>
+ * header 이어붙이기, body 정리, json pretty 등 문자열을 만드는 작업은 모두 여기서 한다.
+ * body는 BodyRendererRegistry에서 Content-Encoding을 풀고 content type에 맞게 문자열로 만든다.
+ * api-log.async.use 설정에 따라 request thread 또는 AsyncApiLogDispatcher의 thread에서 호출된다.
+ * api-log.format이 JSON이면 JsonApiLogWriter로 json 한 줄을 찍는다.
+ * api-log.shipping.use가 true이면 찍은 로그와 같은 내용의 json 한 줄을 ApiLogShipper로 넘겨 로그 수집기로 보낸다.
+ *
+ * log type : REQ, RES, EXG
+ */
+public class ApiLogRenderer {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // 로그는 기존과 같이 LoggingInterceptor logger로 찍는다.
+    private final Logger log = LoggerFactory.getLogger(LoggingInterceptor.class);
+
+    private final ObjectMapper objectMapper;
+
+    private final ApiLogProperties apiLog;
+
+    private final JsonApiLogWriter jsonWriter;
+
+    private final BodyRendererRegistry bodyRenderers;
+
+    private final ApiLogShipper shipper;
+
+    /**
+     * @param objectMapper json pretty 등에 사용할 objectMapper
+     * @param apiLog       api log 설정
+     */
+    public ApiLogRenderer(ObjectMapper objectMapper, ApiLogProperties apiLog) {
+        this(objectMapper, apiLog, BodyRendererRegistry.defaults());
+    }
+
+    /**
+     * @param objectMapper  json pretty 등에 사용할 objectMapper
+     * @param apiLog        api log 설정
+     * @param bodyRenderers content type, encoding 별 body renderer 목록
+     */
+    public ApiLogRenderer(ObjectMapper objectMapper, ApiLogProperties apiLog, BodyRendererRegistry bodyRenderers) {
+        this(objectMapper, apiLog, bodyRenderers, null);
+    }
+
+    /**
+     * @param objectMapper  json pretty 등에 사용할 objectMapper
+     * @param apiLog        api log 설정
+     * @param bodyRenderers content type, encoding 별 body renderer 목록
+     * @param shipper       api-log.shipping.use 일 때 로그를 보낼 shipper, 아니면 null
+     */
+    public ApiLogRenderer(ObjectMapper objectMapper, ApiLogProperties apiLog, BodyRendererRegistry bodyRenderers, ApiLogShipper shipper) {
+        this.objectMapper = objectMapper;
+        this.apiLog = apiLog;
+        this.bodyRenderers = bodyRenderers;
+        this.shipper = shipper;
+        this.jsonWriter = new JsonApiLogWriter(objectMapper.getFactory(), bodyRenderers);
+    }
+
+    /**
+     * snapshot 종류에 맞게 REQ 또는 RES 로그를 찍는다.
+     *
+     * @param snapshot request thread에서 모아둔 값
+     * @throws IOException json parsing Exception
+     */
+    public void render(ApiLogSnapshot snapshot) throws IOException {
+        ApiLogConfig config = apiLog.getConfig();
+        if (config.getFormat() == ApiLogProperties.LogFormat.JSON) {
+            renderJson(snapshot, config);
+            return;
+        }
+
+        if (snapshot.getType() == ApiLogSnapshot.Type.REQUEST) {
+            renderRequest(snapshot, config.isJsonPretty());
+        } else if (snapshot.getType() == ApiLogSnapshot.Type.EXCHANGE) {
+            renderExchange(snapshot, config.isJsonPretty());
+        } else {
+            renderResponse(snapshot, config.isJsonPretty());
+        }
+        if (shipper != null && isEnabled(snapshot)) {
+            ship(snapshot, jsonWriter.write(snapshot, config));
+        }
+    }
+
+    private void renderJson(ApiLogSnapshot snapshot, ApiLogConfig config) throws IOException {
+        if (!isEnabled(snapshot)) return;
+
+        String json = jsonWriter.write(snapshot, config);
+        if (snapshot.isDebug()) {
+            log.debug(marker(snapshot), json);
+        } else {
+            log.info(marker(snapshot), json);
+        }
+        if (shipper != null) ship(snapshot, json);
+    }
+
+    /**
+     * 로그 level 설정으로 찍히지 않는 로그는 보내지도 않는다.
+     */
+    private boolean isEnabled(ApiLogSnapshot snapshot) {
+        return snapshot.isDebug() ? log.isDebugEnabled() : log.isInfoEnabled();
+    }
+
+    private void ship(ApiLogSnapshot snapshot, String json) {
+        shipper.offer(json, snapshot.getApplicationName() != null ? snapshot.getApplicationName() : MDC.get("applicationName"));
+    }
+
+    private void renderRequest(ApiLogSnapshot snapshot, boolean jsonPretty) throws IOException {
+        String headers = headers(snapshot);
+        String params = toJsonLikeString(snapshot.getParamNames(), snapshot.getParamValues(), false);
+
+        String body = body(snapshot);
+
+        if (jsonPretty) {
+            headers = pretty(headers);
+            params = pretty(params);
+            if (body.startsWith("{") && body.endsWith("}")) {
+                body = pretty(body);
+            }
+        }
+
+        if (snapshot.isDebug()) {
+            log.debug(CallSiteMarkers.REQUEST, "REQ > [{}],\nheaders={},\nparams={},\nbody={}", snapshot.getRequestMethodUri(), headers, params, body);
+        } else {
+            log.info(CallSiteMarkers.REQUEST, "REQ > [{}],\nheaders={},\nparams={},\nbody={}", snapshot.getRequestMethodUri(), headers, params, body);
+        }
+    }
+
+    private void renderResponse(ApiLogSnapshot snapshot, boolean jsonPretty) throws IOException {
+        String headers = headers(snapshot);
+        String contentType = snapshot.getContentType();
+        boolean json = contentType != null && contentType.contains("application/json");
+        String payload = body(snapshot);
+
+        if (jsonPretty && json) {
+            headers = pretty(headers);
+            if (payload.startsWith("{") && payload.endsWith("}")) {
+                payload = pretty(payload);
+            }
+        }
+
+        long responseTimeMs = snapshot.getElapsedNanos() / 1_000_000L;
+        if (snapshot.isDebug()) {
+            log.debug(CallSiteMarkers.RESPONSE, "RES > {} [{}] {}ms,\nheaders={},\npayload={}", snapshot.getStatus(), snapshot.getRequestMethodUri(), responseTimeMs, headers, payload);
+        } else {
+            log.info(CallSiteMarkers.RESPONSE, "RES > {} [{}] {}ms,\nheaders={},\npayload={}", snapshot.getStatus(), snapshot.getRequestMethodUri(), responseTimeMs, headers, payload);
+        }
+    }
+
+    /**
+     * api-log.merged.use 일 때 요청이 끝나면 REQ, RES를 합쳐 한번에 찍는다. header는 한번만 찍는다.
+     * body를 남기지 않기로 한 요청은 status, 응답시간만 한 줄로 찍는다.
+     */
+    private void renderExchange(ApiLogSnapshot snapshot, boolean jsonPretty) throws IOException {
+        long responseTimeMs = snapshot.getElapsedNanos() / 1_000_000L;
+        if (snapshot.isSummaryOnly()) {
+            if (snapshot.isDebug()) {
+                log.debug(CallSiteMarkers.EXCHANGE, "EXG > {} [{}] {}ms", snapshot.getStatus(), snapshot.getRequestMethodUri(), responseTimeMs);
+            } else {
+                log.info(CallSiteMarkers.EXCHANGE, "EXG > {} [{}] {}ms", snapshot.getStatus(), snapshot.getRequestMethodUri(), responseTimeMs);
+            }
+            return;
+        }
+
+        ApiLogSnapshot request = snapshot.getRequest();
+        String headers = headers(snapshot);
+        String params = request == null ? "{}" : toJsonLikeString(request.getParamNames(), request.getParamValues(), false);
+        String body = request == null ? "" : body(request);
+        String payload = body(snapshot);
+
+        if (jsonPretty) {
+            headers = pretty(headers);
+            params = pretty(params);
+            if (body.startsWith("{") && body.endsWith("}")) {
+                body = pretty(body);
+            }
+            if (payload.startsWith("{") && payload.endsWith("}")) {
+                payload = pretty(payload);
+            }
+        }
+
+        if (snapshot.isDebug()) {
+            log.debug(CallSiteMarkers.EXCHANGE, "EXG > {} [{}] {}ms,\nheaders={},\nparams={},\nbody={},\npayload={}", snapshot.getStatus(), snapshot.getRequestMethodUri(), responseTimeMs, headers, params, body, payload);
+        } else {
+            log.info(CallSiteMarkers.EXCHANGE, "EXG > {} [{}] {}ms,\nheaders={},\nparams={},\nbody={},\npayload={}", snapshot.getStatus(), snapshot.getRequestMethodUri(), responseTimeMs, headers, params, body, payload);
+        }
+    }
+
+    private static Marker marker(ApiLogSnapshot snapshot) {
+        if (snapshot.getType() == ApiLogSnapshot.Type.REQUEST) return CallSiteMarkers.REQUEST;
+        return snapshot.getType() == ApiLogSnapshot.Type.EXCHANGE ? CallSiteMarkers.EXCHANGE : CallSiteMarkers.RESPONSE;
+    }
+
+    private String body(ApiLogSnapshot snapshot) {
+        if (snapshot.getBodySummary() != null) return snapshot.getBodySummary();
+        if (snapshot.getBody() == null) return "";
+        // 찍을 body만 여기까지 오므로, 압축을 풀거나 minify 하는 작업도 찍을 때만 한다.
+        return bodyRenderers.render(snapshot, bodyLimit(snapshot, apiLog.getConfig()));
+    }
+
+    /**
+     * body를 풀거나 문자열로 만들 때의 최대 크기. 압축된 body도 이 크기 이상 풀지 않는다.
+     *
+     * @param snapshot 로그 값
+     * @param config   현재 적용 중인 설정
+     * @return REQ 이면 request.max-body-size, 아니면 response.max-body-size (byte)
+     */
+    static int bodyLimit(ApiLogSnapshot snapshot, ApiLogConfig config) {
+        long limit = snapshot.getType() == ApiLogSnapshot.Type.REQUEST ? config.getRequestMaxBodySize() : config.getResponseMaxBodySize();
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(limit, 0));
+    }
+
+    /**
+     * json 문자열을 Map 등으로 읽지 않고 parser에서 pretty printer generator로 그대로 옮긴다.
+     *
+     * @param json json 문자열
+     * @return pretty print 된 json 문자열
+     * @throws IOException json parsing Exception
+     */
+    private String pretty(String json) throws IOException {
+        StringWriter writer = new StringWriter(json.length() * 2);
+        try (JsonParser parser = objectMapper.getFactory().createParser(json);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            generator.setPrettyPrinter(new DefaultPrettyPrinter());
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return writer.toString();
+    }
+
+    private String headers(ApiLogSnapshot snapshot) {
+        if (snapshot.getHeaders() != null) return snapshot.getHeaders();
+        return toJsonLikeString(snapshot.getHeaderNames(), snapshot.getHeaderValues(), true);
+    }
+
+    private static String toJsonLikeString(String[] names, String[] values, boolean replaceQuote) {
+        return toJsonLikeString(names, values, names == null ? 0 : names.length, replaceQuote);
+    }
+
+    /**
+     * name, value 쌍을 {"name":"value", ...} 형식의 문자열로 만든다.
+     *
+     * @param names        이름 목록
+     * @param values       값 목록
+     * @param count        사용할 개수
+     * @param replaceQuote 값에 포함된 '"'를 '\''로 바꾸고 '\\', 제어문자를 escape 할지 여부
+     * @return {"name":"value", ...} 형식의 문자열
+     */
+    static String toJsonLikeString(String[] names, String[] values, int count, boolean replaceQuote) {
+        StringBuilder builder = new StringBuilder(64 * (count + 1));
+        builder.append('{');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append('"');
+            builder.append(names[i]);
+            builder.append("\":\"");
+            if (replaceQuote) {
+                appendEscaped(builder, values[i]);
+            } else {
+                builder.append(values[i]);
+            }
+            builder.append('"');
+        }
+        builder.append('}');
+        return builder.toString();
+    }
+
+    /**
+     * 값을 한번만 훑으면서 '"'는 '\''로 바꾸고, '\\'와 제어문자는 escape 해서 붙인다.
+     * 바꿀 문자가 없는 구간은 그대로 한번에 붙인다.
+     */
+    static void appendEscaped(StringBuilder builder, String value) {
+        if (value == null) {
+            builder.append((String) null);
+            return;
+        }
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) continue;
+
+            builder.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"' -> builder.append('\'');
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> builder.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        builder.append(value, start, length);
+    }
+}
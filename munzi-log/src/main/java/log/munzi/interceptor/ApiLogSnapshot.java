@@ -0,0 +1,79 @@
+package log.munzi.interceptor;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.charset.Charset;
+
+/**
+ * REQ, RES 로그 한 줄을 만드는 데 필요한 값만 request thread에서 모아둔 snapshot
+ * <p>
+ * 만들어진 후에는 변경되지 않으므로, 로그 문자열을 만드는 작업을 다른 thread로 넘겨도 된다.
+ * 로그 문자열(header 이어붙이기, body 정리, json pretty 등)은 ApiLogRenderer에서 만든다.
+ */
+@Getter
+@Builder
+public final class ApiLogSnapshot {
+
+    /**
+     * 로그 종류
+     */
+    public enum Type {
+        REQUEST, RESPONSE,
+        // api-log.merged.use 일 때 요청이 끝나면 REQ, RES를 합쳐서 찍는 로그
+        EXCHANGE
+    }
+
+    private final Type type;
+
+    // MDC 값. 다른 thread에서 찍을 때 다시 MDC에 넣어준다.
+    private final String requestId;
+
+    private final String applicationName;
+
+    // "METHOD URI"
+    private final String requestMethodUri;
+
+    // response status (RES)
+    private final int status;
+
+    // 요청 시작부터 걸린 시간 (RES)
+    private final long elapsedNanos;
+
+    // 이미 만들어진 headers 문자열. 없으면 headerNames, headerValues로 만든다.
+    private final String headers;
+
+    private final String[] headerNames;
+
+    private final String[] headerValues;
+
+    private final String[] paramNames;
+
+    private final String[] paramValues;
+
+    private final String contentType;
+
+    private final Charset charset;
+
+    // Content-Encoding (ex. gzip). 있으면 body는 압축된 그대로 담고, 로그 문자열을 만들 때 max-body-size 까지만 푼다.
+    private final String contentEncoding;
+
+    // 로그에 찍을 body (max-body-size 이하로 잘라둔 값)
+    private final byte[] body;
+
+    // body 전체 크기 (byte). 0이면 body 크기를 사용한다.
+    private final long bodySize;
+
+    // body 대신 찍을 문구 (ex. [secret! 1 KB], [multipart/form-data]). 있으면 body는 무시한다.
+    private final String bodySummary;
+
+    // debug level로 찍을지 여부
+    private final boolean debug;
+
+    // EXCHANGE 로그에서 preHandle 때 모아둔 request 값 (headers 제외). request 로그가 inactive 이면 null
+    private final ApiLogSnapshot request;
+
+    // EXCHANGE 로그에서 header, body 없이 한 줄 요약만 찍을지 여부
+    private final boolean summaryOnly;
+
+}
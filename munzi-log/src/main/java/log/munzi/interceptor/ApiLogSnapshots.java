@@ -0,0 +1,222 @@
+package log.munzi.interceptor;
+
+import log.munzi.common.util.ByteSizeFormatter;
+import log.munzi.config.ApiLogConfig;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.config.ApiRouteFlags;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * REQ, RES, EXG snapshot을 만드는 규칙을 한곳에 모아둔 builder
+ * <p>
+ * servlet(LoggingInterceptor)과 WebFlux(ReactiveLoggingWebFilter)는 body를 복사해 두는 방법만 다르고,
+ * secret, header-only, multipart, max-body-size, sampling, merged 설정에 따라 body 대신 무엇을 찍을지는 같아야 하므로
+ * body를 읽는 부분만 CapturedBody로 받고 나머지는 여기서 정한다.
+ */
+final class ApiLogSnapshots {
+
+    private ApiLogSnapshots() {
+    }
+
+    /**
+     * 복사해 둔 body를 꺼내는 방법. servlet, WebFlux가 각자 구현한다.
+     */
+    interface CapturedBody {
+
+        /**
+         * @return 로그에 찍을 body. max-body-size를 넘었거나 끝까지 복사하지 못했으면 null
+         * @throws IOException body를 읽는 중 Exception
+         */
+        byte[] bytes() throws IOException;
+
+        /**
+         * @return multipart/form-data body의 part 목록 요약. 만들지 못했으면 null
+         */
+        default String multipartSummary() {
+            return null;
+        }
+    }
+
+    /**
+     * REQ snapshot을 만든다. body는 아래 순서로 정한다.
+     * body가 없으면 "{}", secret이면 "[secret! 크기]", header-only 이면 "[크기]",
+     * multipart 이면 part 목록, max-body-size를 넘었으면 "[크기]", 아니면 body.
+     *
+     * @param requestMethodUri "METHOD URI"
+     * @param routeFlags       요청에 해당하는 api 설정
+     * @param paramNames       query parameter 이름
+     * @param paramValues      query parameter 값
+     * @param contentType      request Content-Type
+     * @param charset          request charset
+     * @param contentEncoding  request Content-Encoding
+     * @param hasBody          body가 있는 요청인지 여부
+     * @param bodySize         body 전체 크기 (byte)
+     * @param body             복사해 둔 body
+     * @return headers, requestId 를 제외한 값이 채워진 snapshot builder
+     * @throws IOException body를 읽는 중 Exception
+     */
+    static ApiLogSnapshot.ApiLogSnapshotBuilder request(String requestMethodUri, ApiRouteFlags routeFlags, String[] paramNames, String[] paramValues,
+                                                        String contentType, Charset charset, String contentEncoding,
+                                                        boolean hasBody, long bodySize, CapturedBody body) throws IOException {
+        byte[] bytes = null;
+        String bodySummary = null;
+        if (!hasBody) {
+            bodySummary = "{}";
+        } else if (routeFlags.isRequestSecret()) {
+            bodySummary = "[secret! " + ByteSizeFormatter.format(bodySize) + "]";
+        } else if (routeFlags.isHeadersOnly()) {
+            bodySummary = "[" + ByteSizeFormatter.format(bodySize) + "]";
+        } else if (contentType.contains("multipart/form-data")) {
+            // part 목록을 만들지 못했으면 (handler가 body를 읽지 않은 경우 등) 크기만 찍는다.
+            bodySummary = body.multipartSummary();
+            if (bodySummary == null) bodySummary = "[multipart/form-data, " + ByteSizeFormatter.format(bodySize) + "]";
+        } else {
+            bytes = body.bytes();
+            if (bytes == null) bodySummary = "[" + ByteSizeFormatter.format(bodySize) + "]";
+        }
+
+        return ApiLogSnapshot.builder()
+                .type(ApiLogSnapshot.Type.REQUEST)
+                .requestMethodUri(requestMethodUri)
+                .paramNames(paramNames)
+                .paramValues(paramValues)
+                .contentType(contentType)
+                .charset(charset)
+                .contentEncoding(contentEncoding)
+                .body(bytes)
+                .bodySize(bodySize)
+                .bodySummary(bodySummary)
+                .debug(routeFlags.isDebug());
+    }
+
+    /**
+     * RES snapshot을 만든다. (merged 설정이면 EXG)
+     * sampling 되지 않은 요청은 "[not sampled]", merged 설정에서 한 줄 요약만 찍는 요청은 body 없이 찍는다.
+     *
+     * @param requestMethodUri "METHOD URI"
+     * @param routeFlags       요청에 해당하는 api 설정
+     * @param status           response status
+     * @param elapsedNanos     응답시간
+     * @param contentType      response Content-Type
+     * @param charset          response charset
+     * @param contentEncoding  response Content-Encoding
+     * @param sampled          body를 복사한 요청인지 여부
+     * @param summaryOnly      merged 설정에서 한 줄 요약만 찍을지 여부
+     * @param bodySize         복사한 body 전체 크기 (byte)
+     * @param body             복사해 둔 body
+     * @param merged           merged 설정 여부
+     * @param pendingRequest   merged 설정일 때 담아둔 request 값, 없으면 null
+     * @return headers, requestId 를 제외한 값이 채워진 snapshot builder
+     * @throws IOException body를 읽는 중 Exception
+     */
+    static ApiLogSnapshot.ApiLogSnapshotBuilder response(String requestMethodUri, ApiRouteFlags routeFlags, int status, long elapsedNanos,
+                                                         String contentType, Charset charset, String contentEncoding,
+                                                         boolean sampled, boolean summaryOnly, long bodySize, CapturedBody body,
+                                                         boolean merged, ApiLogSnapshot pendingRequest) throws IOException {
+        byte[] bytes = null;
+        String bodySummary = null;
+        long payloadSize = 0;
+        if (!sampled) {
+            // sampling 되지 않았지만 2xx가 아닌 응답. body는 복사하지 않았으므로 status, header, 응답시간만 찍는다.
+            bodySummary = "[not sampled]";
+        } else if (summaryOnly) {
+            // 한 줄 요약만 찍으므로 body는 찍지 않는다.
+        } else if (contentType != null) {
+            // content type 별로 찍는 방식은 ApiLogRenderer의 BodyRendererRegistry에서 정한다.
+            if (contentType.contains("multipart/form-data")) {
+                bodySummary = "[multipart/form-data]";
+            } else {
+                payloadSize = bodySize;
+            }
+
+            if (routeFlags.isResponseSecret()) {
+                bodySummary = "[secret! " + ByteSizeFormatter.format(payloadSize) + "]";
+            } else if (routeFlags.isHeadersOnly()) {
+                bodySummary = "[" + ByteSizeFormatter.format(payloadSize) + "]";
+            } else if (bodySummary == null && payloadSize > 0) {
+                bytes = body.bytes();
+                // max-body-size를 넘은 body는 크기만 찍는다.
+                if (bytes == null) bodySummary = "[" + ByteSizeFormatter.format(payloadSize) + "]";
+            }
+        }
+
+        ApiLogSnapshot.ApiLogSnapshotBuilder snapshot = ApiLogSnapshot.builder()
+                .type(ApiLogSnapshot.Type.RESPONSE)
+                .requestMethodUri(requestMethodUri)
+                .status(status)
+                .elapsedNanos(elapsedNanos)
+                .contentType(contentType)
+                .charset(charset)
+                .contentEncoding(contentEncoding)
+                .body(bytes)
+                .bodySize(payloadSize)
+                .bodySummary(bodySummary)
+                .debug(routeFlags.isDebug());
+        if (merged) {
+            snapshot.type(ApiLogSnapshot.Type.EXCHANGE)
+                    .request(summaryOnly ? null : pendingRequest)
+                    .summaryOnly(summaryOnly);
+        }
+        return snapshot;
+    }
+
+    /**
+     * response 로그를 찍지 않는 요청에서 merged 설정으로 담아둔 request 값만 status, 응답시간과 함께 찍는 EXG snapshot을 만든다.
+     *
+     * @param requestMethodUri "METHOD URI"
+     * @param routeFlags       요청에 해당하는 api 설정
+     * @param status           response status
+     * @param elapsedNanos     응답시간
+     * @param summaryOnly      한 줄 요약만 찍을지 여부
+     * @param pendingRequest   담아둔 request 값
+     * @return headers, requestId 를 제외한 값이 채워진 snapshot builder
+     */
+    static ApiLogSnapshot.ApiLogSnapshotBuilder pendingExchange(String requestMethodUri, ApiRouteFlags routeFlags, int status, long elapsedNanos,
+                                                                boolean summaryOnly, ApiLogSnapshot pendingRequest) {
+        return ApiLogSnapshot.builder()
+                .type(ApiLogSnapshot.Type.EXCHANGE)
+                .requestMethodUri(requestMethodUri)
+                .status(status)
+                .elapsedNanos(elapsedNanos)
+                .request(summaryOnly ? null : pendingRequest)
+                .summaryOnly(summaryOnly)
+                .debug(routeFlags.isDebug());
+    }
+
+    /**
+     * REQ, RES 로그를 하나도 찍지 않는 요청인지 확인한다.
+     *
+     * @param config     요청을 처리하는 설정 snapshot
+     * @param routeFlags 요청에 해당하는 api 설정
+     * @return exclude-api, 정적 resource 이거나 request, response 로그가 모두 inactive 이면 true
+     */
+    static boolean isBypass(ApiLogConfig config, ApiRouteFlags routeFlags) {
+        return routeFlags.isBypass()
+                || ((!config.isRequestLogged() || routeFlags.isRequestInactive())
+                && (!config.isResponseLogged() || routeFlags.isResponseInactive()));
+    }
+
+    /**
+     * api-log.merged 설정에 따라 요청이 끝난 뒤 body까지 찍을지 정한다.
+     * 에러 응답이거나 느린 요청만 body를 남기고, 빠른 정상 응답은 한 줄 요약만 남긴다.
+     *
+     * @param merged       merged 설정
+     * @param status       response status
+     * @param elapsedNanos 응답시간
+     * @return body까지 찍을 경우 true
+     */
+    static boolean isBodyKept(ApiLogProperties.MergedLog merged, int status, long elapsedNanos) {
+        if (status >= merged.getKeepBodyMinStatus()) return true;
+        return merged.getKeepBodySlowMs() > 0 && elapsedNanos >= merged.getKeepBodySlowMs() * 1_000_000L;
+    }
+
+    /**
+     * @param status response status
+     * @return 2xx 이면 true
+     */
+    static boolean isSuccessful(int status) {
+        return status >= 200 && status < 300;
+    }
+}
@@ -0,0 +1,168 @@
+package log.munzi.interceptor;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import log.munzi.config.ApiLogProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * REQ, RES 로그를 request thread가 아닌 별도 thread에서 찍어주는 dispatcher
+ * <p>
+ * request thread에서는 ApiLogSnapshot을 ring buffer(disruptor)에 넣기만 하고,
+ * "munzi-log-async" thread가 꺼내서 ApiLogRenderer로 로그를 찍는다.
+ * buffer가 가득 찼을 때는 설정(api-log.async.overflow-policy)에 따라 버리거나(DROP) 자리가 날 때까지 기다린다(BLOCK).
+ */
+@Slf4j
+public class AsyncApiLogDispatcher implements AutoCloseable {
+
+    private static final EventTranslatorOneArg<Slot, ApiLogSnapshot> TRANSLATOR = (slot, sequence, snapshot) -> slot.snapshot = snapshot;
+
+    private final Disruptor<Slot> disruptor;
+
+    private final RingBuffer<Slot> ringBuffer;
+
+    private final ApiLogProperties.OverflowPolicy overflowPolicy;
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    /**
+     * @param renderer 로그를 찍을 renderer
+     * @param async    async log 설정
+     */
+    public AsyncApiLogDispatcher(ApiLogRenderer renderer, ApiLogProperties.AsyncLog async) {
+        this.overflowPolicy = async.getOverflowPolicy() == null ? ApiLogProperties.OverflowPolicy.DROP : async.getOverflowPolicy();
+
+        this.disruptor = new Disruptor<>(Slot::new, ceilingPowerOfTwo(async.getBufferSize()), runnable -> {
+            Thread thread = new Thread(runnable, "munzi-log-async");
+            thread.setDaemon(true);
+            return thread;
+        }, ProducerType.MULTI, new BlockingWaitStrategy());
+        this.disruptor.handleEventsWith(new RenderHandler(renderer));
+        this.disruptor.setDefaultExceptionHandler(new LoggingExceptionHandler());
+        this.ringBuffer = disruptor.start();
+    }
+
+    /**
+     * snapshot을 ring buffer에 넣는다.
+     *
+     * @param snapshot 로그에 찍을 값
+     * @return buffer에 넣었으면 true, 가득 차서 버렸으면 false
+     */
+    public boolean dispatch(ApiLogSnapshot snapshot) {
+        if (overflowPolicy == ApiLogProperties.OverflowPolicy.BLOCK) {
+            ringBuffer.publishEvent(TRANSLATOR, snapshot);
+            return true;
+        }
+
+        if (!ringBuffer.tryPublishEvent(TRANSLATOR, snapshot)) {
+            droppedCount.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 아직 찍히지 않고 buffer에 남아있는 로그 수
+     */
+    public long getQueueDepth() {
+        return ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
+    }
+
+    /**
+     * @return buffer가 가득 차서 버려진 로그 수
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * @return ring buffer 크기
+     */
+    public int getBufferSize() {
+        return ringBuffer.getBufferSize();
+    }
+
+    /**
+     * buffer에 남은 로그를 최대 5초 동안 찍고 thread를 종료한다.
+     */
+    @Override
+    public void close() {
+        try {
+            disruptor.shutdown(5, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            log.warn("AsyncApiLogDispatcher 종료 중 남은 로그 {}건을 찍지 못함", getQueueDepth());
+            disruptor.halt();
+        }
+    }
+
+    private static int ceilingPowerOfTwo(int size) {
+        if (size <= 1) return 1;
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    /**
+     * ring buffer의 한 칸. 미리 만들어 두고 snapshot만 바꿔 끼운다.
+     */
+    private static final class Slot {
+        private ApiLogSnapshot snapshot;
+    }
+
+    /**
+     * snapshot의 MDC 값을 다시 넣고 로그를 찍는 consumer
+     */
+    private static final class RenderHandler implements EventHandler<Slot> {
+
+        private final ApiLogRenderer renderer;
+
+        private RenderHandler(ApiLogRenderer renderer) {
+            this.renderer = renderer;
+        }
+
+        @Override
+        public void onEvent(Slot slot, long sequence, boolean endOfBatch) throws Exception {
+            ApiLogSnapshot snapshot = slot.snapshot;
+            slot.snapshot = null;
+            if (snapshot == null) return;
+
+            MDC.put("requestId", snapshot.getRequestId());
+            MDC.put("applicationName", snapshot.getApplicationName());
+            try {
+                renderer.render(snapshot);
+            } finally {
+                MDC.remove("requestId");
+                MDC.remove("applicationName");
+            }
+        }
+    }
+
+    /**
+     * 로그 하나를 찍다가 실패해도 consumer thread가 멈추지 않도록 error 로그만 남긴다.
+     */
+    private static final class LoggingExceptionHandler implements ExceptionHandler<Slot> {
+
+        @Override
+        public void handleEventException(Throwable ex, long sequence, Slot event) {
+            log.error("AsyncApiLogDispatcher에서 로그를 찍다가 Exception 발생", ex);
+        }
+
+        @Override
+        public void handleOnStartException(Throwable ex) {
+            log.error("AsyncApiLogDispatcher 시작 중 Exception 발생", ex);
+        }
+
+        @Override
+        public void handleOnShutdownException(Throwable ex) {
+            log.error("AsyncApiLogDispatcher 종료 중 Exception 발생", ex);
+        }
+    }
+}
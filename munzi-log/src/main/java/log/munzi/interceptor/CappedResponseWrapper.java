@@ -0,0 +1,183 @@
+package log.munzi.interceptor;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Response body를 client에게 바로 써주면서, 로그용으로 앞부분(max-body-size 이하)만 복사해두는 wrapper
+ * <p>
+ * ContentCachingResponseWrapper처럼 body 전체를 heap에 모아두지 않기 때문에 파일 다운로드, 큰 json 목록도 바로 client에게 흘러간다.
+ * 전체 크기는 따로 세어두므로 로그의 "[size]"는 정확하다.
+ */
+public class CappedResponseWrapper extends HttpServletResponseWrapper {
+
+    // 로그용으로 복사해 둘 최대 크기
+    private final int captureLimit;
+
+    private byte[] captured;
+    private int capturedLength;
+    // client에게 쓴 전체 byte 수
+    private long contentSize;
+
+    private TeeOutputStream teeOutputStream;
+    private PrintWriter writer;
+
+    /**
+     * @param response     HttpServletResponse
+     * @param captureLimit 로그용으로 복사해 둘 최대 크기 (byte)
+     */
+    public CappedResponseWrapper(HttpServletResponse response, int captureLimit) {
+        super(response);
+        this.captureLimit = Math.max(captureLimit, 0);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (teeOutputStream == null) {
+            teeOutputStream = new TeeOutputStream(super.getOutputStream());
+        }
+        return teeOutputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            String encoding = getCharacterEncoding();
+            Charset charset = StringUtils.hasLength(encoding) ? Charset.forName(encoding) : StandardCharsets.ISO_8859_1;
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), charset));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) writer.flush();
+        super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        clearCaptured();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        clearCaptured();
+    }
+
+    private void clearCaptured() {
+        capturedLength = 0;
+        contentSize = 0;
+    }
+
+    /**
+     * writer로 쓴 내용이 encoder에 남아있을 수 있어서, 읽기 전에 flush 한다.
+     */
+    private void flushWriter() {
+        if (writer != null) writer.flush();
+    }
+
+    /**
+     * @return 로그용으로 복사해 둔 body 앞부분
+     */
+    public byte[] getContentAsByteArray() {
+        flushWriter();
+        return captured == null ? new byte[0] : Arrays.copyOf(captured, capturedLength);
+    }
+
+    /**
+     * @return client에게 쓴 body 전체 크기
+     */
+    public long getContentSize() {
+        flushWriter();
+        return contentSize;
+    }
+
+    /**
+     * @return body 전체가 복사되어 있는지 여부
+     */
+    public boolean isFullyCaptured() {
+        flushWriter();
+        return contentSize == capturedLength;
+    }
+
+    private void capture(byte[] b, int off, int len) {
+        contentSize += len;
+        int copy = Math.min(len, captureLimit - capturedLength);
+        if (copy <= 0) return;
+
+        if (captured == null || captured.length < capturedLength + copy) {
+            int newLength = Math.min(captureLimit, Math.max(capturedLength + copy, captured == null ? 256 : captured.length * 2));
+            captured = captured == null ? new byte[newLength] : Arrays.copyOf(captured, newLength);
+        }
+        System.arraycopy(b, off, captured, capturedLength, copy);
+        capturedLength += copy;
+    }
+
+    private void capture(int b) {
+        contentSize++;
+        if (capturedLength >= captureLimit) return;
+
+        if (captured == null || captured.length == capturedLength) {
+            int newLength = Math.min(captureLimit, captured == null ? 256 : captured.length * 2);
+            captured = captured == null ? new byte[newLength] : Arrays.copyOf(captured, newLength);
+        }
+        captured[capturedLength++] = (byte) b;
+    }
+
+    /**
+     * client에게 바로 쓰면서 앞부분만 복사하는 stream
+     */
+    private final class TeeOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream original;
+
+        private TeeOutputStream(ServletOutputStream original) {
+            this.original = original;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            original.write(b);
+            capture(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            original.write(b, off, len);
+            capture(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            original.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            original.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return original.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            original.setWriteListener(writeListener);
+        }
+    }
+}
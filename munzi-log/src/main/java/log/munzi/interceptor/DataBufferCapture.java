@@ -0,0 +1,110 @@
+package log.munzi.interceptor;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * WebFlux의 body(DataBuffer flux)가 지나갈 때 로그용으로 앞부분만 복사해 두는 capture
+ * <p>
+ * DataBuffer의 read position은 건드리지 않고 limit 까지만 복사하며, 전체 크기는 따로 센다.
+ * body 전체를 모으지 않으므로 큰 body나 streaming 응답도 메모리를 limit 이상 쓰지 않는다.
+ * multipart/form-data 요청은 복사하지 않고 MultipartSummarizer로 흘려 보내 part 목록만 남긴다.
+ * 한 flux의 signal은 순서대로 오기 때문에 따로 동기화하지 않는다.
+ */
+final class DataBufferCapture {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    // MultipartSummarizer로 흘려 보낼 때 한번에 꺼내는 크기
+    private static final int FEED_CHUNK = 8192;
+
+    private final int limit;
+
+    private final MultipartSummarizer multipart;
+
+    private byte[] feedBuffer;
+
+    private byte[] buffer = EMPTY;
+
+    private int size;
+
+    private long totalSize;
+
+    /**
+     * @param limit 복사해 둘 최대 크기 (byte). 0이면 크기만 센다.
+     */
+    DataBufferCapture(int limit) {
+        this(limit, null);
+    }
+
+    /**
+     * @param limit     복사해 둘 최대 크기 (byte). 0이면 크기만 센다.
+     * @param multipart body를 흘려 보낼 multipart parser, 없으면 null
+     */
+    DataBufferCapture(int limit, MultipartSummarizer multipart) {
+        this.limit = Math.max(0, limit);
+        this.multipart = multipart;
+    }
+
+    /**
+     * flux를 지나가는 DataBuffer 하나를 복사한다.
+     *
+     * @param dataBuffer body 조각
+     */
+    void append(DataBuffer dataBuffer) {
+        int readable = dataBuffer.readableByteCount();
+        totalSize += readable;
+        if (multipart != null) feed(dataBuffer, readable);
+        int copy = Math.min(readable, limit - size);
+        if (copy <= 0) return;
+
+        if (size + copy > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(limit, Math.max(size + copy, buffer.length * 2)));
+        }
+        dataBuffer.toByteBuffer(dataBuffer.readPosition(), ByteBuffer.wrap(buffer), size, copy);
+        size += copy;
+    }
+
+    private void feed(DataBuffer dataBuffer, int readable) {
+        if (feedBuffer == null) feedBuffer = new byte[FEED_CHUNK];
+        int position = dataBuffer.readPosition();
+        int remaining = readable;
+        while (remaining > 0) {
+            int length = Math.min(remaining, feedBuffer.length);
+            dataBuffer.toByteBuffer(position, ByteBuffer.wrap(feedBuffer), 0, length);
+            multipart.feed(feedBuffer, 0, length);
+            position += length;
+            remaining -= length;
+        }
+    }
+
+    /**
+     * @return multipart part 목록 요약, multipart가 아니거나 part를 읽지 못했으면 null
+     */
+    String getMultipartSummary() {
+        return multipart != null ? multipart.render() : null;
+    }
+
+    /**
+     * @return 지나간 body 전체 크기 (byte)
+     */
+    long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @return body 전체를 복사했으면 true, limit를 넘어 앞부분만 복사했으면 false
+     */
+    boolean isComplete() {
+        return totalSize == size;
+    }
+
+    /**
+     * @return 복사해 둔 body
+     */
+    byte[] toByteArray() {
+        return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+    }
+}
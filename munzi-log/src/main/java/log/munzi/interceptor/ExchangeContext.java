@@ -0,0 +1,350 @@
+package log.munzi.interceptor;
+
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.http.HttpServletRequest;
+import log.munzi.config.ApiHeaderFilter;
+import log.munzi.config.ApiLogConfig;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.config.ApiRouteFlags;
+
+import java.util.Arrays;
+import java.util.Enumeration;
+
+/**
+ * request 한 건(exchange)의 로그 정보를 담는 객체
+ * <p>
+ * LoggingInterceptor는 singleton이라 field에 요청별 값을 두면 동시 요청끼리 값이 섞이기 때문에,
+ * GlobalRequestWrappingFilter에서 요청마다 하나씩 꺼내 request attribute로 넘기고 interceptor는 여기서 값을 읽는다.
+ * 객체는 worker thread마다 하나씩 두고 요청이 끝나면 비워서 재사용하므로, 요청마다 새로 생성하지 않는다.
+ * 단, async 요청은 filter가 끝난 뒤에도 ASYNC dispatch 에서 계속 쓰므로 pool에서 떼어내고(detach) 재사용하지 않는다.
+ */
+public final class ExchangeContext {
+
+    /**
+     * request attribute key
+     */
+    public static final String ATTRIBUTE = ExchangeContext.class.getName();
+
+    private static final int DEFAULT_HEADER_CAPACITY = 16;
+
+    // 재사용할 body buffer 최대 크기. 이보다 큰 buffer는 요청이 끝나면 버린다.
+    private static final int MAX_RETAINED_BODY_BUFFER = 64 * 1024;
+
+    private static final ThreadLocal<ExchangeContext> POOL = ThreadLocal.withInitial(ExchangeContext::new);
+
+    private boolean inUse;
+
+    private long startNanos;
+
+    private String requestMethodUri;
+
+    private String accept;
+
+    // filter에서 MDC에 넣은 값. ASYNC dispatch는 다른 thread에서 처리되므로 MDC를 다시 넣을 때 사용한다.
+    private String requestId;
+
+    private String applicationName;
+
+    private ApiRouteFlags routeFlags = ApiRouteFlags.NONE;
+
+    // api-log.sampling 으로 REQ, RES 로그를 찍기로 한 요청인지 여부
+    private boolean sampled = true;
+
+    private String[] headerNames = new String[DEFAULT_HEADER_CAPACITY];
+
+    private String[] headerValues = new String[DEFAULT_HEADER_CAPACITY];
+
+    private int headerCount;
+
+    // REQ, RES 로그에서 같이 쓰는 headers 문자열. 처음 만들 때 한번만 만든다.
+    private String headers;
+
+    // api-log.merged.use 일 때 preHandle에서 모아두고 요청이 끝날 때 RES와 합쳐 찍을 request 값
+    private ApiLogSnapshot pendingRequest;
+
+    // ReadableRequestWrapper가 body 앞부분을 복사해 둘 buffer. 요청이 끝나도 버리지 않고 재사용한다.
+    private byte[] bodyBuffer;
+
+    private ExchangeContext() {
+    }
+
+    /**
+     * 현재 thread의 context를 꺼내 요청 정보로 채운다.
+     * 이미 사용 중인 경우(같은 thread에서 filter가 다시 불린 경우)에는 새로 만들어서 돌려준다.
+     *
+     * @param request      HttpServletRequest
+     * @param routeFlags   filter에서 판별한 api 설정
+     * @param headerFilter 로그에 찍을 header filter
+     * @param sampled      filter에서 정한 sampling 여부
+     * @return 요청 정보가 담긴 context
+     */
+    public static ExchangeContext open(HttpServletRequest request, ApiRouteFlags routeFlags, ApiHeaderFilter headerFilter, boolean sampled) {
+        ExchangeContext context = POOL.get();
+        if (context.inUse) {
+            context = new ExchangeContext();
+        }
+        context.init(request, routeFlags, headerFilter);
+        context.sampled = sampled;
+        return context;
+    }
+
+    /**
+     * request attribute에 담긴 context를 꺼낸다.
+     * filter를 거치지 않은 경우(LoggingUtil 등)에는 이 요청에서만 쓸 context를 새로 만들어 담는다.
+     *
+     * @param request HttpServletRequest
+     * @param apiLog  api log 설정
+     * @return 요청 정보가 담긴 context
+     */
+    public static ExchangeContext from(HttpServletRequest request, ApiLogProperties apiLog) {
+        Object attribute = request.getAttribute(ATTRIBUTE);
+        if (attribute instanceof ExchangeContext context) {
+            return context;
+        }
+
+        ApiLogConfig config = apiLog.getConfig();
+        ExchangeContext context = new ExchangeContext();
+        context.init(request, config.getRouteMatcher().match(request.getMethod(), request.getRequestURI()), config.getHeaderFilter());
+        return context;
+    }
+
+    /**
+     * filter에서 열어둔 context가 있는지 확인한다.
+     *
+     * @param request HttpServletRequest
+     * @return filter에서 열어둔 context, 없으면 null
+     */
+    public static ExchangeContext find(HttpServletRequest request) {
+        Object attribute = request.getAttribute(ATTRIBUTE);
+        return attribute instanceof ExchangeContext context ? context : null;
+    }
+
+    /**
+     * async 요청이 시작되어 filter가 먼저 끝나는 경우, context를 현재 thread의 pool에서 떼어낸다.
+     * 같은 thread가 다음 요청에서 이 context(와 body buffer)를 다시 쓰지 않도록 하고, ASYNC dispatch 에서는 request attribute로 계속 꺼내 쓴다.
+     */
+    public void detach() {
+        if (POOL.get() == this) {
+            POOL.remove();
+        }
+    }
+
+    /**
+     * 요청이 끝나면 context를 비우고 재사용할 수 있게 돌려놓는다.
+     *
+     * @param request context를 담았던 request
+     */
+    public void close(ServletRequest request) {
+        request.removeAttribute(ATTRIBUTE);
+        Arrays.fill(headerNames, 0, headerCount, null);
+        Arrays.fill(headerValues, 0, headerCount, null);
+        headerCount = 0;
+        headers = null;
+        requestMethodUri = null;
+        accept = null;
+        requestId = null;
+        applicationName = null;
+        routeFlags = ApiRouteFlags.NONE;
+        sampled = true;
+        pendingRequest = null;
+        if (bodyBuffer != null && bodyBuffer.length > MAX_RETAINED_BODY_BUFFER) {
+            bodyBuffer = null;
+        }
+        inUse = false;
+    }
+
+    /**
+     * body 앞부분을 복사해 둘 buffer를 빌려준다.
+     * 이전 요청에서 쓰던 buffer가 충분히 크면 그대로 재사용한다.
+     *
+     * @param capacity 필요한 크기
+     * @return capacity 이상의 크기를 가진 buffer
+     */
+    public byte[] bodyBuffer(int capacity) {
+        if (bodyBuffer == null || bodyBuffer.length < capacity) {
+            bodyBuffer = new byte[capacity];
+        }
+        return bodyBuffer;
+    }
+
+    private void init(HttpServletRequest request, ApiRouteFlags routeFlags, ApiHeaderFilter headerFilter) {
+        inUse = true;
+        startNanos = System.nanoTime();
+        requestMethodUri = request.getMethod() + " " + request.getRequestURI();
+        accept = request.getHeader("accept");
+        this.routeFlags = routeFlags;
+        captureHeaders(request, headerFilter);
+        request.setAttribute(ATTRIBUTE, this);
+    }
+
+    /**
+     * 로그에 찍을 header만 복사해 둔다. exclude 된 header는 값도 읽지 않는다.
+     */
+    private void captureHeaders(HttpServletRequest request, ApiHeaderFilter headerFilter) {
+        headerCount = 0;
+        headers = null;
+        Enumeration<String> names = request.getHeaderNames();
+        if (names == null) return;
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            if (!headerFilter.isIncluded(name)) continue;
+            if (headerCount == headerNames.length) {
+                headerNames = Arrays.copyOf(headerNames, headerCount * 2);
+                headerValues = Arrays.copyOf(headerValues, headerCount * 2);
+            }
+            headerNames[headerCount] = name;
+            headerValues[headerCount] = headerFilter.value(name, request.getHeader(name));
+            headerCount++;
+        }
+    }
+
+    /**
+     * 요청 header를 "name":"value" 형식으로 이어붙인 문자열
+     * REQ, RES 로그에서 같이 쓰기 때문에 처음 한번만 만든다.
+     *
+     * @return {"name":"value", ...} 형식의 headers
+     */
+    public String getHeaders() {
+        if (headers == null) {
+            headers = ApiLogRenderer.toJsonLikeString(headerNames, headerValues, headerCount, true);
+        }
+        return headers;
+    }
+
+    /**
+     * 다른 thread로 넘길 수 있게 header 이름을 복사한다.
+     *
+     * @return header 이름 목록
+     */
+    public String[] copyHeaderNames() {
+        return Arrays.copyOf(headerNames, headerCount);
+    }
+
+    /**
+     * 다른 thread로 넘길 수 있게 header 값을 복사한다.
+     *
+     * @return header 값 목록
+     */
+    public String[] copyHeaderValues() {
+        return Arrays.copyOf(headerValues, headerCount);
+    }
+
+    /**
+     * @return 요청 시작 시각 (System.nanoTime)
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return 요청 시작부터 지금까지 걸린 시간 (ms)
+     */
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+
+    /**
+     * @return "METHOD URI" 형식의 문자열
+     */
+    public String getRequestMethodUri() {
+        return requestMethodUri;
+    }
+
+    /**
+     * @return request header의 accept 값
+     */
+    public String getAccept() {
+        return accept;
+    }
+
+    /**
+     * filter에서 MDC에 넣은 값을 담아둔다.
+     *
+     * @param requestId       requestId
+     * @param applicationName applicationName
+     */
+    public void setMdc(String requestId, String applicationName) {
+        this.requestId = requestId;
+        this.applicationName = applicationName;
+    }
+
+    /**
+     * @return filter에서 MDC에 넣은 requestId, filter를 거치지 않았으면 null
+     */
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @return filter에서 MDC에 넣은 applicationName, filter를 거치지 않았으면 null
+     */
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    /**
+     * @return 이 요청에 해당하는 api 설정
+     */
+    public ApiRouteFlags getRouteFlags() {
+        return routeFlags;
+    }
+
+    /**
+     * 요청이 끝날 때 RES와 합쳐 찍을 request 값을 담아둔다.
+     *
+     * @param pendingRequest headers를 제외한 request 값
+     */
+    public void setPendingRequest(ApiLogSnapshot pendingRequest) {
+        this.pendingRequest = pendingRequest;
+    }
+
+    /**
+     * 담아둔 request 값을 꺼내고 비운다. 같은 request 값이 두번 찍히지 않도록 한번만 꺼낼 수 있다.
+     *
+     * @return 담아둔 request 값, 없으면 null
+     */
+    public ApiLogSnapshot takePendingRequest() {
+        ApiLogSnapshot request = this.pendingRequest;
+        this.pendingRequest = null;
+        return request;
+    }
+
+    /**
+     * @return 아직 찍지 않은 request 값이 있는지 여부
+     */
+    public boolean hasPendingRequest() {
+        return pendingRequest != null;
+    }
+
+    /**
+     * filter를 거치지 않은 요청은 항상 true
+     *
+     * @return api-log.sampling 으로 REQ, RES 로그를 찍기로 한 요청인지 여부
+     */
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * @return 저장된 header 개수
+     */
+    public int getHeaderCount() {
+        return headerCount;
+    }
+
+    /**
+     * @param index header 순서
+     * @return header 이름
+     */
+    public String getHeaderName(int index) {
+        return headerNames[index];
+    }
+
+    /**
+     * @param index header 순서
+     * @return header 값
+     */
+    public String getHeaderValue(int index) {
+        return headerValues[index];
+    }
+}
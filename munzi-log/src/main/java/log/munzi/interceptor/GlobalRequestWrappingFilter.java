@@ -4,19 +4,18 @@ import io.micrometer.common.util.StringUtils;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import log.munzi.config.ApiLogConfig;
 import log.munzi.config.ApiLogProperties;
+import log.munzi.config.ApiRouteFlags;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.MDC;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
-import org.springframework.web.util.ContentCachingResponseWrapper;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -54,36 +53,136 @@ public class GlobalRequestWrappingFilter implements Filter {
      */
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
-        List<String> secretApiList = new ArrayList<>();
-        String maxSize = "";
-        if (apiLog.getRequest() != null) {
-            secretApiList = apiLog.getRequest().getSecretApi();
-            maxSize = apiLog.getRequest().getMaxBodySize();
-        }
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
 
-        // request wrapping
-        HttpServletRequest wrappingRequest = new ReadableRequestWrapper((HttpServletRequest) request, secretApiList, maxSize);
+        // async 요청의 ASYNC dispatch 에서는 REQUEST dispatch 에서 열어둔 context를 그대로 쓴다.
+        ExchangeContext asyncContext = httpRequest.getDispatcherType() == DispatcherType.ASYNC ? ExchangeContext.find(httpRequest) : null;
+        if (asyncContext != null) {
+            this.resumeAsync(httpRequest, response, chain, asyncContext);
+            return;
+        }
 
         // MDC 등록
-        String requestId = StringUtils.isNotBlank(apiLog.getRequestIdHeaderKey()) && wrappingRequest.getHeader(apiLog.getRequestIdHeaderKey()) != null ?
-                wrappingRequest.getHeader(apiLog.getRequestIdHeaderKey()) : UUID.randomUUID().toString();
+        // 로그를 찍지 않는 요청도 application 로그에서 requestId를 쓰므로, MDC는 항상 넣는다.
+        String requestId = StringUtils.isNotBlank(apiLog.getRequestIdHeaderKey()) && httpRequest.getHeader(apiLog.getRequestIdHeaderKey()) != null ?
+                httpRequest.getHeader(apiLog.getRequestIdHeaderKey()) : UUID.randomUUID().toString();
         MDC.put("requestId", requestId);
         String applicationName = (!StringUtils.isBlank(apiLog.getServerName()) ? apiLog.getServerName() + "-" : "") + profile + " " + InetAddress.getLocalHost().getHostAddress();
         MDC.put("applicationName", applicationName);
 
+        try {
+            this.doFilterExchange(httpRequest, response, chain, requestId, applicationName);
+        } finally {
+            // MDC 등록 해제
+            MDC.remove("requestId");
+            MDC.remove("applicationName");
+        }
+    }
+
+    /**
+     * 로그를 찍는 요청만 request, response를 wrapping 하고 exchange context를 등록한다.
+     *
+     * @param httpRequest     HttpServletRequest
+     * @param response        ServletResponse
+     * @param chain           Filter chain
+     * @param requestId       MDC에 넣은 requestId
+     * @param applicationName MDC에 넣은 applicationName
+     * @throws IOException      copyBodyToResponse 과정에서의 Exception
+     * @throws ServletException doFilter 과정에서의 Exception
+     */
+    private void doFilterExchange(HttpServletRequest httpRequest, ServletResponse response, FilterChain chain,
+                                  String requestId, String applicationName) throws IOException, ServletException {
+        // 요청 하나는 처음 꺼낸 설정 snapshot으로 처리한다.
+        ApiLogConfig config = apiLog.getConfig();
+        // 로그를 찍지 않는 요청은 wrapping, exchange context 없이 그대로 넘긴다.
+        if (!config.isUse()) {
+            chain.doFilter(httpRequest, response);
+            return;
+        }
+        ApiRouteFlags routeFlags = config.getRouteMatcher().match(httpRequest.getMethod(), httpRequest.getRequestURI());
+        if (ApiLogSnapshots.isBypass(config, routeFlags)) {
+            chain.doFilter(httpRequest, response);
+            return;
+        }
+
+        // sampling 여부는 여기서 한번만 정한다. 찍지 않기로 한 요청은 body를 복사하지 않는다.
+        boolean sampled = config.getSampler().sample(httpRequest.getMethod(), httpRequest.getRequestURI());
+        boolean captureBody = sampled && !routeFlags.isHeadersOnly();
+
+        // exchange context 등록. interceptor에서 request attribute로 꺼내 쓴다.
+        ExchangeContext context = ExchangeContext.open(httpRequest, routeFlags, config.getHeaderFilter(), sampled);
+        context.setMdc(requestId, applicationName);
+
+        // request wrapping
+        // header-only api 이거나 sampling 되지 않은 경우, body를 복사하지 않기 때문에 request wrapping 하지 않음
+        HttpServletRequest wrappingRequest = !captureBody ? httpRequest
+                : new ReadableRequestWrapper(httpRequest, config.getRouteMatcher(), config.getRequestMaxBodySize());
+
         // response wrapping & doFilter
         // accept가 "text/event-stream" 인 경우, response flush 해버리면 안되기 때문에 response wrapping 하지 않음
-        if (Objects.equals(wrappingRequest.getHeader("accept"), MediaType.TEXT_EVENT_STREAM_VALUE)) {
-            chain.doFilter(wrappingRequest, response);
-        } else {
-            ContentCachingResponseWrapper wrappingResponse = new ContentCachingResponseWrapper((HttpServletResponse) response);
-            chain.doFilter(wrappingRequest, wrappingResponse);
-            wrappingResponse.copyBodyToResponse();
+        // sampling 되지 않은 경우, body를 복사하지 않기 때문에 response wrapping 하지 않음
+        try {
+            if (!sampled || Objects.equals(context.getAccept(), MediaType.TEXT_EVENT_STREAM_VALUE)) {
+                chain.doFilter(wrappingRequest, response);
+            } else {
+                CappedResponseWrapper wrappingResponse = new CappedResponseWrapper((HttpServletResponse) response,
+                        routeFlags.isHeadersOnly() ? 0 : responseCaptureLimit(config));
+                chain.doFilter(wrappingRequest, wrappingResponse);
+                // async 요청은 아직 응답을 쓰는 중이므로 flush 하지 않는다.
+                if (!httpRequest.isAsyncStarted()) {
+                    wrappingResponse.flushBuffer();
+                }
+            }
+        } finally {
+            // exchange context 반환
+            // async 요청은 ASYNC dispatch 에서 context를 계속 쓰므로 반환하지 않고 pool에서 떼어내기만 한다.
+            if (httpRequest.isAsyncStarted()) {
+                context.detach();
+            } else {
+                context.close(httpRequest);
+            }
         }
+    }
 
-        // MDC 등록 해제
-        MDC.remove("requestId");
-        MDC.remove("applicationName");
+    /**
+     * ASYNC dispatch. REQUEST dispatch 에서 정한 requestId를 MDC에 다시 넣고, 요청이 끝나면 context를 비운다.
+     * (filter가 ASYNC dispatch 에도 등록된 경우에만 불린다. 아닌 경우는 LoggingInterceptor에서 MDC를 다시 넣는다.)
+     *
+     * @param request  HttpServletRequest
+     * @param response ServletResponse
+     * @param chain    Filter chain
+     * @param context  REQUEST dispatch 에서 열어둔 context
+     * @throws IOException      doFilter 과정에서의 Exception
+     * @throws ServletException doFilter 과정에서의 Exception
+     */
+    private void resumeAsync(HttpServletRequest request, ServletResponse response, FilterChain chain, ExchangeContext context) throws IOException, ServletException {
+        MDC.put("requestId", context.getRequestId());
+        MDC.put("applicationName", context.getApplicationName());
+        try {
+            chain.doFilter(request, response);
+            // REQUEST dispatch 에서 미뤄둔 flush
+            if (!request.isAsyncStarted() && response instanceof CappedResponseWrapper wrappingResponse) {
+                wrappingResponse.flushBuffer();
+            }
+        } finally {
+            if (!request.isAsyncStarted()) {
+                context.close(request);
+            }
+            MDC.remove("requestId");
+            MDC.remove("applicationName");
+        }
+    }
+
+    /**
+     * response body 중 로그용으로 복사해 둘 크기.
+     * response.max-body-size를 넘는 body는 로그에 크기만 찍히므로 그 이상은 복사하지 않는다.
+     *
+     * @param config 설정 snapshot
+     * @return 복사해 둘 최대 크기 (byte)
+     */
+    private int responseCaptureLimit(ApiLogConfig config) {
+        if (!config.isUse() || !config.isResponseLogged()) return 0;
+        return (int) Math.min(Integer.MAX_VALUE - 8, config.getResponseMaxBodySize());
     }
 
 }
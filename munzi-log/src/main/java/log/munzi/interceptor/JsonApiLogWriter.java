@@ -0,0 +1,201 @@
+package log.munzi.interceptor;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import log.munzi.config.ApiLogConfig;
+import log.munzi.interceptor.body.BodyRendererRegistry;
+import org.slf4j.MDC;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * api-log.format이 JSON일 때 REQ, RES 로그를 json 한 줄로 만들어주는 writer
+ * <p>
+ * 문자열을 이어붙인 뒤 다시 parsing 하지 않고, JsonGenerator로 thread마다 재사용하는 buffer에 한번에 쓴다.
+ * json body는 tree를 만들지 않고 parser에서 한번만 읽으면서 minify 해서 옮긴다. json이 아닌 body는 BodyRendererRegistry로 만든 문자열을 쓴다.
+ * <p>
+ * api-log.merged.use 일 때는 type EXG로 request 값(params, requestBody)과 response 값(body)을 한 줄에 같이 쓴다.
+ * <p>
+ * example format : {"type":"RES","requestId":"...","applicationName":"...","route":"POST /hello","status":201,"latencyMs":6.1,"headers":{...},"body":{...}}
+ */
+class JsonApiLogWriter {
+
+    // 재사용할 buffer 최대 크기. 이보다 커진 buffer는 다음 요청에서 새로 만든다.
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private final JsonFactory jsonFactory;
+
+    private final ThreadLocal<ReusableOutputStream> buffers = ThreadLocal.withInitial(ReusableOutputStream::new);
+
+    // json body를 옮겨 담아둘 buffer
+    private final ThreadLocal<ReusableCharWriter> scratchBuffers = ThreadLocal.withInitial(ReusableCharWriter::new);
+
+    private final BodyRendererRegistry bodyRenderers;
+
+    JsonApiLogWriter(JsonFactory jsonFactory, BodyRendererRegistry bodyRenderers) {
+        this.jsonFactory = jsonFactory;
+        this.bodyRenderers = bodyRenderers;
+    }
+
+    /**
+     * snapshot을 json 한 줄로 만든다.
+     *
+     * @param snapshot request thread에서 모아둔 값
+     * @param config   body 최대 크기(max-body-size)를 읽을 현재 설정
+     * @return json 한 줄
+     * @throws IOException json 작성 중 Exception
+     */
+    String write(ApiLogSnapshot snapshot, ApiLogConfig config) throws IOException {
+        ReusableOutputStream buffer = buffers.get();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            buffer = new ReusableOutputStream();
+            buffers.set(buffer);
+        }
+        buffer.reset();
+
+        boolean request = snapshot.getType() == ApiLogSnapshot.Type.REQUEST;
+        boolean exchange = snapshot.getType() == ApiLogSnapshot.Type.EXCHANGE;
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("type", request ? "REQ" : exchange ? "EXG" : "RES");
+            generator.writeStringField("requestId", snapshot.getRequestId() != null ? snapshot.getRequestId() : MDC.get("requestId"));
+            generator.writeStringField("applicationName", snapshot.getApplicationName() != null ? snapshot.getApplicationName() : MDC.get("applicationName"));
+            generator.writeStringField("route", snapshot.getRequestMethodUri());
+            if (!request) {
+                generator.writeNumberField("status", snapshot.getStatus());
+                generator.writeNumberField("latencyMs", snapshot.getElapsedNanos() / 1_000_000.0);
+            }
+
+            // api-log.merged 에서 한 줄 요약만 찍는 경우 header, body는 쓰지 않는다.
+            if (!exchange || !snapshot.isSummaryOnly()) {
+                generator.writeFieldName("headers");
+                writeHeaders(generator, snapshot);
+
+                ApiLogSnapshot requestSnapshot = exchange ? snapshot.getRequest() : request ? snapshot : null;
+                if (requestSnapshot != null) {
+                    generator.writeFieldName("params");
+                    writePairs(generator, requestSnapshot.getParamNames(), requestSnapshot.getParamValues(), requestSnapshot.getParamNames() == null ? 0 : requestSnapshot.getParamNames().length);
+                }
+
+                if (exchange) {
+                    // request body는 requestBody, response body는 body로 찍는다.
+                    generator.writeFieldName("requestBody");
+                    if (requestSnapshot != null) {
+                        writeBody(generator, requestSnapshot, config);
+                    } else {
+                        generator.writeNull();
+                    }
+                }
+
+                generator.writeFieldName("body");
+                writeBody(generator, snapshot, config);
+            }
+
+            generator.writeEndObject();
+        }
+
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    private void writeHeaders(JsonGenerator generator, ApiLogSnapshot snapshot) throws IOException {
+        if (snapshot.getHeaderNames() != null) {
+            writePairs(generator, snapshot.getHeaderNames(), snapshot.getHeaderValues(), snapshot.getHeaderNames().length);
+        } else if (snapshot.getHeaders() != null) {
+            generator.writeString(snapshot.getHeaders());
+        } else {
+            generator.writeNull();
+        }
+    }
+
+    private void writePairs(JsonGenerator generator, String[] names, String[] values, int count) throws IOException {
+        generator.writeStartObject();
+        for (int i = 0; i < count; i++) {
+            generator.writeStringField(names[i], values[i]);
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeBody(JsonGenerator generator, ApiLogSnapshot snapshot, ApiLogConfig config) throws IOException {
+        if (snapshot.getBodySummary() != null) {
+            generator.writeString(snapshot.getBodySummary());
+            return;
+        }
+
+        if (snapshot.getBody() == null) {
+            generator.writeString("");
+            return;
+        }
+
+        int limit = ApiLogRenderer.bodyLimit(snapshot, config);
+        byte[] body = bodyRenderers.decode(snapshot, limit);
+        String contentType = snapshot.getContentType();
+        if (body != null && body.length > 0 && contentType != null && contentType.contains("application/json") && copyJson(body)) {
+            ReusableCharWriter scratch = scratchBuffers.get();
+            generator.writeRawValue(scratch.chars(), 0, scratch.size());
+        } else {
+            generator.writeString(bodyRenderers.render(snapshot, body, limit));
+        }
+    }
+
+    /**
+     * generator에 쓰다가 실패하면 되돌릴 수 없기 때문에, json body는 thread마다 재사용하는 scratch buffer에 먼저 옮긴다.
+     * 한번만 읽으면서 옮기고, 올바른 json이 아니면 false를 돌려줘서 문자열로 찍게 한다.
+     *
+     * @param body json body
+     * @return 끝까지 올바른 json이라 scratch buffer에 옮겼으면 true
+     */
+    private boolean copyJson(byte[] body) {
+        ReusableCharWriter scratch = scratchBuffers.get();
+        if (scratch.capacity() > MAX_RETAINED_BUFFER) {
+            scratch = new ReusableCharWriter();
+            scratchBuffers.set(scratch);
+        }
+        scratch.reset();
+
+        try (JsonParser parser = jsonFactory.createParser(body);
+             JsonGenerator copy = jsonFactory.createGenerator(scratch)) {
+            if (parser.nextToken() == null) return false;
+            copy.copyCurrentStructure(parser);
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 내부 배열을 복사하지 않고 재사용하는 ByteArrayOutputStream
+     */
+    private static final class ReusableOutputStream extends ByteArrayOutputStream {
+
+        private ReusableOutputStream() {
+            super(1024);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+
+    /**
+     * 내부 배열을 복사하지 않고 재사용하는 CharArrayWriter
+     */
+    private static final class ReusableCharWriter extends CharArrayWriter {
+
+        private ReusableCharWriter() {
+            super(1024);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        char[] chars() {
+            return buf;
+        }
+    }
+}
@@ -1,46 +1,100 @@
 package log.munzi.interceptor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import log.munzi.config.ApiLogConfig;
 import log.munzi.config.ApiLogProperties;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import log.munzi.config.ApiRouteFlags;
+import log.munzi.interceptor.body.BodyRendererRegistry;
+import log.munzi.shipping.ApiLogShipper;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
-import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
 
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.text.DecimalFormat;
-import java.util.Enumeration;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 /**
  * Interceptor 단계에서 HttpServletRequest, HttpServletResponse 등을 가로채
  * API의 Request, Response log를 찍어준다.
+ * <p>
+ * 여기서는 로그에 필요한 값만 ApiLogSnapshot으로 모으고, 로그 문자열은 ApiLogRenderer에서 만든다.
+ * api-log.async.use가 true이면 snapshot을 AsyncApiLogDispatcher로 넘겨 별도 thread에서 찍는다.
+ * api-log.merged.use가 true이면 REQ 값을 들고 있다가 요청이 끝날 때 RES와 합쳐 한번에 찍는다.
+ * api-log.shipping.use가 true이면 찍은 로그를 ApiLogShipper로 로그 수집기에 보낸다.
  *
- * log type : REQ, RES
+ * log type : REQ, RES, EXG
  */
-@Slf4j
-@RequiredArgsConstructor
 @Component
-public class LoggingInterceptor implements HandlerInterceptor {
+public class LoggingInterceptor implements HandlerInterceptor, DisposableBean {
 
-    private final ObjectMapper objectMapper;
+    // ASYNC dispatch 에서 interceptor가 MDC를 다시 넣었는지 표시하는 request attribute key
+    private static final String MDC_RESTORED_ATTRIBUTE = LoggingInterceptor.class.getName() + ".mdcRestored";
 
     private final ApiLogProperties apiLog;
 
-    private String requestMethodUri;
+    private final ApiLogRenderer renderer;
 
-    private long startTime;
+    private final AsyncApiLogDispatcher asyncDispatcher;
 
-    // request headers - accept
-    private String requestAccept;
+    private final ApiLatencyRecorder latencyRecorder;
 
+    private final ApiLogShipper shipper;
+
+    /**
+     * @param objectMapper json pretty 등에 사용할 objectMapper
+     * @param apiLog       api log 설정
+     */
+    public LoggingInterceptor(ObjectMapper objectMapper, ApiLogProperties apiLog) {
+        this(objectMapper, apiLog, null);
+    }
+
+    /**
+     * @param objectMapper  json pretty 등에 사용할 objectMapper
+     * @param apiLog        api log 설정
+     * @param meterRegistry 응답시간(api-log.metrics.use)과 찍지 않거나 버린 로그 수를 기록할 registry, 없으면 기록하지 않음
+     */
+    public LoggingInterceptor(ObjectMapper objectMapper, ApiLogProperties apiLog, @Nullable MeterRegistry meterRegistry) {
+        this(objectMapper, apiLog, meterRegistry, null);
+    }
+
+    /**
+     * @param objectMapper  json pretty 등에 사용할 objectMapper
+     * @param apiLog        api log 설정
+     * @param meterRegistry 응답시간(api-log.metrics.use)과 찍지 않거나 버린 로그 수를 기록할 registry, 없으면 기록하지 않음
+     * @param bodyRenderers content type, encoding 별 body renderer 목록, 없으면 BodyRendererRegistry.defaults()
+     */
+    @Autowired
+    public LoggingInterceptor(ObjectMapper objectMapper, ApiLogProperties apiLog, @Nullable MeterRegistry meterRegistry,
+                              @Nullable BodyRendererRegistry bodyRenderers) {
+        this.apiLog = apiLog;
+        this.shipper = apiLog.getShipping() != null && apiLog.getShipping().isUse() ? new ApiLogShipper(apiLog) : null;
+        this.renderer = new ApiLogRenderer(objectMapper, apiLog, bodyRenderers != null ? bodyRenderers : BodyRendererRegistry.defaults(), shipper);
+        ApiLogProperties.AsyncLog async = apiLog.getConfig().getAsync();
+        this.asyncDispatcher = async != null && async.isUse() ? new AsyncApiLogDispatcher(renderer, async) : null;
+        this.latencyRecorder = meterRegistry != null && apiLog.getMetrics() != null && apiLog.getMetrics().isUse()
+                ? new ApiLatencyRecorder(meterRegistry, apiLog) : null;
+        if (meterRegistry != null && apiLog.getMetrics() != null) {
+            new ApiLogMeterBinder(apiLog, asyncDispatcher).bindTo(meterRegistry);
+        }
+        if (shipper != null && meterRegistry != null) {
+            shipper.bindTo(meterRegistry);
+        }
+    }
 
     /**
      * Request API log를 찍는 부분.
@@ -53,86 +107,63 @@ public class LoggingInterceptor implements HandlerInterceptor {
      * @param response HttpServletResponse
      * @param handler  HttpServletResponse
      * @return HandlerInterceptor.super.preHandle
-     * @throws Exception request.getReader Exception
+     * @throws Exception request.getInputStream Exception
      */
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        startTime = System.currentTimeMillis();
-        requestMethodUri = request.getMethod() + " " + request.getRequestURI();
-        requestAccept = request.getHeader("accept");
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            // async 요청의 ASYNC dispatch. REQ 로그는 REQUEST dispatch 에서 이미 찍었으므로 MDC만 다시 넣는다.
+            this.restoreMdc(request);
+            return HandlerInterceptor.super.preHandle(request, response, handler);
+        }
 
-        if (apiLog.isUse() && apiLog.getRequest() != null) {
-            // inactive api '*' check
-            boolean inactiveYn = this.checkEndAsterisk(apiLog.getRequest().getInactiveApi(), requestMethodUri);
+        ApiLogConfig config = apiLog.getConfig();
+        ExchangeContext context = config.isUse() && config.isRequestLogged() ? this.exchangeContext(request, config) : null;
+        if (latencyRecorder != null && ExchangeContext.find(request) == null) {
+            // filter를 거치지 않아 시작 시각이 없는 요청은 여기서부터 잰다.
+            request.setAttribute(ApiLatencyRecorder.START_NANOS_ATTRIBUTE, System.nanoTime());
+        }
+        if (context != null) {
+            ApiRouteFlags routeFlags = context.getRouteFlags();
 
             if ((!request.getClass().getName().contains("SecurityContextHolderAwareRequestWrapper") || apiLog.isIgnoreSecurityLog())
-                    && !inactiveYn
-                    && !apiLog.getRequest().getInactiveApi().contains(requestMethodUri)) {
-                StringBuilder headersBuilder = new StringBuilder();
-                Enumeration<String> headerNames = request.getHeaderNames();
-                String headerName;
-                while (headerNames.hasMoreElements()) {
-                    headerName = headerNames.nextElement();
-                    headersBuilder.append("\"");
-                    headersBuilder.append(headerName);
-                    headersBuilder.append("\":\"");
-                    headersBuilder.append(request.getHeader(headerName).replaceAll("\"", "'"));
-                    headersBuilder.append("\", ");
+                    && !routeFlags.isRequestInactive() && context.isSampled()) {
+                List<String> paramNameList = Collections.list(request.getParameterNames());
+                String[] paramNames = paramNameList.toArray(new String[0]);
+                String[] paramValues = new String[paramNames.length];
+                for (int i = 0; i < paramNames.length; i++) {
+                    paramValues[i] = request.getParameter(paramNames[i]);
                 }
-                int headersLength = headersBuilder.length();
-                if (headersLength >= 2) headersBuilder.delete(headersLength - 2, headersLength);
-
-                StringBuilder paramsBuilder = new StringBuilder();
-                Enumeration<String> paramNames = request.getParameterNames();
-                String paramName;
-                while (paramNames.hasMoreElements()) {
-                    paramName = paramNames.nextElement();
-                    paramsBuilder.append("\"");
-                    paramsBuilder.append(paramName);
-                    paramsBuilder.append("\":\"");
-                    paramsBuilder.append(request.getParameter(paramName));
-                    paramsBuilder.append("\", ");
-                }
-                int paramLength = paramsBuilder.length();
-                if (paramLength >= 2) paramsBuilder.delete(paramLength - 2, paramLength);
 
-                String body;
                 String contentType = request.getHeader("Content-Type");
-
-                if (contentType == null || request.getHeader("Content-Length") == null) {
-                    body = "{}";
-                } else {
-                    int contentLength = Integer.parseInt(request.getHeader("Content-Length"));
-                    if (contentType.contains("multipart/form-data")) {
-                        body = "[multipart/form-data]";
-                    } else if (this.checkEndAsterisk(apiLog.getRequest().getSecretApi(), requestMethodUri) || apiLog.getRequest().getSecretApi().contains(requestMethodUri)) {
-                        body = "[secret! " + byteCalculation(contentLength) + "]";
-                    } else {
-                        if (apiLog.getRequest().getMaxBodySize().isEmpty()) apiLog.getRequest().setMaxBodySize("1KB");
-                        if (contentLength > textSizeToByteSize(apiLog.getRequest().getMaxBodySize())) {
-                            body = "[" + byteCalculation(contentLength) + "]";
-                        } else {
-                            body = request.getReader().lines().collect(Collectors.joining(System.lineSeparator()))
-                                    .replaceAll("\\s", "")
-                                    .replaceAll("\\b", "");
-                        }
-                    }
-                }
-
-                String headers = "{" + headersBuilder + "}";
-                String params = "{" + paramsBuilder + "}";
-                if (apiLog.isJsonPretty()) {
-                    headers = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(objectMapper.readValue(headers, Object.class));
-                    params = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(objectMapper.readValue(params, Object.class));
-                    if (body.startsWith("{") && body.endsWith("}")) {
-                        body = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(objectMapper.readValue(body, Object.class));
-                    }
-                }
-
-                if (this.checkEndAsterisk(apiLog.getDebugApi(), requestMethodUri) || apiLog.getDebugApi().contains(requestMethodUri)) {
-                    log.debug("REQ > [{}],\nheaders={},\nparams={},\nbody={}", requestMethodUri, headers, params, body);
+                String contentLengthHeader = request.getHeader("Content-Length");
+                boolean hasBody = contentType != null && contentLengthHeader != null;
+                int contentLength = hasBody ? Integer.parseInt(contentLengthHeader) : 0;
+                String encoding = request.getCharacterEncoding();
+                Charset charset = StringUtils.hasLength(encoding) ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+                long maxBodySize = config.getRequestMaxBodySize();
+
+                ApiLogSnapshot.ApiLogSnapshotBuilder snapshot = ApiLogSnapshots.request(context.getRequestMethodUri(), routeFlags, paramNames, paramValues,
+                        contentType, charset, request.getHeader("Content-Encoding"), hasBody, contentLength, new ApiLogSnapshots.CapturedBody() {
+                            @Override
+                            public byte[] bytes() throws IOException {
+                                if (contentLength > maxBodySize) return null;
+                                ReadableRequestWrapper readableRequest = WebUtils.getNativeRequest(request, ReadableRequestWrapper.class);
+                                byte[] body = readableRequest != null ? readableRequest.getCapturedBody() : request.getInputStream().readNBytes(contentLength);
+                                return body != null ? body : new byte[0];
+                            }
+
+                            @Override
+                            public String multipartSummary() {
+                                // MultipartResolver가 이미 parsing 해 둔 part 목록으로 요약한다. 파일 내용은 다시 읽지 않는다.
+                                return MultipartSummary.summarize(request, charset);
+                            }
+                        });
+                if (config.isMerged()) {
+                    // 요청이 끝날 때 RES와 합쳐서 찍는다.
+                    context.setPendingRequest(snapshot.build());
                 } else {
-                    log.info("REQ > [{}],\nheaders={},\nparams={},\nbody={}", requestMethodUri, headers, params, body);
+                    this.dispatch(context, config, snapshot);
                 }
             }
         }
@@ -143,6 +174,7 @@ public class LoggingInterceptor implements HandlerInterceptor {
     /**
      * Response API log를 찍는 부분
      * 설정파일의 secret 여부, 길이 제한 등을 체크해 설정대로 로그를 남긴다.
+     * sampling 되지 않은 요청도 2xx가 아닌 응답은 body 없이 로그를 남긴다.
      * <p>
      * Interceptor가 Response 중간에서 가로채서 작업하는 부분이기 때문에,
      * postHandle 호출 시 필요한 HttpServletRequest, HttpServletResponse, handler, ModelAndView를 인자로 받아 사용하고 postHandle 호출에 그대로 사용한다.
@@ -155,126 +187,158 @@ public class LoggingInterceptor implements HandlerInterceptor {
      */
     @Override
     public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) throws Exception {
-        if (!Objects.equals(requestAccept, MediaType.TEXT_EVENT_STREAM_VALUE) && apiLog.isUse() && apiLog.getResponse() != null) {
-            // inactive api '*' check
-            boolean inactiveYn = this.checkEndAsterisk(apiLog.getResponse().getInactiveApi(), requestMethodUri);
+        ApiLogConfig config = apiLog.getConfig();
+        ExchangeContext context = config.isUse() && config.isResponseLogged() ? this.exchangeContext(request, config) : null;
+        if (context != null && !Objects.equals(context.getAccept(), MediaType.TEXT_EVENT_STREAM_VALUE)) {
+            ApiRouteFlags routeFlags = context.getRouteFlags();
 
             if ((!request.getClass().getName().contains("SecurityContextHolderAwareRequestWrapper") || apiLog.isIgnoreSecurityLog())
-                    && !inactiveYn
-                    && !apiLog.getResponse().getInactiveApi().contains(requestMethodUri)) {
-                StringBuilder headersBuilder = new StringBuilder();
-                Enumeration<String> headerNames = request.getHeaderNames();
-                String headerName;
-                while (headerNames.hasMoreElements()) {
-                    headerName = headerNames.nextElement();
-                    headersBuilder.append("\"");
-                    headersBuilder.append(headerName);
-                    headersBuilder.append("\":\"");
-                    headersBuilder.append(request.getHeader(headerName).replaceAll("\"", "'"));
-                    headersBuilder.append("\", ");
-                }
-                int headersLength = headersBuilder.length();
-                if (headersLength >= 2) headersBuilder.delete(headersLength - 2, headersLength);
-
-                String payload = "";
-                final ContentCachingResponseWrapper wrappingResponse = (ContentCachingResponseWrapper) response;
-                String contentType = wrappingResponse.getContentType();
-                if (contentType != null) {
-                    if (contentType.contains("application/json") && wrappingResponse.getContentAsByteArray().length != 0) {
-                        payload = objectMapper.readTree(wrappingResponse.getContentAsByteArray()).toString();
-
-                    } else if (contentType.contains("text/plain")) {
-                        payload = new String(wrappingResponse.getContentAsByteArray());
-
-                    } else if (contentType.contains("multipart/form-data")) {
-                        payload = "[multipart/form-data]";
-                    }
-
-                    int payloadSize = payload.getBytes(StandardCharsets.UTF_8).length;
-                    String payloadTextSize = byteCalculation(payloadSize);
-
-                    if (this.checkEndAsterisk(apiLog.getResponse().getSecretApi(), requestMethodUri) || apiLog.getResponse().getSecretApi().contains(requestMethodUri)) {
-                        payload = "[secret! " + payloadTextSize + "]";
-                    } else {
-                        if (apiLog.getResponse().getMaxBodySize().isEmpty()) apiLog.getResponse().setMaxBodySize("1KB");
-                        if (payloadSize > textSizeToByteSize(apiLog.getResponse().getMaxBodySize())) {
-                            payload = "[" + payloadTextSize + "]";
-                        }
-                    }
-                }
-
-                String headers = "{" + headersBuilder + "}";
-                if (apiLog.isJsonPretty() && contentType != null && contentType.contains("application/json")) {
-                    headers = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(objectMapper.readValue(headers, Object.class));
-                    if (payload.startsWith("{") && payload.endsWith("}")) {
-                        payload = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(objectMapper.readValue(payload, Object.class));
-                    }
-                }
-
-                long responseTimeMs = System.currentTimeMillis() - startTime;
-                if (this.checkEndAsterisk(apiLog.getDebugApi(), requestMethodUri) || apiLog.getDebugApi().contains(requestMethodUri)) {
-                    log.debug("RES > {} [{}] {}ms,\nheaders={},\npayload={}", response.getStatus(), requestMethodUri, responseTimeMs, headers, payload);
-                } else {
-                    log.info("RES > {} [{}] {}ms,\nheaders={},\npayload={}", response.getStatus(), requestMethodUri, responseTimeMs, headers, payload);
-                }
+                    && !routeFlags.isResponseInactive() && (context.isSampled() || !ApiLogSnapshots.isSuccessful(response.getStatus()))) {
+                long elapsedNanos = System.nanoTime() - context.getStartNanos();
+                boolean merged = config.isMerged();
+                boolean summaryOnly = merged && !ApiLogSnapshots.isBodyKept(config.getMerged(), response.getStatus(), elapsedNanos);
+
+                final CappedResponseWrapper wrappingResponse = WebUtils.getNativeResponse(response, CappedResponseWrapper.class);
+                long maxBodySize = config.getResponseMaxBodySize();
+                String encoding = response.getCharacterEncoding();
+                ApiLogSnapshot.ApiLogSnapshotBuilder snapshot = ApiLogSnapshots.response(context.getRequestMethodUri(), routeFlags,
+                        response.getStatus(), elapsedNanos, response.getContentType(),
+                        StringUtils.hasLength(encoding) ? Charset.forName(encoding) : StandardCharsets.UTF_8, response.getHeader("Content-Encoding"),
+                        context.isSampled(), summaryOnly, wrappingResponse != null ? wrappingResponse.getContentSize() : 0,
+                        () -> wrappingResponse.getContentSize() > maxBodySize ? null : wrappingResponse.getContentAsByteArray(),
+                        merged, merged ? context.takePendingRequest() : null);
+                this.dispatch(context, config, snapshot);
             }
         }
 
         HandlerInterceptor.super.postHandle(request, response, handler, modelAndView);
     }
 
+    /**
+     * api-log.metrics.use 일 때 응답시간을 기록하고,
+     * api-log.merged.use 일 때, postHandle에서 찍지 못한 request 값을 찍는 부분.
+     * handler에서 Exception이 나서 postHandle이 불리지 않았거나 response 로그를 찍지 않는 요청인 경우
+     * 담아둔 request 값이 남아있으므로 status, 응답시간과 함께 찍는다.
+     *
+     * @param request  HttpServletRequest
+     * @param response HttpServletResponse
+     * @param handler  handler
+     * @param ex       handler에서 처리되지 않은 Exception
+     * @throws Exception HandlerInterceptor.super.afterCompletion Exception
+     */
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+        if (latencyRecorder != null) {
+            latencyRecorder.record(request, response, ex);
+        }
+
+        ApiLogConfig config = apiLog.getConfig();
+        ExchangeContext context = config.isUse() && config.isMerged() ? ExchangeContext.find(request) : null;
+        if (context != null && context.hasPendingRequest()) {
+            long elapsedNanos = System.nanoTime() - context.getStartNanos();
+            boolean summaryOnly = ex == null && !ApiLogSnapshots.isBodyKept(config.getMerged(), response.getStatus(), elapsedNanos);
+            this.dispatch(context, config, ApiLogSnapshots.pendingExchange(context.getRequestMethodUri(), context.getRouteFlags(),
+                    response.getStatus(), elapsedNanos, summaryOnly, context.takePendingRequest()));
+        }
+
+        if (request.getAttribute(MDC_RESTORED_ATTRIBUTE) != null) {
+            request.removeAttribute(MDC_RESTORED_ATTRIBUTE);
+            MDC.remove("requestId");
+            MDC.remove("applicationName");
+        }
+
+        HandlerInterceptor.super.afterCompletion(request, response, handler, ex);
+    }
 
     /**
-     * bytes 단위의 숫자를 KB, MB 단위의 문자열로 변환
-     * ex) 2048 -> 2 KB
+     * ASYNC dispatch는 filter를 거치지 않고 다른 thread에서 처리될 수 있으므로,
+     * MDC가 비어 있으면 REQUEST dispatch 에서 정한 requestId, applicationName을 context에서 꺼내 다시 넣는다.
      *
-     * @param bytes 문자열로 변환할 byte단위 크기
-     * @return KB, MB 단위로 변환된 문자열
+     * @param request HttpServletRequest
      */
-    private String byteCalculation(int bytes) {
-        String[] sArray = {"bytes", "KB", "MB", "GB", "TB", "PB"};
+    private void restoreMdc(HttpServletRequest request) {
+        ExchangeContext context = ExchangeContext.find(request);
+        if (context == null || context.getRequestId() == null || MDC.get("requestId") != null) return;
 
-        if (bytes == 0) return "0 bytes";
+        MDC.put("requestId", context.getRequestId());
+        MDC.put("applicationName", context.getApplicationName());
+        request.setAttribute(MDC_RESTORED_ATTRIBUTE, Boolean.TRUE);
+    }
 
-        int idx = (int) Math.floor(Math.log(bytes) / Math.log(1024));
-        DecimalFormat df = new DecimalFormat("#,###.##");
-        double ret = ((bytes / Math.pow(1024, Math.floor(idx))));
+    /**
+     * filter에서 열어둔 exchange context를 꺼낸다.
+     * filter를 거치지 않은 요청(LoggingUtil 등)이면 새로 만들되, filter에서 그대로 넘겼을 요청이면 만들지 않는다.
+     *
+     * @param request HttpServletRequest
+     * @param config  설정 snapshot
+     * @return exchange context, 로그를 찍지 않는 요청이면 null
+     */
+    private ExchangeContext exchangeContext(HttpServletRequest request, ApiLogConfig config) {
+        ExchangeContext context = ExchangeContext.find(request);
+        if (context != null) return context;
 
-        return df.format(ret) + " " + sArray[idx];
+        if (config.getRouteMatcher().match(request.getMethod(), request.getRequestURI()).isBypass()) return null;
+        return ExchangeContext.from(request, apiLog);
     }
 
     /**
-     * KB, MB 등의 단위로 표현된 문자열을 byte 로 변환
+     * async 설정이면 header를 복사해 AsyncApiLogDispatcher로 넘기고, 아니면 바로 찍는다.
+     * JSON 형식이거나 shipping 설정이면 format과 관계없이 headers를 object로 보내도록 header를 name, value 목록으로 넘긴다.
      *
-     * @param size 문자열로 표기된 크기
-     * @return byte 단위로 변환된 값
+     * @param context  exchange context
+     * @param config   설정 snapshot
+     * @param snapshot headers를 제외한 값이 채워진 snapshot builder
+     * @throws IOException json parsing Exception
      */
-    private double textSizeToByteSize(String size) {
-        String[] sArray = {"BYTES", "KB", "MB", "GB", "TB", "PB"};
-        size = size.toUpperCase();
-        for (int i = 0; i < sArray.length; i++) {
-            if (size.contains(sArray[i])) {
-                String sizeNumber = size.replaceAll(" ", "").replaceAll(sArray[i], "");
-                return Double.parseDouble(sizeNumber) * Math.pow(1024, i);
+    private void dispatch(ExchangeContext context, ApiLogConfig config, ApiLogSnapshot.ApiLogSnapshotBuilder snapshot) throws IOException {
+        if (asyncDispatcher == null) {
+            if (config.getFormat() == ApiLogProperties.LogFormat.JSON || shipper != null) {
+                snapshot.headerNames(context.copyHeaderNames()).headerValues(context.copyHeaderValues());
+            } else {
+                snapshot.headers(context.getHeaders());
             }
+            renderer.render(snapshot.build());
+            return;
         }
 
-        return 0;
+        asyncDispatcher.dispatch(snapshot
+                .requestId(MDC.get("requestId"))
+                .applicationName(MDC.get("applicationName"))
+                .headerNames(context.copyHeaderNames())
+                .headerValues(context.copyHeaderValues())
+                .build());
     }
 
-    private boolean checkEndAsterisk(List<String> apiList, String requestMethodUri) {
-        boolean asterisk = false;
-        if (apiList != null && apiList.size() > 0) {
-            for (String api : apiList) {
-                if (api.contains("*")) {
-                    String[] split = api.split("\\*");
-                    if (!split[0].isEmpty() && requestMethodUri.startsWith(split[0])) {
-                        asterisk = true;
-                    }
-                }
-            }
+    /**
+     * api-log.async.use가 true일 때의 dispatcher. queue depth, drop count 조회용.
+     *
+     * @return async dispatcher, async 설정이 아니면 null
+     */
+    public AsyncApiLogDispatcher getAsyncDispatcher() {
+        return asyncDispatcher;
+    }
+
+    /**
+     * api-log.shipping.use가 true일 때의 shipper. 보낸 로그 수, lag 조회용.
+     *
+     * @return shipper, shipping 설정이 아니면 null
+     */
+    public ApiLogShipper getShipper() {
+        return shipper;
+    }
+
+    /**
+     * bean 종료 시 async buffer에 남은 로그를 찍고 thread를 종료한다.
+     * 그 다음 shipper에 남은 로그를 보내거나 spool 파일에 쓴다.
+     */
+    @Override
+    public void destroy() {
+        if (asyncDispatcher != null) {
+            asyncDispatcher.close();
+        }
+        if (shipper != null) {
+            shipper.close();
         }
-        return asterisk;
     }
 
 }
@@ -0,0 +1,251 @@
+package log.munzi.interceptor;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * multipart/form-data body를 흘려 보내면서 part 목록 요약(MultipartSummary)을 만드는 parser
+ * <p>
+ * boundary를 찾으면서 part header(Content-Disposition, Content-Type)와 크기만 읽는다.
+ * 파일 내용은 복사하지 않고, filename이 없는 text field만 앞부분(MultipartSummary.MAX_VALUE_BYTES)을 들고 있는다.
+ * 요청 크기와 상관 없이 boundary, header 한 줄, text field 앞부분 만큼만 메모리를 사용한다.
+ * 한 요청 안에서 한 thread가 순서대로 feed 하는 것을 전제로 하므로 thread-safe 하지 않다.
+ */
+final class MultipartSummarizer {
+
+    // part header 한 줄에서 읽을 최대 크기. 넘는 부분은 버린다.
+    private static final int MAX_HEADER_LINE = 1024;
+
+    private enum State {
+        // 첫 boundary 전 (preamble)
+        PREAMBLE,
+        // boundary 바로 뒤. "--"이면 끝, 아니면 줄 끝까지 넘기고 header
+        AFTER_DELIMITER,
+        // part header
+        HEADERS,
+        // part 내용
+        BODY,
+        // 마지막 boundary 뒤 (epilogue)
+        END
+    }
+
+    private final MultipartSummary summary;
+
+    // "\r\n--" + boundary
+    private final byte[] delimiter;
+
+    // delimiter KMP failure table
+    private final int[] failure;
+
+    private final byte[] headerLine = new byte[MAX_HEADER_LINE];
+
+    private final byte[] value = new byte[MultipartSummary.MAX_VALUE_BYTES];
+
+    private State state = State.PREAMBLE;
+
+    // 지금까지 일치한 delimiter 길이. 첫 boundary 앞에는 CRLF가 없으므로 CRLF는 일치한 것으로 시작한다.
+    private int matched = 2;
+
+    private int afterDelimiterCount;
+
+    private boolean afterDelimiterDash;
+
+    private int headerLineLength;
+
+    private String partName;
+
+    private String partFilename;
+
+    private String partContentType;
+
+    private boolean partText;
+
+    private long partSize;
+
+    private int valueLength;
+
+    private MultipartSummarizer(String boundary, Charset charset) {
+        this.summary = new MultipartSummary(charset);
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.failure = failureTable(delimiter);
+    }
+
+    /**
+     * @param contentType 요청 Content-Type
+     * @param charset     text field 값을 읽을 charset
+     * @return multipart/form-data 이고 boundary가 있으면 parser, 아니면 null
+     */
+    static MultipartSummarizer of(String contentType, Charset charset) {
+        if (contentType == null || !contentType.toLowerCase().contains("multipart/form-data")) return null;
+        String boundary = parameter(contentType, "boundary");
+        if (boundary == null || boundary.isEmpty()) return null;
+        return new MultipartSummarizer(boundary, charset);
+    }
+
+    /**
+     * body 일부를 흘려 보낸다.
+     *
+     * @param bytes  body 일부
+     * @param offset 시작 위치
+     * @param length 길이
+     */
+    void feed(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            feed(bytes[i]);
+        }
+    }
+
+    /**
+     * 지금까지 흘려 보낸 body로 요약을 만든다. body를 다 읽기 전이면 읽던 part도 그때까지의 크기로 넣는다.
+     *
+     * @return "[multipart/form-data, N parts] {...}" 형식의 요약, part를 하나도 읽지 못했으면 null
+     */
+    String render() {
+        if (state == State.BODY) {
+            // 중간에 끊긴 part. 일치하던 delimiter 일부도 내용으로 센다.
+            endPart(partSize + matched);
+            state = State.END;
+        }
+        return summary.getPartCount() == 0 ? null : summary.render();
+    }
+
+    private void feed(byte b) {
+        switch (state) {
+            case PREAMBLE:
+            case BODY:
+                matchDelimiter(b);
+                break;
+            case AFTER_DELIMITER:
+                afterDelimiter(b);
+                break;
+            case HEADERS:
+                header(b);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void matchDelimiter(byte b) {
+        while (matched > 0 && b != delimiter[matched]) {
+            // 일치하던 delimiter 앞부분 중 더 이상 delimiter가 될 수 없는 만큼은 part 내용이다.
+            int next = failure[matched - 1];
+            body(delimiter, matched - next);
+            matched = next;
+        }
+        if (b == delimiter[matched]) {
+            if (++matched == delimiter.length) {
+                matched = 0;
+                if (state == State.BODY) endPart(partSize);
+                state = State.AFTER_DELIMITER;
+                afterDelimiterCount = 0;
+                afterDelimiterDash = false;
+            }
+        } else {
+            body(b);
+        }
+    }
+
+    private void body(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            body(bytes[i]);
+        }
+    }
+
+    private void body(byte b) {
+        if (state != State.BODY) return;
+        partSize++;
+        if (partText && valueLength < value.length) {
+            value[valueLength++] = b;
+        }
+    }
+
+    private void afterDelimiter(byte b) {
+        afterDelimiterCount++;
+        if (afterDelimiterCount == 1) {
+            afterDelimiterDash = b == '-';
+        } else if (afterDelimiterCount == 2 && afterDelimiterDash && b == '-') {
+            state = State.END;
+            return;
+        }
+        if (b == '\n') {
+            state = State.HEADERS;
+            headerLineLength = 0;
+            partName = null;
+            partFilename = null;
+            partContentType = null;
+        }
+    }
+
+    private void header(byte b) {
+        if (b != '\n') {
+            if (headerLineLength < headerLine.length) headerLine[headerLineLength++] = b;
+            return;
+        }
+        int length = headerLineLength;
+        if (length > 0 && headerLine[length - 1] == '\r') length--;
+        headerLineLength = 0;
+
+        if (length == 0) {
+            startPart();
+            return;
+        }
+        String line = new String(headerLine, 0, length, StandardCharsets.UTF_8);
+        int colon = line.indexOf(':');
+        if (colon < 0) return;
+        String name = line.substring(0, colon).trim();
+        String headerValue = line.substring(colon + 1).trim();
+        if (name.equalsIgnoreCase("Content-Disposition")) {
+            partName = parameter(headerValue, "name");
+            partFilename = parameter(headerValue, "filename");
+        } else if (name.equalsIgnoreCase("Content-Type")) {
+            partContentType = headerValue;
+        }
+    }
+
+    private void startPart() {
+        state = State.BODY;
+        matched = 0;
+        partSize = 0;
+        valueLength = 0;
+        partText = partFilename == null && MultipartSummary.isText(partContentType) && summary.hasRoom();
+    }
+
+    private void endPart(long size) {
+        summary.addPart(partName == null ? "" : partName, partFilename, partContentType, size,
+                partText ? value : null, valueLength);
+    }
+
+    /**
+     * header 값에서 "; key=value" 또는 "; key=\"value\"" 형식의 parameter를 찾는다.
+     */
+    static String parameter(String header, String key) {
+        int index = 0;
+        while ((index = header.indexOf(';', index)) >= 0) {
+            index++;
+            while (index < header.length() && header.charAt(index) == ' ') index++;
+            if (!header.regionMatches(true, index, key, 0, key.length())) continue;
+            int equals = index + key.length();
+            if (equals >= header.length() || header.charAt(equals) != '=') continue;
+            int start = equals + 1;
+            if (start < header.length() && header.charAt(start) == '"') {
+                int end = header.indexOf('"', start + 1);
+                return header.substring(start + 1, end < 0 ? header.length() : end);
+            }
+            int end = header.indexOf(';', start);
+            return header.substring(start, end < 0 ? header.length() : end).trim();
+        }
+        return null;
+    }
+
+    private static int[] failureTable(byte[] pattern) {
+        int[] table = new int[pattern.length];
+        int k = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) k = table[k - 1];
+            if (pattern[i] == pattern[k]) k++;
+            table[i] = k;
+        }
+        return table;
+    }
+}
@@ -0,0 +1,146 @@
+package log.munzi.interceptor;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.Part;
+import log.munzi.common.util.ByteSizeFormatter;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * multipart/form-data 요청을 body 대신 part 목록으로 찍기 위한 요약
+ * <p>
+ * part 마다 name, filename, content type, 크기를 남기고, filename이 없는 작은 text field만 앞부분(MAX_VALUE_BYTES)을 값으로 남긴다.
+ * 파일 내용은 들고 있지 않는다.
+ * ex) [multipart/form-data, 2 parts] {"title":"hello", "file":"[a.png, image/png, 1.2 MB]"}
+ */
+final class MultipartSummary {
+
+    // text field 값으로 남길 최대 크기
+    static final int MAX_VALUE_BYTES = 256;
+
+    // 목록으로 찍을 최대 part 수. 넘는 part는 개수만 센다.
+    static final int MAX_PARTS = 50;
+
+    private final Charset charset;
+
+    private final List<String> entries = new ArrayList<>();
+
+    private int partCount;
+
+    /**
+     * @param charset text field 값을 읽을 charset
+     */
+    MultipartSummary(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * 이미 parsing 된 multipart 요청(MultipartResolver를 거친 요청)의 part 목록으로 요약을 만든다.
+     * servlet container는 preHandle 전에 자기 stream으로 multipart를 읽어두므로, 여기서는 그 결과만 읽고 body를 다시 읽지 않는다.
+     *
+     * @param request HttpServletRequest
+     * @param charset text field 값을 읽을 charset
+     * @return 요약 문자열, parsing 되지 않은 요청이거나 part를 읽지 못하면 null
+     */
+    static String summarize(HttpServletRequest request, Charset charset) {
+        if (WebUtils.getNativeRequest(request, MultipartHttpServletRequest.class) == null) return null;
+        try {
+            MultipartSummary summary = new MultipartSummary(charset);
+            for (Part part : request.getParts()) {
+                String filename = part.getSubmittedFileName();
+                byte[] value = null;
+                if (filename == null && isText(part.getContentType()) && summary.hasRoom()) {
+                    try (InputStream inputStream = part.getInputStream()) {
+                        value = inputStream.readNBytes(MAX_VALUE_BYTES);
+                    }
+                }
+                summary.addPart(part.getName(), filename, part.getContentType(), part.getSize(), value, value == null ? 0 : value.length);
+            }
+            return summary.render();
+        } catch (IOException | ServletException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param contentType part content type
+     * @return 값을 남길 text part 이면 true (content type이 없거나 text/*)
+     */
+    static boolean isText(String contentType) {
+        return contentType == null || contentType.regionMatches(true, 0, "text/", 0, 5);
+    }
+
+    /**
+     * @return 지금까지 추가한 part 수
+     */
+    int getPartCount() {
+        return partCount;
+    }
+
+    /**
+     * @return 목록에 part를 더 남길 수 있으면 true
+     */
+    boolean hasRoom() {
+        return entries.size() < MAX_PARTS;
+    }
+
+    /**
+     * part 하나를 추가한다.
+     *
+     * @param name        form field name
+     * @param filename    파일 이름, 파일이 아니면 null
+     * @param contentType part content type
+     * @param size        part 크기 (byte)
+     * @param value       text field 값 앞부분, 남기지 않으면 null
+     * @param valueLength value 중 사용할 길이
+     */
+    void addPart(String name, String filename, String contentType, long size, byte[] value, int valueLength) {
+        partCount++;
+        if (!hasRoom()) return;
+
+        StringBuilder builder = new StringBuilder(64);
+        builder.append('"');
+        ApiLogRenderer.appendEscaped(builder, name);
+        builder.append("\":\"");
+        if (value != null) {
+            ApiLogRenderer.appendEscaped(builder, new String(value, 0, Math.min(valueLength, MAX_VALUE_BYTES), charset));
+            if (size > MAX_VALUE_BYTES) builder.append("...");
+        } else {
+            builder.append('[');
+            if (filename != null) {
+                ApiLogRenderer.appendEscaped(builder, filename);
+                builder.append(", ");
+            }
+            if (contentType != null) {
+                ApiLogRenderer.appendEscaped(builder, contentType);
+                builder.append(", ");
+            }
+            builder.append(ByteSizeFormatter.format(size)).append(']');
+        }
+        builder.append('"');
+        entries.add(builder.toString());
+    }
+
+    /**
+     * @return "[multipart/form-data, N parts] {...}" 형식의 요약
+     */
+    String render() {
+        StringBuilder builder = new StringBuilder(32 + entries.size() * 48);
+        builder.append("[multipart/form-data, ").append(partCount).append(partCount == 1 ? " part] {" : " parts] {");
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(entries.get(i));
+        }
+        if (partCount > entries.size()) {
+            builder.append(", ... ").append(partCount - entries.size()).append(" more parts");
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,479 @@
+package log.munzi.interceptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import log.munzi.config.ApiHeaderFilter;
+import log.munzi.config.ApiLogConfig;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.config.ApiRouteFlags;
+import log.munzi.interceptor.body.BodyRendererRegistry;
+import log.munzi.shipping.ApiLogShipper;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * WebFlux(Netty) 서버에서 API의 Request, Response log를 찍어주는 WebFilter
+ * <p>
+ * servlet 용 GlobalRequestWrappingFilter, LoggingInterceptor와 같은 api-log 설정을 사용하고, 같은 형식의 REQ, RES, EXG 로그를 찍는다.
+ * body는 모아서 읽지 않고, request, response의 DataBuffer flux가 지나갈 때 max-body-size 까지만 복사해 둔다. (DataBufferCapture)
+ * requestId, applicationName은 thread에 묶인 MDC 대신 Reactor Context에 담아 넘기고, 로그를 찍는 순간에만 MDC에 넣는다.
+ * <p>
+ * REQ는 request body를 다 읽었을 때 (body를 읽지 않는 요청이면 response를 보내기 직전에) 찍고, RES는 응답이 끝났을 때 찍는다.
+ * webflux 의존성은 compileOnly 이므로, WebFlux를 사용하는 쪽에서 bean으로 등록해서 사용한다.
+ *
+ * log type : REQ, RES, EXG
+ */
+@Slf4j
+public class ReactiveLoggingWebFilter implements WebFilter, Ordered, DisposableBean {
+
+    /**
+     * Reactor Context에 담는 requestId key
+     */
+    public static final String REQUEST_ID_CONTEXT_KEY = "requestId";
+
+    /**
+     * Reactor Context에 담는 applicationName key
+     */
+    public static final String APPLICATION_NAME_CONTEXT_KEY = "applicationName";
+
+    private final ApiLogProperties apiLog;
+
+    private final ApiLogRenderer renderer;
+
+    private final AsyncApiLogDispatcher asyncDispatcher;
+
+    private final ApiLogShipper shipper;
+
+    private final String applicationName;
+
+    /**
+     * @param objectMapper json pretty 등에 사용할 objectMapper
+     * @param apiLog       api log 설정
+     * @param profile      applicationName에 찍을 profile
+     */
+    public ReactiveLoggingWebFilter(ObjectMapper objectMapper, ApiLogProperties apiLog, String profile) {
+        this(objectMapper, apiLog, profile, BodyRendererRegistry.defaults());
+    }
+
+    /**
+     * @param objectMapper  json pretty 등에 사용할 objectMapper
+     * @param apiLog        api log 설정
+     * @param profile       applicationName에 찍을 profile
+     * @param bodyRenderers content type, encoding 별 body renderer 목록
+     */
+    public ReactiveLoggingWebFilter(ObjectMapper objectMapper, ApiLogProperties apiLog, String profile, BodyRendererRegistry bodyRenderers) {
+        this.apiLog = apiLog;
+        this.shipper = apiLog.getShipping() != null && apiLog.getShipping().isUse() ? new ApiLogShipper(apiLog) : null;
+        this.renderer = new ApiLogRenderer(objectMapper, apiLog, bodyRenderers, shipper);
+        ApiLogProperties.AsyncLog async = apiLog.getConfig().getAsync();
+        this.asyncDispatcher = async != null && async.isUse() ? new AsyncApiLogDispatcher(renderer, async) : null;
+        this.applicationName = (StringUtils.hasText(apiLog.getServerName()) ? apiLog.getServerName() + "-" : "") + profile + " " + hostAddress();
+    }
+
+    /**
+     * security 등 다른 WebFilter에서 찍는 로그에도 requestId가 담기도록 제일 먼저 실행한다.
+     *
+     * @return filter 순서
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    /**
+     * request, response를 body capture decorator로 감싸고, 응답이 끝나면 로그를 찍는다.
+     *
+     * @param exchange ServerWebExchange
+     * @param chain    WebFilter chain
+     * @return filter 결과
+     */
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        // 요청 하나는 처음 꺼낸 설정 snapshot으로 처리한다.
+        ApiLogConfig config = apiLog.getConfig();
+        // 로그를 찍지 않는 요청은 decorator, requestId 생성 없이 그대로 넘긴다.
+        if (!config.isUse()) {
+            return chain.filter(exchange);
+        }
+        ServerHttpRequest request = exchange.getRequest();
+        String method = request.getMethod().name();
+        String uri = request.getPath().value();
+        ApiRouteFlags routeFlags = config.getRouteMatcher().match(method, uri);
+        if (ApiLogSnapshots.isBypass(config, routeFlags)) {
+            return chain.filter(exchange);
+        }
+
+        // sampling 여부는 여기서 한번만 정한다. 찍지 않기로 한 요청은 body를 복사하지 않는다.
+        boolean sampled = config.getSampler().sample(method, uri);
+        String requestIdHeaderKey = apiLog.getRequestIdHeaderKey();
+        String requestId = StringUtils.hasText(requestIdHeaderKey) && request.getHeaders().getFirst(requestIdHeaderKey) != null ?
+                request.getHeaders().getFirst(requestIdHeaderKey) : UUID.randomUUID().toString();
+
+        ExchangeLog exchangeLog = new ExchangeLog(request, config, method + " " + uri, routeFlags, sampled, requestId);
+        ServerWebExchange loggingExchange = exchange;
+        if (sampled) {
+            // accept가 "text/event-stream" 인 경우, response 로그를 찍지 않기 때문에 response body를 복사하지 않음
+            ServerWebExchange.Builder builder = exchange.mutate().request(new CapturingRequest(request, exchangeLog));
+            if (!exchangeLog.isEventStream()) {
+                builder.response(new CapturingResponse(exchange.getResponse(), exchangeLog));
+            }
+            loggingExchange = builder.build();
+            exchange.getResponse().beforeCommit(() -> {
+                exchangeLog.writeRequest();
+                return Mono.empty();
+            });
+        }
+
+        return chain.filter(loggingExchange)
+                .doOnError(exchangeLog::setError)
+                .doFinally(signal -> exchangeLog.complete(exchange.getResponse(), signal))
+                .contextWrite(Context.of(REQUEST_ID_CONTEXT_KEY, requestId, APPLICATION_NAME_CONTEXT_KEY, applicationName));
+    }
+
+    /**
+     * api-log.async.use가 true일 때의 dispatcher. queue depth, drop count 조회용.
+     *
+     * @return async dispatcher, async 설정이 아니면 null
+     */
+    public AsyncApiLogDispatcher getAsyncDispatcher() {
+        return asyncDispatcher;
+    }
+
+    /**
+     * api-log.shipping.use가 true일 때의 shipper. 보낸 로그 수, lag 조회용.
+     * metric은 필요한 경우 shipper.bindTo(meterRegistry)로 등록한다.
+     *
+     * @return shipper, shipping 설정이 아니면 null
+     */
+    public ApiLogShipper getShipper() {
+        return shipper;
+    }
+
+    /**
+     * bean 종료 시 async buffer에 남은 로그를 찍고 thread를 종료한다.
+     * 그 다음 shipper에 남은 로그를 보내거나 spool 파일에 쓴다.
+     */
+    @Override
+    public void destroy() {
+        if (asyncDispatcher != null) {
+            asyncDispatcher.close();
+        }
+        if (shipper != null) {
+            shipper.close();
+        }
+    }
+
+    /**
+     * request body가 지나갈 때 복사해두고, 다 읽으면 REQ 로그를 찍는 decorator
+     */
+    private static final class CapturingRequest extends ServerHttpRequestDecorator {
+
+        private final ExchangeLog exchangeLog;
+
+        private CapturingRequest(ServerHttpRequest delegate, ExchangeLog exchangeLog) {
+            super(delegate);
+            this.exchangeLog = exchangeLog;
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            return super.getBody()
+                    .doOnNext(exchangeLog.requestCapture::append)
+                    .doFinally(signal -> exchangeLog.writeRequest());
+        }
+    }
+
+    /**
+     * response body가 지나갈 때 복사해두는 decorator
+     */
+    private static final class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private final ExchangeLog exchangeLog;
+
+        private CapturingResponse(ServerHttpResponse delegate, ExchangeLog exchangeLog) {
+            super(delegate);
+            this.exchangeLog = exchangeLog;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(Flux.from(body).doOnNext(exchangeLog.responseCapture::append));
+        }
+    }
+
+    /**
+     * 요청 하나의 로그 값을 모아두는 객체.
+     * servlet의 ExchangeContext와 같은 역할이지만, 여러 thread를 거쳐 가므로 pool 하지 않고 요청마다 만든다.
+     */
+    private final class ExchangeLog {
+
+        private final ApiLogConfig config;
+
+        private final String requestMethodUri;
+
+        private final ApiRouteFlags routeFlags;
+
+        private final boolean sampled;
+
+        private final String requestId;
+
+        private final long startNanos = System.nanoTime();
+
+        private final String accept;
+
+        private final String[] headerNames;
+
+        private final String[] headerValues;
+
+        private final String[] paramNames;
+
+        private final String[] paramValues;
+
+        private final MediaType requestContentType;
+
+        private final long requestContentLength;
+
+        private final String requestContentEncoding;
+
+        private final DataBufferCapture requestCapture;
+
+        private final DataBufferCapture responseCapture;
+
+        private final AtomicBoolean requestWritten = new AtomicBoolean();
+
+        // api-log.merged.use 일 때 요청이 끝날 때까지 들고 있는 request 값
+        private volatile ApiLogSnapshot pendingRequest;
+
+        private volatile Throwable error;
+
+        private ExchangeLog(ServerHttpRequest request, ApiLogConfig config, String requestMethodUri, ApiRouteFlags routeFlags, boolean sampled, String requestId) {
+            HttpHeaders headers = request.getHeaders();
+            this.config = config;
+            this.requestMethodUri = requestMethodUri;
+            this.routeFlags = routeFlags;
+            this.sampled = sampled;
+            this.requestId = requestId;
+            this.accept = headers.getFirst(HttpHeaders.ACCEPT);
+            this.requestContentType = headers.getContentType();
+            this.requestContentLength = headers.getContentLength();
+            this.requestContentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+
+            // 로그에 찍을 header만 복사해 둔다.
+            ApiHeaderFilter headerFilter = config.getHeaderFilter();
+            List<String> names = new ArrayList<>(headers.size());
+            List<String> values = new ArrayList<>(headers.size());
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                String name = header.getKey();
+                if (!headerFilter.isIncluded(name)) continue;
+                names.add(name);
+                values.add(headerFilter.value(name, header.getValue().isEmpty() ? null : header.getValue().get(0)));
+            }
+            this.headerNames = names.toArray(new String[0]);
+            this.headerValues = values.toArray(new String[0]);
+
+            MultiValueMap<String, String> queryParams = request.getQueryParams();
+            this.paramNames = queryParams.keySet().toArray(new String[0]);
+            this.paramValues = new String[paramNames.length];
+            for (int i = 0; i < paramNames.length; i++) {
+                paramValues[i] = queryParams.getFirst(paramNames[i]);
+            }
+
+            boolean captureBody = sampled && !routeFlags.isHeadersOnly();
+            if (captureBody && !routeFlags.isRequestSecret() && MediaType.MULTIPART_FORM_DATA.isCompatibleWith(requestContentType)) {
+                // multipart는 body를 복사하지 않고 지나갈 때 part 목록만 남긴다.
+                this.requestCapture = new DataBufferCapture(0, MultipartSummarizer.of(requestContentType.toString(), charset(requestContentType)));
+            } else {
+                this.requestCapture = new DataBufferCapture(captureBody && !routeFlags.isRequestSecret() ? captureLimit(config.getRequestMaxBodySize()) : 0);
+            }
+            this.responseCapture = new DataBufferCapture(captureBody && !routeFlags.isResponseSecret() ? captureLimit(config.getResponseMaxBodySize()) : 0);
+        }
+
+        private boolean isEventStream() {
+            return Objects.equals(accept, MediaType.TEXT_EVENT_STREAM_VALUE);
+        }
+
+        private void setError(Throwable error) {
+            this.error = error;
+        }
+
+        /**
+         * Request API log를 찍는 부분. request body를 다 읽었을 때, response를 보내기 직전, 응답이 끝났을 때 중 처음 한번만 찍는다.
+         * 설정파일의 secret 여부, 길이 제한 등을 체크해 설정대로 로그를 남긴다.
+         */
+        private void writeRequest() {
+            if (!sampled || !requestWritten.compareAndSet(false, true)) return;
+            if (!config.isRequestLogged() || routeFlags.isRequestInactive()) return;
+
+            String contentType = requestContentType != null ? requestContentType.toString() : null;
+            long size = Math.max(requestContentLength, requestCapture.getTotalSize());
+            boolean hasBody = contentType != null && !(requestContentLength < 0 && size == 0);
+
+            ApiLogSnapshot.ApiLogSnapshotBuilder snapshot;
+            try {
+                snapshot = ApiLogSnapshots.request(requestMethodUri, routeFlags, paramNames, paramValues,
+                        contentType, charset(requestContentType), requestContentEncoding, hasBody, size, new ApiLogSnapshots.CapturedBody() {
+                            @Override
+                            public byte[] bytes() {
+                                // max-body-size를 넘었거나, handler가 body를 읽지 않은 경우 크기만 찍는다.
+                                if (requestCapture.getTotalSize() < size || !requestCapture.isComplete()) return null;
+                                return requestCapture.toByteArray();
+                            }
+
+                            @Override
+                            public String multipartSummary() {
+                                // handler가 body를 읽지 않았으면 null 이므로 part 목록 없이 크기만 찍는다.
+                                return requestCapture.getMultipartSummary();
+                            }
+                        });
+            } catch (IOException e) {
+                log.warn("ReactiveLoggingWebFilter 로그 작성 중 Exception 발생", e);
+                return;
+            }
+            if (config.isMerged()) {
+                // 요청이 끝날 때 RES와 합쳐서 찍는다.
+                pendingRequest = snapshot.build();
+            } else {
+                write(snapshot);
+            }
+        }
+
+        /**
+         * Response API log를 찍는 부분. 응답이 끝났을 때(완료, 에러, 취소) 한번 불린다.
+         * sampling 되지 않은 요청도 2xx가 아닌 응답은 body 없이 로그를 남긴다.
+         *
+         * @param response 원래의 ServerHttpResponse
+         * @param signal   filter chain 종료 signal
+         */
+        private void complete(ServerHttpResponse response, SignalType signal) {
+            writeRequest();
+
+            HttpStatusCode statusCode = response.getStatusCode();
+            // 처리되지 않은 Exception은 filter 밖에서 에러 응답으로 바뀌므로 500으로 찍는다.
+            int status = error != null && (statusCode == null || statusCode.is2xxSuccessful()) ? 500
+                    : statusCode != null ? statusCode.value() : 200;
+            long elapsedNanos = System.nanoTime() - startNanos;
+            boolean cancelled = signal == SignalType.CANCEL;
+
+            if (config.isResponseLogged() && !routeFlags.isResponseInactive() && !isEventStream()
+                    && (sampled || !ApiLogSnapshots.isSuccessful(status))) {
+                writeResponse(response, status, elapsedNanos, cancelled);
+            } else if (pendingRequest != null) {
+                // response 로그를 찍지 않는 요청이지만 merged 설정으로 담아둔 request 값은 찍는다.
+                boolean summaryOnly = error == null && !cancelled && !ApiLogSnapshots.isBodyKept(config.getMerged(), status, elapsedNanos);
+                write(ApiLogSnapshots.pendingExchange(requestMethodUri, routeFlags, status, elapsedNanos, summaryOnly, takePendingRequest()));
+            }
+        }
+
+        private void writeResponse(ServerHttpResponse response, int status, long elapsedNanos, boolean cancelled) {
+            boolean merged = config.isMerged();
+            boolean summaryOnly = merged && error == null && !cancelled && !ApiLogSnapshots.isBodyKept(config.getMerged(), status, elapsedNanos);
+            MediaType responseContentType = response.getHeaders().getContentType();
+
+            ApiLogSnapshot.ApiLogSnapshotBuilder snapshot;
+            try {
+                snapshot = ApiLogSnapshots.response(requestMethodUri, routeFlags, status, elapsedNanos,
+                        responseContentType != null ? responseContentType.toString() : null, charset(responseContentType),
+                        response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), sampled, summaryOnly, responseCapture.getTotalSize(),
+                        // max-body-size를 넘은 body는 크기만 찍는다.
+                        () -> responseCapture.isComplete() ? responseCapture.toByteArray() : null,
+                        merged, merged ? takePendingRequest() : null);
+            } catch (IOException e) {
+                log.warn("ReactiveLoggingWebFilter 로그 작성 중 Exception 발생", e);
+                return;
+            }
+            write(snapshot);
+        }
+
+        private ApiLogSnapshot takePendingRequest() {
+            ApiLogSnapshot request = pendingRequest;
+            pendingRequest = null;
+            return request;
+        }
+
+        /**
+         * async 설정이면 AsyncApiLogDispatcher로 넘기고, 아니면 Reactor Context로 넘겨받은 값을 MDC에 잠깐 넣고 바로 찍는다.
+         *
+         * @param snapshot headers를 제외한 값이 채워진 snapshot builder
+         */
+        private void write(ApiLogSnapshot.ApiLogSnapshotBuilder snapshot) {
+            ApiLogSnapshot built = snapshot
+                    .requestId(requestId)
+                    .applicationName(applicationName)
+                    .headerNames(headerNames)
+                    .headerValues(headerValues)
+                    .build();
+            if (asyncDispatcher != null) {
+                asyncDispatcher.dispatch(built);
+                return;
+            }
+
+            MDC.put("requestId", requestId);
+            MDC.put("applicationName", applicationName);
+            try {
+                renderer.render(built);
+            } catch (IOException | RuntimeException e) {
+                // 응답 signal 처리 중이므로 Exception을 밖으로 던지지 않는다.
+                log.warn("ReactiveLoggingWebFilter 로그 작성 중 Exception 발생", e);
+            } finally {
+                MDC.remove("requestId");
+                MDC.remove("applicationName");
+            }
+        }
+    }
+
+    private static Charset charset(MediaType contentType) {
+        Charset charset = contentType != null ? contentType.getCharset() : null;
+        return charset != null ? charset : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * body 중 로그용으로 복사해 둘 크기.
+     * max-body-size를 넘는 body는 로그에 크기만 찍히므로 그 이상은 복사하지 않는다.
+     *
+     * @param maxBodySize request 또는 response max-body-size (byte)
+     * @return 복사해 둘 최대 크기 (byte)
+     */
+    private static int captureLimit(long maxBodySize) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, maxBodySize);
+    }
+
+    private static String hostAddress() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            return InetAddress.getLoopbackAddress().getHostAddress();
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package log.munzi.interceptor;
 
-import lombok.extern.slf4j.Slf4j;
+import log.munzi.config.ApiLogConfig;
+import log.munzi.config.ApiRouteMatcher;
 import org.springframework.util.StringUtils;
 
 import jakarta.servlet.ReadListener;
@@ -10,63 +11,61 @@ import jakarta.servlet.http.HttpServletRequestWrapper;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.util.Arrays;
 
 
 /**
  * Request Servlet 에 담긴 내용을 열어보면 휘발되기 때문에
  * request 정보를 휘발되지 않게 한번 감싼 것
+ * <p>
+ * body를 미리 전부 읽어두지 않고, controller가 원래 stream을 읽을 때 앞부분(max-body-size 이하)만 복사해둔다(tee).
+ * 로그를 controller보다 먼저 찍어야 하는 경우에는 getCapturedBody()가 앞부분만 미리 읽어두고,
+ * 미리 읽은 부분은 controller가 읽을 때 먼저 돌려준 뒤 원래 stream을 이어서 읽게 한다.
  */
-@Slf4j
 public class ReadableRequestWrapper extends HttpServletRequestWrapper {
-    private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
     private static final int EOF = -1;
 
     private final Charset encoding;
-    private byte[] rawData;
     private boolean read;
 
+    // 로그용으로 복사해 둘 최대 크기
+    private int captureLimit;
+    // body 앞부분 복사본. ExchangeContext가 있으면 그 buffer를 재사용한다.
+    private byte[] captured;
+    private int capturedLength;
+    // controller에게 돌려준 byte 수
+    private long consumed;
+    private TeeInputStream teeInputStream;
+
 
     /**
-     * @param request          HttpServletRequest
-     * @param reqSecretApiList body를 로그에 찍지 않을 api list (ex. POST /api/secret)
-     * @param reqMaxSize       request body max size
+     * @param request      HttpServletRequest
+     * @param routeMatcher body를 로그에 찍지 않을 api(request.secret-api)를 판별할 matcher
+     * @param reqMaxSize   request body max size (ex. "1KB"). 비어있으면 1KB
      */
-    public ReadableRequestWrapper(HttpServletRequest request, List<String> reqSecretApiList, String reqMaxSize) {
+    public ReadableRequestWrapper(HttpServletRequest request, ApiRouteMatcher routeMatcher, String reqMaxSize) {
+        this(request, routeMatcher, ApiLogConfig.parseSize(reqMaxSize));
+    }
+
+    /**
+     * @param request        HttpServletRequest
+     * @param routeMatcher   body를 로그에 찍지 않을 api(request.secret-api)를 판별할 matcher
+     * @param reqMaxBodySize request body max size (byte)
+     */
+    public ReadableRequestWrapper(HttpServletRequest request, ApiRouteMatcher routeMatcher, long reqMaxBodySize) {
         super(request);
         String encoding = request.getCharacterEncoding();
         this.encoding = StringUtils.hasLength(encoding) ? Charset.forName(encoding) : StandardCharsets.UTF_8;
-        try {
-            InputStream is = request.getInputStream();
-
-            if (reqMaxSize.isEmpty()) reqMaxSize = "1KB";
-            if (request.getContentType() == null
-                    || request.getContentType().contains("multipart/form-data")
-                    || (reqSecretApiList != null && reqSecretApiList.contains(request.getMethod() + " " + request.getRequestURI()))
-                    || request.getContentLengthLong() <= 0
-                    || request.getContentLengthLong() > textSizeToByteSize(reqMaxSize)) {
-                this.read = false;
-            } else {
-                this.read = true;
-                this.rawData = toByteArray(is);
-            }
-        } catch (IOException e) {
-            log.error("ReaderRequestWrapper에서 Stream을 열다가 IOException 발생", e);
-        }
-    }
-
-    private static byte[] toByteArray(final InputStream input) throws IOException {
-        try (final ByteArrayOutputStream output = new ByteArrayOutputStream()) {
-            copyLarge(input, output, new byte[DEFAULT_BUFFER_SIZE]);
-            return output.toByteArray();
-        }
-    }
 
-    private static void copyLarge(final InputStream input, final OutputStream output,
-                                  final byte[] buffer) throws IOException {
-        int n;
-        while (EOF != (n = input.read(buffer))) {
-            output.write(buffer, 0, n);
+        if (request.getContentType() == null
+                || request.getContentType().contains("multipart/form-data")
+                || (routeMatcher != null && routeMatcher.match(request.getMethod(), request.getRequestURI()).isRequestSecret())
+                || request.getContentLengthLong() <= 0
+                || request.getContentLengthLong() > reqMaxBodySize) {
+            this.read = false;
+        } else {
+            this.read = true;
+            this.captureLimit = (int) request.getContentLengthLong();
         }
     }
 
@@ -74,27 +73,10 @@ public class ReadableRequestWrapper extends HttpServletRequestWrapper {
     public ServletInputStream getInputStream() throws IOException {
         if (!read) return super.getRequest().getInputStream();
 
-        final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(this.rawData);
-        return new ServletInputStream() {
-            @Override
-            public boolean isFinished() {
-                return false;
-            }
-
-            @Override
-            public boolean isReady() {
-                return false;
-            }
-
-            @Override
-            public void setReadListener(ReadListener readListener) {
-                // Do nothing
-            }
-
-            public int read() {
-                return byteArrayInputStream.read();
-            }
-        };
+        if (teeInputStream == null) {
+            teeInputStream = new TeeInputStream(super.getRequest().getInputStream());
+        }
+        return teeInputStream;
     }
 
     @Override
@@ -102,17 +84,35 @@ public class ReadableRequestWrapper extends HttpServletRequestWrapper {
         return new BufferedReader(new InputStreamReader(this.getInputStream(), this.encoding));
     }
 
-    private double textSizeToByteSize(String size) {
-        String[] sArray = {"BYTES", "KB", "MB", "GB", "TB", "PB"};
-        size = size.toUpperCase();
-        for (int i = 0; i < sArray.length; i++) {
-            if (size.contains(sArray[i])) {
-                String sizeNumber = size.replaceAll(" ", "").replaceAll(sArray[i], "");
-                return Double.parseDouble(sizeNumber) * Math.pow(1024, i);
-            }
+    /**
+     * 로그에 찍을 body 앞부분을 돌려준다.
+     * controller가 아직 읽지 않았으면 앞부분만 미리 읽어두고, 미리 읽은 부분은 controller가 읽을 때 그대로 돌려준다.
+     *
+     * @return max-body-size 이하의 body 복사본, 로그에 찍지 않는 요청이면 null
+     * @throws IOException 원래 stream을 읽다가 발생한 Exception
+     */
+    public byte[] getCapturedBody() throws IOException {
+        if (!read) return null;
+
+        ServletInputStream original = super.getRequest().getInputStream();
+        int remaining = captureLimit - capturedLength;
+        // controller가 복사본보다 더 읽어간 경우는 이미 captureLimit까지 채워진 경우 뿐이다.
+        while (remaining > 0 && consumed == capturedLength) {
+            ensureCapacity();
+            int n = original.read(captured, capturedLength, remaining);
+            if (n == EOF) break;
+            capturedLength += n;
+            remaining -= n;
         }
 
-        return 0;
+        return captured == null ? new byte[0] : Arrays.copyOf(captured, capturedLength);
+    }
+
+    private void ensureCapacity() {
+        if (captured == null) {
+            ExchangeContext context = (ExchangeContext) getRequest().getAttribute(ExchangeContext.ATTRIBUTE);
+            captured = context != null ? context.bodyBuffer(captureLimit) : new byte[captureLimit];
+        }
     }
 
     /**
@@ -121,4 +121,103 @@ public class ReadableRequestWrapper extends HttpServletRequestWrapper {
     public boolean isRead() {
         return this.read;
     }
+
+    /**
+     * 미리 읽어둔 앞부분을 먼저 돌려주고, 이후 원래 stream을 읽으면서 captureLimit까지 복사하는 stream
+     */
+    private final class TeeInputStream extends ServletInputStream {
+
+        private final ServletInputStream original;
+
+        private TeeInputStream(ServletInputStream original) {
+            this.original = original;
+        }
+
+        private boolean hasPrefetched() {
+            return consumed < capturedLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (hasPrefetched()) {
+                return captured[(int) consumed++] & 0xFF;
+            }
+
+            int b = original.read();
+            if (b != EOF) {
+                if (capturedLength < captureLimit) {
+                    ensureCapacity();
+                    captured[capturedLength++] = (byte) b;
+                }
+                consumed++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+
+            if (hasPrefetched()) {
+                int n = Math.min(len, capturedLength - (int) consumed);
+                System.arraycopy(captured, (int) consumed, b, off, n);
+                consumed += n;
+                return n;
+            }
+
+            int n = original.read(b, off, len);
+            if (n > 0) {
+                int copy = Math.min(n, captureLimit - capturedLength);
+                if (copy > 0) {
+                    ensureCapacity();
+                    System.arraycopy(b, off, captured, capturedLength, copy);
+                    capturedLength += copy;
+                }
+                consumed += n;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return hasPrefetched() ? capturedLength - (int) consumed : original.available();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return !hasPrefetched() && original.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return hasPrefetched() || original.isReady();
+        }
+
+        /**
+         * 원래 stream에 listener를 등록한다.
+         * 미리 읽어둔 앞부분이 남아있으면 원래 stream이 끝났더라도 onAllDataRead 전에 onDataAvailable을 한번 더 불러준다.
+         */
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            original.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    readListener.onDataAvailable();
+                }
+
+                @Override
+                public void onAllDataRead() throws IOException {
+                    if (hasPrefetched()) {
+                        readListener.onDataAvailable();
+                    }
+                    readListener.onAllDataRead();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    readListener.onError(t);
+                }
+            });
+        }
+    }
 }
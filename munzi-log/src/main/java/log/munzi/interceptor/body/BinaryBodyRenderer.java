@@ -0,0 +1,64 @@
+package log.munzi.interceptor.body;
+
+import log.munzi.common.util.ByteSizeFormatter;
+import log.munzi.interceptor.ApiLogSnapshot;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 이미지, 파일 등 text가 아닌 body를 내용 대신 "[type, 크기, sha256 앞부분]"으로 찍는 renderer
+ * <p>
+ * sha256은 captured body로 계산하므로, 같은 파일이 오갔는지 로그끼리 비교할 때 사용한다.
+ * ex) [image/png, 12.5 KB, sha256=9f86d081884c]
+ */
+public class BinaryBodyRenderer implements BodyRenderer {
+
+    // 찍을 sha256 앞부분 크기 (byte). hex로 두 배 길이가 된다.
+    private static final int DIGEST_PREFIX_BYTES = 6;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    @Override
+    public String render(ApiLogSnapshot snapshot, byte[] body, int limit) {
+        if (body.length == 0) return "";
+        return summary(BodyRendererRegistry.mediaType(snapshot.getContentType()), size(snapshot, body), body, limit);
+    }
+
+    /**
+     * @param type  찍을 type (ex. "image/png")
+     * @param size  body 전체 크기
+     * @param body  captured body
+     * @param limit 결과 최대 크기
+     * @return "[type, 크기, sha256=...]"
+     */
+    static String summary(String type, long size, byte[] body, int limit) {
+        StringBuilder builder = new StringBuilder(64);
+        builder.append('[').append(type == null ? "unknown" : type).append(", ").append(ByteSizeFormatter.format(size));
+        if (body.length > 0) {
+            builder.append(", sha256=");
+            byte[] digest = sha256(body);
+            for (int i = 0; i < DIGEST_PREFIX_BYTES; i++) {
+                builder.append(HEX[(digest[i] >> 4) & 0xF]).append(HEX[digest[i] & 0xF]);
+            }
+        }
+        builder.append(']');
+        return builder.length() > limit ? builder.substring(0, Math.max(limit, 0)) : builder.toString();
+    }
+
+    /**
+     * @return snapshot에 담긴 원래 크기, 없으면 captured body 크기
+     */
+    static long size(ApiLogSnapshot snapshot, byte[] body) {
+        return Math.max(snapshot.getBodySize(), body.length);
+    }
+
+    private static byte[] sha256(byte[] body) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            // 모든 JVM에 있는 algorithm
+            throw new IllegalStateException(e);
+        }
+    }
+}
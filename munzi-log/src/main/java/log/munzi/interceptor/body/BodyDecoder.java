@@ -0,0 +1,20 @@
+package log.munzi.interceptor.body;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content-Encoding 별로 captured body를 풀어주는 decoder
+ * <p>
+ * 돌려준 stream은 BodyRendererRegistry가 max-body-size 까지만 읽으므로, 압축 폭탄이어도 그 이상 풀리지 않는다.
+ */
+@FunctionalInterface
+public interface BodyDecoder {
+
+    /**
+     * @param body captured body (max-body-size 이하로 잘린 앞부분일 수 있음)
+     * @return 풀린 body를 읽을 stream
+     * @throws IOException 형식이 잘못된 경우
+     */
+    InputStream decode(byte[] body) throws IOException;
+}
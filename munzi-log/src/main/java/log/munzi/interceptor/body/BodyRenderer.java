@@ -0,0 +1,21 @@
+package log.munzi.interceptor.body;
+
+import log.munzi.interceptor.ApiLogSnapshot;
+
+/**
+ * content type 별로 로그에 찍을 body 문자열을 만드는 renderer
+ * <p>
+ * BodyRendererRegistry에 content type으로 등록해서 사용한다.
+ * 로그 문자열을 만드는 thread(request thread 또는 AsyncApiLogDispatcher의 thread)에서 호출되므로 상태를 가지지 않아야 한다.
+ */
+@FunctionalInterface
+public interface BodyRenderer {
+
+    /**
+     * @param snapshot content type, charset, params 등 로그 값
+     * @param body     content-encoding을 푼 body (limit 이하)
+     * @param limit    결과 최대 크기 (max-body-size)
+     * @return 로그에 찍을 body 문자열. limit를 넘지 않아야 한다.
+     */
+    String render(ApiLogSnapshot snapshot, byte[] body, int limit);
+}
@@ -0,0 +1,243 @@
+package log.munzi.interceptor.body;
+
+import log.munzi.common.util.JsonMinifier;
+import log.munzi.common.util.XmlMinifier;
+import log.munzi.interceptor.ApiLogSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content-Encoding, Content-Type 별로 로그에 찍을 body 문자열을 만드는 renderer 목록
+ * <p>
+ * Content-Encoding(gzip, deflate)으로 압축된 body는 먼저 max-body-size 까지만 풀고, content type에 맞는 BodyRenderer로 문자열을 만든다.
+ * renderer는 "application/json" 처럼 정확한 type, "+json" 처럼 suffix, "image/*" 처럼 type 전체 순으로 찾는다.
+ * 어디에도 해당하지 않으면 text로 보이는 body는 그대로, 아니면 BinaryBodyRenderer로 찍는다.
+ * <p>
+ * 기본 renderer
+ * - json : 공백만 지워서 찍음 (JsonMinifier)
+ * - xml : tag 사이 공백만 지워서 찍음 (XmlMinifier)
+ * - text/* : 그대로 찍음
+ * - application/x-www-form-urlencoded : params로 이미 찍힌 값은 다시 찍지 않음 (FormBodyRenderer)
+ * - image, audio, video, font, octet-stream, pdf, zip 등 : [type, 크기, sha256 앞부분] (BinaryBodyRenderer)
+ */
+public class BodyRendererRegistry {
+
+    // 풀 수 없는 Content-Encoding(ex. br)이거나 깨진 body를 찍을 때의 renderer
+    private static final BinaryBodyRenderer BINARY = new BinaryBodyRenderer();
+
+    // text인지 볼 때 앞에서부터 확인할 크기
+    private static final int TEXT_SNIFF_BYTES = 512;
+
+    private final Map<String, BodyRenderer> renderers = new ConcurrentHashMap<>();
+
+    private final Map<String, BodyDecoder> decoders = new ConcurrentHashMap<>();
+
+    /**
+     * @return 기본 renderer, decoder(gzip, deflate)가 등록된 registry
+     */
+    public static BodyRendererRegistry defaults() {
+        BodyRendererRegistry registry = new BodyRendererRegistry();
+
+        BodyRenderer json = (snapshot, body, limit) -> JsonMinifier.minify(body, 0, body.length, limit, snapshot.getCharset());
+        registry.register("application/json", json);
+        registry.register("+json", json);
+
+        BodyRenderer xml = (snapshot, body, limit) -> XmlMinifier.minify(decode(body, limit, snapshot.getCharset()), limit);
+        registry.register("application/xml", xml);
+        registry.register("text/xml", xml);
+        registry.register("+xml", xml);
+
+        registry.register("text/*", BodyRendererRegistry::text);
+        registry.register("application/x-www-form-urlencoded", new FormBodyRenderer());
+
+        for (String binary : new String[]{"image/*", "audio/*", "video/*", "font/*", "application/octet-stream", "application/pdf",
+                "application/zip", "application/gzip", "application/x-protobuf", "application/protobuf", "application/grpc"}) {
+            registry.register(binary, BINARY);
+        }
+
+        registry.registerDecoder("gzip", body -> new GZIPInputStream(new ByteArrayInputStream(body)));
+        registry.registerDecoder("x-gzip", body -> new GZIPInputStream(new ByteArrayInputStream(body)));
+        registry.registerDecoder("deflate", BodyRendererRegistry::inflate);
+        return registry;
+    }
+
+    /**
+     * content type에 renderer를 등록한다. 같은 type이 있으면 바꾼다.
+     *
+     * @param contentType "application/json", "+json", "image/*" 형식의 type (대소문자 구분 없음)
+     * @param renderer    renderer
+     * @return this
+     */
+    public BodyRendererRegistry register(String contentType, BodyRenderer renderer) {
+        renderers.put(contentType.trim().toLowerCase(Locale.ROOT), renderer);
+        return this;
+    }
+
+    /**
+     * Content-Encoding에 decoder를 등록한다. 같은 encoding이 있으면 바꾼다.
+     *
+     * @param contentEncoding "gzip" 형식의 encoding (대소문자 구분 없음)
+     * @param decoder         decoder
+     * @return this
+     */
+    public BodyRendererRegistry registerDecoder(String contentEncoding, BodyDecoder decoder) {
+        decoders.put(contentEncoding.trim().toLowerCase(Locale.ROOT), decoder);
+        return this;
+    }
+
+    /**
+     * snapshot의 body를 로그에 찍을 문자열로 만든다.
+     *
+     * @param snapshot 로그 값
+     * @param limit    결과 최대 크기 (max-body-size)
+     * @return body 문자열
+     */
+    public String render(ApiLogSnapshot snapshot, int limit) {
+        return render(snapshot, decode(snapshot, limit), limit);
+    }
+
+    /**
+     * decode 해 둔 body를 로그에 찍을 문자열로 만든다.
+     *
+     * @param snapshot 로그 값
+     * @param decoded  decode(snapshot, limit) 결과
+     * @param limit    결과 최대 크기 (max-body-size)
+     * @return body 문자열
+     */
+    public String render(ApiLogSnapshot snapshot, byte[] decoded, int limit) {
+        byte[] body = snapshot.getBody();
+        if (body == null) return "";
+        if (decoded == null) {
+            // 풀 수 없는 body는 내용 대신 type, encoding, 크기만 찍는다.
+            String type = mediaType(snapshot.getContentType());
+            return BinaryBodyRenderer.summary((type == null ? "unknown" : type) + " (" + snapshot.getContentEncoding().trim() + ")",
+                    BinaryBodyRenderer.size(snapshot, body), body, limit);
+        }
+
+        BodyRenderer renderer = find(mediaType(snapshot.getContentType()));
+        if (renderer != null) return renderer.render(snapshot, decoded, limit);
+        return looksLikeText(decoded) ? text(snapshot, decoded, limit) : BINARY.render(snapshot, decoded, limit);
+    }
+
+    /**
+     * Content-Encoding 으로 압축된 body를 최대 limit byte까지 푼다.
+     * captured body가 앞부분만 잘려 있거나 중간이 깨진 경우에는 풀린 부분까지만 돌려준다.
+     *
+     * @param snapshot 로그 값
+     * @param limit    풀 최대 크기 (max-body-size)
+     * @return 풀린 body. 압축되지 않았으면 body 그대로, 풀 수 없는 encoding이면 null
+     */
+    public byte[] decode(ApiLogSnapshot snapshot, int limit) {
+        byte[] body = snapshot.getBody();
+        String contentEncoding = snapshot.getContentEncoding();
+        if (body == null || body.length == 0 || contentEncoding == null || contentEncoding.isBlank()) return body;
+
+        String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        if (encoding.equals("identity")) return body;
+        BodyDecoder decoder = decoders.get(encoding);
+        if (decoder == null) return null;
+
+        byte[] out = new byte[(int) Math.max(0, Math.min(limit, body.length * 4L))];
+        int length = 0;
+        try (InputStream in = decoder.decode(body)) {
+            while (length < limit) {
+                if (length == out.length) out = Arrays.copyOf(out, (int) Math.min(limit, out.length * 2L));
+                int n = in.read(out, length, out.length - length);
+                if (n < 0) break;
+                length += n;
+            }
+        } catch (IOException e) {
+            // 잘린 앞부분만 capture 했거나 깨진 body. 풀린 부분까지만 찍는다.
+            if (length == 0) return null;
+        }
+        return length == out.length ? out : Arrays.copyOf(out, length);
+    }
+
+    private BodyRenderer find(String mediaType) {
+        if (mediaType == null) return null;
+        BodyRenderer renderer = renderers.get(mediaType);
+        if (renderer != null) return renderer;
+
+        int plus = mediaType.lastIndexOf('+');
+        if (plus >= 0 && (renderer = renderers.get(mediaType.substring(plus))) != null) return renderer;
+
+        int slash = mediaType.indexOf('/');
+        if (slash >= 0 && (renderer = renderers.get(mediaType.substring(0, slash) + "/*")) != null) return renderer;
+        return renderers.get("*/*");
+    }
+
+    /**
+     * @param contentType "application/json;charset=UTF-8" 형식의 Content-Type
+     * @return parameter를 뺀 소문자 type (ex. "application/json"), 없으면 null
+     */
+    static String mediaType(String contentType) {
+        if (contentType == null) return null;
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+        return type.isEmpty() ? null : type;
+    }
+
+    private static String text(ApiLogSnapshot snapshot, byte[] body, int limit) {
+        return decode(body, limit, snapshot.getCharset());
+    }
+
+    /**
+     * body를 최대 limit byte까지 문자열로 만든다. limit에서 multi-byte 문자가 잘리면 그 문자 앞까지만 만든다.
+     */
+    static String decode(byte[] body, int limit, Charset charset) {
+        if (body.length <= limit) return new String(body, charset);
+
+        // endOfInput을 false로 넘기면 끝에서 잘린 문자는 풀지 않고 남겨둔다.
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer out = CharBuffer.allocate((int) Math.ceil(limit * (double) decoder.maxCharsPerByte()));
+        decoder.decode(ByteBuffer.wrap(body, 0, Math.max(0, limit)), out, false);
+        return out.flip().toString();
+    }
+
+    /**
+     * 앞부분에 줄바꿈, tab이 아닌 제어문자가 없으면 text로 본다.
+     */
+    private static boolean looksLikeText(byte[] body) {
+        int length = Math.min(body.length, TEXT_SNIFF_BYTES);
+        for (int i = 0; i < length; i++) {
+            int b = body[i] & 0xFF;
+            if ((b < 0x20 && b != '\t' && b != '\n' && b != '\r') || b == 0x7F) return false;
+        }
+        return true;
+    }
+
+    /**
+     * HTTP deflate는 zlib 형식이 표준이지만 raw deflate로 보내는 서버도 있어서, zlib header가 없으면 raw로 푼다.
+     * 직접 만든 Inflater는 stream을 닫아도 정리되지 않으므로 close 할 때 같이 정리한다.
+     */
+    private static InputStream inflate(byte[] body) {
+        boolean zlib = body.length >= 2 && (body[0] & 0x0F) == 8 && (((body[0] & 0xFF) << 8) | (body[1] & 0xFF)) % 31 == 0;
+        Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(new ByteArrayInputStream(body), inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
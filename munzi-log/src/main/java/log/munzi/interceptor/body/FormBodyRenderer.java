@@ -0,0 +1,57 @@
+package log.munzi.interceptor.body;
+
+import log.munzi.interceptor.ApiLogSnapshot;
+
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+
+/**
+ * application/x-www-form-urlencoded body renderer
+ * <p>
+ * servlet container가 form body를 이미 params로 읽은 경우 captured body는 비어있고 같은 값이 params에 찍히므로, body에는 다시 찍지 않는다.
+ * params로 읽히지 않고 body가 남아있는 경우(WebFlux 등)에만 body를 {"name":"value", ...} 형식으로 풀어서 찍는다.
+ */
+public class FormBodyRenderer implements BodyRenderer {
+
+    // params에 이미 찍힌 form 값일 때 body 대신 찍는 문구
+    static final String SEE_PARAMS = "[application/x-www-form-urlencoded, see params]";
+
+    @Override
+    public String render(ApiLogSnapshot snapshot, byte[] body, int limit) {
+        if (body.length == 0) {
+            boolean parsed = snapshot.getParamNames() != null && snapshot.getParamNames().length > 0;
+            return parsed ? SEE_PARAMS : "";
+        }
+
+        Charset charset = snapshot.getCharset();
+        String form = new String(body, charset);
+        StringBuilder builder = new StringBuilder(Math.min(form.length() + 16, limit));
+        builder.append('{');
+        int start = 0;
+        boolean first = true;
+        while (start <= form.length() && builder.length() < limit) {
+            int end = form.indexOf('&', start);
+            if (end < 0) end = form.length();
+            if (end > start) {
+                int equals = form.indexOf('=', start);
+                String name = equals < 0 || equals > end ? form.substring(start, end) : form.substring(start, equals);
+                String value = equals < 0 || equals > end ? "" : form.substring(equals + 1, end);
+                if (!first) builder.append(", ");
+                builder.append('"').append(decode(name, charset)).append("\":\"").append(decode(value, charset)).append('"');
+                first = false;
+            }
+            start = end + 1;
+        }
+        builder.append('}');
+        return builder.length() > limit ? builder.substring(0, limit) : builder.toString();
+    }
+
+    private static String decode(String value, Charset charset) {
+        try {
+            return URLDecoder.decode(value, charset);
+        } catch (IllegalArgumentException e) {
+            // 잘못된 %xx는 그대로 찍는다.
+            return value;
+        }
+    }
+}
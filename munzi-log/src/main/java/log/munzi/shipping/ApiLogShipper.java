@@ -0,0 +1,530 @@
+package log.munzi.shipping;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import log.munzi.config.ApiLogConfig;
+import log.munzi.config.ApiLogProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * REQ, RES 로그(json 한 줄)를 모아서 로그 수집기의 bulk api로 보내는 shipper
+ * <p>
+ * 호출한 thread에서는 queue에 넣기만 하고, "munzi-log-shipper" thread가 batch-size 개 또는 flush-interval-ms 마다
+ * BulkBatch(ndjson)로 묶어 gzip으로 압축한 후 보낸다. 동시에 보내는 요청은 max-concurrent-requests 개까지이다.
+ * index명은 "server명-profile-날짜" (applicationName MDC의 앞부분 + index-date-pattern) 이다.
+ * <p>
+ * 수집기가 느려서 요청을 보낼 자리가 나지 않거나 실패(5xx, 408, 429, timeout 등)한 batch는 ShipperSpool 파일에 쓰고,
+ * 수집기가 다시 응답하면 쌓인 순서대로 하나씩 다시 보낸다. 실패가 이어지면 최대 30초까지 간격을 늘려가며 다시 시도한다.
+ * 다시 보내도 같은 응답일 4xx는 버린다. bulk 응답 body(item 별 실패)는 보지 않는다.
+ * timeout 후에 수집기가 뒤늦게 받은 batch도 다시 보내므로, 같은 로그가 두번 들어갈 수 있다.
+ * <p>
+ * metric (api-log.metrics.name 이 munzi.api.requests 인 경우)
+ * munzi.api.requests.shipper.records.sent, records.dropped, batches.sent, batches.failed, batches.spooled, bytes.sent,
+ * queue.size, spool.size, in.flight, lag(아직 보내지 못한 가장 오래된 로그의 지연 ms), requests(bulk 요청 응답시간)
+ */
+@Slf4j
+public class ApiLogShipper implements MeterBinder, AutoCloseable {
+
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private static final String DEFAULT_INDEX_PREFIX = "munzi-log";
+
+    // close() 에서 queue에 넣어 "munzi-log-shipper" thread를 깨우는 표시. 보내지 않는다.
+    private static final Pending WAKE_UP = new Pending(null, null, 0);
+
+    private final URI uri;
+
+    private final HttpClient httpClient;
+
+    private final Map<String, String> headers;
+
+    private final String metricName;
+
+    private final String defaultIndexPrefix;
+
+    private final DateTimeFormatter indexDateFormat;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private final int batchSize;
+
+    private final long maxBatchBytes;
+
+    private final long flushIntervalMs;
+
+    private final long requestTimeoutMs;
+
+    private final int maxConcurrentRequests;
+
+    private final BlockingQueue<Pending> queue;
+
+    private final Semaphore permits;
+
+    // spool 파일을 열지 못했으면 null. 이 경우 보내지 못한 batch는 버린다.
+    private final ShipperSpool spool;
+
+    private final Set<BulkBatch> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean replaying = new AtomicBoolean();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final LongAdder sentRecords = new LongAdder();
+
+    private final LongAdder droppedRecords = new LongAdder();
+
+    private final LongAdder sentBatches = new LongAdder();
+
+    private final LongAdder failedBatches = new LongAdder();
+
+    private final LongAdder spooledBatches = new LongAdder();
+
+    private final LongAdder sentBytes = new LongAdder();
+
+    private final Thread worker;
+
+    private volatile boolean closed;
+
+    // close() 에서 spool 파일을 닫은 후. 이후 늦게 온 응답의 batch는 spool 파일에 쓰지 않고 버린다.
+    private volatile boolean spoolClosed;
+
+    // 실패 후 다시 보내기 시작할 시각. 그 전에 보낼 batch는 spool 파일에 쓴다.
+    private volatile long retryAtMillis;
+
+    // "munzi-log-shipper" thread에서 모으고 있는 batch의 첫 로그 시각. 없으면 0
+    private volatile long buildingSinceMillis;
+
+    private volatile Timer requestTimer;
+
+    // 아래는 "munzi-log-shipper" thread 에서만 사용하는 index명 cache
+    private String cachedApplicationName;
+
+    private String cachedIndexPrefix;
+
+    private long cachedDateFrom = Long.MAX_VALUE;
+
+    private long cachedDateUntil = Long.MIN_VALUE;
+
+    private String cachedDate;
+
+    /**
+     * @param apiLog api log 설정
+     */
+    public ApiLogShipper(ApiLogProperties apiLog) {
+        this(apiLog, HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(apiLog.getShipping().getConnectTimeoutMs()))
+                .build());
+    }
+
+    /**
+     * @param apiLog     api log 설정
+     * @param httpClient bulk 요청을 보낼 client (local stub server 등으로 보낼 때)
+     * @throws IllegalArgumentException api-log.shipping.url 설정이 없는 경우
+     */
+    public ApiLogShipper(ApiLogProperties apiLog, HttpClient httpClient) {
+        ApiLogProperties.Shipping shipping = apiLog.getShipping();
+        if (shipping == null || !StringUtils.hasText(shipping.getUrl())) {
+            throw new IllegalArgumentException("api-log.shipping.url 설정이 없음");
+        }
+
+        this.uri = URI.create(shipping.getUrl());
+        this.httpClient = httpClient;
+        this.headers = shipping.getHeaders() == null ? Map.of() : new HashMap<>(shipping.getHeaders());
+        this.metricName = (apiLog.getMetrics() != null ? apiLog.getMetrics().getName() : "munzi.api.requests") + ".shipper";
+        this.defaultIndexPrefix = StringUtils.hasText(apiLog.getServerName()) ? apiLog.getServerName().toLowerCase(Locale.ROOT) : DEFAULT_INDEX_PREFIX;
+        this.indexDateFormat = DateTimeFormatter.ofPattern(shipping.getIndexDatePattern());
+        this.batchSize = Math.max(1, shipping.getBatchSize());
+        this.maxBatchBytes = Math.max(1, ApiLogConfig.parseSize(shipping.getMaxBatchSize()));
+        this.flushIntervalMs = Math.max(1, shipping.getFlushIntervalMs());
+        this.requestTimeoutMs = shipping.getRequestTimeoutMs();
+        this.maxConcurrentRequests = Math.max(1, shipping.getMaxConcurrentRequests());
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, shipping.getQueueSize()));
+        this.permits = new Semaphore(maxConcurrentRequests);
+
+        ShipperSpool openedSpool = null;
+        if (StringUtils.hasText(shipping.getSpoolPath())) {
+            try {
+                openedSpool = new ShipperSpool(Paths.get(shipping.getSpoolPath()), ApiLogConfig.parseSize(shipping.getSpoolMaxSize()));
+            } catch (IOException e) {
+                log.warn("munzi-log shipper spool 파일 {} 을 열 수 없어 보내지 못한 로그는 버림", shipping.getSpoolPath(), e);
+            }
+        }
+        this.spool = openedSpool;
+
+        this.worker = new Thread(this::run, "munzi-log-shipper");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 로그 json 한 줄을 queue에 넣는다.
+     *
+     * @param json            로그 json 한 줄
+     * @param applicationName index명에 사용할 "server명-profile hostAddress", 없으면 api-log.server-name
+     * @return queue에 넣었으면 true, 가득 찼거나 종료 중이어서 버렸으면 false
+     */
+    public boolean offer(String json, String applicationName) {
+        if (closed || !queue.offer(new Pending(json, applicationName, System.currentTimeMillis()))) {
+            droppedRecords.increment();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(metricName + ".records.sent", sentRecords, LongAdder::sum)
+                .description("bulk api로 보낸 로그 수")
+                .register(registry);
+        FunctionCounter.builder(metricName + ".records.dropped", droppedRecords, LongAdder::sum)
+                .description("queue, spool 파일이 가득 찼거나 4xx 응답, 종료 후 실패 응답으로 버려진 로그 수")
+                .register(registry);
+        FunctionCounter.builder(metricName + ".batches.sent", sentBatches, LongAdder::sum)
+                .description("bulk api로 보낸 batch 수")
+                .register(registry);
+        FunctionCounter.builder(metricName + ".batches.failed", failedBatches, LongAdder::sum)
+                .description("bulk 요청이 실패한 batch 수")
+                .register(registry);
+        FunctionCounter.builder(metricName + ".batches.spooled", spooledBatches, LongAdder::sum)
+                .description("spool 파일에 쓴 batch 수")
+                .register(registry);
+        FunctionCounter.builder(metricName + ".bytes.sent", sentBytes, LongAdder::sum)
+                .description("bulk api로 보낸 크기 (압축 후)")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder(metricName + ".queue.size", this, ApiLogShipper::getQueueSize)
+                .description("보내기 전 queue에 남은 로그 수")
+                .register(registry);
+        Gauge.builder(metricName + ".spool.size", this, ApiLogShipper::getSpoolBytes)
+                .description("spool 파일에 남아 다시 보내야 하는 크기")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder(metricName + ".in.flight", this, ApiLogShipper::getInFlightCount)
+                .description("응답을 기다리는 bulk 요청 수")
+                .register(registry);
+        Gauge.builder(metricName + ".lag", this, ApiLogShipper::getLagMillis)
+                .description("아직 보내지 못한 가장 오래된 로그가 들어온 후 지난 시간")
+                .baseUnit("milliseconds")
+                .register(registry);
+        this.requestTimer = Timer.builder(metricName + ".requests")
+                .description("bulk 요청 응답시간")
+                .register(registry);
+    }
+
+    /**
+     * @return bulk api로 보낸 로그 수
+     */
+    public long getSentCount() {
+        return sentRecords.sum();
+    }
+
+    /**
+     * @return 버려진 로그 수
+     */
+    public long getDroppedCount() {
+        return droppedRecords.sum();
+    }
+
+    /**
+     * @return 보내기 전 queue에 남은 로그 수
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * @return spool 파일에 남아 다시 보내야 하는 크기 (byte)
+     */
+    public long getSpoolBytes() {
+        return spool == null ? 0 : spool.getPendingBytes();
+    }
+
+    /**
+     * @return 응답을 기다리는 bulk 요청 수
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * queue, 모으고 있는 batch, 응답을 기다리는 batch, spool 파일 중 가장 오래된 로그가 들어온 후 지난 시간
+     *
+     * @return 지연 시간(ms), 보낼 로그가 없으면 0
+     */
+    public long getLagMillis() {
+        long oldest = Long.MAX_VALUE;
+        Pending head = queue.peek();
+        if (head != null && head != WAKE_UP) oldest = head.createdMillis;
+        if (buildingSinceMillis > 0) oldest = Math.min(oldest, buildingSinceMillis);
+        for (BulkBatch batch : inFlight) oldest = Math.min(oldest, batch.getCreatedMillis());
+        if (spool != null && spool.getOldestMillis() > 0) oldest = Math.min(oldest, spool.getOldestMillis());
+        return oldest == Long.MAX_VALUE ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
+    /**
+     * queue에 남은 로그를 보내고(자리가 없으면 spool 파일에 쓰고), 응답을 기다리는 요청을 최대 5초 동안 기다린 후 종료한다.
+     * spool 파일에 남은 batch는 다음 시작 때 다시 보낸다. 그 후에 실패 응답이 온 batch는 spool 파일에 쓰지 않고 버린다. (records.dropped)
+     * "munzi-log-shipper" thread는 interrupt 하지 않고 WAKE_UP 으로 깨운다.
+     * interrupt 된 thread가 spool 파일(FileChannel)에 쓰면 ClosedByInterruptException으로 channel이 닫혀서 spool 파일을 더 쓸 수 없기 때문이다.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        // queue가 가득 찼으면 thread가 기다리지 않고 꺼내는 중이므로 넣지 못해도 된다.
+        queue.offer(WAKE_UP);
+        try {
+            worker.join(5000);
+            if (permits.tryAcquire(maxConcurrentRequests, 5, TimeUnit.SECONDS)) {
+                permits.release(maxConcurrentRequests);
+            } else {
+                log.warn("ApiLogShipper 종료 중 응답을 기다리는 bulk 요청 {}건이 끝나지 않음", inFlight.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        spoolClosed = true;
+        if (spool != null) {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                log.warn("munzi-log shipper spool 파일을 닫는 중 Exception 발생", e);
+            }
+        }
+    }
+
+    /**
+     * "munzi-log-shipper" thread. queue에서 꺼낸 로그를 batch로 묶어서 보내고, flush-interval-ms 마다 spool 파일의 batch를 다시 보낸다.
+     */
+    private void run() {
+        BulkBatch batch = new BulkBatch();
+        long flushAt = System.currentTimeMillis() + flushIntervalMs;
+        while (true) {
+            boolean closing = closed;
+            try {
+                Pending pending = closing ? queue.poll() : queue.poll(Math.max(1, flushAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                while (pending != null) {
+                    if (pending == WAKE_UP) {
+                        pending = queue.poll();
+                        continue;
+                    }
+                    if (batch.isEmpty()) buildingSinceMillis = pending.createdMillis;
+                    batch.add(index(pending), pending.json, pending.createdMillis);
+                    if (batch.getRecords() >= batchSize || batch.getSize() >= maxBatchBytes) break;
+                    pending = queue.poll();
+                }
+            } catch (InterruptedException e) {
+                // 밖에서 interrupt 한 경우. interrupt 상태는 지워졌으므로 spool 파일을 계속 쓸 수 있다. 종료는 closed 로만 한다.
+                continue;
+            } catch (RuntimeException e) {
+                log.error("ApiLogShipper에서 batch를 만들다가 Exception 발생", e);
+            }
+
+            long now = System.currentTimeMillis();
+            if (!batch.isEmpty() && (closing || now >= flushAt || batch.getRecords() >= batchSize || batch.getSize() >= maxBatchBytes)) {
+                ship(batch.compress());
+                batch = new BulkBatch();
+                buildingSinceMillis = 0;
+            }
+            if (closing && queue.isEmpty() && batch.isEmpty()) return;
+
+            if (now >= flushAt) {
+                flushAt = now + flushIntervalMs;
+                replay();
+            }
+        }
+    }
+
+    /**
+     * 실패 후 기다리는 중이거나 flush-interval-ms 동안 요청을 보낼 자리가 나지 않으면 spool 파일에 쓴다.
+     */
+    private void ship(BulkBatch batch) {
+        if (System.currentTimeMillis() < retryAtMillis || !acquire()) {
+            spill(batch);
+            return;
+        }
+        send(batch, null);
+    }
+
+    private boolean acquire() {
+        if (closed) return permits.tryAcquire();
+        try {
+            return permits.tryAcquire(flushIntervalMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // 바로 spool 파일에 쓰므로 interrupt 상태를 다시 설정하지 않는다. (ClosedByInterruptException 방지)
+            return false;
+        }
+    }
+
+    /**
+     * spool 파일의 가장 오래된 batch를 다시 보낸다. 순서대로 보내기 위해 한번에 하나만 보낸다.
+     */
+    private void replay() {
+        if (spool == null || closed || System.currentTimeMillis() < retryAtMillis || !replaying.compareAndSet(false, true)) return;
+
+        boolean sending = false;
+        try {
+            ShipperSpool.Entry entry = spool.peek();
+            if (entry != null && permits.tryAcquire()) {
+                sending = true;
+                send(entry.getBatch(), entry);
+            }
+        } catch (IOException e) {
+            log.warn("munzi-log shipper spool 파일을 읽는 중 Exception 발생", e);
+        } finally {
+            if (!sending) replaying.set(false);
+        }
+    }
+
+    /**
+     * permit을 얻은 후 호출한다. 응답이 오면 permit을 돌려준다.
+     *
+     * @param batch 압축된 batch
+     * @param entry spool 파일에서 다시 보내는 경우 spool 위치, 아니면 null
+     */
+    private void send(BulkBatch batch, ShipperSpool.Entry entry) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .header("Content-Type", "application/x-ndjson")
+                .header("Content-Encoding", "gzip")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(batch.getCompressed()));
+        headers.forEach(request::header);
+
+        inFlight.add(batch);
+        long startNanos = System.nanoTime();
+        CompletableFuture<HttpResponse<Void>> response;
+        try {
+            response = httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.discarding());
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+
+        response.whenComplete((result, failure) -> {
+            boolean sent = false;
+            try {
+                Timer timer = requestTimer;
+                if (timer != null) timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                sent = complete(batch, entry, result == null ? -1 : result.statusCode(), failure);
+            } catch (RuntimeException e) {
+                log.error("ApiLogShipper에서 bulk 응답을 처리하다가 Exception 발생", e);
+            } finally {
+                inFlight.remove(batch);
+                permits.release();
+                if (entry != null) replaying.set(false);
+            }
+            // 보내는데 성공했으면 spool 파일에 쌓인 batch를 이어서 보낸다.
+            if (sent) replay();
+        });
+    }
+
+    /**
+     * @return 보내는데 성공했으면 true
+     */
+    private boolean complete(BulkBatch batch, ShipperSpool.Entry entry, int status, Throwable failure) {
+        if (failure == null && status >= 200 && status < 300) {
+            sentRecords.add(batch.getRecords());
+            sentBatches.increment();
+            sentBytes.add(batch.getCompressed().length);
+            failures.set(0);
+            retryAtMillis = 0;
+            commit(entry);
+            return true;
+        }
+
+        failedBatches.increment();
+        if (failure == null && status >= 400 && status < 500 && status != 408 && status != 429) {
+            // 다시 보내도 같은 응답이므로 버린다.
+            log.warn("munzi-log shipper bulk 요청 실패 (status {}), 로그 {}건을 버림", status, batch.getRecords());
+            droppedRecords.add(batch.getRecords());
+            commit(entry);
+            return false;
+        }
+
+        long backoffMs = Math.min(MAX_BACKOFF_MS, flushIntervalMs << Math.min(failures.getAndIncrement(), 16));
+        retryAtMillis = System.currentTimeMillis() + backoffMs;
+        log.warn("munzi-log shipper bulk 요청 실패 ({}), {}ms 후 다시 보냄", failure != null ? failure.toString() : "status " + status, backoffMs);
+        // spool 파일에서 다시 보낸 batch는 그대로 남겨둔다.
+        if (entry == null) spill(batch);
+        return false;
+    }
+
+    private void commit(ShipperSpool.Entry entry) {
+        if (entry == null) return;
+        try {
+            spool.commit(entry);
+        } catch (IOException e) {
+            log.warn("munzi-log shipper spool 파일 위치를 쓰는 중 Exception 발생", e);
+        }
+    }
+
+    private void spill(BulkBatch batch) {
+        if (spoolClosed) {
+            log.warn("ApiLogShipper 종료 후 실패 응답이 온 bulk 요청의 로그 {}건을 버림", batch.getRecords());
+            droppedRecords.add(batch.getRecords());
+            return;
+        }
+        try {
+            if (spool != null && spool.append(batch)) {
+                spooledBatches.increment();
+                return;
+            }
+        } catch (IOException e) {
+            log.warn("munzi-log shipper spool 파일에 쓰는 중 Exception 발생", e);
+        }
+        droppedRecords.add(batch.getRecords());
+    }
+
+    /**
+     * "server명-profile-날짜". server명-profile 은 applicationName MDC("server명-profile hostAddress")의 앞부분을 쓴다.
+     */
+    private String index(Pending pending) {
+        if (cachedApplicationName == null || !cachedApplicationName.equals(pending.applicationName)) {
+            cachedApplicationName = pending.applicationName;
+            String prefix = pending.applicationName == null ? "" : pending.applicationName.trim();
+            if (prefix.indexOf(' ') > 0) prefix = prefix.substring(0, prefix.indexOf(' '));
+            cachedIndexPrefix = prefix.isEmpty() ? defaultIndexPrefix : prefix.toLowerCase(Locale.ROOT);
+        }
+
+        // index-date-pattern 은 시간 단위까지 바뀌는 경우만 고려해 한 시간 동안 같은 문자열을 쓴다.
+        if (pending.createdMillis < cachedDateFrom || pending.createdMillis >= cachedDateUntil) {
+            ZonedDateTime hour = Instant.ofEpochMilli(pending.createdMillis).atZone(zone).truncatedTo(ChronoUnit.HOURS);
+            cachedDateFrom = hour.toInstant().toEpochMilli();
+            cachedDateUntil = hour.plusHours(1).toInstant().toEpochMilli();
+            cachedDate = indexDateFormat.format(hour);
+        }
+        return cachedIndexPrefix + "-" + cachedDate;
+    }
+
+    private record Pending(String json, String applicationName, long createdMillis) {
+    }
+}
@@ -0,0 +1,122 @@
+package log.munzi.shipping;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * bulk api로 한번에 보낼 로그 묶음
+ * <p>
+ * 로그마다 index action 한 줄과 "@timestamp"를 붙인 로그 json 한 줄을 이어 쓰고(ndjson), 다 모으면 gzip으로 압축해 둔다.
+ * {"index":{"_index":"server명-profile-2023.06.01"}}
+ * {"@timestamp":"2023-06-01T03:00:00.123Z","type":"RES","requestId":"...",...}
+ * <p>
+ * 압축한 후에는 보내거나 spool 파일에 쓰고 다시 읽어서 보낼 때까지 바뀌지 않는다.
+ */
+final class BulkBatch {
+
+    private static final byte[] ACTION_PREFIX = "{\"index\":{\"_index\":\"".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] ACTION_SUFFIX = "\"}}\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] TIMESTAMP_PREFIX = "{\"@timestamp\":\"".getBytes(StandardCharsets.UTF_8);
+
+    private ByteArrayOutputStream ndjson = new ByteArrayOutputStream(64 * 1024);
+
+    private int records;
+
+    // 가장 먼저 들어온 로그 시각 (epoch millis). lag 계산에 사용한다.
+    private long createdMillis = Long.MAX_VALUE;
+
+    private byte[] compressed;
+
+    BulkBatch() {
+    }
+
+    private BulkBatch(byte[] compressed, int records, long createdMillis) {
+        this.ndjson = null;
+        this.compressed = compressed;
+        this.records = records;
+        this.createdMillis = createdMillis;
+    }
+
+    /**
+     * spool 파일에서 다시 읽은 batch
+     *
+     * @param compressed    압축된 ndjson
+     * @param records       로그 수
+     * @param createdMillis 가장 먼저 들어온 로그 시각
+     * @return 압축된 batch
+     */
+    static BulkBatch compressed(byte[] compressed, int records, long createdMillis) {
+        return new BulkBatch(compressed, records, createdMillis);
+    }
+
+    /**
+     * @param index         index명
+     * @param json          로그 json 한 줄
+     * @param createdMillis 로그 시각
+     */
+    void add(String index, String json, long createdMillis) {
+        ndjson.writeBytes(ACTION_PREFIX);
+        ndjson.writeBytes(index.getBytes(StandardCharsets.UTF_8));
+        ndjson.writeBytes(ACTION_SUFFIX);
+
+        if (json.length() > 2 && json.charAt(0) == '{') {
+            ndjson.writeBytes(TIMESTAMP_PREFIX);
+            ndjson.writeBytes(Instant.ofEpochMilli(createdMillis).toString().getBytes(StandardCharsets.UTF_8));
+            ndjson.write('"');
+            ndjson.write(',');
+            ndjson.writeBytes(json.substring(1).getBytes(StandardCharsets.UTF_8));
+        } else {
+            ndjson.writeBytes(json.getBytes(StandardCharsets.UTF_8));
+        }
+        ndjson.write('\n');
+
+        records++;
+        this.createdMillis = Math.min(this.createdMillis, createdMillis);
+    }
+
+    /**
+     * ndjson을 gzip으로 압축하고 압축 전 buffer는 버린다.
+     *
+     * @return this
+     */
+    BulkBatch compress() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(512, ndjson.size() / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            ndjson.writeTo(gzip);
+        } catch (IOException e) {
+            // ByteArrayOutputStream 에 쓰므로 발생하지 않음
+            throw new IllegalStateException(e);
+        }
+        this.compressed = out.toByteArray();
+        this.ndjson = null;
+        return this;
+    }
+
+    boolean isEmpty() {
+        return records == 0;
+    }
+
+    int getRecords() {
+        return records;
+    }
+
+    /**
+     * @return 압축 전 크기
+     */
+    int getSize() {
+        return ndjson == null ? 0 : ndjson.size();
+    }
+
+    long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    byte[] getCompressed() {
+        return compressed;
+    }
+}
@@ -0,0 +1,279 @@
+package log.munzi.shipping;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 보내지 못한 batch를 쌓아두는 append-only spool 파일
+ * <p>
+ * batch는 파일 끝에만 쓰고, 다시 보낼 때는 앞에서부터 읽는다. 보낸 위치는 "파일명.pos" 에 남겨서 재시작해도 이어서 보낸다.
+ * 다 보내서 읽을 batch가 없으면 파일을 비운다.
+ * 파일 크기(이미 보낸 앞부분 포함)는 최대 크기를 넘지 않는다. 이미 보낸 앞부분이 최대 크기의 절반을 넘거나,
+ * 새 batch를 쓸 자리가 없으면 남은 batch만 "파일명.compact" 에 옮겨 쓴 후 파일을 바꾼다. (compact)
+ * 마지막 batch를 쓰다가 중단된 경우 등 형식이 맞지 않는 부분부터는 버린다.
+ * <p>
+ * entry 형식 : MAGIC(int), 압축된 크기(int), 로그 수(int), 가장 먼저 들어온 로그 시각(long), 압축된 ndjson
+ */
+@Slf4j
+final class ShipperSpool implements Closeable {
+
+    private static final int MAGIC = 0x4D5A5350;
+
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+
+    private final Path file;
+
+    private final long maxBytes;
+
+    private final FileChannel positionChannel;
+
+    // compact 하면 다시 연다.
+    private FileChannel channel;
+
+    // 다음에 다시 보낼 batch 위치
+    private long readPosition;
+
+    private long size;
+
+    // readPosition 에 있는 batch의 가장 먼저 들어온 로그 시각. 없으면 0
+    private long headCreatedMillis;
+
+    // peek 으로 읽고 아직 commit 하지 않은 batch. compact 하면 위치를 옮긴다.
+    private Entry peeked;
+
+    private boolean closed;
+
+    /**
+     * @param file     spool 파일
+     * @param maxBytes spool 파일 최대 크기
+     * @throws IOException 파일을 만들 수 없을 때
+     */
+    ShipperSpool(Path file, long maxBytes) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.positionChannel = FileChannel.open(file.resolveSibling(file.getFileName() + ".pos"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.size = channel.size();
+
+        ByteBuffer position = ByteBuffer.allocate(8);
+        this.readPosition = positionChannel.read(position, 0) == 8 ? position.getLong(0) : 0;
+        if (readPosition < 0 || readPosition > size) readPosition = 0;
+        recover();
+        loadHead();
+    }
+
+    /**
+     * batch를 파일 끝에 쓴다.
+     *
+     * @param batch 압축된 batch
+     * @return 최대 크기를 넘거나 이미 닫혀서 쓰지 못했으면 false
+     * @throws IOException 파일에 쓸 수 없을 때
+     */
+    synchronized boolean append(BulkBatch batch) throws IOException {
+        if (closed) return false;
+        byte[] compressed = batch.getCompressed();
+        if (size + HEADER_BYTES + compressed.length > maxBytes) {
+            if (readPosition == 0 || size - readPosition + HEADER_BYTES + compressed.length > maxBytes) return false;
+            compact();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + compressed.length);
+        buffer.putInt(MAGIC).putInt(compressed.length).putInt(batch.getRecords()).putLong(batch.getCreatedMillis()).put(compressed).flip();
+        long position = size;
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+
+        if (size == readPosition) headCreatedMillis = batch.getCreatedMillis();
+        size = position;
+        return true;
+    }
+
+    /**
+     * 다음에 다시 보낼 batch를 읽는다. 보낸 후 commit 해야 다음 batch로 넘어간다.
+     *
+     * @return 다시 보낼 batch, 없으면 null
+     * @throws IOException 파일을 읽을 수 없을 때
+     */
+    synchronized Entry peek() throws IOException {
+        if (closed || readPosition >= size) return null;
+
+        ByteBuffer header = read(readPosition, HEADER_BYTES);
+        int length = header == null ? -1 : header.getInt(4);
+        if (header == null || header.getInt(0) != MAGIC || length < 0 || readPosition + HEADER_BYTES + length > size) {
+            log.warn("munzi-log shipper spool 파일 {} 의 {} 이후가 깨져서 버림 ({} bytes)", file, readPosition, size - readPosition);
+            truncate(readPosition);
+            return null;
+        }
+
+        ByteBuffer body = read(readPosition + HEADER_BYTES, length);
+        if (body == null) return null;
+        peeked = new Entry(readPosition, readPosition + HEADER_BYTES + length,
+                BulkBatch.compressed(body.array(), header.getInt(8), header.getLong(12)));
+        return peeked;
+    }
+
+    /**
+     * 다시 보낸 batch 다음으로 넘어간다. 다 보냈으면 파일을 비우고, 이미 보낸 앞부분이 최대 크기의 절반을 넘으면 compact 한다.
+     *
+     * @param entry peek 으로 읽은 batch
+     * @throws IOException 위치를 쓸 수 없을 때
+     */
+    synchronized void commit(Entry entry) throws IOException {
+        if (closed || entry.position != readPosition) return;
+        if (entry == peeked) peeked = null;
+        readPosition = entry.next;
+        if (readPosition >= size) {
+            truncate(0);
+        } else if (readPosition > maxBytes / 2) {
+            compact();
+        } else {
+            writePosition();
+            loadHead();
+        }
+    }
+
+    /**
+     * @return spool 파일 크기 (이미 보낸 앞부분 포함, byte)
+     */
+    synchronized long getFileBytes() {
+        return size;
+    }
+
+    /**
+     * @return 아직 다시 보내지 못한 크기 (byte)
+     */
+    synchronized long getPendingBytes() {
+        return size - readPosition;
+    }
+
+    /**
+     * @return 아직 다시 보내지 못한 batch 중 가장 먼저 들어온 로그 시각. 없으면 0
+     */
+    synchronized long getOldestMillis() {
+        return readPosition < size ? headCreatedMillis : 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            positionChannel.close();
+        }
+    }
+
+    /**
+     * 쓰다가 중단된 마지막 batch 등 형식이 맞지 않는 부분부터 버린다.
+     */
+    private void recover() throws IOException {
+        long position = readPosition;
+        while (position < size) {
+            ByteBuffer header = position + HEADER_BYTES <= size ? read(position, HEADER_BYTES) : null;
+            if (header == null || header.getInt(0) != MAGIC || header.getInt(4) < 0 || position + HEADER_BYTES + header.getInt(4) > size) {
+                log.warn("munzi-log shipper spool 파일 {} 의 {} 이후가 깨져서 버림 ({} bytes)", file, position, size - position);
+                truncate(position);
+                return;
+            }
+            position += HEADER_BYTES + header.getInt(4);
+        }
+    }
+
+    /**
+     * 이미 보낸 앞부분을 버리고 남은 batch만 새 파일에 옮겨 쓴 후 파일을 바꾼다.
+     * 바꾸기 전에 보낸 위치를 0으로 먼저 써 두므로, 중간에 중단되면 이미 보낸 batch를 다시 보낼 수는 있어도 잃지는 않는다.
+     */
+    private void compact() throws IOException {
+        long consumed = readPosition;
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = consumed;
+            while (position < size) position += channel.transferTo(position, size - position, target);
+            target.force(false);
+        }
+
+        readPosition = 0;
+        writePosition();
+        channel.close();
+        try {
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 바꾸지 못했으면 원래 파일, 위치 그대로 계속 쓴다.
+            readPosition = consumed;
+            writePosition();
+            Files.deleteIfExists(compacted);
+            throw e;
+        } finally {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        size -= consumed;
+        if (peeked != null) {
+            peeked.position -= consumed;
+            peeked.next -= consumed;
+        }
+        loadHead();
+    }
+
+    private void truncate(long length) throws IOException {
+        peeked = null;
+        channel.truncate(length);
+        size = length;
+        if (readPosition > length) readPosition = length;
+        if (length == 0) readPosition = 0;
+        writePosition();
+        loadHead();
+    }
+
+    private void writePosition() throws IOException {
+        ByteBuffer position = ByteBuffer.allocate(8).putLong(0, readPosition);
+        while (position.hasRemaining()) positionChannel.write(position, position.position());
+    }
+
+    private void loadHead() throws IOException {
+        ByteBuffer header = readPosition + HEADER_BYTES <= size ? read(readPosition, HEADER_BYTES) : null;
+        headCreatedMillis = header != null && header.getInt(0) == MAGIC ? header.getLong(12) : 0;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) return null;
+        }
+        return buffer;
+    }
+
+    /**
+     * spool 파일에서 읽은 batch와 위치
+     */
+    static final class Entry {
+
+        // compact 하면 ShipperSpool이 옮긴다.
+        private long position;
+
+        private long next;
+
+        private final BulkBatch batch;
+
+        private Entry(long position, long next, BulkBatch batch) {
+            this.position = position;
+            this.next = next;
+            this.batch = batch;
+        }
+
+        BulkBatch getBatch() {
+            return batch;
+        }
+    }
+}
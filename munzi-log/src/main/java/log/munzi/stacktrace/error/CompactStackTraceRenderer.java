@@ -0,0 +1,134 @@
+package log.munzi.stacktrace.error;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * stackTrace를 짧게 줄여서 문자열로 만들어주는 renderer
+ * <p>
+ * Throwable.printStackTrace와 같은 형식이지만,
+ * exception 마다 위쪽 max-depth 개의 frame만 찍고, spring, tomcat, CGLIB proxy 등 framework frame이 이어지면 "... N framework frames" 한 줄로 접는다.
+ * 접은 framework frame은 max-depth에 세지 않는다.
+ * cause, suppressed는 감싸고 있는 exception과 겹치는 아래쪽 frame을 "... N common frames"로 줄인다.
+ * frame 문자열은 한번 만들면 cache 해두고 재사용한다.
+ */
+final class CompactStackTraceRenderer {
+
+    // cache 해둘 frame 최대 개수. 가득 차면 더 추가하지 않는다.
+    private static final int MAX_CACHED_FRAMES = 4096;
+
+    private final int maxDepth;
+
+    private final String[] foldPackages;
+
+    private final ConcurrentHashMap<StackTraceElement, Frame> frames = new ConcurrentHashMap<>();
+
+    CompactStackTraceRenderer(int maxDepth, List<String> foldPackages) {
+        this.maxDepth = maxDepth > 0 ? maxDepth : Integer.MAX_VALUE;
+        this.foldPackages = foldPackages == null ? new String[0]
+                : foldPackages.stream().filter(prefix -> prefix != null && !prefix.isBlank()).map(String::trim).toArray(String[]::new);
+    }
+
+    /**
+     * @param throwable exception
+     * @return 줄인 stackTrace 문자열
+     */
+    String render(Throwable throwable) {
+        StringBuilder builder = new StringBuilder(1024);
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        seen.add(throwable);
+        builder.append(throwable);
+        appendFrames(builder, throwable, new StackTraceElement[0], "", seen);
+        return builder.toString();
+    }
+
+    private void appendEnclosed(StringBuilder builder, Throwable throwable, StackTraceElement[] enclosingTrace,
+                                String caption, String prefix, Set<Throwable> seen) {
+        builder.append('\n').append(prefix);
+        if (!seen.add(throwable)) {
+            builder.append("\t[CIRCULAR REFERENCE: ").append(throwable).append(']');
+            return;
+        }
+        builder.append(caption).append(throwable);
+        appendFrames(builder, throwable, enclosingTrace, prefix, seen);
+    }
+
+    private void appendFrames(StringBuilder builder, Throwable throwable, StackTraceElement[] enclosingTrace,
+                              String prefix, Set<Throwable> seen) {
+        StackTraceElement[] trace = throwable.getStackTrace();
+
+        // 감싸고 있는 exception과 아래쪽이 같은 frame은 찍지 않는다.
+        int last = trace.length - 1;
+        int enclosingLast = enclosingTrace.length - 1;
+        while (last >= 0 && enclosingLast >= 0 && trace[last].equals(enclosingTrace[enclosingLast])) {
+            last--;
+            enclosingLast--;
+        }
+        int common = trace.length - 1 - last;
+
+        int printed = 0;
+        int folded = 0;
+        int i = 0;
+        for (; i <= last && printed < maxDepth; i++) {
+            Frame frame = frame(trace[i]);
+            if (frame.framework) {
+                folded++;
+                continue;
+            }
+            appendFolded(builder, prefix, folded);
+            folded = 0;
+            builder.append('\n').append(prefix).append("\tat ").append(frame.text);
+            printed++;
+        }
+        appendFolded(builder, prefix, folded);
+
+        if (i <= last) {
+            builder.append('\n').append(prefix).append("\t... ").append(last + 1 - i).append(" more frames");
+        }
+        if (common > 0) {
+            builder.append('\n').append(prefix).append("\t... ").append(common).append(" common frames");
+        }
+
+        for (Throwable suppressed : throwable.getSuppressed()) {
+            appendEnclosed(builder, suppressed, trace, "Suppressed: ", prefix + "\t", seen);
+        }
+        Throwable cause = throwable.getCause();
+        if (cause != null) {
+            appendEnclosed(builder, cause, trace, "Caused by: ", prefix, seen);
+        }
+    }
+
+    private static void appendFolded(StringBuilder builder, String prefix, int folded) {
+        if (folded == 0) return;
+        builder.append('\n').append(prefix).append("\t... ").append(folded).append(folded == 1 ? " framework frame" : " framework frames");
+    }
+
+    private Frame frame(StackTraceElement element) {
+        Frame frame = frames.get(element);
+        if (frame != null) return frame;
+
+        frame = new Frame(element.toString(), isFramework(element.getClassName()));
+        if (frames.size() < MAX_CACHED_FRAMES) {
+            frames.putIfAbsent(element, frame);
+        }
+        return frame;
+    }
+
+    private boolean isFramework(String className) {
+        // CGLIB, JDK dynamic proxy class
+        if (className.contains("$$") || className.startsWith("jdk.proxy") || className.startsWith("com.sun.proxy.")) return true;
+        for (String prefix : foldPackages) {
+            if (className.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * cache 해둔 frame 문자열과 framework frame 여부
+     */
+    private record Frame(String text, boolean framework) {
+    }
+}
@@ -0,0 +1,195 @@
+package log.munzi.stacktrace.error;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 에러 fingerprint(exception type + 위쪽 stack frame) 별로 발생 시각과 횟수를 세어두는 table
+ * <p>
+ * 같은 fingerprint의 에러는 window 마다 처음 한번만 stackTrace 전체를 찍게 하고, 나머지는 반복으로 센다.
+ * 여러 thread에서 동시에 사용하며, 최대 개수를 넘으면 더 추가하지 않고 rollup 때 오래된 fingerprint를 지운다.
+ * table이 가득 차서 기억하지 못한 에러는 반복인지 알 수 없으므로 stackTrace 전체를 찍되, 초당 개수를 제한한다.
+ */
+final class ErrorFingerprintTable {
+
+    /**
+     * 에러를 어떻게 찍을지
+     */
+    enum Decision {
+        // window 안에서 처음 난 에러. stackTrace 전체를 찍는다.
+        FULL,
+        // window 안에서 이미 찍은 에러. 한 줄로 찍는다.
+        REPEAT,
+        // table이 가득 차서 기억하지 못했고, 초당 제한을 넘어 stackTrace 전체도 찍지 못한 에러. 한 줄로 찍는다.
+        TABLE_FULL
+    }
+
+    /**
+     * rollup 한 줄에 찍을 값
+     *
+     * @param fingerprint fingerprint
+     * @param errorType   exception type
+     * @param count       지난 rollup 이후 발생 횟수
+     * @param suppressed  그 중 한 줄로 찍은 횟수
+     */
+    record Rollup(String fingerprint, String errorType, long count, long suppressed) {
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // table이 가득 찼을 때 stackTrace 전체를 찍을 초당 최대 개수
+    private static final int UNTRACKED_FULL_PER_SECOND = 10;
+
+    private static final long UNTRACKED_FULL_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1) / UNTRACKED_FULL_PER_SECOND;
+
+    private final int frames;
+
+    private final long windowNanos;
+
+    private final int maxFingerprints;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder overflowCount = new LongAdder();
+
+    // table이 가득 찼을 때 다음 stackTrace 전체를 찍을 수 있는 시각 (System.nanoTime). 1초 이내 만큼은 미리 당겨 쓸 수 있다(burst).
+    private final AtomicLong nextUntrackedFullNanos = new AtomicLong(Long.MIN_VALUE);
+
+    ErrorFingerprintTable(int frames, long windowNanos, int maxFingerprints) {
+        this.frames = Math.max(0, frames);
+        this.windowNanos = windowNanos;
+        this.maxFingerprints = Math.max(1, maxFingerprints);
+    }
+
+    /**
+     * exception type 과 위쪽 stack frame(class, method, line)으로 16자리 hex fingerprint를 만든다.
+     *
+     * @param throwable exception
+     * @return fingerprint
+     */
+    String fingerprint(Throwable throwable) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, throwable.getClass().getName());
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        for (int i = 0; i < Math.min(frames, stackTrace.length); i++) {
+            hash = mix(hash, stackTrace[i].getClassName());
+            hash = mix(hash, stackTrace[i].getMethodName());
+            hash = (hash ^ stackTrace[i].getLineNumber()) * 0x100000001b3L;
+        }
+
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX[(int) (hash & 0xF)];
+            hash >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 에러 발생을 기록하고 어떻게 찍을지 정한다.
+     *
+     * @param fingerprint fingerprint
+     * @param errorType   exception type
+     * @return 찍는 방식
+     */
+    Decision record(String fingerprint, String errorType) {
+        long now = System.nanoTime();
+        Entry entry = entries.get(fingerprint);
+        if (entry == null) {
+            if (entries.size() >= maxFingerprints) {
+                overflowCount.increment();
+                return tryAcquireUntrackedFull(now) ? Decision.FULL : Decision.TABLE_FULL;
+            }
+            Entry created = new Entry(errorType, now);
+            entry = entries.putIfAbsent(fingerprint, created);
+            if (entry == null) {
+                created.count.increment();
+                return Decision.FULL;
+            }
+        }
+
+        entry.count.increment();
+        entry.lastSeenNanos = now;
+        long windowStart = entry.windowStartNanos.get();
+        if (now - windowStart >= windowNanos && entry.windowStartNanos.compareAndSet(windowStart, now)) {
+            return Decision.FULL;
+        }
+        entry.suppressed.increment();
+        return Decision.REPEAT;
+    }
+
+    /**
+     * 지난 rollup 이후 fingerprint 별 발생 횟수를 꺼내고 0으로 되돌린다.
+     * window 동안 한번도 나지 않은 fingerprint는 table에서 지운다.
+     *
+     * @return 한 줄로 찍은(suppressed) 에러가 있는 fingerprint 목록. stackTrace 전체로만 찍은 fingerprint는 이미 로그에 있으므로 넣지 않는다.
+     */
+    List<Rollup> drain() {
+        long now = System.nanoTime();
+        List<Rollup> rollups = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            long count = entry.count.sumThenReset();
+            long suppressed = entry.suppressed.sumThenReset();
+            if (suppressed > 0) {
+                rollups.add(new Rollup(e.getKey(), entry.errorType, count, suppressed));
+            } else if (count == 0 && now - entry.lastSeenNanos >= windowNanos) {
+                entries.remove(e.getKey(), entry);
+            }
+        }
+        return rollups;
+    }
+
+    /**
+     * @return 지난 호출 이후 table이 가득 차서 기억하지 못한 에러 수. 0으로 되돌린다.
+     */
+    long drainOverflowCount() {
+        return overflowCount.sumThenReset();
+    }
+
+    /**
+     * table이 가득 찼을 때 stackTrace 전체를 찍을지 정한다.
+     * ApiLogSampler와 같이 lock 없이 AtomicLong 하나로 관리하는 token bucket이다.
+     */
+    private boolean tryAcquireUntrackedFull(long now) {
+        while (true) {
+            long next = nextUntrackedFullNanos.get();
+            long start = next == Long.MIN_VALUE || next - now < 0 ? now : next;
+            long updated = start + UNTRACKED_FULL_INTERVAL_NANOS;
+            if (updated - now > TimeUnit.SECONDS.toNanos(1)) return false;
+            if (nextUntrackedFullNanos.compareAndSet(next, updated)) return true;
+        }
+    }
+
+    private static long mix(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static final class Entry {
+
+        private final String errorType;
+
+        // 이 fingerprint의 stackTrace 전체를 마지막으로 찍은 시각
+        private final AtomicLong windowStartNanos;
+
+        private volatile long lastSeenNanos;
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder suppressed = new LongAdder();
+
+        private Entry(String errorType, long now) {
+            this.errorType = errorType;
+            this.windowStartNanos = new AtomicLong(now);
+            this.lastSeenNanos = now;
+        }
+    }
+}
@@ -1,19 +1,73 @@
 package log.munzi.stacktrace.error;
 
-import lombok.RequiredArgsConstructor;
+import log.munzi.common.util.CallSiteMarkers;
+import log.munzi.config.ApiLogProperties;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * StackTrace를 포함한 error를 임의로 찍어주는 역할을 하는 writer
  * <p>
  * ErrorAspect에서 찍는 에러 로그에 exception이 없어서, 추가로 exception이 포함된 에러로그를 찍는 부분
- * log type : ERR_STACK_TRACE
+ * api-log.stack-trace.suppress-repeats가 true이면 같은 에러(fingerprint)는 window 동안 처음 한번만 stackTrace 전체를 찍고,
+ * 이후는 fingerprint와 requestId만 한 줄로 찍는다. window 마다 한 줄로 찍은 에러가 있는 fingerprint의 발생 횟수를 한 줄로 모아서 찍는다.
+ * fingerprint table이 가득 차면 새 에러는 기억하지 못하므로 stackTrace 전체를 찍는다. (초당 개수 제한, 넘으면 한 줄로 찍음)
+ * api-log.stack-trace.compact가 true이면 exception을 logger에 넘기지 않고 CompactStackTraceRenderer로 줄인 stackTrace를 찍는다.
+ * log type : ERR_STACK_TRACE, ERR_STACK_TRACE_REPEAT, ERR_STACK_TRACE_ROLLUP
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
-public class StackTraceErrorWriter {
+public class StackTraceErrorWriter implements DisposableBean {
+
+    private final ErrorFingerprintTable fingerprints;
+
+    // compact 설정일 때의 renderer, 아니면 null
+    private final CompactStackTraceRenderer compactRenderer;
+
+    private final ScheduledExecutorService rollupExecutor;
+
+    private final int windowSeconds;
+
+    /**
+     * 설정 없이 모든 에러의 stackTrace 전체를 찍는 writer
+     */
+    public StackTraceErrorWriter() {
+        this(null);
+    }
+
+    /**
+     * @param apiLog api log 설정. null 이면 모든 에러의 stackTrace 전체를 찍는다.
+     */
+    @Autowired
+    public StackTraceErrorWriter(@Nullable ApiLogProperties apiLog) {
+        ApiLogProperties.StackTraceLog stackTrace = apiLog != null ? apiLog.getStackTrace() : null;
+        this.compactRenderer = stackTrace != null && stackTrace.isCompact()
+                ? new CompactStackTraceRenderer(stackTrace.getMaxDepth(), stackTrace.getFoldPackages()) : null;
+        if (stackTrace == null || !stackTrace.isSuppressRepeats()) {
+            this.fingerprints = null;
+            this.rollupExecutor = null;
+            this.windowSeconds = 0;
+            return;
+        }
+
+        this.windowSeconds = Math.max(1, stackTrace.getSuppressWindowSeconds());
+        this.fingerprints = new ErrorFingerprintTable(stackTrace.getFingerprintFrames(),
+                TimeUnit.SECONDS.toNanos(windowSeconds), stackTrace.getMaxFingerprints());
+        this.rollupExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "munzi-log-stack-trace-rollup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rollupExecutor.scheduleAtFixedRate(this::writeRollup, windowSeconds, windowSeconds, TimeUnit.SECONDS);
+    }
 
     /**
      * StackTrace를 포함한 error 로그 작성
@@ -25,7 +79,55 @@ public class StackTraceErrorWriter {
      * @param exception  Exception
      */
     public void writeStackTraceError(Integer httpStatus, String errorCode, String errorType, String message, Exception exception) {
-        log.error("ERR_STACK_TRACE > httpStatus={}, errorCode=\"{}\", errorType=\"{}\", message=\"{}\"", httpStatus, errorCode, errorType, message, exception);
+        if (fingerprints == null) {
+            if (compactRenderer == null) {
+                log.error(CallSiteMarkers.STACK_TRACE, "ERR_STACK_TRACE > httpStatus={}, errorCode=\"{}\", errorType=\"{}\", message=\"{}\"", httpStatus, errorCode, errorType, message, exception);
+            } else {
+                log.error(CallSiteMarkers.STACK_TRACE, "ERR_STACK_TRACE > httpStatus={}, errorCode=\"{}\", errorType=\"{}\", message=\"{}\"\n{}", httpStatus, errorCode, errorType, message, compactRenderer.render(exception));
+            }
+            return;
+        }
+
+        String fingerprint = fingerprints.fingerprint(exception);
+        if (fingerprints.record(fingerprint, errorType) == ErrorFingerprintTable.Decision.FULL) {
+            if (compactRenderer == null) {
+                log.error(CallSiteMarkers.STACK_TRACE, "ERR_STACK_TRACE > httpStatus={}, errorCode=\"{}\", errorType=\"{}\", message=\"{}\", fingerprint={}", httpStatus, errorCode, errorType, message, fingerprint, exception);
+            } else {
+                log.error(CallSiteMarkers.STACK_TRACE, "ERR_STACK_TRACE > httpStatus={}, errorCode=\"{}\", errorType=\"{}\", message=\"{}\", fingerprint={}\n{}", httpStatus, errorCode, errorType, message, fingerprint, compactRenderer.render(exception));
+            }
+        } else {
+            log.error(CallSiteMarkers.STACK_TRACE, "ERR_STACK_TRACE_REPEAT > fingerprint={}, requestId={}, httpStatus={}, errorCode=\"{}\", errorType=\"{}\"", fingerprint, MDC.get("requestId"), httpStatus, errorCode, errorType);
+        }
+    }
+
+    /**
+     * 지난 window 동안의 fingerprint 별 발생 횟수를 찍는다.
+     */
+    private void writeRollup() {
+        try {
+            for (ErrorFingerprintTable.Rollup rollup : fingerprints.drain()) {
+                log.error(CallSiteMarkers.STACK_TRACE, "ERR_STACK_TRACE_ROLLUP > fingerprint={}, errorType=\"{}\", count={}, suppressed={}, windowSeconds={}",
+                        rollup.fingerprint(), rollup.errorType(), rollup.count(), rollup.suppressed(), windowSeconds);
+            }
+            long overflow = fingerprints.drainOverflowCount();
+            if (overflow > 0) {
+                log.error(CallSiteMarkers.STACK_TRACE, "ERR_STACK_TRACE_ROLLUP > fingerprint=overflow, count={}, windowSeconds={}", overflow, windowSeconds);
+            }
+        } catch (RuntimeException e) {
+            // 다음 주기에도 계속 찍을 수 있게 Exception을 밖으로 던지지 않는다.
+            log.warn("StackTraceErrorWriter rollup 중 Exception 발생", e);
+        }
+    }
+
+    /**
+     * bean 종료 시 남은 발생 횟수를 찍고 rollup thread를 종료한다.
+     */
+    @Override
+    public void destroy() {
+        if (rollupExecutor != null) {
+            rollupExecutor.shutdownNow();
+            writeRollup();
+        }
     }
 
 }
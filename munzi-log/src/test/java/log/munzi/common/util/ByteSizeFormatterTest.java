@@ -0,0 +1,28 @@
+package log.munzi.common.util;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ByteSizeFormatterTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "-1|0 bytes",
+            "0|0 bytes",
+            "1|1 bytes",
+            "1023|1,023 bytes",
+            "1024|1 KB",
+            "2048|2 KB",
+            "12800|12.5 KB",
+            "1048575|1,024 KB",
+            "1048576|1 MB",
+            "1073741824|1 GB",
+            "1125899906842624|1 PB",
+            "9223372036854775807|8,192 PB",
+    })
+    void formatsWithTheLargestFittingUnit(long bytes, String expected) {
+        assertThat(ByteSizeFormatter.format(bytes)).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,70 @@
+package log.munzi.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonMinifierTest {
+
+    @Test
+    void keepsWhitespaceInsideStrings() {
+        byte[] body = "{\n  \"message\" : \"승리를 위해\",\n\t\"tags\" : [ \"a b\", \"c\" ]\n}".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(JsonMinifier.minify(body, StandardCharsets.UTF_8))
+                .isEqualTo("{\"message\":\"승리를 위해\",\"tags\":[\"a b\",\"c\"]}");
+    }
+
+    @Test
+    void escapedQuoteAndBackslashDoNotEndTheString() {
+        // "say \"hi there\"" 와 "C:\\dir\\" 다음의 공백은 문자열 밖이다.
+        byte[] body = "{ \"quote\" : \"say \\\"hi there\\\"\" , \"path\" : \"C:\\\\dir\\\\\" , \"next\" : \"x y\" }"
+                .getBytes(StandardCharsets.UTF_8);
+
+        assertThat(JsonMinifier.minify(body, StandardCharsets.UTF_8))
+                .isEqualTo("{\"quote\":\"say \\\"hi there\\\"\",\"path\":\"C:\\\\dir\\\\\",\"next\":\"x y\"}");
+    }
+
+    @Test
+    void capInsideMultiByteCharacterTrimsToWholeCharacter() {
+        // {"k":"승리"} : '{"k":"' 6 byte 다음에 3 byte 문자 두 개
+        byte[] body = "{ \"k\" : \"승리\" }".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(JsonMinifier.minify(body, 0, body.length, 7, StandardCharsets.UTF_8)).isEqualTo("{\"k\":\"");
+        assertThat(JsonMinifier.minify(body, 0, body.length, 8, StandardCharsets.UTF_8)).isEqualTo("{\"k\":\"");
+        assertThat(JsonMinifier.minify(body, 0, body.length, 9, StandardCharsets.UTF_8)).isEqualTo("{\"k\":\"승");
+        assertThat(JsonMinifier.minify(body, 0, body.length, 10, StandardCharsets.UTF_8)).isEqualTo("{\"k\":\"승");
+    }
+
+    @Test
+    void capIntoByteBufferReturnsOnlyWholeCharacters() {
+        byte[] src = "[\"가나다\"]".getBytes(StandardCharsets.UTF_8);
+        byte[] dst = new byte[16];
+
+        int written = JsonMinifier.minify(src, 0, src.length, dst, 2, 6, true);
+
+        assertThat(written).isEqualTo(5);
+        assertThat(new String(dst, 2, written, StandardCharsets.UTF_8)).isEqualTo("[\"가");
+    }
+
+    @Test
+    void nonJsonBodyIsReturnedAsIs() {
+        byte[] body = "name = 승리를 위해 & page = 1".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(JsonMinifier.minify(body, StandardCharsets.UTF_8)).isEqualTo("name = 승리를 위해 & page = 1");
+        assertThat(JsonMinifier.minify(new byte[0], StandardCharsets.UTF_8)).isEmpty();
+    }
+
+    @Test
+    void nonAsciiCompatibleCharsetIsMinifiedAsCharacters() {
+        Charset utf16 = StandardCharsets.UTF_16;
+        byte[] body = "{ \"message\" : \"승리를 위해\" }".getBytes(utf16);
+
+        assertThat(JsonMinifier.minify(body, utf16)).isEqualTo("{\"message\":\"승리를 위해\"}");
+        // limit은 글자 수
+        assertThat(JsonMinifier.minify(body, 0, body.length, 14, utf16)).isEqualTo("{\"message\":\"승리");
+        assertThat(JsonMinifier.minify("  text body ".getBytes(utf16), utf16)).isEqualTo("  text body ");
+    }
+}
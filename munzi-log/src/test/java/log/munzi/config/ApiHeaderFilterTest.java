@@ -0,0 +1,114 @@
+package log.munzi.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import log.munzi.interceptor.LoggingInterceptor;
+import log.munzi.support.LogCapture;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * api-log.header 의 include, exclude, mask 설정이 대소문자 구분 없이 적용되고,
+ * mask 된 header 값은 REQ 로그에 찍히지 않는지 확인한다.
+ */
+class ApiHeaderFilterTest {
+
+    @Test
+    void includeAndExcludeIgnoreCase() {
+        ApiHeaderFilter included = filter(List.of("X-Trace-Id", "content-type"), List.of(), List.of());
+
+        assertThat(included.isIncluded("x-trace-id")).isTrue();
+        assertThat(included.isIncluded("Content-Type")).isTrue();
+        assertThat(included.isIncluded("Accept")).isFalse();
+
+        ApiHeaderFilter excluded = filter(List.of(), List.of("COOKIE"), List.of());
+
+        assertThat(excluded.isIncluded("Cookie")).isFalse();
+        assertThat(excluded.isIncluded("cookie")).isFalse();
+        assertThat(excluded.isIncluded("Accept")).isTrue();
+    }
+
+    @Test
+    void excludeWinsOverInclude() {
+        ApiHeaderFilter filter = filter(List.of("Cookie", "Accept"), List.of("cookie"), List.of());
+
+        assertThat(filter.isIncluded("Cookie")).isFalse();
+        assertThat(filter.isIncluded("Accept")).isTrue();
+    }
+
+    @Test
+    void maskReplacesOnlyNonNullValues() {
+        ApiHeaderFilter filter = filter(List.of(), List.of(), List.of("Authorization"));
+
+        assertThat(filter.value("authorization", "Bearer secret")).isEqualTo(ApiHeaderFilter.MASKED_VALUE);
+        assertThat(filter.value("Authorization", null)).isNull();
+        assertThat(filter.value("Accept", "application/json")).isEqualTo("application/json");
+    }
+
+    @Test
+    void blankNamesAreIgnoredAndNamesAreTrimmed() {
+        ApiHeaderFilter filter = filter(Arrays.asList(" ", null, "  X-Trace-Id "), Arrays.asList("", " Cookie"), List.of(" Authorization "));
+
+        // 공백뿐인 include는 무시되므로 X-Trace-Id만 찍는다.
+        assertThat(filter.isIncluded("X-Trace-Id")).isTrue();
+        assertThat(filter.isIncluded("Accept")).isFalse();
+        assertThat(filter.isIncluded(null)).isFalse();
+        assertThat(filter.value("Authorization", "Bearer secret")).isEqualTo(ApiHeaderFilter.MASKED_VALUE);
+
+        ApiHeaderFilter excludeOnly = filter(List.of(), Arrays.asList("", " Cookie"), List.of());
+        assertThat(excludeOnly.isIncluded("cookie")).isFalse();
+        assertThat(excludeOnly.isIncluded("Accept")).isTrue();
+    }
+
+    @Test
+    void noHeaderSettingLogsEveryHeaderAsIs() {
+        ApiHeaderFilter filter = ApiHeaderFilter.compile(null);
+
+        assertThat(filter).isSameAs(ApiHeaderFilter.NONE);
+        assertThat(filter.isIncluded("Authorization")).isTrue();
+        assertThat(filter.value("Authorization", "Bearer secret")).isEqualTo("Bearer secret");
+    }
+
+    @Test
+    void maskedAuthorizationNeverReachesTheRequestLog() throws Exception {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.setUse(true);
+        apiLog.setServerName("test");
+        ApiLogProperties.LogRequestResponse request = new ApiLogProperties.LogRequestResponse();
+        request.setMaxBodySize("1 KB");
+        apiLog.setRequest(request);
+        apiLog.getHeader().setExclude(List.of("Cookie"));
+        apiLog.getHeader().setMask(List.of("authorization"));
+        apiLog.compileConfig();
+
+        LoggingInterceptor interceptor = new LoggingInterceptor(new ObjectMapper(), apiLog);
+        try (LogCapture logs = LogCapture.of(LoggingInterceptor.class)) {
+            MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/api/orders");
+            servletRequest.addHeader("Authorization", "Bearer secret-token");
+            servletRequest.addHeader("Cookie", "session=secret-session");
+            servletRequest.addHeader("X-Trace-Id", "trace-1");
+            interceptor.preHandle(servletRequest, new MockHttpServletResponse(), null);
+
+            assertThat(logs.startingWith("REQ > ")).hasSize(1);
+            String line = logs.startingWith("REQ > ").get(0).getFormattedMessage();
+            assertThat(line).contains("\"Authorization\":\"" + ApiHeaderFilter.MASKED_VALUE + "\"");
+            assertThat(line).contains("\"X-Trace-Id\":\"trace-1\"");
+            assertThat(line).doesNotContain("secret-token").doesNotContain("Cookie").doesNotContain("secret-session");
+        } finally {
+            interceptor.destroy();
+        }
+    }
+
+    private static ApiHeaderFilter filter(List<String> include, List<String> exclude, List<String> mask) {
+        ApiLogProperties.HeaderLog header = new ApiLogProperties.HeaderLog();
+        header.setInclude(include);
+        header.setExclude(exclude);
+        header.setMask(mask);
+        return ApiHeaderFilter.compile(header);
+    }
+}
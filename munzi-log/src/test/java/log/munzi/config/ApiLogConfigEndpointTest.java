@@ -0,0 +1,75 @@
+package log.munzi.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 실행 중 설정 변경, 초기화 후에도 snapshot version이 계속 증가하고,
+ * 요청마다 보는 use, format, json-pretty, merged 설정은 compile 한 snapshot 값만 사용하는지 확인한다.
+ */
+class ApiLogConfigEndpointTest {
+
+    @Test
+    void versionKeepsIncreasingAcrossUpdateAndReset() {
+        ApiLogProperties apiLog = properties();
+        ApiLogConfigEndpoint endpoint = new ApiLogConfigEndpoint(apiLog);
+        assertThat(endpoint.config()).containsEntry("version", 1L);
+
+        Map<String, Object> updated = endpoint.update("GET /api/orders/*", null, null, null, null, null, null, null, null);
+        assertThat(updated).containsEntry("version", 2L).containsEntry("debugApi", List.of("GET /api/orders/*"));
+
+        Map<String, Object> reset = endpoint.reset();
+        assertThat(reset).containsEntry("version", 3L).containsEntry("debugApi", List.of());
+
+        assertThat(endpoint.update(null, "GET /api/health", null, null, null, null, null, null, null)).containsEntry("version", 4L);
+    }
+
+    @Test
+    void hotPathSettingsAreReadFromTheSnapshot() {
+        ApiLogProperties apiLog = properties();
+        ApiLogConfig compiled = apiLog.getConfig();
+
+        // 다시 compile 하기 전에는 설정 객체를 바꿔도 snapshot은 그대로다.
+        apiLog.setUse(false);
+        apiLog.setFormat(ApiLogProperties.LogFormat.TEXT);
+        apiLog.setJsonPretty(true);
+        apiLog.getMerged().setUse(false);
+        apiLog.getMerged().setKeepBodyMinStatus(500);
+        assertThat(compiled.isUse()).isTrue();
+        assertThat(compiled.getFormat()).isEqualTo(ApiLogProperties.LogFormat.JSON);
+        assertThat(compiled.isJsonPretty()).isFalse();
+        assertThat(compiled.isMerged()).isTrue();
+        assertThat(compiled.getMerged().getKeepBodyMinStatus()).isEqualTo(400);
+
+        // api 목록만 바꾸는 endpoint update는 나머지 설정을 이전 snapshot에서 이어받는다.
+        new ApiLogConfigEndpoint(apiLog).update("GET /api/orders/*", null, null, null, null, null, null, null, null);
+        ApiLogConfig updated = apiLog.getConfig();
+        assertThat(updated.isUse()).isTrue();
+        assertThat(updated.getFormat()).isEqualTo(ApiLogProperties.LogFormat.JSON);
+        assertThat(updated.isMerged()).isTrue();
+
+        apiLog.compileConfig();
+        ApiLogConfig recompiled = apiLog.getConfig();
+        assertThat(recompiled.isUse()).isFalse();
+        assertThat(recompiled.getFormat()).isEqualTo(ApiLogProperties.LogFormat.TEXT);
+        assertThat(recompiled.isJsonPretty()).isTrue();
+        assertThat(recompiled.isMerged()).isFalse();
+        assertThat(recompiled.getVersion()).isEqualTo(3);
+    }
+
+    private static ApiLogProperties properties() {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.setUse(true);
+        apiLog.setFormat(ApiLogProperties.LogFormat.JSON);
+        apiLog.getMerged().setUse(true);
+        ApiLogProperties.LogRequestResponse request = new ApiLogProperties.LogRequestResponse();
+        request.setMaxBodySize("1 KB");
+        apiLog.setRequest(request);
+        apiLog.compileConfig();
+        return apiLog;
+    }
+}
@@ -0,0 +1,130 @@
+package log.munzi.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ApiRouteMatcherTest {
+
+    @Test
+    void exactPatternMatchesOnlyTheSameRoute() {
+        ApiLogProperties apiLog = properties();
+        apiLog.setDebugApi(List.of("GET /api/code"));
+        ApiRouteMatcher matcher = ApiRouteMatcher.compile(apiLog);
+
+        assertThat(matcher.match("GET", "/api/code").isDebug()).isTrue();
+        assertThat(matcher.match("GET", "/api/code/1").isDebug()).isFalse();
+        assertThat(matcher.match("GET", "/api/cod").isDebug()).isFalse();
+        assertThat(matcher.match("POST", "/api/code").isDebug()).isFalse();
+    }
+
+    @Test
+    void wildcardPatternMatchesEveryRouteStartingWithThePrefix() {
+        ApiLogProperties apiLog = properties();
+        apiLog.setExcludeApi(List.of("GET /api/code/*"));
+        apiLog.getRequest().setSecretApi(List.of("POST /api/*/secret"));
+        ApiRouteMatcher matcher = ApiRouteMatcher.compile(apiLog);
+
+        assertThat(matcher.match("GET", "/api/code/").isExcluded()).isTrue();
+        assertThat(matcher.match("GET", "/api/code/1/detail").isExcluded()).isTrue();
+        assertThat(matcher.match("GET", "/api/code").isExcluded()).isFalse();
+        // '*' 뒤는 보지 않고 '*' 앞부분으로 시작하는지만 본다.
+        assertThat(matcher.match("POST", "/api/orders").isRequestSecret()).isTrue();
+        assertThat(matcher.match("POST", "/other/secret").isRequestSecret()).isFalse();
+    }
+
+    @Test
+    void exactAndWildcardFlagsAreCombined() {
+        ApiLogProperties apiLog = properties();
+        apiLog.getRequest().setInactiveApi(List.of("GET /api/code"));
+        apiLog.getResponse().setSecretApi(List.of("GET /api/*"));
+        apiLog.setHeaderOnlyApi(List.of("GET /api/code/*"));
+        ApiRouteMatcher matcher = ApiRouteMatcher.compile(apiLog);
+
+        ApiRouteFlags exact = matcher.match("GET", "/api/code");
+        assertThat(exact.isRequestInactive()).isTrue();
+        assertThat(exact.isResponseSecret()).isTrue();
+        assertThat(exact.isHeadersOnly()).isFalse();
+
+        ApiRouteFlags nested = matcher.match("GET", "/api/code/1");
+        assertThat(nested.isRequestInactive()).isFalse();
+        assertThat(nested.isResponseSecret()).isTrue();
+        assertThat(nested.isHeadersOnly()).isTrue();
+
+        assertThat(matcher.match("GET", "/health")).isSameAs(ApiRouteFlags.NONE);
+        assertThat(ApiRouteMatcher.EMPTY.match("GET", "/api/code")).isSameAs(ApiRouteFlags.NONE);
+    }
+
+    @Test
+    void matchesTheSameRoutesAsCheckEndAsterisk() {
+        List<String> patterns = List.of(
+                "GET /api/code", "GET /api/code/*", "POST /api/*/secret", "GET /api*", "DELETE /", "PUT /a/b/c");
+        List<String> routes = List.of(
+                "GET /api/code", "GET /api/code/", "GET /api/code/1", "GET /api/codes", "GET /api", "GET /apis/1", "GET /ap",
+                "POST /api/1/secret", "POST /api/", "POST /api", "DELETE /", "DELETE /x", "PUT /a/b/c", "PUT /a/b/c/d", "PUT /a/b", "GET /");
+
+        for (String pattern : patterns) {
+            ApiLogProperties apiLog = properties();
+            apiLog.setDebugApi(List.of(pattern));
+            ApiRouteMatcher matcher = ApiRouteMatcher.compile(apiLog);
+
+            for (String route : routes) {
+                int space = route.indexOf(' ');
+                boolean expected = checkEndAsterisk(List.of(pattern), route) || List.of(pattern).contains(route);
+                assertThat(matcher.match(route.substring(0, space), route.substring(space + 1)).isDebug())
+                        .as("%s / %s", pattern, route)
+                        .isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void patternsWithoutPrefixAreIgnored() {
+        ApiLogProperties apiLog = properties();
+        apiLog.setDebugApi(List.of("*", "*/api", "", " "));
+        ApiRouteMatcher matcher = ApiRouteMatcher.compile(apiLog);
+
+        assertThat(matcher.match("GET", "/api").isDebug()).isFalse();
+        assertThat(matcher.match("GET", "").isDebug()).isFalse();
+    }
+
+    @Test
+    void staticResourcesAreExcludedOnlyWhenEnabled() {
+        ApiLogProperties apiLog = properties();
+        assertThat(ApiRouteMatcher.compile(apiLog).match("GET", "/css/app.css").isExcluded()).isFalse();
+
+        apiLog.setExcludeStaticResource(true);
+        ApiRouteMatcher matcher = ApiRouteMatcher.compile(apiLog);
+
+        assertThat(matcher.match("GET", "/css/app.CSS").isExcluded()).isTrue();
+        assertThat(matcher.match("GET", "/img/logo.png").isExcluded()).isTrue();
+        assertThat(matcher.match("GET", "/api/v1.2/orders").isExcluded()).isFalse();
+        assertThat(matcher.match("GET", "/api/orders.").isExcluded()).isFalse();
+        assertThat(matcher.match("GET", "/api/orders.json").isExcluded()).isFalse();
+    }
+
+    private static ApiLogProperties properties() {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.setRequest(new ApiLogProperties.LogRequestResponse());
+        apiLog.setResponse(new ApiLogProperties.LogRequestResponse());
+        return apiLog;
+    }
+
+    /**
+     * 기존 LoggingInterceptor의 '*' 설정 판별
+     */
+    private static boolean checkEndAsterisk(List<String> apiList, String requestMethodUri) {
+        boolean asterisk = false;
+        for (String api : apiList) {
+            if (api.contains("*")) {
+                String[] split = api.split("\\*");
+                if (!split[0].isEmpty() && requestMethodUri.startsWith(split[0])) {
+                    asterisk = true;
+                }
+            }
+        }
+        return asterisk;
+    }
+}
@@ -0,0 +1,99 @@
+package log.munzi.error;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import log.munzi.common.util.CallSiteMarkers;
+import log.munzi.common.util.LoggingUtil;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.interceptor.ApiLatencyRecorder;
+import log.munzi.interceptor.LoggingInterceptor;
+import log.munzi.stacktrace.error.StackTraceErrorWriter;
+import log.munzi.support.LogCapture;
+import org.aspectj.lang.JoinPoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ErrorAspect와 LoggingUtil이 같은 ERR 로그(형식, marker, errorCode attribute, stackTrace 로그)를 찍는지 확인한다.
+ */
+class ErrorLogWriterTest {
+
+    private static final Map<String, Object> ERROR_RESPONSE = Map.of("httpStatus", 500, "errorCode", "E500", "message", "처리 실패");
+
+    private final ApiLogProperties apiLog = new ApiLogProperties();
+
+    private MockHttpServletRequest request;
+
+    private LoggingInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        apiLog.setStackTracePrintYn(true);
+        apiLog.compileConfig();
+        interceptor = new LoggingInterceptor(new ObjectMapper(), apiLog);
+        request = new MockHttpServletRequest("GET", "/api/orders/1");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        interceptor.destroy();
+    }
+
+    @Test
+    void errorAspectAndLoggingUtilWriteTheSameErrLog() throws Exception {
+        IllegalStateException exception = new IllegalStateException("boom");
+
+        List<ILoggingEvent> fromAspect = capture(() -> {
+            JoinPoint joinPoint = mock(JoinPoint.class);
+            when(joinPoint.getArgs()).thenReturn(new Object[]{exception});
+            new ErrorAspect(apiLog, new StackTraceErrorWriter(apiLog)).recordErrorLog(joinPoint, ERROR_RESPONSE);
+        });
+        Object aspectErrorCode = request.getAttribute(ApiLatencyRecorder.ERROR_CODE_ATTRIBUTE);
+        request.removeAttribute(ApiLatencyRecorder.ERROR_CODE_ATTRIBUTE);
+
+        List<ILoggingEvent> fromUtil = capture(() ->
+                new LoggingUtil(interceptor, apiLog, "test", new StackTraceErrorWriter(apiLog)).recordErrorLog(exception, ERROR_RESPONSE, "req-1"));
+        Object utilErrorCode = request.getAttribute(ApiLatencyRecorder.ERROR_CODE_ATTRIBUTE);
+
+        assertThat(aspectErrorCode).isEqualTo("E500");
+        assertThat(utilErrorCode).isEqualTo("E500");
+        assertThat(fromAspect).hasSize(2);
+        assertThat(fromUtil).hasSize(2);
+        for (int i = 0; i < 2; i++) {
+            assertThat(fromUtil.get(i).getLoggerName()).isEqualTo(fromAspect.get(i).getLoggerName());
+            assertThat(fromUtil.get(i).getFormattedMessage()).isEqualTo(fromAspect.get(i).getFormattedMessage());
+            assertThat(fromUtil.get(i).getMarkerList()).isEqualTo(fromAspect.get(i).getMarkerList());
+        }
+
+        ILoggingEvent err = fromUtil.get(0);
+        assertThat(err.getFormattedMessage()).isEqualTo("ERR > httpStatus=500, errorCode=\"E500\", errorType=\"java.lang.IllegalStateException\", message=\"처리 실패\",\nstackTrace=\"boom\"");
+        assertThat(err.getMarkerList()).containsExactly(CallSiteMarkers.ERROR);
+        assertThat(err.getMDCPropertyMap()).containsEntry("requestId", "req-1");
+        assertThat(fromUtil.get(1).getFormattedMessage()).startsWith("ERR_STACK_TRACE > httpStatus=500");
+    }
+
+    private List<ILoggingEvent> capture(ThrowingRunnable runnable) throws Exception {
+        try (LogCapture err = LogCapture.of(ErrorAspect.class);
+             LogCapture stackTrace = LogCapture.of(StackTraceErrorWriter.class)) {
+            runnable.run();
+            return List.of(err.events().get(0), stackTrace.events().get(0));
+        }
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
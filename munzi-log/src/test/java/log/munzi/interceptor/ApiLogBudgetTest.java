@@ -0,0 +1,401 @@
+package log.munzi.interceptor;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.ThreadMXBean;
+import jakarta.servlet.http.HttpServletResponse;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.error.ErrorAspect;
+import log.munzi.stacktrace.error.StackTraceErrorWriter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 요청 한 건을 로그 찍으며 처리할 때 늘어나는 thread 할당량, cpu time이 budget을 넘지 않는지 확인하는 test
+ * <p>
+ * scenario 마다 MockMvc로 filter → interceptor → controller → (@RestControllerAdvice + ErrorAspect) 전체를 거친 경우와
+ * 같은 요청을 로그 없이(filter, interceptor, ErrorAspect 없이) 처리한 경우를 각각 측정하고, 그 차이(로그 overhead)를 budget 파일과 비교한다.
+ * regex 추가, body 재파싱 같은 overhead 증가를 배포 전에 잡기 위한 용도이다.
+ * <p>
+ * 다른 test와 같이 돌면 측정값이 흔들리므로 "budget" tag로 나눠서 ./gradlew allocationBudget (check에 포함) 으로 실행한다.
+ * check 에서는 할당량만 budget과 비교한다. cpu time은 실행 장비(CI runner, 노트북 등)마다 크게 달라서 측정값만 남기고,
+ * -PbudgetCpu 로 실행한 경우(budget 파일을 갱신한 기준 장비)에만 비교한다.
+ * 측정값은 build/reports/allocationBudget/measured.properties 에 남긴다.
+ * -PupdateBudget 으로 실행하면 현재 측정값에 여유를 더해 budget 파일을 다시 쓴다.
+ */
+@Tag("budget")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ApiLogBudgetTest {
+
+    private static final String BUDGET_FILE_PROPERTY = "munzi.budget.file";
+
+    private static final String UPDATE_PROPERTY = "munzi.budget.update";
+
+    private static final String CPU_PROPERTY = "munzi.budget.cpu";
+
+    private static final String REPORT_FILE_PROPERTY = "munzi.budget.report";
+
+    private static final String ALLOCATED_BYTES = ".allocated-bytes";
+
+    private static final String CPU_NANOS = ".cpu-nanos";
+
+    private static final String SMALL_RESPONSE = new String(jsonBody(256), StandardCharsets.UTF_8);
+
+    private static final int DOWNLOAD_SIZE = 10 * 1024 * 1024;
+
+    private static final byte[] DOWNLOAD_CHUNK = new byte[8192];
+
+    private static final int HEADER_COUNT = 8;
+
+    // 로그를 찍는 logger. 실제 서비스처럼 INFO로 켜고, 문자열은 만들되 출력하지 않는다.
+    private static final List<Class<?>> LOGGERS = List.of(LoggingInterceptor.class, ErrorAspect.class, StackTraceErrorWriter.class);
+
+    /**
+     * 측정할 요청 종류
+     */
+    enum Scenario {
+        // 작은 json POST
+        SMALL_JSON_POST("POST", "/api/orders/1", 256, 5000, true),
+        // 10 MB 파일 download. cpu time은 body 복사 시간에 묻혀 측정마다 크게 흔들리므로 할당량만 본다.
+        LARGE_DOWNLOAD("GET", "/api/files/1", 0, 50, false),
+        // secret-api (body 대신 크기만 찍음)
+        SECRET_API("POST", "/api/secret0", 1024, 5000, true),
+        // request, response 모두 inactive-api
+        INACTIVE_API("GET", "/api/inactive0/list", 0, 5000, true),
+        // handler에서 Exception이 나서 500 응답 + ERR, ERR_STACK_TRACE 로그
+        SERVER_ERROR("POST", "/api/fail", 256, 2000, true);
+
+        private final String method;
+
+        private final String uri;
+
+        private final byte[] body;
+
+        private final int operations;
+
+        private final boolean cpuChecked;
+
+        Scenario(String method, String uri, int bodySize, int operations, boolean cpuChecked) {
+            this.method = method;
+            this.uri = uri;
+            this.body = jsonBody(bodySize);
+            this.operations = operations;
+            this.cpuChecked = cpuChecked;
+        }
+    }
+
+    /**
+     * 요청 한 건 당 측정값
+     */
+    record Measurement(long allocatedBytes, long cpuNanos) {
+
+        Measurement minus(Measurement baseline) {
+            return new Measurement(Math.max(0, allocatedBytes - baseline.allocatedBytes), Math.max(0, cpuNanos - baseline.cpuNanos));
+        }
+    }
+
+    private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final Properties budget = new Properties();
+
+    private final Properties measured = new Properties();
+
+    // 여유를 더하기 전 측정값 (build/reports/allocationBudget/measured.properties)
+    private final Properties report = new Properties();
+
+    private final DiscardingAppender appender = new DiscardingAppender();
+
+    private LoggingInterceptor interceptor;
+
+    private StackTraceErrorWriter stackTraceErrorWriter;
+
+    // filter, interceptor, ErrorAspect를 거치는 MockMvc와 거치지 않는 MockMvc
+    private MockMvc logged;
+
+    private MockMvc plain;
+
+    @BeforeAll
+    void setUp() throws IOException {
+        assertThat(threads.isThreadAllocatedMemorySupported() && threads.isCurrentThreadCpuTimeSupported())
+                .as("thread allocated memory, cpu time 측정을 지원하지 않는 JVM").isTrue();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        threads.setThreadCpuTimeEnabled(true);
+
+        try (InputStream budgetFile = ApiLogBudgetTest.class.getResourceAsStream("/allocation-budget.properties")) {
+            if (budgetFile != null) budget.load(budgetFile);
+        }
+
+        ApiLogProperties apiLog = properties(100);
+        interceptor = new LoggingInterceptor(new ObjectMapper(), apiLog);
+        stackTraceErrorWriter = new StackTraceErrorWriter(apiLog);
+
+        AspectJProxyFactory factory = new AspectJProxyFactory(new BudgetControllerAdvice());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new ErrorAspect(apiLog, stackTraceErrorWriter));
+        BudgetControllerAdvice loggedAdvice = factory.getProxy();
+
+        logged = MockMvcBuilders.standaloneSetup(new BudgetController())
+                .setControllerAdvice(loggedAdvice)
+                .addFilters(new GlobalRequestWrappingFilter(apiLog, "budget"))
+                .addInterceptors(interceptor)
+                .build();
+        plain = MockMvcBuilders.standaloneSetup(new BudgetController())
+                .setControllerAdvice(new BudgetControllerAdvice())
+                .build();
+
+        appender.setContext(((Logger) LoggerFactory.getLogger(LoggingInterceptor.class)).getLoggerContext());
+        appender.start();
+        for (Class<?> loggerClass : LOGGERS) {
+            Logger logger = (Logger) LoggerFactory.getLogger(loggerClass);
+            logger.setLevel(Level.INFO);
+            logger.setAdditive(false);
+            logger.addAppender(appender);
+        }
+    }
+
+    @AfterAll
+    void tearDown() throws IOException {
+        for (Class<?> loggerClass : LOGGERS) {
+            Logger logger = (Logger) LoggerFactory.getLogger(loggerClass);
+            logger.detachAppender(appender);
+            logger.setAdditive(true);
+            logger.setLevel(null);
+        }
+        appender.stop();
+        interceptor.destroy();
+        stackTraceErrorWriter.destroy();
+
+        if (System.getProperty(REPORT_FILE_PROPERTY) != null) {
+            Path reportFile = Path.of(System.getProperty(REPORT_FILE_PROPERTY));
+            Files.createDirectories(reportFile.getParent());
+            try (Writer writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+                report.store(writer, "api log overhead per request (logged - not logged), measured");
+            }
+        }
+
+        if (Boolean.getBoolean(UPDATE_PROPERTY)) {
+            Path budgetFile = Path.of(System.getProperty(BUDGET_FILE_PROPERTY));
+            try (Writer writer = Files.newBufferedWriter(budgetFile, StandardCharsets.UTF_8)) {
+                writer.write("# api log overhead budget per request (logged - not logged)\n");
+                writer.write("# allocated-bytes : thread 할당량 (byte/request), cpu-nanos : thread cpu time (ns/request)\n");
+                writer.write("# check 에서는 allocated-bytes만 비교한다. cpu-nanos는 기준 장비에서 -PbudgetCpu 로 실행한 경우에만 비교한다.\n");
+                writer.write("# ./gradlew allocationBudget -PupdateBudget 으로 기준 장비에서 측정값으로 갱신한다.\n");
+                for (Scenario scenario : Scenario.values()) {
+                    for (String key : List.of(scenario.name() + ALLOCATED_BYTES, scenario.name() + CPU_NANOS)) {
+                        if (measured.getProperty(key) != null) writer.write(key + "=" + measured.getProperty(key) + "\n");
+                    }
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Scenario.class)
+    void logOverheadStaysWithinBudget(Scenario scenario, TestReporter reporter) throws Exception {
+        Measurement overhead = measure(scenario, logged).minus(measure(scenario, plain));
+        report.setProperty(scenario.name() + ALLOCATED_BYTES, String.valueOf(overhead.allocatedBytes()));
+        report.setProperty(scenario.name() + CPU_NANOS, String.valueOf(overhead.cpuNanos()));
+        reporter.publishEntry(Map.of(scenario.name() + ALLOCATED_BYTES, String.valueOf(overhead.allocatedBytes()),
+                scenario.name() + CPU_NANOS, String.valueOf(overhead.cpuNanos())));
+
+        // 할당량은 25%, cpu time은 측정 환경에 따라 흔들리므로 2배 여유를 둔다.
+        measured.setProperty(scenario.name() + ALLOCATED_BYTES, String.valueOf(roundUp(overhead.allocatedBytes() * 5 / 4, 1024)));
+        if (scenario.cpuChecked) {
+            measured.setProperty(scenario.name() + CPU_NANOS, String.valueOf(roundUp(overhead.cpuNanos() * 2, 1000)));
+        }
+        if (Boolean.getBoolean(UPDATE_PROPERTY)) {
+            return;
+        }
+
+        assertThat(overhead.allocatedBytes()).as("%s allocated bytes/request", scenario)
+                .isLessThanOrEqualTo(Long.parseLong(budget.getProperty(scenario.name() + ALLOCATED_BYTES)));
+        if (scenario.cpuChecked && Boolean.getBoolean(CPU_PROPERTY)) {
+            assertThat(overhead.cpuNanos()).as("%s cpu ns/request", scenario)
+                    .isLessThanOrEqualTo(Long.parseLong(budget.getProperty(scenario.name() + CPU_NANOS)));
+        }
+    }
+
+    /**
+     * scenario를 operations 번 warm up 한 뒤, 다시 operations 번 처리하면서 현재 thread의 할당량, cpu time을 잰다.
+     * MockMvc는 요청을 호출한 thread에서 처리하므로 현재 thread 값만 보면 된다.
+     *
+     * @param scenario 요청 종류
+     * @param mockMvc  logged 또는 plain
+     * @return 요청 한 건 당 측정값
+     */
+    private Measurement measure(Scenario scenario, MockMvc mockMvc) throws Exception {
+        for (int i = 0; i < scenario.operations; i++) {
+            execute(scenario, mockMvc);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long cpuBefore = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < scenario.operations; i++) {
+            execute(scenario, mockMvc);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        long cpu = threads.getCurrentThreadCpuTime() - cpuBefore;
+        return new Measurement(allocated / scenario.operations, cpu / scenario.operations);
+    }
+
+    private void execute(Scenario scenario, MockMvc mockMvc) throws Exception {
+        int status = mockMvc.perform(request(scenario)).andReturn().getResponse().getStatus();
+        assertThat(status).isEqualTo(scenario == Scenario.SERVER_ERROR ? 500 : 200);
+    }
+
+    private static RequestBuilder request(Scenario scenario) {
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.request(scenario.method, URI.create(scenario.uri));
+        for (int i = 0; i < HEADER_COUNT; i++) {
+            builder.header("X-Budget-Header-" + i, "budget-header-value-0123456789abcdef");
+        }
+        if (scenario.body.length > 0) {
+            builder.contentType(MediaType.APPLICATION_JSON).content(scenario.body);
+        }
+        return builder;
+    }
+
+    /**
+     * routeCount 만큼 exclude-api, secret-api, inactive-api 를 채운 설정.
+     *
+     * @param routeCount 목록 별 api 개수
+     * @return compile 된 설정
+     */
+    private static ApiLogProperties properties(int routeCount) {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.setUse(true);
+        apiLog.setServerName("budget");
+        apiLog.setStackTracePrintYn(true);
+
+        ApiLogProperties.LogRequestResponse request = new ApiLogProperties.LogRequestResponse();
+        request.setMaxBodySize("1 MB");
+        ApiLogProperties.LogRequestResponse response = new ApiLogProperties.LogRequestResponse();
+        response.setMaxBodySize("1 MB");
+        for (int i = 0; i < routeCount; i++) {
+            apiLog.getExcludeApi().add("GET /api/excluded" + i + "/*");
+            request.getSecretApi().add("POST /api/secret" + i);
+            request.getInactiveApi().add("GET /api/inactive" + i + "/*");
+            response.getInactiveApi().add("GET /api/inactive" + i + "/*");
+        }
+        apiLog.setRequest(request);
+        apiLog.setResponse(response);
+        apiLog.compileConfig();
+        return apiLog;
+    }
+
+    /**
+     * @param size 만들 body 크기 (byte). 0이면 빈 배열
+     * @return 대략 size 크기의 json body
+     */
+    private static byte[] jsonBody(int size) {
+        if (size == 0) return new byte[0];
+
+        StringBuilder builder = new StringBuilder(size + 64).append("{\"items\":[");
+        for (int i = 0; builder.length() < size - 2; i++) {
+            if (i > 0) builder.append(',');
+            builder.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\",\"tags\":[\"a\",\"b\"]}");
+        }
+        return builder.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long roundUp(long value, long unit) {
+        return Math.max(unit, (value + unit - 1) / unit * unit);
+    }
+
+    /**
+     * 로그 문자열까지 만들고 출력하지 않는 appender
+     */
+    private static final class DiscardingAppender extends AppenderBase<ILoggingEvent> {
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            event.getFormattedMessage();
+        }
+    }
+
+    @RestController
+    static class BudgetController {
+
+        @PostMapping(value = {"/api/orders/{id}", "/api/secret0"}, produces = MediaType.APPLICATION_JSON_VALUE)
+        String order(@RequestBody String body) {
+            return SMALL_RESPONSE;
+        }
+
+        @GetMapping(value = "/api/inactive0/list", produces = MediaType.APPLICATION_JSON_VALUE)
+        String list() {
+            return SMALL_RESPONSE;
+        }
+
+        @GetMapping("/api/files/{id}")
+        void download(@PathVariable int id, HttpServletResponse response) {
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setContentLengthLong(DOWNLOAD_SIZE);
+            try {
+                for (int written = 0; written < DOWNLOAD_SIZE; written += DOWNLOAD_CHUNK.length) {
+                    response.getOutputStream().write(DOWNLOAD_CHUNK);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @PostMapping("/api/fail")
+        String fail(@RequestBody String body) {
+            throw new IllegalStateException("budget check error");
+        }
+    }
+
+    /**
+     * ErrorAspect pointcut(@ExceptionHandler)에 걸리는 exception handler
+     */
+    @RestControllerAdvice
+    public static class BudgetControllerAdvice {
+
+        @ExceptionHandler(IllegalStateException.class)
+        public ProblemDetail handle(IllegalStateException exception) {
+            ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(HttpStatus.INTERNAL_SERVER_ERROR, exception.getMessage());
+            problemDetail.setProperty("errorCode", "E500");
+            return problemDetail;
+        }
+    }
+}
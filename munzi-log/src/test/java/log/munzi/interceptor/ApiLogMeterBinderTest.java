@@ -0,0 +1,113 @@
+package log.munzi.interceptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import log.munzi.config.ApiLogProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ApiLogMeterBinderTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void asyncDispatcherExposesDroppedCountAndQueueDepth() {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.compileConfig();
+        AsyncApiLogDispatcher dispatcher = mock(AsyncApiLogDispatcher.class);
+        when(dispatcher.getDroppedCount()).thenReturn(3L);
+        when(dispatcher.getQueueDepth()).thenReturn(7L);
+
+        new ApiLogMeterBinder(apiLog, dispatcher).bindTo(registry);
+
+        String name = apiLog.getMetrics().getName();
+        assertThat(registry.get(name + ".log.dropped").functionCounter().count()).isEqualTo(3);
+        assertThat(registry.get(name + ".log.queue.depth").gauge().value()).isEqualTo(7);
+
+        when(dispatcher.getQueueDepth()).thenReturn(0L);
+        assertThat(registry.get(name + ".log.queue.depth").gauge().value()).isZero();
+    }
+
+    @Test
+    void noQueueMetersWithoutAsyncDispatcher() {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.compileConfig();
+
+        new ApiLogMeterBinder(apiLog, null).bindTo(registry);
+
+        String name = apiLog.getMetrics().getName();
+        assertThat(registry.find(name + ".log.dropped").meter()).isNull();
+        assertThat(registry.find(name + ".log.queue.depth").meter()).isNull();
+    }
+
+    @Test
+    void sampledOutCountersAreTaggedPerRuleAndSurviveRecompile() {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.getSampling().setUse(true);
+        apiLog.getSampling().setRules(List.of(rule("GET /api/code/*"), rule("GET /api/items/*")));
+        apiLog.compileConfig();
+        new ApiLogMeterBinder(apiLog, null).bindTo(registry);
+        String name = apiLog.getMetrics().getName() + ".log.sampled.out";
+
+        sample(apiLog, "/api/code/1", 3);
+        sample(apiLog, "/api/items/1", 2);
+        assertThat(registry.get(name).tag("api", "GET /api/code/*").functionCounter().count()).isEqualTo(3);
+        assertThat(registry.get(name).tag("api", "GET /api/items/*").functionCounter().count()).isEqualTo(2);
+
+        // 설정을 다시 compile 해도(ApiLogConfigEndpoint reset) 이어서 센다.
+        apiLog.getSampling().setRules(List.of(rule("GET /api/code/*"), rule("GET /api/orders/*")));
+        apiLog.compileConfig();
+        sample(apiLog, "/api/code/1", 1);
+        sample(apiLog, "/api/orders/1", 4);
+
+        assertThat(registry.get(name).tag("api", "GET /api/code/*").functionCounter().count()).isEqualTo(4);
+        assertThat(registry.get(name).tag("api", "GET /api/items/*").functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get(name).tag("api", "GET /api/orders/*").functionCounter().count()).isEqualTo(4);
+        // 설정에서 빠진 rule(GET /api/items/*)도 그동안 센 값이 남아있다.
+        assertThat(apiLog.getSampledOutCounters().getCounts())
+                .isEqualTo(Map.of("GET /api/code/*", 4L, "GET /api/items/*", 2L, "GET /api/orders/*", 4L));
+    }
+
+    @Test
+    void loggingInterceptorBindsMetersWithoutLatencyMetrics() {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.getAsync().setUse(true);
+        apiLog.getSampling().setUse(true);
+        apiLog.getSampling().setRules(List.of(rule("GET /api/code/*")));
+        apiLog.compileConfig();
+        assertThat(apiLog.getMetrics().isUse()).isFalse();
+
+        LoggingInterceptor interceptor = new LoggingInterceptor(new ObjectMapper(), apiLog, registry);
+        try {
+            sample(apiLog, "/api/code/1", 2);
+
+            String name = apiLog.getMetrics().getName();
+            assertThat(registry.get(name + ".log.sampled.out").tag("api", "GET /api/code/*").functionCounter().count()).isEqualTo(2);
+            assertThat(registry.get(name + ".log.dropped").functionCounter().count()).isZero();
+            assertThat(registry.get(name + ".log.queue.depth").gauge().value()).isZero();
+            // 응답시간 Timer는 api-log.metrics.use 일 때만
+            assertThat(registry.find(name).timer()).isNull();
+        } finally {
+            interceptor.destroy();
+        }
+    }
+
+    private static ApiLogProperties.SamplingRule rule(String api) {
+        ApiLogProperties.SamplingRule rule = new ApiLogProperties.SamplingRule();
+        rule.setApi(api);
+        rule.setRate(0);
+        return rule;
+    }
+
+    private static void sample(ApiLogProperties apiLog, String uri, int times) {
+        for (int i = 0; i < times; i++) {
+            assertThat(apiLog.getSampler().sample("GET", uri)).isFalse();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package log.munzi.interceptor;
+
+import jakarta.servlet.ServletOutputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * client에게는 body 전체를 쓰고, 로그용으로는 앞부분만 복사하면서 전체 크기는 정확히 세는지 확인한다.
+ */
+class CappedResponseWrapperTest {
+
+    @Test
+    void writeLargerThanTheCapIsCappedButCountedInFull() throws IOException {
+        byte[] body = body(10_000);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CappedResponseWrapper wrapper = new CappedResponseWrapper(response, 1000);
+
+        wrapper.getOutputStream().write(body, 0, body.length);
+
+        assertThat(response.getContentAsByteArray()).isEqualTo(body);
+        assertThat(wrapper.getContentAsByteArray()).isEqualTo(Arrays.copyOf(body, 1000));
+        assertThat(wrapper.getContentSize()).isEqualTo(10_000L);
+        assertThat(wrapper.isFullyCaptured()).isFalse();
+    }
+
+    @Test
+    void mixedSingleAndChunkWritesAcrossTheCap() throws IOException {
+        byte[] body = body(5000);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CappedResponseWrapper wrapper = new CappedResponseWrapper(response, 300);
+        ServletOutputStream out = wrapper.getOutputStream();
+
+        // 257 byte 씩 쓰다가 cap을 넘는 곳에서 1 byte 씩 쓴다.
+        int offset = 0;
+        while (offset < body.length) {
+            if (offset >= 250 && offset < 350) {
+                out.write(body[offset++]);
+            } else {
+                int n = Math.min(257, body.length - offset);
+                out.write(body, offset, n);
+                offset += n;
+            }
+        }
+
+        assertThat(response.getContentAsByteArray()).isEqualTo(body);
+        assertThat(wrapper.getContentAsByteArray()).isEqualTo(Arrays.copyOf(body, 300));
+        assertThat(wrapper.getContentSize()).isEqualTo(5000L);
+    }
+
+    @Test
+    void bodyWithinTheCapIsFullyCaptured() throws IOException {
+        byte[] body = body(700);
+        CappedResponseWrapper wrapper = new CappedResponseWrapper(new MockHttpServletResponse(), 1000);
+
+        wrapper.getOutputStream().write(body, 0, 700);
+
+        assertThat(wrapper.getContentAsByteArray()).isEqualTo(body);
+        assertThat(wrapper.getContentSize()).isEqualTo(700L);
+        assertThat(wrapper.isFullyCaptured()).isTrue();
+    }
+
+    @Test
+    void writerOutputIsCountedInEncodedBytes() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding("UTF-8");
+        CappedResponseWrapper wrapper = new CappedResponseWrapper(response, 4);
+
+        PrintWriter writer = wrapper.getWriter();
+        writer.write("승리를 위해");
+
+        // writer에 남은 내용도 flush 해서 센다.
+        assertThat(wrapper.getContentSize()).isEqualTo("승리를 위해".getBytes(StandardCharsets.UTF_8).length);
+        assertThat(wrapper.getContentAsByteArray()).isEqualTo(Arrays.copyOf("승리를 위해".getBytes(StandardCharsets.UTF_8), 4));
+        assertThat(response.getContentAsString()).isEqualTo("승리를 위해");
+    }
+
+    @Test
+    void resetBufferClearsTheCapturedBodyAndSize() throws IOException {
+        CappedResponseWrapper wrapper = new CappedResponseWrapper(new MockHttpServletResponse(), 100);
+        wrapper.getOutputStream().write(body(500), 0, 500);
+
+        wrapper.resetBuffer();
+        wrapper.getOutputStream().write(new byte[]{1, 2, 3}, 0, 3);
+
+        assertThat(wrapper.getContentAsByteArray()).isEqualTo(new byte[]{1, 2, 3});
+        assertThat(wrapper.getContentSize()).isEqualTo(3L);
+    }
+
+    @Test
+    void zeroCapCountsWithoutCapturing() throws IOException {
+        CappedResponseWrapper wrapper = new CappedResponseWrapper(new MockHttpServletResponse(), 0);
+
+        wrapper.getOutputStream().write(body(100), 0, 100);
+        wrapper.getOutputStream().write(7);
+
+        assertThat(wrapper.getContentAsByteArray()).isEmpty();
+        assertThat(wrapper.getContentSize()).isEqualTo(101L);
+    }
+
+    private static byte[] body(int size) {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) (i * 17 + i / 256);
+        }
+        return body;
+    }
+}
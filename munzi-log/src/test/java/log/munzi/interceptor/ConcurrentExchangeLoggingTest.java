@@ -0,0 +1,224 @@
+package log.munzi.interceptor;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.Filter;
+import jakarta.servlet.http.HttpServletRequest;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.support.LogCapture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.MDC;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 여러 thread에서 동시에 요청해도 REQ, RES 로그가 각자 요청의 uri, requestId, 응답시간을 찍는지 확인한다.
+ * <p>
+ * ExchangeContext는 worker thread마다 재사용되므로, async 요청을 시작한 thread가 ASYNC dispatch 전에
+ * 다른 요청을 처리해도 context(시작 시각, api 설정)가 섞이지 않아야 한다.
+ */
+class ConcurrentExchangeLoggingTest {
+
+    private static final int REQUESTS = 400;
+
+    private static final int THREADS = 16;
+
+    private static final long ASYNC_DELAY_MS = 30;
+
+    private static final String REQUEST_ID_HEADER = "X-Request-ID";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private LoggingInterceptor interceptor;
+
+    @AfterEach
+    void tearDown() {
+        if (interceptor != null) interceptor.destroy();
+    }
+
+    /**
+     * @param filterOnAsyncDispatch true면 filter가 ASYNC dispatch 에도 불린다. false면 spring boot 기본 등록처럼 REQUEST dispatch 에서만 불린다.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void concurrentExchangesKeepTheirOwnUriRequestIdAndLatency(boolean filterOnAsyncDispatch) throws Exception {
+        MockMvc mockMvc = mockMvc(filterOnAsyncDispatch);
+        Map<String, Expected> expected = new ConcurrentHashMap<>();
+
+        try (LogCapture logs = LogCapture.of(LoggingInterceptor.class)) {
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < REQUESTS; i++) {
+                    int id = i;
+                    futures.add(executor.submit((Callable<Void>) () -> {
+                        if (id % 4 == 0) {
+                            asyncExchange(mockMvc, id, expected);
+                        } else {
+                            syncExchange(mockMvc, id, expected);
+                        }
+                        // worker thread에 MDC가 남지 않아야 한다.
+                        assertThat(MDC.get("requestId")).isNull();
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) future.get(30, TimeUnit.SECONDS);
+            } finally {
+                executor.shutdownNow();
+            }
+
+            List<ILoggingEvent> requests = logs.startingWith("{\"type\":\"REQ\"");
+            List<ILoggingEvent> responses = logs.startingWith("{\"type\":\"RES\"");
+            assertThat(requests).hasSize(expected.size());
+            assertThat(responses).hasSize(expected.size());
+
+            Map<String, JsonNode> requestByRequestId = byRequestId(requests);
+            Map<String, JsonNode> responseByRequestId = byRequestId(responses);
+            expected.forEach((requestId, exchange) -> {
+                JsonNode req = requestByRequestId.get(requestId);
+                JsonNode res = responseByRequestId.get(requestId);
+                assertThat(req).as("REQ of %s", requestId).isNotNull();
+                assertThat(res).as("RES of %s", requestId).isNotNull();
+                assertThat(req.get("route").asText()).isEqualTo(exchange.route());
+                assertThat(res.get("route").asText()).isEqualTo(exchange.route());
+                assertThat(res.get("status").asInt()).isEqualTo(200);
+                assertThat(res.get("latencyMs").asDouble()).as("latency of %s", requestId).isGreaterThanOrEqualTo(exchange.minLatencyMs());
+                if (exchange.body() != null) {
+                    assertThat(req.get("body").toString()).isEqualTo(exchange.body());
+                    assertThat(res.get("body").toString()).isEqualTo(exchange.body());
+                }
+            });
+        }
+    }
+
+    private void syncExchange(MockMvc mockMvc, int id, Map<String, Expected> expected) throws Exception {
+        String requestId = "req-" + id;
+        String body = "{\"id\":" + id + "}";
+        expected.put(requestId, new Expected("POST /api/orders/" + id, id % 3, body));
+
+        mockMvc.perform(post("/api/orders/" + id)
+                        .header(REQUEST_ID_HEADER, requestId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().json(body));
+    }
+
+    /**
+     * async 요청을 시작하고, ASYNC dispatch 전에 같은 thread에서 다른 요청을 하나 처리한다.
+     */
+    private void asyncExchange(MockMvc mockMvc, int id, Map<String, Expected> expected) throws Exception {
+        String requestId = "req-" + id;
+        expected.put(requestId, new Expected("GET /api/async/" + id, ASYNC_DELAY_MS, null));
+
+        MvcResult started = mockMvc.perform(get("/api/async/" + id).header(REQUEST_ID_HEADER, requestId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        syncExchange(mockMvc, id + REQUESTS, expected);
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().string("async-" + id));
+    }
+
+    /**
+     * message의 requestId와 로그를 찍은 thread의 MDC requestId가 같은지 확인하고 requestId 별로 모은다.
+     */
+    private Map<String, JsonNode> byRequestId(List<ILoggingEvent> events) {
+        Map<String, JsonNode> byRequestId = new ConcurrentHashMap<>();
+        for (ILoggingEvent event : events) {
+            JsonNode json = parse(event.getFormattedMessage());
+            String requestId = json.get("requestId").asText();
+            assertThat(event.getMDCPropertyMap()).containsEntry("requestId", requestId);
+            assertThat(byRequestId.put(requestId, json)).as("duplicated %s log of %s", json.get("type"), requestId).isNull();
+        }
+        return byRequestId;
+    }
+
+    private JsonNode parse(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new AssertionError("not a json log : " + json, e);
+        }
+    }
+
+    private MockMvc mockMvc(boolean filterOnAsyncDispatch) {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.setUse(true);
+        apiLog.setServerName("test");
+        apiLog.setFormat(ApiLogProperties.LogFormat.JSON);
+        apiLog.setRequestIdHeaderKey(REQUEST_ID_HEADER);
+        ApiLogProperties.LogRequestResponse request = new ApiLogProperties.LogRequestResponse();
+        request.setMaxBodySize("1 MB");
+        ApiLogProperties.LogRequestResponse response = new ApiLogProperties.LogRequestResponse();
+        response.setMaxBodySize("1 MB");
+        apiLog.setRequest(request);
+        apiLog.setResponse(response);
+        apiLog.compileConfig();
+
+        this.interceptor = new LoggingInterceptor(objectMapper, apiLog);
+        GlobalRequestWrappingFilter filter = new GlobalRequestWrappingFilter(apiLog, "test");
+        Filter registered = filterOnAsyncDispatch ? filter : (servletRequest, servletResponse, chain) -> {
+            if (((HttpServletRequest) servletRequest).getDispatcherType() == DispatcherType.ASYNC) {
+                chain.doFilter(servletRequest, servletResponse);
+            } else {
+                filter.doFilter(servletRequest, servletResponse, chain);
+            }
+        };
+
+        return MockMvcBuilders.standaloneSetup(new TestController())
+                .addFilters(registered)
+                .addInterceptors(interceptor)
+                .build();
+    }
+
+    private record Expected(String route, long minLatencyMs, String body) {
+    }
+
+    @RestController
+    static class TestController {
+
+        @PostMapping(value = "/api/orders/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+        String order(@PathVariable int id, @RequestBody String body) throws InterruptedException {
+            Thread.sleep(id % 3);
+            return body;
+        }
+
+        @GetMapping(value = "/api/async/{id}", produces = MediaType.TEXT_PLAIN_VALUE)
+        Callable<String> async(@PathVariable int id) {
+            return () -> {
+                Thread.sleep(ASYNC_DELAY_MS);
+                return "async-" + id;
+            };
+        }
+    }
+}
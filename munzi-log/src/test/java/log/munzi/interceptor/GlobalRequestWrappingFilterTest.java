@@ -0,0 +1,104 @@
+package log.munzi.interceptor;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import log.munzi.config.ApiLogProperties;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GlobalRequestWrappingFilterTest {
+
+    private static final String REQUEST_ID_HEADER = "X-Request-ID";
+
+    @Test
+    void bypassedRequestsStillGetMdcButNoWrapping() throws Exception {
+        ApiLogProperties apiLog = properties(true);
+        apiLog.setExcludeApi(List.of("GET /health"));
+        apiLog.getRequest().setInactiveApi(List.of("GET /inactive"));
+        apiLog.getResponse().setInactiveApi(List.of("GET /inactive"));
+        apiLog.compileConfig();
+        GlobalRequestWrappingFilter filter = new GlobalRequestWrappingFilter(apiLog, "test");
+
+        for (String uri : List.of("/health", "/inactive")) {
+            Seen seen = doFilter(filter, request(uri, "req-" + uri));
+
+            assertThat(seen.requestId()).isEqualTo("req-" + uri);
+            assertThat(seen.applicationName()).startsWith("test-server-test ");
+            assertThat(seen.wrapped()).isFalse();
+            assertThat(seen.context()).isNull();
+        }
+        assertThat(MDC.get("requestId")).isNull();
+        assertThat(MDC.get("applicationName")).isNull();
+    }
+
+    @Test
+    void disabledApiLogStillGetsMdc() throws Exception {
+        ApiLogProperties apiLog = properties(false);
+        apiLog.compileConfig();
+        GlobalRequestWrappingFilter filter = new GlobalRequestWrappingFilter(apiLog, "test");
+
+        Seen withHeader = doFilter(filter, request("/api/orders", "req-1"));
+        Seen withoutHeader = doFilter(filter, request("/api/orders", null));
+
+        assertThat(withHeader.requestId()).isEqualTo("req-1");
+        assertThat(withoutHeader.requestId()).isNotBlank().isNotEqualTo("req-1");
+        assertThat(withHeader.wrapped()).isFalse();
+        assertThat(withHeader.context()).isNull();
+        assertThat(MDC.get("requestId")).isNull();
+    }
+
+    @Test
+    void loggedRequestsAreWrappedWithTheSameRequestId() throws Exception {
+        ApiLogProperties apiLog = properties(true);
+        apiLog.compileConfig();
+        GlobalRequestWrappingFilter filter = new GlobalRequestWrappingFilter(apiLog, "test");
+
+        Seen seen = doFilter(filter, request("/api/orders", "req-1"));
+
+        assertThat(seen.requestId()).isEqualTo("req-1");
+        assertThat(seen.wrapped()).isTrue();
+        assertThat(seen.context()).isNotNull();
+        assertThat(MDC.get("requestId")).isNull();
+    }
+
+    private Seen doFilter(GlobalRequestWrappingFilter filter, MockHttpServletRequest request) throws Exception {
+        AtomicReference<Seen> seen = new AtomicReference<>();
+        FilterChain chain = (servletRequest, servletResponse) -> seen.set(new Seen(
+                MDC.get("requestId"),
+                MDC.get("applicationName"),
+                servletRequest != request || !(servletResponse instanceof MockHttpServletResponse),
+                ExchangeContext.find((HttpServletRequest) servletRequest) != null ? "open" : null));
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        return seen.get();
+    }
+
+    private MockHttpServletRequest request(String uri, String requestId) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        if (requestId != null) request.addHeader(REQUEST_ID_HEADER, requestId);
+        return request;
+    }
+
+    private ApiLogProperties properties(boolean use) {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.setUse(use);
+        apiLog.setServerName("test-server");
+        apiLog.setRequestIdHeaderKey(REQUEST_ID_HEADER);
+        ApiLogProperties.LogRequestResponse request = new ApiLogProperties.LogRequestResponse();
+        request.setMaxBodySize("1 KB");
+        ApiLogProperties.LogRequestResponse response = new ApiLogProperties.LogRequestResponse();
+        response.setMaxBodySize("1 KB");
+        apiLog.setRequest(request);
+        apiLog.setResponse(response);
+        return apiLog;
+    }
+
+    private record Seen(String requestId, String applicationName, boolean wrapped, String context) {
+    }
+}
@@ -0,0 +1,79 @@
+package log.munzi.interceptor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import log.munzi.config.ApiLogConfig;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.interceptor.body.BodyRendererRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonApiLogWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final JsonApiLogWriter writer = new JsonApiLogWriter(objectMapper.getFactory(), BodyRendererRegistry.defaults());
+
+    private ApiLogConfig config;
+
+    @BeforeEach
+    void setUp() {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        ApiLogProperties.LogRequestResponse request = new ApiLogProperties.LogRequestResponse();
+        request.setMaxBodySize("1 KB");
+        apiLog.setRequest(request);
+        apiLog.compileConfig();
+        config = apiLog.getConfig();
+    }
+
+    @Test
+    void jsonBodyIsCopiedMinified() throws Exception {
+        JsonNode log = write("{ \"id\" : 1,\n  \"items\" : [ {\"name\":\"a\\\"b\"}, null, 2.5 ] }");
+
+        assertThat(log.get("body").isObject()).isTrue();
+        assertThat(log.get("body").toString()).isEqualTo("{\"id\":1,\"items\":[{\"name\":\"a\\\"b\"},null,2.5]}");
+        assertThat(log.get("route").asText()).isEqualTo("POST /api/orders");
+    }
+
+    @Test
+    void malformedJsonBodyIsWrittenAsString() throws Exception {
+        String broken = "{\"id\":1,\"items\":[1,2";
+
+        JsonNode log = write(broken);
+
+        assertThat(log.get("body").isTextual()).isTrue();
+        assertThat(log.get("body").asText()).isEqualTo(broken);
+    }
+
+    @Test
+    void trailingContentAfterJsonIsWrittenAsString() throws Exception {
+        JsonNode log = write("{\"id\":1} {\"id\":2}");
+
+        assertThat(log.get("body").isTextual()).isTrue();
+    }
+
+    @Test
+    void scratchBufferIsResetBetweenBodies() throws Exception {
+        write("{\"long\":\"" + "x".repeat(500) + "\"}");
+
+        JsonNode log = write("[1]");
+
+        assertThat(log.get("body").toString()).isEqualTo("[1]");
+    }
+
+    private JsonNode write(String body) throws Exception {
+        ApiLogSnapshot snapshot = ApiLogSnapshot.builder()
+                .type(ApiLogSnapshot.Type.REQUEST)
+                .requestId("req-1")
+                .requestMethodUri("POST /api/orders")
+                .contentType("application/json")
+                .charset(StandardCharsets.UTF_8)
+                .body(body.getBytes(StandardCharsets.UTF_8))
+                .build();
+        return objectMapper.readTree(writer.write(snapshot, config));
+    }
+}
@@ -0,0 +1,151 @@
+package log.munzi.interceptor;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * multipart body를 1 byte, 홀수 크기 chunk로 나눠 흘려 보내도 part 목록이 정확한지 확인한다.
+ */
+class MultipartSummarizerTest {
+
+    private static final String BOUNDARY = "----munziBoundary7MA4YWxk";
+
+    private static final String CONTENT_TYPE = "multipart/form-data; boundary=" + BOUNDARY;
+
+    // boundary 앞부분("\r\n------munzi")과 겹치는 내용이 들어있는 700 byte 파일
+    private static final byte[] FILE = file(700);
+
+    private static final String MEMO = "m".repeat(300);
+
+    private static final String EXPECTED = "[multipart/form-data, 4 parts] {"
+            + "\"title\":\"hello world\", "
+            + "\"file\":\"[a.png, image/png, 700 bytes]\", "
+            + "\"memo\":\"" + "m".repeat(MultipartSummary.MAX_VALUE_BYTES) + "...\", "
+            + "\"meta\":\"[application/json, 12 bytes]\"}";
+
+    @Test
+    void partsAreExactWhenFedOneByteAtATime() {
+        assertThat(summarize(body(), 1)).isEqualTo(EXPECTED);
+    }
+
+    @Test
+    void partsAreExactWhenFedInOddSizedChunks() {
+        byte[] body = body();
+        for (int chunk : new int[]{2, 3, 7, 13, 31, 509, body.length}) {
+            assertThat(summarize(body, chunk)).as("chunk %d", chunk).isEqualTo(EXPECTED);
+        }
+    }
+
+    @Test
+    void boundarySplitAcrossChunksIsFound() {
+        byte[] body = body();
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        // 두번째 part(file) 뒤의 delimiter 중간에서 나눈다.
+        int split = text.indexOf("\r\n--" + BOUNDARY, text.indexOf("filename=")) + 10;
+
+        MultipartSummarizer summarizer = MultipartSummarizer.of(CONTENT_TYPE, StandardCharsets.UTF_8);
+        summarizer.feed(body, 0, split);
+        summarizer.feed(body, split, body.length - split);
+
+        assertThat(summarizer.render()).isEqualTo(EXPECTED);
+    }
+
+    @Test
+    void truncatedFinalPartIsCountedUpToWhatWasRead() {
+        byte[] body = body();
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        int fileStart = text.indexOf("\r\n\r\n", text.indexOf("filename=")) + 4;
+
+        // 파일 내용 300 byte까지만 온 경우
+        assertThat(summarize(Arrays.copyOf(body, fileStart + 300), 7))
+                .isEqualTo("[multipart/form-data, 2 parts] {\"title\":\"hello world\", \"file\":\"[a.png, image/png, 300 bytes]\"}");
+
+        // 파일 내용 뒤 delimiter 일부("\r\n--")까지 온 경우, 일치하던 delimiter 일부도 내용으로 센다.
+        assertThat(summarize(Arrays.copyOf(body, fileStart + FILE.length + 4), 7))
+                .isEqualTo("[multipart/form-data, 2 parts] {\"title\":\"hello world\", \"file\":\"[a.png, image/png, 704 bytes]\"}");
+    }
+
+    @Test
+    void preambleAndLfOnlyHeaderLinesAreHandled() {
+        String body = "preamble line\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"a\"\n"
+                + "\n"
+                + "1\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "content-disposition: form-data; name=b\r\n"
+                + "content-type: text/plain; charset=UTF-8\r\n"
+                + "\r\n"
+                + "line1\r\nline2\r\n"
+                + "--" + BOUNDARY + "--\r\n"
+                + "epilogue";
+
+        assertThat(summarize(body.getBytes(StandardCharsets.UTF_8), 5))
+                .isEqualTo("[multipart/form-data, 2 parts] {\"a\":\"1\", \"b\":\"line1\\r\\nline2\"}");
+    }
+
+    @Test
+    void onlyMultipartWithBoundaryIsParsed() {
+        assertThat(MultipartSummarizer.of("application/json", StandardCharsets.UTF_8)).isNull();
+        assertThat(MultipartSummarizer.of("multipart/form-data", StandardCharsets.UTF_8)).isNull();
+        assertThat(MultipartSummarizer.of("Multipart/Form-Data; boundary=\"abc\"", StandardCharsets.UTF_8)).isNotNull();
+        assertThat(MultipartSummarizer.of(CONTENT_TYPE, StandardCharsets.UTF_8).render()).isNull();
+    }
+
+    private static String summarize(byte[] body, int chunk) {
+        MultipartSummarizer summarizer = MultipartSummarizer.of(CONTENT_TYPE, StandardCharsets.UTF_8);
+        for (int offset = 0; offset < body.length; offset += chunk) {
+            summarizer.feed(body, offset, Math.min(chunk, body.length - offset));
+        }
+        return summarizer.render();
+    }
+
+    /**
+     * text field(title), 파일(file), 256 byte를 넘는 text field(memo), filename 없는 json part(meta)
+     */
+    private static byte[] body() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"title\"\r\n"
+                + "\r\n"
+                + "hello world\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"a.png\"\r\n"
+                + "Content-Type: image/png\r\n"
+                + "\r\n");
+        out.write(FILE, 0, FILE.length);
+        write(out, "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"memo\"\r\n"
+                + "\r\n"
+                + MEMO + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"meta\"\r\n"
+                + "Content-Type: application/json\r\n"
+                + "\r\n"
+                + "{\"size\":\"L\"}\r\n"
+                + "--" + BOUNDARY + "--\r\n");
+        return out.toByteArray();
+    }
+
+    private static byte[] file(int size) {
+        byte[] file = new byte[size];
+        byte[] partialDelimiter = ("\r\n--" + BOUNDARY.substring(0, 9)).getBytes(StandardCharsets.ISO_8859_1);
+        for (int i = 0; i < size; i++) {
+            file[i] = (byte) (i * 31);
+        }
+        for (int i = 100; i + partialDelimiter.length < size; i += 150) {
+            System.arraycopy(partialDelimiter, 0, file, i, partialDelimiter.length);
+        }
+        return file;
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,178 @@
+package log.munzi.interceptor;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.error.ErrorAspect;
+import log.munzi.error.ReactiveErrorLogger;
+import log.munzi.stacktrace.error.StackTraceErrorWriter;
+import log.munzi.support.LogCapture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * WebFlux filter가 servlet filter, interceptor와 같은 REQ, RES body를 찍는지,
+ * WebFlux exception handler의 ERR 로그가 Reactor Context의 requestId로 찍히는지 확인한다.
+ */
+class ReactiveLoggingWebFilterTest {
+
+    private static final String REQUEST_ID_HEADER = "X-Request-ID";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ApiLogProperties apiLog = apiLog();
+
+    private final LoggingInterceptor interceptor = new LoggingInterceptor(objectMapper, apiLog);
+
+    private final ReactiveLoggingWebFilter webFilter = new ReactiveLoggingWebFilter(objectMapper, apiLog, "test");
+
+    @AfterEach
+    void tearDown() {
+        interceptor.destroy();
+        webFilter.destroy();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "/api/orders, {\"id\":1}",
+            "/api/secret, {\"password\":\"1234\"}",
+            "/api/orders, {\"description\":\"longer than max-body-size\"}",
+    })
+    void servletAndWebFluxWriteTheSameBodies(String uri, String body) throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new TestController())
+                .addFilters(new GlobalRequestWrappingFilter(apiLog, "test"))
+                .addInterceptors(interceptor)
+                .build();
+        WebTestClient webTestClient = WebTestClient.bindToController(new TestController())
+                .webFilter(webFilter)
+                .build();
+
+        List<JsonNode> servlet = capture(() -> mockMvc.perform(post(uri)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body)));
+        List<JsonNode> webFlux = capture(() -> webTestClient.post().uri(uri)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk());
+
+        assertThat(servlet).hasSize(2);
+        assertThat(webFlux).hasSize(2);
+        for (int i = 0; i < 2; i++) {
+            assertThat(webFlux.get(i).get("type")).isEqualTo(servlet.get(i).get("type"));
+            assertThat(webFlux.get(i).get("route")).isEqualTo(servlet.get(i).get("route"));
+            assertThat(webFlux.get(i).get("body")).as("%s body", servlet.get(i).get("type")).isEqualTo(servlet.get(i).get("body"));
+        }
+    }
+
+    @Test
+    void errLogUsesRequestIdFromReactorContext() {
+        WebTestClient webTestClient = WebTestClient.bindToController(new TestController())
+                .controllerAdvice(new TestControllerAdvice(new ReactiveErrorLogger(apiLog, new StackTraceErrorWriter(apiLog))))
+                .webFilter(webFilter)
+                .build();
+
+        try (LogCapture err = LogCapture.of(ErrorAspect.class)) {
+            webTestClient.post().uri("/api/fail")
+                    .header(REQUEST_ID_HEADER, "req-err")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue("{}")
+                    .exchange()
+                    .expectStatus().isBadRequest();
+
+            assertThat(err.events()).hasSize(1);
+            ILoggingEvent event = err.events().get(0);
+            assertThat(event.getFormattedMessage())
+                    .isEqualTo("ERR > httpStatus=400, errorCode=\"E400\", errorType=\"java.lang.IllegalArgumentException\", message=\"잘못된 요청\",\nstackTrace=\"bad\"");
+            assertThat(event.getMDCPropertyMap()).containsEntry("requestId", "req-err");
+        }
+    }
+
+    private List<JsonNode> capture(ThrowingRunnable runnable) throws Exception {
+        try (LogCapture logs = LogCapture.of(LoggingInterceptor.class)) {
+            runnable.run();
+            return logs.events().stream().map(event -> parse(event.getFormattedMessage())).toList();
+        }
+    }
+
+    private JsonNode parse(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new AssertionError("not a json log : " + json, e);
+        }
+    }
+
+    private static ApiLogProperties apiLog() {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.setUse(true);
+        apiLog.setServerName("test");
+        apiLog.setFormat(ApiLogProperties.LogFormat.JSON);
+        apiLog.setRequestIdHeaderKey(REQUEST_ID_HEADER);
+        ApiLogProperties.LogRequestResponse request = new ApiLogProperties.LogRequestResponse();
+        request.setMaxBodySize("32 bytes");
+        request.setSecretApi(List.of("POST /api/secret"));
+        ApiLogProperties.LogRequestResponse response = new ApiLogProperties.LogRequestResponse();
+        response.setMaxBodySize("32 bytes");
+        response.setSecretApi(List.of("POST /api/secret"));
+        apiLog.setRequest(request);
+        apiLog.setResponse(response);
+        apiLog.compileConfig();
+        return apiLog;
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    @RestController
+    static class TestController {
+
+        @PostMapping(value = {"/api/orders", "/api/secret"}, produces = MediaType.APPLICATION_JSON_VALUE)
+        String echo(@RequestBody String body) {
+            return body;
+        }
+
+        @PostMapping("/api/fail")
+        String fail(@RequestBody String body) {
+            throw new IllegalArgumentException("bad");
+        }
+    }
+
+    @RestControllerAdvice
+    static class TestControllerAdvice {
+
+        private final ReactiveErrorLogger errorLogger;
+
+        TestControllerAdvice(ReactiveErrorLogger errorLogger) {
+            this.errorLogger = errorLogger;
+        }
+
+        @ExceptionHandler(IllegalArgumentException.class)
+        Mono<ResponseEntity<Map<String, Object>>> badRequest(IllegalArgumentException e) {
+            Map<String, Object> body = Map.of("httpStatus", 400, "errorCode", "E400", "message", "잘못된 요청");
+            return errorLogger.recordErrorLog(e, body)
+                    .map(response -> ResponseEntity.badRequest().body(response));
+        }
+    }
+}
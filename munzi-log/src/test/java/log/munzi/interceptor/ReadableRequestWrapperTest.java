@@ -0,0 +1,199 @@
+package log.munzi.interceptor;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 로그용으로 앞부분을 미리 읽은 후에도 controller가 body의 모든 byte를 순서대로 한번씩만 읽는지 확인한다.
+ */
+class ReadableRequestWrapperTest {
+
+    private static final byte[] BODY = body(3000);
+
+    @Test
+    void prefetchedBodyIsReplayedToTheController() throws IOException {
+        ReadableRequestWrapper wrapper = new ReadableRequestWrapper(request(BODY), null, "4 KB");
+
+        assertThat(wrapper.isRead()).isTrue();
+        assertThat(wrapper.getCapturedBody()).isEqualTo(BODY);
+        // 이미 다 읽었으므로 다시 불러도 같은 복사본
+        assertThat(wrapper.getCapturedBody()).isEqualTo(BODY);
+
+        assertThat(readAll(wrapper.getInputStream())).isEqualTo(BODY);
+        assertThat(wrapper.getInputStream().isFinished()).isTrue();
+    }
+
+    @Test
+    void prefetchAfterPartialReadContinuesWhereTheControllerStopped() throws IOException {
+        ReadableRequestWrapper wrapper = new ReadableRequestWrapper(request(BODY), null, "4 KB");
+        ServletInputStream in = wrapper.getInputStream();
+
+        ByteArrayOutputStream seen = new ByteArrayOutputStream();
+        byte[] buffer = new byte[77];
+        int n = in.read(buffer, 0, buffer.length);
+        seen.write(buffer, 0, n);
+        seen.write(in.read());
+
+        assertThat(wrapper.getCapturedBody()).isEqualTo(BODY);
+
+        seen.writeBytes(readAll(in));
+        assertThat(seen.toByteArray()).isEqualTo(BODY);
+        assertThat(wrapper.getCapturedBody()).isEqualTo(BODY);
+    }
+
+    @Test
+    void bodyReadWithoutPrefetchIsCapturedByTheTee() throws IOException {
+        ReadableRequestWrapper wrapper = new ReadableRequestWrapper(request(BODY), null, "4 KB");
+
+        assertThat(readAll(wrapper.getInputStream())).isEqualTo(BODY);
+        assertThat(wrapper.getCapturedBody()).isEqualTo(BODY);
+    }
+
+    @Test
+    void bodyLargerThanTheLimitIsNotCaptured() throws IOException {
+        MockHttpServletRequest request = request(BODY);
+        ReadableRequestWrapper wrapper = new ReadableRequestWrapper(request, null, (BODY.length - 1) + " bytes");
+
+        assertThat(wrapper.isRead()).isFalse();
+        assertThat(wrapper.getCapturedBody()).isNull();
+        assertThat(wrapper.getInputStream()).isSameAs(request.getInputStream());
+    }
+
+    @Test
+    void readListenerGetsPrefetchedDataBeforeAllDataRead() throws IOException {
+        AsyncInputStream original = new AsyncInputStream(BODY);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/orders") {
+            @Override
+            public ServletInputStream getInputStream() {
+                return original;
+            }
+        };
+        request.setContentType("application/json");
+        request.setContent(BODY);
+        ReadableRequestWrapper wrapper = new ReadableRequestWrapper(request, null, "4 KB");
+
+        // 로그가 먼저 body를 전부 읽어서 원래 stream은 끝난 상태
+        assertThat(wrapper.getCapturedBody()).isEqualTo(BODY);
+        assertThat(original.isFinished()).isTrue();
+
+        ServletInputStream in = wrapper.getInputStream();
+        List<String> events = new ArrayList<>();
+        ByteArrayOutputStream seen = new ByteArrayOutputStream();
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                events.add("onDataAvailable");
+                byte[] buffer = new byte[1000];
+                int n;
+                while (in.isReady() && (n = in.read(buffer, 0, buffer.length)) > 0) seen.write(buffer, 0, n);
+            }
+
+            @Override
+            public void onAllDataRead() {
+                events.add("onAllDataRead");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                events.add("onError");
+            }
+        });
+
+        assertThat(events).containsExactly("onDataAvailable", "onAllDataRead");
+        assertThat(seen.toByteArray()).isEqualTo(BODY);
+    }
+
+    private static MockHttpServletRequest request(byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/orders");
+        request.setContentType("application/json");
+        request.setContent(body);
+        return request;
+    }
+
+    /**
+     * read(), 홀수 크기 read(byte[]) 를 섞어서 끝까지 읽는다.
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[13];
+        boolean single = true;
+        while (true) {
+            if (single) {
+                int b = in.read();
+                if (b < 0) break;
+                out.write(b);
+            } else {
+                int n = in.read(buffer, 1, 11);
+                if (n < 0) break;
+                out.write(buffer, 1, n);
+            }
+            single = !single;
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] body(int size) {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) (i * 31 + i / 256);
+        }
+        return body;
+    }
+
+    /**
+     * setReadListener 시점에 남은 data가 있으면 onDataAvailable, 없으면 onAllDataRead를 부르는 non-blocking stream
+     */
+    private static final class AsyncInputStream extends ServletInputStream {
+
+        private final byte[] data;
+        private int position;
+
+        private AsyncInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position == data.length) return -1;
+            int n = Math.min(len, data.length - position);
+            System.arraycopy(data, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return position == data.length;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            try {
+                if (!isFinished()) readListener.onDataAvailable();
+                if (isFinished()) readListener.onAllDataRead();
+            } catch (IOException e) {
+                readListener.onError(e);
+            }
+        }
+    }
+}
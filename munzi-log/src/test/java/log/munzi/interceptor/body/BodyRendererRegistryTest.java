@@ -0,0 +1,146 @@
+package log.munzi.interceptor.body;
+
+import log.munzi.interceptor.ApiLogSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BodyRendererRegistryTest {
+
+    private final BodyRendererRegistry registry = BodyRendererRegistry.defaults();
+
+    @Test
+    void gzipBombIsDecodedOnlyUpToTheLimit() throws IOException {
+        // 10 MB의 0이 10 KB 정도로 압축된 body
+        byte[] bomb = gzip(new byte[10 * 1024 * 1024]);
+        assertThat(bomb.length).isLessThan(64 * 1024);
+
+        byte[] decoded = registry.decode(snapshot("application/octet-stream", "gzip", bomb), 1000);
+
+        assertThat(decoded).hasSize(1000);
+        assertThat(decoded).isEqualTo(new byte[1000]);
+    }
+
+    @Test
+    void truncatedGzipReturnsTheDecodedPrefix() throws IOException {
+        byte[] text = repeated("승리를 위해 ", 2000);
+        byte[] compressed = gzip(text);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        byte[] decoded = registry.decode(snapshot("text/plain", "gzip", truncated), 1 << 20);
+
+        assertThat(decoded.length).isGreaterThan(0);
+        assertThat(decoded.length).isLessThan(text.length);
+        assertThat(decoded).isEqualTo(Arrays.copyOf(text, decoded.length));
+    }
+
+    @Test
+    void truncatedDeflateReturnsTheDecodedPrefix() throws IOException {
+        byte[] text = repeated("{\"id\":1,\"name\":\"item\"}", 2000);
+        byte[] compressed = deflate(text, false);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        byte[] decoded = registry.decode(snapshot("application/json", "deflate", truncated), 1 << 20);
+
+        assertThat(decoded.length).isGreaterThan(0);
+        assertThat(decoded.length).isLessThan(text.length);
+        assertThat(decoded).isEqualTo(Arrays.copyOf(text, decoded.length));
+    }
+
+    @Test
+    void gzipHeaderOnlyCannotBeDecoded() {
+        byte[] header = {0x1f, (byte) 0x8b, 8};
+
+        assertThat(registry.decode(snapshot("text/plain", "gzip", header), 1000)).isNull();
+    }
+
+    @Test
+    void deflateAcceptsBothZlibAndRawStreams() throws IOException {
+        byte[] text = "{\"message\":\"승리를 위해\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] zlib = deflate(text, false);
+        byte[] raw = deflate(text, true);
+        // zlib header (CMF, FLG)가 있는 것과 없는 것
+        assertThat((((zlib[0] & 0xFF) << 8) | (zlib[1] & 0xFF)) % 31).isZero();
+        assertThat(raw[0]).isNotEqualTo(zlib[0]);
+
+        assertThat(registry.decode(snapshot("application/json", "deflate", zlib), 1000)).isEqualTo(text);
+        assertThat(registry.decode(snapshot("application/json", "Deflate", raw), 1000)).isEqualTo(text);
+    }
+
+    @Test
+    void unknownEncodingIsSummarizedInsteadOfDecoded() {
+        ApiLogSnapshot snapshot = snapshot("application/json", "br", new byte[]{1, 2, 3});
+
+        assertThat(registry.decode(snapshot, 1000)).isNull();
+        assertThat(registry.render(snapshot, 1000)).startsWith("[application/json (br), 3 bytes");
+    }
+
+    @Test
+    void rendererLookupFallsBackFromExactToSuffixToWildcardType() {
+        BodyRendererRegistry custom = new BodyRendererRegistry()
+                .register("application/vnd.order+json", (snapshot, body, limit) -> "exact")
+                .register("+json", (snapshot, body, limit) -> "suffix")
+                .register("application/*", (snapshot, body, limit) -> "type");
+        byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(custom.render(snapshot("application/vnd.order+json; charset=UTF-8", null, body), 100)).isEqualTo("exact");
+        assertThat(custom.render(snapshot("APPLICATION/VND.USER+JSON", null, body), 100)).isEqualTo("suffix");
+        assertThat(custom.render(snapshot("application/xml", null, body), 100)).isEqualTo("type");
+        // 어디에도 해당하지 않으면 text로 보이는 body는 그대로 찍는다.
+        assertThat(custom.render(snapshot("text/csv", null, body), 100)).isEqualTo("{}");
+    }
+
+    @Test
+    void xmlAndTextCutAtTheLimitKeepWholeCharacters() {
+        // "<a>" 3 byte 다음에 3 byte 문자
+        byte[] xml = "<a>승리</a>".getBytes(StandardCharsets.UTF_8);
+        byte[] text = "ab승리".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(registry.render(snapshot("application/xml", null, xml), 5)).isEqualTo("<a>");
+        assertThat(registry.render(snapshot("application/xml", null, xml), 6)).isEqualTo("<a>승");
+        assertThat(registry.render(snapshot("text/plain", null, text), 4)).isEqualTo("ab");
+        assertThat(registry.render(snapshot("text/plain", null, text), 5)).isEqualTo("ab승");
+    }
+
+    private static ApiLogSnapshot snapshot(String contentType, String contentEncoding, byte[] body) {
+        return ApiLogSnapshot.builder()
+                .type(ApiLogSnapshot.Type.REQUEST)
+                .contentType(contentType)
+                .contentEncoding(contentEncoding)
+                .charset(StandardCharsets.UTF_8)
+                .body(body)
+                .bodySize(body.length)
+                .build();
+    }
+
+    private static byte[] repeated(String text, int count) {
+        return text.repeat(count).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] body, boolean raw) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+            deflate.write(body);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,321 @@
+package log.munzi.shipping;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import log.munzi.config.ApiLogProperties;
+import log.munzi.interceptor.LoggingInterceptor;
+import log.munzi.support.LogCapture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * local stub 수집기(com.sun.net.httpserver)로 보내서 batch 전송, 실패 후 spool 파일에서 다시 보내기,
+ * 종료 중 spool 파일 쓰기, 깨진 spool 파일 복구를 확인한다.
+ * LoggingInterceptor가 format과 관계없이 같은 모양의 로그를 보내는지도 확인한다.
+ */
+class ApiLogShipperTest {
+
+    private static final long AWAIT_MS = 5000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    private StubCollector collector;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        collector = new StubCollector();
+    }
+
+    @AfterEach
+    void tearDown() {
+        collector.close();
+    }
+
+    @Test
+    void batchIsShippedAsGzippedNdjson() throws Exception {
+        try (ApiLogShipper shipper = new ApiLogShipper(apiLog(3, 1000, 2), HttpClient.newHttpClient())) {
+            shipper.offer("{\"type\":\"RES\",\"id\":1}", "order-api-prod 10.0.0.1");
+            shipper.offer("{\"type\":\"RES\",\"id\":2}", "order-api-prod 10.0.0.1");
+            shipper.offer("{\"type\":\"RES\",\"id\":3}", null);
+
+            await(() -> shipper.getSentCount() == 3);
+
+            assertThat(collector.bodies).hasSize(1);
+            List<String> lines = collector.bodies.get(0).lines().toList();
+            assertThat(lines).hasSize(6);
+            assertThat(lines.get(0)).startsWith("{\"index\":{\"_index\":\"order-api-prod-");
+            assertThat(lines.get(4)).startsWith("{\"index\":{\"_index\":\"test-");
+            assertThat(objectMapper.readTree(lines.get(1)).get("@timestamp").asText()).isNotEmpty();
+            assertThat(collector.ids()).containsExactly(1, 2, 3);
+            assertThat(shipper.getDroppedCount()).isZero();
+        }
+    }
+
+    @Test
+    void failedBatchIsSpooledAndReplayedWhenCollectorRecovers() throws Exception {
+        collector.statuses.add(503);
+        try (ApiLogShipper shipper = new ApiLogShipper(apiLog(2, 50, 2), HttpClient.newHttpClient())) {
+            shipper.offer("{\"type\":\"RES\",\"id\":1}", null);
+            shipper.offer("{\"type\":\"RES\",\"id\":2}", null);
+
+            await(() -> shipper.getSentCount() == 2);
+
+            // 503 응답을 받은 batch를 spool 파일에서 그대로 다시 보낸다.
+            assertThat(collector.rejectedBodies).hasSize(1);
+            assertThat(collector.bodies).containsExactly(collector.rejectedBodies.get(0));
+            assertThat(shipper.getSpoolBytes()).isZero();
+            assertThat(shipper.getDroppedCount()).isZero();
+        }
+    }
+
+    @Test
+    void closeWhileCollectorIsSlowKeepsTheSpoolUsable() throws Exception {
+        ApiLogProperties apiLog = apiLog(1, 100, 1);
+        collector.delayMs = 1000;
+        ApiLogShipper shipper = new ApiLogShipper(apiLog, HttpClient.newHttpClient());
+        shipper.offer("{\"type\":\"RES\",\"id\":1}", null);
+        await(() -> collector.received.get() == 1);
+
+        // 요청을 보낼 자리를 기다리는 중에 종료해도 batch를 버리지 않고 spool 파일에 쓴다.
+        shipper.offer("{\"type\":\"RES\",\"id\":2}", null);
+        Thread.sleep(30);
+        shipper.close();
+
+        assertThat(shipper.getDroppedCount()).isZero();
+        assertThat(shipper.getSentCount()).isEqualTo(1);
+        assertThat(shipper.getSpoolBytes()).isPositive();
+
+        // 다시 시작하면 spool 파일에 남은 batch를 이어서 보낸다.
+        collector.delayMs = 0;
+        try (ApiLogShipper restarted = new ApiLogShipper(apiLog, HttpClient.newHttpClient())) {
+            await(() -> restarted.getSentCount() == 1);
+            assertThat(restarted.getSpoolBytes()).isZero();
+        }
+        assertThat(collector.ids()).containsExactly(1, 2);
+    }
+
+    @Test
+    void textFormatWithoutAsyncShipsHeadersAsAnObject() throws Exception {
+        ApiLogProperties apiLog = apiLog(1, 50, 1);
+        apiLog.setUse(true);
+        ApiLogProperties.LogRequestResponse request = new ApiLogProperties.LogRequestResponse();
+        request.setMaxBodySize("1 KB");
+        apiLog.setRequest(request);
+        apiLog.compileConfig();
+
+        LoggingInterceptor interceptor = new LoggingInterceptor(objectMapper, apiLog);
+        try (LogCapture logs = LogCapture.of(LoggingInterceptor.class)) {
+            MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/api/orders");
+            servletRequest.addHeader("X-Trace", "abc");
+            interceptor.preHandle(servletRequest, new MockHttpServletResponse(), null);
+
+            await(() -> interceptor.getShipper().getSentCount() == 1);
+            assertThat(logs.startingWith("REQ > ")).hasSize(1);
+        } finally {
+            interceptor.destroy();
+        }
+
+        // JSON format, async 설정일 때와 같이 headers는 문자열이 아닌 object로 보낸다.
+        JsonNode shipped = objectMapper.readTree(collector.bodies.get(0).lines().toList().get(1));
+        assertThat(shipped.get("type").asText()).isEqualTo("REQ");
+        assertThat(shipped.get("headers").isObject()).isTrue();
+        assertThat(shipped.get("headers").get("X-Trace").asText()).isEqualTo("abc");
+    }
+
+    @Test
+    void tornSpoolTailIsDiscardedAndCompleteBatchesAreReplayed() throws Exception {
+        ApiLogProperties apiLog = apiLog(1, 50, 2);
+        Path spoolFile = Path.of(apiLog.getShipping().getSpoolPath());
+        try (ShipperSpool spool = new ShipperSpool(spoolFile, 1 << 20)) {
+            BulkBatch batch = new BulkBatch();
+            batch.add("test-2023.06.01", "{\"type\":\"RES\",\"id\":1}", System.currentTimeMillis());
+            spool.append(batch.compress());
+        }
+        // 다음 batch를 쓰다가 중단된 것처럼 header 일부만 남긴다.
+        Files.write(spoolFile, new byte[]{0x4D, 0x5A, 0x53}, StandardOpenOption.APPEND);
+
+        try (ApiLogShipper shipper = new ApiLogShipper(apiLog, HttpClient.newHttpClient())) {
+            await(() -> shipper.getSentCount() == 1);
+            assertThat(shipper.getSpoolBytes()).isZero();
+
+            shipper.offer("{\"type\":\"RES\",\"id\":2}", null);
+            await(() -> shipper.getSentCount() == 2);
+        }
+        assertThat(collector.ids()).containsExactly(1, 2);
+        assertThat(Files.size(spoolFile)).isZero();
+    }
+
+    @Test
+    void spoolFileStaysWithinMaxSizeWhileReplayKeepsUpPartially() throws Exception {
+        Path spoolFile = tempDir.resolve("backlog.spool");
+        // batch 하나는 header 20 + 80 = 100 bytes
+        long maxBytes = 1000;
+        List<Integer> replayed = new ArrayList<>();
+        int appended = 0;
+        try (ShipperSpool spool = new ShipperSpool(spoolFile, maxBytes)) {
+            // 5개 쌓인 상태에서 2개 쓰고 1개 보내기를 반복한다. (보낸 앞부분만 보면 계속 늘어난다)
+            for (; appended < 5; appended++) assertThat(spool.append(spoolBatch(appended))).isTrue();
+            for (int round = 0; round < 50; round++) {
+                ShipperSpool.Entry entry = spool.peek();
+                // 보내는 중에 새 batch를 쓰다가 compact 되어도 보내던 batch의 commit은 그대로 유효하다.
+                if (spool.append(spoolBatch(appended))) appended++;
+                spool.commit(entry);
+                replayed.add(entry.getBatch().getRecords());
+                if (spool.append(spoolBatch(appended))) appended++;
+
+                assertThat(spool.getFileBytes()).isLessThanOrEqualTo(maxBytes);
+                assertThat(Files.size(spoolFile)).isLessThanOrEqualTo(maxBytes);
+            }
+
+            ShipperSpool.Entry entry;
+            while ((entry = spool.peek()) != null) {
+                spool.commit(entry);
+                replayed.add(entry.getBatch().getRecords());
+            }
+        }
+
+        // 가득 차서 버린 batch 없이, 쓴 순서대로 한번씩 다시 보낸다.
+        assertThat(appended).isGreaterThan(50);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < appended; i++) expected.add(i);
+        assertThat(replayed).isEqualTo(expected);
+        assertThat(Files.size(spoolFile)).isZero();
+    }
+
+    @Test
+    void spoolRejectsBatchesAfterClose() throws Exception {
+        ShipperSpool spool = new ShipperSpool(tempDir.resolve("closed.spool"), 1 << 20);
+        spool.close();
+
+        assertThat(spool.append(spoolBatch(1))).isFalse();
+        assertThat(spool.peek()).isNull();
+    }
+
+    /**
+     * spool 파일은 압축된 내용을 보지 않으므로 80 bytes 짜리 내용에 순번을 로그 수 자리에 넣는다.
+     */
+    private static BulkBatch spoolBatch(int sequence) {
+        return BulkBatch.compressed(new byte[80], sequence, System.currentTimeMillis());
+    }
+
+    private ApiLogProperties apiLog(int batchSize, long flushIntervalMs, int maxConcurrentRequests) {
+        ApiLogProperties apiLog = new ApiLogProperties();
+        apiLog.setServerName("test");
+        ApiLogProperties.Shipping shipping = apiLog.getShipping();
+        shipping.setUse(true);
+        shipping.setUrl("http://localhost:" + collector.server.getAddress().getPort() + "/_bulk");
+        shipping.setBatchSize(batchSize);
+        shipping.setFlushIntervalMs(flushIntervalMs);
+        shipping.setMaxConcurrentRequests(maxConcurrentRequests);
+        shipping.setRequestTimeoutMs(5000);
+        shipping.setSpoolPath(tempDir.resolve("shipper.spool").toString());
+        return apiLog;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + AWAIT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError(AWAIT_MS + "ms 안에 조건을 만족하지 않음");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * bulk 요청을 받아서 압축을 푼 body를 남기는 stub 수집기. statuses에 넣은 순서대로 응답하고, 비어있으면 200으로 응답한다.
+     */
+    private final class StubCollector implements AutoCloseable {
+
+        private final HttpServer server;
+
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+
+        // 200으로 응답한 요청의 body
+        private final List<String> bodies = new CopyOnWriteArrayList<>();
+
+        // 200이 아닌 응답을 보낸 요청의 body
+        private final List<String> rejectedBodies = new CopyOnWriteArrayList<>();
+
+        private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger received = new AtomicInteger();
+
+        private volatile long delayMs;
+
+        private StubCollector() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/_bulk", this::handle);
+            server.setExecutor(executor);
+            server.start();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            received.incrementAndGet();
+            String body;
+            try (InputStream in = new GZIPInputStream(exchange.getRequestBody())) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Integer status = statuses.poll();
+            int code = status != null ? status : 200;
+            (code == 200 ? bodies : rejectedBodies).add(body);
+            exchange.sendResponseHeaders(code, -1);
+            exchange.close();
+        }
+
+        /**
+         * @return 200으로 응답한 요청들의 로그 id
+         */
+        private List<Integer> ids() throws IOException {
+            List<Integer> ids = new ArrayList<>();
+            for (String body : bodies) {
+                List<String> lines = body.lines().toList();
+                for (int i = 1; i < lines.size(); i += 2) {
+                    ids.add(objectMapper.readTree(lines.get(i)).get("id").asInt());
+                }
+            }
+            return ids;
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package log.munzi.stacktrace.error;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactStackTraceRendererTest {
+
+    private static final List<String> FOLD_PACKAGES = List.of("org.springframework.");
+
+    @Test
+    void foldedFrameworkFramesDoNotCountTowardsMaxDepth() {
+        IllegalStateException exception = exception("boom",
+                app(1), spring(1), spring(2), app(2), spring(3), app(3), app(4), spring(4), app(5));
+
+        assertThat(new CompactStackTraceRenderer(3, FOLD_PACKAGES).render(exception)).isEqualTo(String.join("\n",
+                "java.lang.IllegalStateException: boom",
+                "\tat com.example.App.m1(App.java:1)",
+                "\t... 2 framework frames",
+                "\tat com.example.App.m2(App.java:2)",
+                "\t... 1 framework frame",
+                "\tat com.example.App.m3(App.java:3)",
+                "\t... 3 more frames"));
+    }
+
+    @Test
+    void trailingFrameworkFramesAreFoldedWhenDepthIsNotReached() {
+        IllegalStateException exception = exception("boom", app(1), spring(1), spring(2));
+
+        assertThat(new CompactStackTraceRenderer(3, FOLD_PACKAGES).render(exception)).isEqualTo(String.join("\n",
+                "java.lang.IllegalStateException: boom",
+                "\tat com.example.App.m1(App.java:1)",
+                "\t... 2 framework frames"));
+    }
+
+    @Test
+    void causeSharesTheEnclosingFramesAndHasItsOwnDepth() {
+        IllegalStateException exception = exception("outer", app(1), spring(1), app(8), app(9));
+        exception.initCause(exception("inner", app(5), spring(2), app(6), app(7), app(8), app(9)));
+
+        assertThat(new CompactStackTraceRenderer(2, FOLD_PACKAGES).render(exception)).isEqualTo(String.join("\n",
+                "java.lang.IllegalStateException: outer",
+                "\tat com.example.App.m1(App.java:1)",
+                "\t... 1 framework frame",
+                "\tat com.example.App.m8(App.java:8)",
+                "\t... 1 more frames",
+                "Caused by: java.lang.IllegalStateException: inner",
+                "\tat com.example.App.m5(App.java:5)",
+                "\t... 1 framework frame",
+                "\tat com.example.App.m6(App.java:6)",
+                "\t... 1 more frames",
+                "\t... 2 common frames"));
+    }
+
+    @Test
+    void zeroMaxDepthPrintsEveryApplicationFrame() {
+        IllegalStateException exception = exception("boom", app(1), spring(1), app(2), app(3));
+
+        assertThat(new CompactStackTraceRenderer(0, FOLD_PACKAGES).render(exception)).isEqualTo(String.join("\n",
+                "java.lang.IllegalStateException: boom",
+                "\tat com.example.App.m1(App.java:1)",
+                "\t... 1 framework frame",
+                "\tat com.example.App.m2(App.java:2)",
+                "\tat com.example.App.m3(App.java:3)"));
+    }
+
+    private static IllegalStateException exception(String message, StackTraceElement... trace) {
+        IllegalStateException exception = new IllegalStateException(message);
+        exception.setStackTrace(trace);
+        return exception;
+    }
+
+    private static StackTraceElement app(int line) {
+        return new StackTraceElement("com.example.App", "m" + line, "App.java", line);
+    }
+
+    private static StackTraceElement spring(int line) {
+        return new StackTraceElement("org.springframework.web.Handler", "handle" + line, "Handler.java", line);
+    }
+}
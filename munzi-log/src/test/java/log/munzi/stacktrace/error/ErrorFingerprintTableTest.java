@@ -0,0 +1,56 @@
+package log.munzi.stacktrace.error;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ErrorFingerprintTableTest {
+
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    void repeatsInTheWindowAreSuppressed() {
+        ErrorFingerprintTable table = new ErrorFingerprintTable(5, WINDOW_NANOS, 16);
+
+        assertThat(table.record("a", "java.lang.IllegalStateException")).isEqualTo(ErrorFingerprintTable.Decision.FULL);
+        assertThat(table.record("a", "java.lang.IllegalStateException")).isEqualTo(ErrorFingerprintTable.Decision.REPEAT);
+        assertThat(table.record("a", "java.lang.IllegalStateException")).isEqualTo(ErrorFingerprintTable.Decision.REPEAT);
+
+        assertThat(table.drain()).containsExactly(new ErrorFingerprintTable.Rollup("a", "java.lang.IllegalStateException", 3, 2));
+    }
+
+    @Test
+    void rollupSkipsFingerprintsWithoutSuppressedErrors() {
+        ErrorFingerprintTable table = new ErrorFingerprintTable(5, WINDOW_NANOS, 16);
+        table.record("a", "java.lang.IllegalStateException");
+        table.record("b", "java.lang.IllegalArgumentException");
+        table.record("b", "java.lang.IllegalArgumentException");
+
+        List<ErrorFingerprintTable.Rollup> rollups = table.drain();
+
+        assertThat(rollups).extracting(ErrorFingerprintTable.Rollup::fingerprint).containsExactly("b");
+        assertThat(table.drain()).isEmpty();
+    }
+
+    @Test
+    void untrackedErrorsAreWrittenInFullUpToTheRateLimit() {
+        ErrorFingerprintTable table = new ErrorFingerprintTable(5, WINDOW_NANOS, 1);
+        table.record("tracked", "java.lang.IllegalStateException");
+
+        int full = 0;
+        int tableFull = 0;
+        for (int i = 0; i < 100; i++) {
+            ErrorFingerprintTable.Decision decision = table.record("untracked-" + i, "java.lang.RuntimeException");
+            if (decision == ErrorFingerprintTable.Decision.FULL) full++;
+            if (decision == ErrorFingerprintTable.Decision.TABLE_FULL) tableFull++;
+        }
+
+        // 기억하지 못한 에러는 반복 여부를 알 수 없으므로 stackTrace 전체를 찍고, 초당 제한을 넘으면 한 줄로 찍는다.
+        assertThat(full).isBetween(1, 11);
+        assertThat(tableFull).isEqualTo(100 - full);
+        assertThat(table.drainOverflowCount()).isEqualTo(100);
+    }
+}
@@ -0,0 +1,103 @@
+package log.munzi.support;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+/**
+ * test 동안 logger의 로그를 모아두는 appender
+ * <p>
+ * 로그를 찍은 thread의 MDC를 append 시점에 복사해 두므로, 여러 thread에서 찍은 로그의 requestId도 확인할 수 있다.
+ * try-with-resources로 닫으면 appender를 떼고 level을 원래대로 돌린다.
+ */
+public final class LogCapture implements AutoCloseable {
+
+    private final Logger logger;
+
+    private final Level previousLevel;
+
+    private final CapturingAppender appender = new CapturingAppender();
+
+    private LogCapture(Logger logger, Level level) {
+        this.logger = logger;
+        this.previousLevel = logger.getLevel();
+        logger.setLevel(level);
+        appender.setContext(logger.getLoggerContext());
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    /**
+     * @param loggerClass 로그를 받을 logger
+     * @return INFO 이상을 모으는 capture
+     */
+    public static LogCapture of(Class<?> loggerClass) {
+        return of(loggerClass, Level.INFO);
+    }
+
+    /**
+     * @param loggerClass 로그를 받을 logger
+     * @param level       logger level
+     * @return level 이상을 모으는 capture
+     */
+    public static LogCapture of(Class<?> loggerClass, Level level) {
+        return new LogCapture((Logger) LoggerFactory.getLogger(loggerClass), level);
+    }
+
+    /**
+     * @return 지금까지 모은 로그
+     */
+    public List<ILoggingEvent> events() {
+        return new ArrayList<>(appender.events);
+    }
+
+    /**
+     * @param prefix message 시작 문자열 (ex. "REQ > ", "{\"type\":\"RES\"")
+     * @return message가 prefix로 시작하는 로그
+     */
+    public List<ILoggingEvent> startingWith(String prefix) {
+        return matching(event -> event.getFormattedMessage().startsWith(prefix));
+    }
+
+    /**
+     * @param filter 조건
+     * @return 조건에 맞는 로그
+     */
+    public List<ILoggingEvent> matching(Predicate<ILoggingEvent> filter) {
+        return appender.events.stream().filter(filter).toList();
+    }
+
+    /**
+     * 모은 로그를 비운다.
+     */
+    public void clear() {
+        appender.events.clear();
+    }
+
+    @Override
+    public void close() {
+        logger.detachAppender(appender);
+        appender.stop();
+        logger.setLevel(previousLevel);
+    }
+
+    private static final class CapturingAppender extends AppenderBase<ILoggingEvent> {
+
+        private final Queue<ILoggingEvent> events = new ConcurrentLinkedQueue<>();
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            // message, MDC를 로그를 찍은 thread에서 확정해 둔다.
+            event.prepareForDeferredProcessing();
+            events.add(event);
+        }
+    }
+}